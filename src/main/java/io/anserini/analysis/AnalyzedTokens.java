@@ -0,0 +1,106 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.analysis;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.Counter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tokens of an analyzed text, i.e., their terms (as UTF-8 bytes, the way they are indexed) and positions. Terms are
+ * packed into a single growing block, so analyzing into a buffer doesn't create any objects per token, and the buffer
+ * can be cleared and reused for the next text. Not thread safe while being filled, see
+ * {@link AnalyzerUtils#analyze(org.apache.lucene.analysis.Analyzer, String, AnalyzedTokens)}.
+ */
+public final class AnalyzedTokens {
+  private final BytesRefArray terms = new BytesRefArray(Counter.newCounter());
+  private int[] positions = new int[8];
+  // Strings of the terms, created on demand for callers that want them.
+  private volatile List<String> strings;
+
+  public int size() {
+    return terms.size();
+  }
+
+  /**
+   * Returns the term of a token.
+   *
+   * @param spare builder to hold the bytes of the term, which are valid until it is used again
+   * @param i index of the token
+   * @return term
+   */
+  public BytesRef getTerm(BytesRefBuilder spare, int i) {
+    return terms.get(spare, i);
+  }
+
+  /**
+   * Returns the position of a token, counting from zero and taking position increments into account. Tokens with an
+   * empty term aren't kept, but still take up their positions.
+   *
+   * @param i index of the token
+   * @return position
+   */
+  public int getPosition(int i) {
+    if (i < 0 || i >= terms.size()) {
+      throw new IndexOutOfBoundsException("index " + i + " must be less than the size: " + terms.size());
+    }
+    return positions[i];
+  }
+
+  /**
+   * Returns the terms as strings, in order.
+   *
+   * @return unmodifiable list of terms
+   */
+  public List<String> toList() {
+    List<String> list = strings;
+    if (list == null) {
+      BytesRefBuilder spare = new BytesRefBuilder();
+      list = new ArrayList<>(terms.size());
+      for (int i = 0; i < terms.size(); i++) {
+        list.add(terms.get(spare, i).utf8ToString());
+      }
+      list = Collections.unmodifiableList(list);
+      strings = list;
+    }
+    return list;
+  }
+
+  public void clear() {
+    terms.clear();
+    strings = null;
+  }
+
+  void add(BytesRef term, int position) {
+    int i = terms.append(term);
+    if (i == positions.length) {
+      positions = ArrayUtil.grow(positions, i + 1);
+    }
+    positions[i] = position;
+    strings = null;
+  }
+
+  @Override
+  public String toString() {
+    return toList().toString();
+  }
+}
@@ -20,9 +20,11 @@ import io.anserini.index.IndexCollection;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,22 +37,55 @@ public class AnalyzerUtils {
   static public List<String> analyze(Analyzer analyzer, String s) {
     List<String> list = new ArrayList<>();
 
-    try {
-      TokenStream tokenStream = analyzer.tokenStream(null, new StringReader(s));
+    // Passing the string rather than a reader lets the analyzer reuse its own reader along with its token stream.
+    try (TokenStream tokenStream = analyzer.tokenStream(null, s)) {
       CharTermAttribute cattr = tokenStream.addAttribute(CharTermAttribute.class);
       tokenStream.reset();
       while (tokenStream.incrementToken()) {
-        if (cattr.toString().length() == 0) {
+        if (cattr.length() == 0) {
           continue;
         }
         list.add(cattr.toString());
       }
       tokenStream.end();
-      tokenStream.close();
     } catch (IOException e) {
       e.printStackTrace();
     }
 
     return list;
   }
+
+  /**
+   * Analyzes a string into a (possibly reused) token buffer, which is cleared first. Unlike
+   * {@link #analyze(Analyzer, String)}, this doesn't create a string per token, and the tokens can be handed to query
+   * generators and rerankers so that they don't have to analyze the same string again.
+   *
+   * @param analyzer analyzer
+   * @param s string to analyze
+   * @param tokens buffer to fill
+   * @return the buffer
+   */
+  static public AnalyzedTokens analyze(Analyzer analyzer, String s, AnalyzedTokens tokens) {
+    tokens.clear();
+
+    try (TokenStream tokenStream = analyzer.tokenStream(null, s)) {
+      TermToBytesRefAttribute termAttr = tokenStream.addAttribute(TermToBytesRefAttribute.class);
+      PositionIncrementAttribute posIncrAttr = tokenStream.addAttribute(PositionIncrementAttribute.class);
+      tokenStream.reset();
+      int position = -1;
+      while (tokenStream.incrementToken()) {
+        position += posIncrAttr.getPositionIncrement();
+        BytesRef term = termAttr.getBytesRef();
+        if (term.length == 0) {
+          continue;
+        }
+        tokens.add(term, position);
+      }
+      tokenStream.end();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    return tokens;
+  }
 }
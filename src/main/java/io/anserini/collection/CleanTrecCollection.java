@@ -35,11 +35,25 @@ public class CleanTrecCollection extends DocumentCollection<CleanTrecCollection.
     return new Segment<>(p);
   }
 
+  @Override
+  public boolean isSplittable(Path p) {
+    return TrecCollection.Segment.isSplittable(p);
+  }
+
+  @Override
+  public FileSegment<Document> createFileSegment(Path p, long start, long end) throws IOException {
+    return new Segment<>(p, start, end);
+  }
+
   public static class Segment<T extends Document> extends TrecCollection.Segment<T> {
     public Segment(Path path) throws IOException {
       super(path);
     }
 
+    public Segment(Path path, long start, long end) throws IOException {
+      super(path, start, end);
+    }
+
     @Override
     protected TrecCollection.Document createNewDocument() {
       return new Document();
@@ -18,14 +18,10 @@ package io.anserini.collection;
 
 import org.apache.logging.log4j.LogManager;
 
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
 
 /**
  * An instance of the <a href="https://www.lemurproject.org/clueweb12.php/">ClueWeb12 collection</a>.
@@ -41,23 +37,24 @@ public class ClueWeb12Collection extends DocumentCollection<ClueWeb12Collection.
 
   @Override
   public FileSegment<ClueWeb12Collection.Document> createFileSegment(Path p) throws IOException {
-    return new Segment(p);
+    return new Segment(p).setHtmlTransform(htmlTransform);
   }
 
   /**
    * An individual WARC in the <a href="https://www.lemurproject.org/clueweb12.php/">ClueWeb12 collection</a>.
    */
   public static class Segment extends FileSegment<ClueWeb12Collection.Document> {
-    protected DataInputStream stream;
+    protected WarcRecordReader stream;
 
     public Segment(Path path) throws IOException {
       super(path);
-      this.stream = new DataInputStream(new GZIPInputStream(Files.newInputStream(path, StandardOpenOption.READ)));
+      this.stream = WarcRecordReader.open(path);
     }
 
     @Override
     public void readNext() throws IOException, NoSuchElementException {
       bufferedRecord = Document.readNextWarcRecord(stream);
+      bufferedRecord.htmlTransform = htmlTransform;
     }
 
     @Override
@@ -89,14 +86,14 @@ public class ClueWeb12Collection extends DocumentCollection<ClueWeb12Collection.
     }
 
     /**
-     * Reads in a WARC record from a data input stream.
+     * Reads in a WARC record from a WARC record reader.
      *
-     * @param in      the input stream
+     * @param in      the WARC record reader
      * @return a WARC record (or null if EOF)
      * @throws IOException if error encountered reading from stream
      */
 
-    public static Document readNextWarcRecord(DataInputStream in)
+    public static Document readNextWarcRecord(WarcRecordReader in)
         throws IOException {
       StringBuilder recordHeader = new StringBuilder();
       byte[] recordContent = readNextRecord(in, recordHeader, "Content-Length");
@@ -19,14 +19,10 @@ package io.anserini.collection;
 
 import org.apache.logging.log4j.LogManager;
 
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
 
 /**
  * A collection of WARC files from CommonCrawl (https://commoncrawl.org/the-data/get-started/#WARC-Format).
@@ -41,7 +37,7 @@ public class CommonCrawlWarcCollection extends DocumentCollection<CommonCrawlWar
 
   @Override
   public FileSegment<CommonCrawlWarcCollection.Document> createFileSegment(Path p) throws IOException {
-    return new Segment(p);
+    return new Segment(p).setHtmlTransform(htmlTransform);
   }
 
   /**
@@ -49,16 +45,17 @@ public class CommonCrawlWarcCollection extends DocumentCollection<CommonCrawlWar
    */
   public static class Segment extends FileSegment<CommonCrawlWarcCollection.Document> {
 
-    protected DataInputStream stream;
+    protected WarcRecordReader stream;
 
     public Segment(Path path) throws IOException {
       super(path);
-      this.stream = new DataInputStream(new GZIPInputStream(Files.newInputStream(path, StandardOpenOption.READ)));
+      this.stream = WarcRecordReader.open(path);
     }
 
     @Override
     public void readNext() throws IOException, NoSuchElementException {
       bufferedRecord = Document.readNextWarcRecord(stream);
+      bufferedRecord.htmlTransform = htmlTransform;
     }
 
     @Override
@@ -87,14 +84,14 @@ public class CommonCrawlWarcCollection extends DocumentCollection<CommonCrawlWar
     }
 
     /**
-     * Reads in a WARC record from a data input stream.
+     * Reads in a WARC record from a WARC record reader.
      *
-     * @param in      the input stream
+     * @param in      the WARC record reader
      * @return a WARC record (or null if EOF)
      * @throws IOException if error encountered reading from stream
      */
 
-    public static Document readNextWarcRecord(DataInputStream in)
+    public static Document readNextWarcRecord(WarcRecordReader in)
         throws IOException {
       StringBuilder recordHeader = new StringBuilder();
       byte[] recordContent = readNextRecord(in, recordHeader, "WARC-Block-Digest");
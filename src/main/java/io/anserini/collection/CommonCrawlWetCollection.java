@@ -19,16 +19,10 @@ package io.anserini.collection;
 
 import org.apache.logging.log4j.LogManager;
 
-import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.Locale;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
 
 /**
  * A collection of WET files from CommonCrawl (https://commoncrawl.org/the-data/get-started/#WET-Format).
@@ -51,11 +45,11 @@ public class CommonCrawlWetCollection extends DocumentCollection<CommonCrawlWetC
    */
   public static class Segment extends FileSegment<CommonCrawlWetCollection.Document> {
 
-    protected DataInputStream stream;
+    protected WarcRecordReader stream;
 
     public Segment(Path path) throws IOException {
       super(path);
-      this.stream = new DataInputStream(new GZIPInputStream(Files.newInputStream(path, StandardOpenOption.READ)));
+      this.stream = WarcRecordReader.open(path);
     }
 
     @Override
@@ -87,14 +81,14 @@ public class CommonCrawlWetCollection extends DocumentCollection<CommonCrawlWetC
     }
 
     /**
-     * Reads in a WARC record from a data input stream.
+     * Reads in a WARC record from a WARC record reader.
      *
-     * @param in      the input stream
+     * @param in      the WARC record reader
      * @return a WARC record (or null if EOF)
      * @throws IOException if error encountered reading from stream
      */
 
-    public static Document readNextWarcRecord(DataInputStream in)
+    public static Document readNextWarcRecord(WarcRecordReader in)
         throws IOException {
       StringBuilder recordHeader = new StringBuilder();
       byte[] recordContent = readNextRecord(in, recordHeader, "Content-Length");
@@ -109,92 +103,27 @@ public class CommonCrawlWetCollection extends DocumentCollection<CommonCrawlWetC
     }
 
     /**
-     * Performs the actual heavy lifting of reading in the next WARC record.
+     * Performs the actual heavy lifting of reading in the next WARC record. Unlike in other WARCs, the content length
+     * of WET records doesn't count the line feed ending the content.
      *
-     * @param in the data input stream
+     * @param in the WARC record reader
      * @param headerBuffer a blank string buffer to contain the WARC header
+     * @param headerEndKey key of the last line of the header
      * @return the content bytes (with the headerBuffer populated)
      * @throws IOException if error encountered reading from stream
      */
-    protected static byte[] readNextRecord(DataInputStream in, StringBuilder headerBuffer, String headerEndKey) throws IOException {
+    protected static byte[] readNextRecord(WarcRecordReader in, StringBuilder headerBuffer, String headerEndKey) throws IOException {
       if (in == null || headerBuffer == null) {
         throw new NoSuchElementException();
       }
 
-      String line = null;
-      boolean foundMark = false;
-      boolean inHeader = true;
-      byte[] retContent = null;
-
-      // read WARC header
-      // first - find the beginning of WARC header
-      while ((!foundMark) && ((line = readLineFromInputStream(in)) != null)) {
-        if (line.startsWith(WARC_VERSION)) {
-          foundMark = true;
-        }
-      }
-
-      // no WARC mark?
-      if (!foundMark) {
-        throw new NoSuchElementException();
-      }
-
-      // then read to the first newline
-      // make sure we get the content length here
-      int contentLength = -1;
-      boolean reachHeaderEnd = false;
-      while (!reachHeaderEnd && inHeader && ((line = readLineFromInputStream(in)) != null)) {
-        if ((line.trim().length() == 0 && reachHeaderEnd)) {
-          inHeader = false;
-        } else {
-          headerBuffer.append(line);
-          headerBuffer.append(WarcBaseDocument.NEWLINE);
-          String[] thisHeaderPieceParts = line.split(":", 2);
-          if (thisHeaderPieceParts.length == 2) {
-            if (thisHeaderPieceParts[0].toLowerCase(Locale.US).startsWith(headerEndKey.toLowerCase(Locale.US))){
-              reachHeaderEnd = true;
-            }
-            if (thisHeaderPieceParts[0].toLowerCase(Locale.US).startsWith("content-length")) {
-              try {
-                contentLength = Integer.parseInt(thisHeaderPieceParts[1].trim()) + 1;
-              } catch (NumberFormatException nfEx) {
-                contentLength = -1;
-              }
-            }
-          }
-        }
-      }
-
+      headerBuffer.append(in.readHeader(WARC_VERSION, headerEndKey));
+      int contentLength = in.getContentLength();
       if (contentLength < 0) {
         throw new NoSuchElementException();
       }
 
-      // now read the bytes of the content
-      retContent = new byte[contentLength];
-      int totalWant = contentLength;
-      int totalRead = 0;
-      while (totalRead < contentLength) {
-        try {
-          int numRead = in.read(retContent, totalRead, totalWant);
-          if (numRead < 0) {
-            throw new NoSuchElementException();
-          } else {
-            totalRead += numRead;
-            totalWant = contentLength - totalRead;
-          } // end if (numRead < 0) / else
-        } catch (EOFException eofEx) {
-          // resize to what we have
-          if (totalRead > 0) {
-            byte[] newReturn = new byte[totalRead];
-            System.arraycopy(retContent, 0, newReturn, 0, totalRead);
-            return newReturn;
-          } else {
-            throw new NoSuchElementException();
-          }
-        } // end try/catch (EOFException)
-      } // end while (totalRead < contentLength)
-
-      return retContent;
+      return in.readContent(contentLength + 1);
     }
 
     @Override
@@ -73,6 +73,8 @@ public abstract class DocumentCollection<T extends SourceDocument> implements It
   protected Set<String> skippedFileSuffix = new HashSet<>();
   protected Set<String> allowedFileSuffix = new HashSet<>();
   protected Set<String> skippedDir = new HashSet<>();
+  // Transform handed to the segments of collections of HTML documents, to extract their plain text.
+  protected StringTransform htmlTransform = JsoupStringTransform.SINGLETON;
 
   /**
    * Returns the path of the collection.
@@ -83,6 +85,27 @@ public abstract class DocumentCollection<T extends SourceDocument> implements It
     return path;
   }
 
+  /**
+   * Returns the transform that this collection uses to extract plain text out of HTML documents, which is
+   * {@link JsoupStringTransform} unless set otherwise. Collections whose documents aren't HTML ignore it.
+   *
+   * @return transform for HTML documents
+   */
+  public final StringTransform getHtmlTransform() {
+    return htmlTransform;
+  }
+
+  /**
+   * Sets the transform that this collection uses to extract plain text out of HTML documents, e.g.,
+   * {@link StreamingHtmlStringTransform}, which is much faster than building a DOM with Jsoup. Only segments created
+   * afterwards use it.
+   *
+   * @param transform transform for HTML documents
+   */
+  public final void setHtmlTransform(StringTransform transform) {
+    this.htmlTransform = transform;
+  }
+
   /**
    * Creates a {@code FileSegment} from a path.
    *
@@ -92,6 +115,46 @@ public abstract class DocumentCollection<T extends SourceDocument> implements It
    */
   public abstract FileSegment<T> createFileSegment(Path p) throws IOException;
 
+  /**
+   * Returns whether a file can be split into byte ranges, each read by its own {@code FileSegment} created by
+   * {@link #createFileSegment(Path, long, long)}, so that a large file can be read by several threads. By default,
+   * files can't be split.
+   *
+   * @param p path
+   * @return <code>true</code> if the file can be split
+   * @throws IOException if file access error encountered
+   */
+  public boolean isSplittable(Path p) throws IOException {
+    return false;
+  }
+
+  /**
+   * Creates a {@code FileSegment} over the documents starting within a byte range of a file. Splitting a file into
+   * consecutive ranges yields every document of the file exactly once. By default, the range starting at the
+   * beginning of the file gets the whole file and every other range is empty, which is still correct for collections
+   * that override {@link #isSplittable(Path)} but not this method.
+   *
+   * @param p path
+   * @param start start of the range (inclusive)
+   * @param end end of the range (exclusive)
+   * @return {@code FileSegment} with the documents starting within the range
+   * @throws IOException if file access error encountered
+   */
+  public FileSegment<T> createFileSegment(Path p, long start, long end) throws IOException {
+    if (start == 0) {
+      return createFileSegment(p);
+    }
+
+    FileSegment<T> empty = new FileSegment<>(p) {
+      @Override
+      protected void readNext() throws NoSuchElementException {
+        throw new NoSuchElementException();
+      }
+    };
+    empty.atEOF = true;
+    return empty;
+  }
+
   /**
    * An iterator over {@code FileSegment} for the {@code DocumentCollection} iterable.
    * A collection is comprised of one or more file segments.
@@ -43,6 +43,8 @@ public abstract class FileSegment<T extends SourceDocument> implements Iterable<
   protected BufferedReader bufferedReader;
   protected boolean atEOF = false;
   protected T bufferedRecord = null;
+  // Transform that HTML documents read from this segment use to extract their plain text.
+  protected StringTransform htmlTransform = JsoupStringTransform.SINGLETON;
 
   /*
    * Exception handling for skipped documents is contained within the iterator. If error is
@@ -74,6 +76,18 @@ public abstract class FileSegment<T extends SourceDocument> implements Iterable<
     return path;
   }
 
+  /**
+   * Sets the transform that HTML documents read from this segment use to extract their plain text, which is
+   * {@link JsoupStringTransform} unless set otherwise. Segments of documents that aren't HTML ignore it.
+   *
+   * @param transform transform for HTML documents
+   * @return this segment, for method chaining
+   */
+  public final FileSegment<T> setHtmlTransform(StringTransform transform) {
+    this.htmlTransform = transform;
+    return this;
+  }
+
   @Override
   public void close() {
     atEOF = true;
@@ -0,0 +1,198 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.collection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>Reads the records of an uncompressed, line-oriented file that start within a byte range, so that a large file can
+ * be split across several {@link FileSegment}s. Records are assumed to start at the beginning of a line, either any
+ * line (e.g., JSON lines) or a line starting with one of a set of markers, ignoring leading whitespace (e.g.,
+ * {@code <DOC>} for TREC collections).</p>
+ *
+ * <p>A record belongs to the range in which its first line starts. Unless the range starts at the beginning of the
+ * file, the stream skips ahead to the first record starting at or after the start of the range. The stream ends right
+ * before the first record starting at or after the end of the range, so the last record is read to its end even if
+ * that's past the end of the range. Splitting a file into consecutive ranges thus reads every record exactly once.</p>
+ */
+public class FileSplitInputStream extends InputStream {
+  private static final int BUFFER_SIZE = 1 << 16; // 64K
+  // How far ahead we look for a marker at the start of a line, including leading whitespace.
+  private static final int MAX_PEEK = 256;
+
+  private final FileChannel channel;
+  private final long end;
+  private final byte[][] markers;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  // File offset of the first byte remaining in the buffer.
+  private long offset;
+  private boolean atLineStart;
+  private boolean eof;
+
+  /**
+   * Creates a stream over the records starting in a byte range of a file.
+   *
+   * @param path file
+   * @param start start of the range (inclusive)
+   * @param end end of the range (exclusive)
+   * @param markers prefixes of the lines that start records; if none, every line starts a record
+   * @throws IOException if error encountered reading the file
+   */
+  public FileSplitInputStream(Path path, long start, long end, String... markers) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.end = end;
+    this.markers = new byte[markers.length][];
+    for (int i = 0; i < markers.length; i++) {
+      this.markers[i] = markers[i].getBytes(StandardCharsets.UTF_8);
+    }
+
+    if (start > 0) {
+      // Find the first line starting at or after start, i.e., the one after the last newline before start.
+      seek(start - 1);
+      skipLine();
+      while (!eof && !isRecordStart()) {
+        skipLine();
+      }
+    } else {
+      seek(0);
+    }
+
+    if (offset >= end) {
+      eof = true;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n = read(b, 0, 1);
+    return n < 0 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (eof || !fill(1)) {
+      eof = true;
+      return -1;
+    }
+
+    if (offset < end) {
+      // Within the range, everything goes, up to the end of the range so that we can check where we are from there.
+      int n = (int) Math.min(Math.min(len, buffer.remaining()), end - offset);
+      buffer.get(b, off, n);
+      offset += n;
+      atLineStart = b[off + n - 1] == '\n';
+      return n;
+    }
+
+    // Past the end of the range, we keep going (a line at a time) until the next record starts.
+    if (atLineStart && isRecordStart()) {
+      eof = true;
+      return -1;
+    }
+    int n = 0;
+    while (n < len && buffer.hasRemaining()) {
+      byte c = buffer.get();
+      b[off + n++] = c;
+      if (c == '\n') {
+        break;
+      }
+    }
+    offset += n;
+    atLineStart = b[off + n - 1] == '\n';
+    return n;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private void seek(long position) throws IOException {
+    channel.position(position);
+    buffer.clear().flip();
+    offset = position;
+    atLineStart = position == 0;
+  }
+
+  // Makes sure that at least n bytes are buffered, unless we're at the end of the file; returns false if there are no
+  // bytes left at all.
+  private boolean fill(int n) throws IOException {
+    while (buffer.remaining() < n) {
+      buffer.compact();
+      int read = channel.read(buffer);
+      buffer.flip();
+      if (read < 0) {
+        break;
+      }
+    }
+    return buffer.hasRemaining();
+  }
+
+  private void skipLine() throws IOException {
+    while (fill(1)) {
+      byte c = buffer.get();
+      offset++;
+      if (c == '\n') {
+        atLineStart = true;
+        return;
+      }
+    }
+    eof = true;
+  }
+
+  // Checks whether the line at the current position starts a record, without consuming anything.
+  private boolean isRecordStart() throws IOException {
+    if (!fill(MAX_PEEK)) {
+      return false;
+    }
+    if (markers.length == 0) {
+      return true;
+    }
+
+    int p = buffer.position();
+    int limit = buffer.limit();
+    while (p < limit && (buffer.get(p) == ' ' || buffer.get(p) == '\t')) {
+      p++;
+    }
+    for (byte[] marker : markers) {
+      if (p + marker.length > limit) {
+        continue;
+      }
+      boolean matches = true;
+      for (int i = 0; i < marker.length; i++) {
+        if (buffer.get(p + i) != marker[i]) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -46,7 +46,7 @@ public class HtmlCollection extends DocumentCollection<HtmlCollection.Document>
 
   @Override
   public FileSegment<HtmlCollection.Document> createFileSegment(Path p) throws IOException {
-    return new Segment(p);
+    return new Segment(p).setHtmlTransform(htmlTransform);
   }
 
   /**
@@ -71,9 +71,11 @@ public class HtmlCollection extends DocumentCollection<HtmlCollection.Document>
           getNextEntry();
           bufferedReader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
           bufferedRecord = new Document(bufferedReader, Paths.get(nextEntry.getName()).getFileName().toString().replaceAll("\\.html$", ""));
+          bufferedRecord.htmlTransform = htmlTransform;
         } else {
           bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(path.toFile()), StandardCharsets.UTF_8));
           bufferedRecord = new Document(bufferedReader, path.getFileName().toString().replaceAll("\\.html$", ""));
+          bufferedRecord.htmlTransform = htmlTransform;
           atEOF = true;
         }
       } catch (IOException e1) {
@@ -103,6 +105,7 @@ public class HtmlCollection extends DocumentCollection<HtmlCollection.Document>
   public static class Document implements SourceDocument {
     private String id;
     private String raw;
+    private StringTransform htmlTransform = JsoupStringTransform.SINGLETON;
 
     public Document(BufferedReader bRdr, String fileName) {
       StringBuilder sb = new StringBuilder();
@@ -127,7 +130,7 @@ public class HtmlCollection extends DocumentCollection<HtmlCollection.Document>
     @Override
     public String contents() {
       try {
-        return JsoupStringTransform.SINGLETON.apply(raw).trim();
+        return htmlTransform.apply(raw).trim();
       } catch (Exception e) {
         // If there's an exception, just eat it and return empty contents.
         return "";
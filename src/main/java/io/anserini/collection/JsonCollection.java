@@ -16,20 +16,20 @@
 
 package io.anserini.collection;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.MappingIterator;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
@@ -67,6 +67,8 @@ import java.util.NoSuchElementException;
  */
 public class JsonCollection extends DocumentCollection<JsonCollection.Document> {
   private static final Logger LOG = LogManager.getLogger(JsonCollection.class);
+  // Factories are thread-safe, and creating parsers off a shared one reuses its buffers and symbol tables.
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
   public JsonCollection(Path path){
     this.path = path;
@@ -79,48 +81,72 @@ public class JsonCollection extends DocumentCollection<JsonCollection.Document>
   }
 
   /**
-   * A file in a JSON collection, typically containing multiple documents.
+   * Only files with one JSON object per line can be split, which we go by the <code>.jsonl</code> extension for. A
+   * <code>.json</code> file may hold a (pretty-printed) JSON object or array anywhere past its first lines, so it's
+   * always read in whole.
+   */
+  @Override
+  public boolean isSplittable(Path p) {
+    return p.toString().endsWith(".jsonl");
+  }
+
+  @Override
+  public FileSegment<JsonCollection.Document> createFileSegment(Path p, long start, long end) throws IOException {
+    return new Segment(p, start, end);
+  }
+
+  /**
+   * A file in a JSON collection, typically containing multiple documents. Documents are parsed one at a time, straight
+   * off the file, so that even a huge array of documents doesn't have to fit in memory.
    */
   public static class Segment extends FileSegment<JsonCollection.Document> {
-    private JsonNode node = null;
-    private Iterator<JsonNode> iter = null; // iterator for JSON document array
-    private MappingIterator<JsonNode> iterator; // iterator for JSON line objects
+    private JsonParser parser;
+    private boolean inArray = false; // whether the documents are the elements of a JSON array
+    private boolean started = false;
 
     public Segment(Path path) throws IOException {
       super(path);
-      bufferedReader = new BufferedReader(new FileReader(path.toString()));
-      ObjectMapper mapper = new ObjectMapper();
-      iterator = mapper.readerFor(JsonNode.class).readValues(bufferedReader);
-      if (iterator.hasNext()) {
-        node = iterator.next();
-        if (node.isArray()) {
-          iter = node.elements();
-        }
+      init(Files.newInputStream(path));
+    }
+
+    public Segment(Path path, long start, long end) throws IOException {
+      super(path);
+      init(new FileSplitInputStream(path, start, end));
+    }
+
+    private void init(InputStream stream) throws IOException {
+      parser = JSON_FACTORY.createParser(stream);
+      if (parser.nextToken() == JsonToken.START_ARRAY) {
+        inArray = true;
+        parser.nextToken();
       }
     }
 
     @Override
-    public void readNext() throws NoSuchElementException {
-      if (node == null) {
-        throw new NoSuchElementException("JsonNode is empty");
-      } else if (node.isObject()) {
-        bufferedRecord = new JsonCollection.Document(node);
-        if (iterator.hasNext()) { // if bufferedReader contains JSON line objects, we parse the next JSON into node
-          node = iterator.next();
-        } else {
-          atEOF = true; // there is no more JSON object in the bufferedReader
-        }
-      } else if (node.isArray()) {
-        if (iter != null && iter.hasNext()) {
-          JsonNode json = iter.next();
-          bufferedRecord = new JsonCollection.Document(node);
-        } else {
-          throw new NoSuchElementException("Reached end of JsonNode iterator");
+    public void readNext() throws IOException, NoSuchElementException {
+      // The parser is left at the end of the previous document, if any.
+      JsonToken token = started ? parser.nextToken() : parser.currentToken();
+      started = true;
+
+      if (token == null || (inArray && token == JsonToken.END_ARRAY)) {
+        throw new NoSuchElementException("Reached end of JSON documents");
+      } else if (token != JsonToken.START_OBJECT) {
+        LOG.error("Error: invalid JSON document type");
+        throw new NoSuchElementException("Invalid JSON document type");
+      }
+      bufferedRecord = new JsonCollection.Document(parser);
+    }
+
+    @Override
+    public void close() {
+      try {
+        if (parser != null) {
+          parser.close();
         }
-      } else {
-        LOG.error("Error: invalid JsonNode type");
-        throw new NoSuchElementException("Invalid JsonNode type");
+      } catch (IOException e) {
+        // There's really nothing to be done, so just silently eat the exception.
       }
+      super.close();
     }
   }
 
@@ -132,6 +158,31 @@ public class JsonCollection extends DocumentCollection<JsonCollection.Document>
     private String contents;
     private Map<String, String> fields;
 
+    /**
+     * Reads a document off a parser positioned at the start of a JSON object, leaving the parser at the end of the
+     * object. Field values are converted to text as by {@link JsonNode#asText()}, without building a tree: nested
+     * objects and arrays are skipped over, and come out empty.
+     *
+     * @param parser parser positioned at the start of the document
+     * @throws IOException if error encountered parsing the document
+     */
+    public Document(JsonParser parser) throws IOException {
+      this.fields = new HashMap<>();
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String key = parser.getCurrentName();
+        parser.nextToken();
+        String value = asText(parser);
+        if ("id".equals(key)) {
+          this.id = value;
+        } else if ("contents".equals(key)) {
+          this.contents = value;
+        } else {
+          this.fields.put(key, value);
+        }
+      }
+    }
+
     public Document(JsonNode json) {
       this.fields = new HashMap<>();
 
@@ -146,6 +197,22 @@ public class JsonCollection extends DocumentCollection<JsonCollection.Document>
       });
     }
 
+    private static String asText(JsonParser parser) throws IOException {
+      switch (parser.currentToken()) {
+        case VALUE_NUMBER_INT:
+          return parser.getNumberValue().toString();
+        case VALUE_NUMBER_FLOAT:
+          return Double.toString(parser.getDoubleValue());
+        case START_OBJECT:
+        case START_ARRAY:
+          parser.skipChildren();
+          return "";
+        default:
+          // Strings, as well as true, false and null.
+          return parser.getText();
+      }
+    }
+
     @Override
     public String id() {
       if (id == null) {
@@ -0,0 +1,203 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.collection;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Scans the lines of a character stream in place, without creating a string for each line. Lines end with a line
+ * feed, a carriage return, or both, just like with {@link java.io.BufferedReader#readLine()}. The current line is
+ * {@code buffer()[start(), end())}, which stays valid until the next call to {@link #next()}.
+ */
+public class LineScanner {
+  private static final int BUFFER_SIZE = 1 << 16; // 64K
+
+  private final Reader reader;
+  private char[] buffer = new char[BUFFER_SIZE];
+  // Characters in [pos, limit) are buffered but not yet scanned.
+  private int pos;
+  private int limit;
+  private boolean eof;
+  // Whether the last line ended with a carriage return, in which case a line feed right after it belongs to it.
+  private boolean skipLF;
+
+  private int start;
+  private int end;
+
+  public LineScanner(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Advances to the next line.
+   *
+   * @return false if there are no more lines
+   * @throws IOException if error encountered reading from the stream
+   */
+  public boolean next() throws IOException {
+    if (skipLF) {
+      skipLF = false;
+      if ((pos < limit || fill(pos)) && buffer[pos] == '\n') {
+        pos++;
+      }
+    }
+
+    int lineStart = pos;
+    int i = pos;
+    while (true) {
+      char[] buffer = this.buffer;
+      int limit = this.limit;
+      for (; i < limit; i++) {
+        char c = buffer[i];
+        if (c == '\n' || c == '\r') {
+          start = lineStart;
+          end = i;
+          pos = i + 1;
+          skipLF = c == '\r';
+          return true;
+        }
+      }
+
+      int offset = i - lineStart;
+      if (!fill(lineStart)) {
+        if (offset == 0) {
+          start = end = pos;
+          return false;
+        }
+        // The last line doesn't need to be terminated.
+        start = 0;
+        end = offset;
+        pos = this.limit;
+        return true;
+      }
+      lineStart = 0;
+      i = offset;
+    }
+  }
+
+  // Reads more characters, moving the ones from keep on to the start of the buffer (growing it if needed); returns
+  // false at the end of the stream.
+  private boolean fill(int keep) throws IOException {
+    System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+    limit -= keep;
+    pos = 0;
+    if (eof) {
+      return false;
+    }
+    if (limit == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+
+    int n;
+    do {
+      n = reader.read(buffer, limit, buffer.length - limit);
+    } while (n == 0);
+    if (n < 0) {
+      eof = true;
+      return false;
+    }
+    limit += n;
+    return true;
+  }
+
+  public char[] buffer() {
+    return buffer;
+  }
+
+  public int start() {
+    return start;
+  }
+
+  public int end() {
+    return end;
+  }
+
+  public int length() {
+    return end - start;
+  }
+
+  /**
+   * Strips leading and trailing whitespace off the current line, as {@link String#trim()} does.
+   */
+  public void trim() {
+    while (start < end && buffer[start] <= ' ') {
+      start++;
+    }
+    while (end > start && buffer[end - 1] <= ' ') {
+      end--;
+    }
+  }
+
+  public boolean startsWith(String prefix) {
+    int n = prefix.length();
+    if (end - start < n) {
+      return false;
+    }
+    for (int i = 0; i < n; i++) {
+      if (buffer[start + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean endsWith(String suffix) {
+    int n = suffix.length();
+    if (end - start < n) {
+      return false;
+    }
+    for (int i = 0; i < n; i++) {
+      if (buffer[end - n + i] != suffix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the offset of the first occurrence of a string within the current line.
+   *
+   * @param s string to look for
+   * @return offset from the start of the line, or -1 if the line doesn't contain the string
+   */
+  public int indexOf(String s) {
+    int n = s.length();
+    if (n == 0) {
+      return 0;
+    }
+    char first = s.charAt(0);
+    for (int i = start; i <= end - n; i++) {
+      if (buffer[i] != first) {
+        continue;
+      }
+      int k = 1;
+      while (k < n && buffer[i + k] == s.charAt(k)) {
+        k++;
+      }
+      if (k == n) {
+        return i - start;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    return new String(buffer, start, end - start);
+  }
+}
@@ -0,0 +1,457 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.collection;
+
+import org.jsoup.nodes.Entities;
+import org.jsoup.parser.Tag;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * <p>String transform that extracts plain text out of HTML documents in a single pass, without building a DOM. Tags,
+ * comments, scripts and styles are stripped and character references are decoded as the input is scanned, and the
+ * text is written into a reusable (per-thread) buffer.</p>
+ *
+ * <p>The output follows what {@link JsoupStringTransform} produces, i.e., Jsoup's {@code text()}: whitespace is
+ * collapsed except within {@code pre}, {@code title} and {@code textarea}, and block-level tags separate words. It
+ * doesn't rebuild the document tree, though, so documents that the HTML5 tree builder rearranges (e.g., stray text
+ * within tables) may come out slightly differently.</p>
+ */
+public class StreamingHtmlStringTransform extends StringTransform {
+  // Singleton instance for convenience.
+  public final static StreamingHtmlStringTransform SINGLETON = new StreamingHtmlStringTransform();
+
+  // Elements whose content is skipped altogether.
+  private static final Set<String> DATA_TAGS = Set.of("script", "style");
+  // Elements whose content is text as is, without tags or character references.
+  private static final Set<String> RAW_TEXT_TAGS = Set.of("xmp", "iframe", "noembed", "noframes");
+  // Elements whose content is text with character references, but without tags.
+  private static final Set<String> ESCAPABLE_RAW_TEXT_TAGS = Set.of("title", "textarea");
+  // Elements within which (or within whose children) whitespace is kept.
+  private static final Set<String> PRESERVE_WHITESPACE_TAGS = Set.of("pre", "plaintext", "title", "textarea");
+  // Start tags that close an open paragraph.
+  private static final Set<String> CLOSES_P_TAGS = Set.of("address", "article", "aside", "blockquote", "center",
+      "details", "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "menu", "nav",
+      "ol", "p", "section", "summary", "ul", "h1", "h2", "h3", "h4", "h5", "h6", "pre", "listing", "form", "plaintext",
+      "table", "hr", "xmp");
+
+  private static final ThreadLocal<Extractor> EXTRACTORS = ThreadLocal.withInitial(Extractor::new);
+
+  @Override
+  public String apply(String s) {
+    return EXTRACTORS.get().extract(s);
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isHexDigit(char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+
+  private static boolean isBlock(String name) {
+    return Tag.isKnownTag(name) && Tag.valueOf(name).isBlock();
+  }
+
+  private static boolean isEmpty(String name) {
+    return Tag.isKnownTag(name) && Tag.valueOf(name).isEmpty();
+  }
+
+  // Not thread-safe: each thread gets its own, so that buffers can be reused across documents.
+  private static final class Extractor {
+    private String in;
+    private int n;
+
+    private char[] out = new char[1 << 12];
+    private int len;
+
+    // Open elements; only the innermost two matter, for whether whitespace is kept.
+    private String[] stack = new String[16];
+    private int depth;
+    private boolean preserveWhitespace;
+    // Whether the last tag skipped ended with "/>".
+    private boolean selfClosing;
+
+    String extract(String s) {
+      in = s;
+      n = s.length();
+      len = 0;
+      depth = 0;
+      preserveWhitespace = false;
+
+      int i = 0;
+      while (i < n) {
+        char c = in.charAt(i);
+        if (c == '<') {
+          i = markup(i);
+        } else if (c == '&') {
+          i = characterReference(i);
+        } else {
+          appendText(c);
+          i++;
+        }
+      }
+
+      int start = 0;
+      int end = len;
+      while (start < end && out[start] <= ' ') {
+        start++;
+      }
+      while (end > start && out[end - 1] <= ' ') {
+        end--;
+      }
+      in = null;
+      return new String(out, start, end - start);
+    }
+
+    private void append(char c) {
+      if (len == out.length) {
+        out = Arrays.copyOf(out, out.length * 2);
+      }
+      out[len++] = c;
+    }
+
+    private void appendText(char c) {
+      if (preserveWhitespace) {
+        append(c);
+      } else if (isWhitespace(c)) {
+        // Runs of whitespace collapse into a single space, also across tags.
+        if (len == 0 || out[len - 1] != ' ') {
+          append(' ');
+        }
+      } else {
+        append(c);
+      }
+    }
+
+    private void appendText(int from, int to) {
+      for (int i = from; i < to; i++) {
+        appendText(in.charAt(i));
+      }
+    }
+
+    private void appendCharacterReferences(int from, int to) {
+      int i = from;
+      while (i < to) {
+        if (in.charAt(i) == '&') {
+          i = Math.min(characterReference(i, to), to);
+        } else {
+          appendText(in.charAt(i++));
+        }
+      }
+    }
+
+    // Block-level elements start a new word.
+    private void startBlock(String name) {
+      if (len > 0 && (name.equals("br") || isBlock(name)) && out[len - 1] != ' ') {
+        append(' ');
+      }
+    }
+
+    private void push(String name) {
+      if (depth == stack.length) {
+        stack = Arrays.copyOf(stack, stack.length * 2);
+      }
+      stack[depth++] = name;
+      updatePreserveWhitespace();
+    }
+
+    // Pops the innermost open element with the given name and everything within it; returns false if there's none.
+    private boolean pop(String name) {
+      for (int d = depth - 1; d >= 0; d--) {
+        if (stack[d].equals(name)) {
+          Arrays.fill(stack, d, depth, null);
+          depth = d;
+          updatePreserveWhitespace();
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void updatePreserveWhitespace() {
+      preserveWhitespace = (depth > 0 && PRESERVE_WHITESPACE_TAGS.contains(stack[depth - 1])) ||
+          (depth > 1 && PRESERVE_WHITESPACE_TAGS.contains(stack[depth - 2]));
+    }
+
+    // Handles whatever starts with the '<' at position i; returns the position right after it.
+    private int markup(int i) {
+      if (i + 1 >= n) {
+        appendText('<');
+        return n;
+      }
+
+      char c = in.charAt(i + 1);
+      if (isLetter(c)) {
+        return startTag(i + 1);
+      } else if (c == '/') {
+        if (i + 2 >= n) {
+          appendText('<');
+          appendText('/');
+          return n;
+        }
+        char d = in.charAt(i + 2);
+        if (isLetter(d)) {
+          return endTag(i + 2);
+        } else if (d == '>') {
+          return i + 3;
+        }
+        return skipTo(i + 2, '>');
+      } else if (c == '!') {
+        if (in.startsWith("--", i + 2)) {
+          return comment(i + 4);
+        } else if (in.regionMatches(true, i + 2, "DOCTYPE", 0, 7)) {
+          return skipTo(i + 9, '>');
+        } else if (in.startsWith("[CDATA[", i + 2)) {
+          int end = in.indexOf("]]>", i + 9);
+          appendText(i + 9, end < 0 ? n : end);
+          return end < 0 ? n : end + 3;
+        }
+        return skipTo(i + 2, '>');
+      } else if (c == '?') {
+        return skipTo(i + 2, '>');
+      }
+
+      appendText('<');
+      return i + 1;
+    }
+
+    private int comment(int i) {
+      // Both "<!-->" and "<!--->" are (empty) comments.
+      if (in.startsWith(">", i)) {
+        return i + 1;
+      } else if (in.startsWith("->", i)) {
+        return i + 2;
+      }
+      int end = in.indexOf("-->", i);
+      return end < 0 ? n : end + 3;
+    }
+
+    private int skipTo(int i, char c) {
+      int end = in.indexOf(c, i);
+      return end < 0 ? n : end + 1;
+    }
+
+    private int tagNameEnd(int i) {
+      while (i < n) {
+        char c = in.charAt(i);
+        if (isWhitespace(c) || c == '/' || c == '>') {
+          break;
+        }
+        i++;
+      }
+      return i;
+    }
+
+    // Skips the attributes of a tag, returning the position right after it, or -1 if the input ends within the tag.
+    private int skipAttributes(int i) {
+      selfClosing = false;
+      while (i < n) {
+        char c = in.charAt(i);
+        if (c == '>') {
+          return i + 1;
+        } else if (c == '/') {
+          if (i + 1 < n && in.charAt(i + 1) == '>') {
+            selfClosing = true;
+            return i + 2;
+          }
+          i++;
+        } else if (isWhitespace(c)) {
+          i++;
+        } else {
+          // Attribute name, possibly followed by a value.
+          i++;
+          while (i < n && !isWhitespace(c = in.charAt(i)) && c != '/' && c != '=' && c != '>') {
+            i++;
+          }
+          while (i < n && isWhitespace(in.charAt(i))) {
+            i++;
+          }
+          if (i < n && in.charAt(i) == '=') {
+            i++;
+            while (i < n && isWhitespace(in.charAt(i))) {
+              i++;
+            }
+            if (i < n && (in.charAt(i) == '"' || in.charAt(i) == '\'')) {
+              int end = in.indexOf(in.charAt(i), i + 1);
+              if (end < 0) {
+                return -1;
+              }
+              i = end + 1;
+            } else {
+              while (i < n && !isWhitespace(c = in.charAt(i)) && c != '>') {
+                i++;
+              }
+            }
+          }
+        }
+      }
+      return -1;
+    }
+
+    private int startTag(int i) {
+      int nameEnd = tagNameEnd(i);
+      String name = in.substring(i, nameEnd).toLowerCase(Locale.US);
+      int end = skipAttributes(nameEnd);
+      if (end < 0) {
+        // An unterminated tag is dropped, along with the rest of the input.
+        return n;
+      }
+
+      if (CLOSES_P_TAGS.contains(name)) {
+        pop("p");
+      }
+      startBlock(name);
+
+      if (DATA_TAGS.contains(name)) {
+        return skipEndTag(rawTextEnd(end, name));
+      } else if (RAW_TEXT_TAGS.contains(name)) {
+        int textEnd = rawTextEnd(end, name);
+        appendText(end, textEnd);
+        return skipEndTag(textEnd);
+      } else if (ESCAPABLE_RAW_TEXT_TAGS.contains(name)) {
+        int textEnd = rawTextEnd(end, name);
+        push(name);
+        appendCharacterReferences(end, textEnd);
+        pop(name);
+        return skipEndTag(textEnd);
+      } else if (name.equals("plaintext")) {
+        push(name);
+        appendText(end, n);
+        return n;
+      }
+
+      if (!selfClosing && !isEmpty(name)) {
+        push(name);
+      }
+      return end;
+    }
+
+    private int endTag(int i) {
+      int nameEnd = tagNameEnd(i);
+      String name = in.substring(i, nameEnd).toLowerCase(Locale.US);
+      int end = skipAttributes(nameEnd);
+      if (end < 0) {
+        return n;
+      }
+
+      if (name.equals("br")) {
+        // A stray "</br>" counts as a line break, and a stray "</p>" as an empty paragraph.
+        startBlock(name);
+      } else if (!pop(name) && name.equals("p")) {
+        startBlock(name);
+      }
+      return end;
+    }
+
+    // Returns the position of the end tag closing a raw text element, or the end of the input if there's none.
+    private int rawTextEnd(int i, String name) {
+      while ((i = in.indexOf("</", i)) >= 0) {
+        int nameEnd = i + 2 + name.length();
+        if (in.regionMatches(true, i + 2, name, 0, name.length()) &&
+            (nameEnd == n || isWhitespace(in.charAt(nameEnd)) || in.charAt(nameEnd) == '/' || in.charAt(nameEnd) == '>')) {
+          return i;
+        }
+        i += 2;
+      }
+      return n;
+    }
+
+    private int skipEndTag(int i) {
+      if (i >= n) {
+        return n;
+      }
+      int end = skipAttributes(tagNameEnd(i + 2));
+      return end < 0 ? n : end;
+    }
+
+    private int characterReference(int i) {
+      return characterReference(i, n);
+    }
+
+    // Decodes the character reference starting with the '&' at position i, looking no further than limit; returns the
+    // position right after it. Follows Jsoup's rules, e.g., only some named references can do without the ';'.
+    private int characterReference(int i, int limit) {
+      int j = i + 1;
+      if (j >= limit) {
+        appendText('&');
+        return j;
+      }
+
+      char c = in.charAt(j);
+      if (c == '#') {
+        j++;
+        boolean hex = j < limit && (in.charAt(j) == 'x' || in.charAt(j) == 'X');
+        if (hex) {
+          j++;
+        }
+        int start = j;
+        while (j < limit && (hex ? isHexDigit(in.charAt(j)) : isDigit(in.charAt(j)))) {
+          j++;
+        }
+        if (j == start) {
+          appendText('&');
+          return i + 1;
+        }
+        int codePoint;
+        try {
+          codePoint = Integer.parseInt(in.substring(start, j), hex ? 16 : 10);
+        } catch (NumberFormatException e) {
+          codePoint = -1;
+        }
+        if (j < limit && in.charAt(j) == ';') {
+          j++;
+        }
+        if (codePoint == -1 || (codePoint >= 0xD800 && codePoint <= 0xDFFF) || codePoint > 0x10FFFF) {
+          appendText('\uFFFD');
+        } else if (Character.isBmpCodePoint(codePoint)) {
+          appendText((char) codePoint);
+        } else {
+          appendText(Character.highSurrogate(codePoint));
+          appendText(Character.lowSurrogate(codePoint));
+        }
+        return j;
+      }
+
+      int start = j;
+      while (j < limit && isLetter(in.charAt(j))) {
+        j++;
+      }
+      while (j < limit && isDigit(in.charAt(j))) {
+        j++;
+      }
+      String name = in.substring(start, j);
+      boolean terminated = j < limit && in.charAt(j) == ';';
+      if (name.isEmpty() || !(Entities.isBaseNamedEntity(name) || (terminated && Entities.isNamedEntity(name)))) {
+        appendText('&');
+        return i + 1;
+      }
+      appendText(Entities.getCharacterByName(name));
+      return terminated ? j + 1 : j;
+    }
+  }
+}
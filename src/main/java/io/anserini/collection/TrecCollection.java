@@ -32,8 +32,6 @@ import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -61,7 +59,8 @@ import java.util.zip.GZIPInputStream;
  *
  * <p>In both cases, compressed files are transparently handled.</p>
  *
- * <p>This collection calls the {@link JsoupStringTransform} to remove tags in the document content.</p>
+ * <p>This collection calls its HTML {@link StringTransform} (by default, {@link JsoupStringTransform}; see
+ * {@link DocumentCollection#setHtmlTransform}) to remove tags in the document content.</p>
  */
 public class TrecCollection extends DocumentCollection<TrecCollection.Document> {
   public TrecCollection(Path path) {
@@ -72,7 +71,17 @@ public class TrecCollection extends DocumentCollection<TrecCollection.Document>
 
   @Override
   public FileSegment<Document> createFileSegment(Path p) throws IOException {
-    return new Segment<>(p);
+    return new Segment<>(p).setHtmlTransform(htmlTransform);
+  }
+
+  @Override
+  public boolean isSplittable(Path p) {
+    return Segment.isSplittable(p);
+  }
+
+  @Override
+  public FileSegment<Document> createFileSegment(Path p, long start, long end) throws IOException {
+    return new Segment<>(p, start, end).setHtmlTransform(htmlTransform);
   }
 
   /**
@@ -81,7 +90,13 @@ public class TrecCollection extends DocumentCollection<TrecCollection.Document>
    * @param <T> type of the document
    */
   public static class Segment<T extends Document> extends FileSegment<T>{
-    private static final Pattern ID_PATTERN = Pattern.compile(".*id=\\\"([^\\\"]+)\\\".*");
+    private static final String ID_ATTRIBUTE = "id=\"";
+
+    protected LineScanner lines;
+    // Text of the record being read, reused across records.
+    protected final StringBuilder record = new StringBuilder();
+    // Position of the first </DOCNO> in the record, or -1 if there's none (yet).
+    private int docnoEnd;
 
     public Segment(Path path) throws IOException {
       super(path);
@@ -99,55 +114,82 @@ public class TrecCollection extends DocumentCollection<TrecCollection.Document>
       } else { // plain text file
         bufferedReader = new BufferedReader(new FileReader(fileName));
       }
+      lines = new LineScanner(bufferedReader);
+    }
+
+    /**
+     * Creates a segment over the documents whose <code>&lt;DOC&gt;</code> tag is within a byte range of an
+     * uncompressed file.
+     *
+     * @param path path
+     * @param start start of the range (inclusive)
+     * @param end end of the range (exclusive)
+     * @throws IOException if file access error encountered
+     */
+    public Segment(Path path, long start, long end) throws IOException {
+      super(path);
+      if (!isSplittable(path)) {
+        throw new IllegalArgumentException("Cannot split compressed file " + path);
+      }
+      InputStream stream = new FileSplitInputStream(path, start, end, Document.DOC, "<DOC ");
+      bufferedReader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+      lines = new LineScanner(bufferedReader);
+    }
+
+    // Compressed files can't be split, since we can't start reading them in the middle.
+    static boolean isSplittable(Path path) {
+      String fileName = path.toString();
+      return !fileName.matches("(?i:.*?\\.\\d*z$)") && !fileName.endsWith(".gz");
     }
 
     @Override
     public void readNext() throws IOException, ParseException {
-      readNextRecord(bufferedReader);
+      readNextRecord();
     }
 
-    private void readNextRecord(BufferedReader reader) throws IOException {
-      StringBuilder builder = new StringBuilder();
+    // Lines are scanned in place, and only the ones that make it into the record are copied.
+    private void readNextRecord() throws IOException {
+      record.setLength(0);
+      docnoEnd = -1;
       boolean found = false;
       int inTag = -1;
 
-      String line;
-      while ((line=reader.readLine()) != null) {
-        line = line.trim();
+      while (lines.next()) {
+        lines.trim();
 
         // Also handle the variant case where docid is an attributed of the <DOC> tag, e.g., <DOC id="abc">
         // The NTCIR-8 ACLIA task, which uses LDC2007T38, is organized in this way.
-        if (line.startsWith(Document.DOC) || line.startsWith("<DOC ")) {
+        if (lines.startsWith(Document.DOC) || lines.startsWith("<DOC ")) {
           found = true;
 
-          Matcher matcher = ID_PATTERN.matcher(line);
-          if (matcher.matches()) {
-            // Handle cases like <DOC id="abc">
-            builder.append(Document.DOCNO).append(matcher.group(1)).append(Document.TERMINATING_DOCNO);
-          } else {
+          if (!appendIdAttribute()) {
             // Continue to read DOCNO as normal.
-            while ((line = reader.readLine()) != null) {
-              if (line.startsWith(Document.DOCNO)) {
-                builder.append(line).append('\n');
+            boolean more;
+            while ((more = lines.next())) {
+              if (lines.startsWith(Document.DOCNO)) {
+                append();
                 break;
               }
             }
-            while (builder.indexOf(Document.TERMINATING_DOCNO) == -1) {
-              line = reader.readLine();
-              if (line == null) break;
-              builder.append(line).append('\n');
+            while (more && docnoEnd == -1) {
+              if ((more = lines.next())) {
+                append();
+              }
+            }
+            if (!more) {
+              return;
             }
           }
         }
 
         if (found) {
-          if (line.startsWith("<")) {
-            if (inTag >= 0 && line.startsWith(Document.endTags[inTag])) {
-              builder.append(line).append("\n");
+          if (lines.startsWith("<")) {
+            if (inTag >= 0 && lines.startsWith(Document.endTags[inTag])) {
+              append();
               inTag = -1;
             } else if (inTag < 0) {
               for (int k = 0; k < Document.startTags.length; k++) {
-                if (line.startsWith(Document.startTags[k])) {
+                if (lines.startsWith(Document.startTags[k])) {
                   inTag = k;
                   break;
                 }
@@ -155,33 +197,77 @@ public class TrecCollection extends DocumentCollection<TrecCollection.Document>
             }
           }
           if (inTag >= 0) {
-            if (line.endsWith(Document.endTags[inTag])) {
-              builder.append(line).append("\n");
+            append();
+            if (lines.endsWith(Document.endTags[inTag])) {
               inTag = -1;
-            } else {
-              builder.append(line).append("\n");
             }
           }
         }
 
-        if (line.startsWith(Document.TERMINATING_DOC)) {
-          parseRecord(builder);
+        if (lines.startsWith(Document.TERMINATING_DOC)) {
+          parseRecord();
           return;
         }
       }
     }
 
+    // Appends the current line to the record, keeping track of where the docid ends.
+    private void append() {
+      if (docnoEnd == -1) {
+        int i = lines.indexOf(Document.TERMINATING_DOCNO);
+        if (i >= 0) {
+          docnoEnd = record.length() + i;
+        }
+      }
+      record.append(lines.buffer(), lines.start(), lines.length()).append('\n');
+    }
+
+    // Handles cases like <DOC id="abc">, taking the last non-empty id attribute on the line, if any.
+    private boolean appendIdAttribute() {
+      char[] buffer = lines.buffer();
+      for (int i = lines.end() - ID_ATTRIBUTE.length(); i >= lines.start(); i--) {
+        if (buffer[i] != 'i' || buffer[i + 1] != 'd' || buffer[i + 2] != '=' || buffer[i + 3] != '"') {
+          continue;
+        }
+        int start = i + ID_ATTRIBUTE.length();
+        int end = start;
+        while (end < lines.end() && buffer[end] != '"') {
+          end++;
+        }
+        if (end > start && end < lines.end()) {
+          record.append(Document.DOCNO);
+          if (docnoEnd == -1) {
+            docnoEnd = record.length() + (end - start);
+          }
+          record.append(buffer, start, end - start).append(Document.TERMINATING_DOCNO);
+          return true;
+        }
+      }
+      return false;
+    }
+
     @SuppressWarnings("unchecked")
-    private void parseRecord(StringBuilder builder) {
-      int i = builder.indexOf(Document.DOCNO);
+    private void parseRecord() {
+      int i = record.indexOf(Document.DOCNO);
       if (i == -1) throw new RuntimeException("cannot find start tag " + Document.DOCNO);
       if (i != 0) throw new RuntimeException("should start with " + Document.DOCNO);
-      int j = builder.indexOf(Document.TERMINATING_DOCNO);
-      if (j == -1) throw new RuntimeException("cannot find end tag " + Document.TERMINATING_DOCNO);
+      if (docnoEnd == -1) throw new RuntimeException("cannot find end tag " + Document.TERMINATING_DOCNO);
 
       bufferedRecord = (T) createNewDocument();
-      bufferedRecord.id = builder.substring(i + Document.DOCNO.length(), j).trim();
-      bufferedRecord.raw = builder.substring(j + Document.TERMINATING_DOCNO.length()).trim();
+      bufferedRecord.htmlTransform = htmlTransform;
+      bufferedRecord.id = trimmedSubstring(Document.DOCNO.length(), docnoEnd);
+      bufferedRecord.raw = trimmedSubstring(docnoEnd + Document.TERMINATING_DOCNO.length(), record.length());
+    }
+
+    // Returns a part of the record, trimmed.
+    protected String trimmedSubstring(int start, int end) {
+      while (start < end && record.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && record.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      return record.substring(start, end);
     }
 
     protected Document createNewDocument() {
@@ -208,6 +294,7 @@ public class TrecCollection extends DocumentCollection<TrecCollection.Document>
 
     protected String id;
     protected String raw;
+    protected StringTransform htmlTransform = JsoupStringTransform.SINGLETON;
 
     @Override
     public String id() {
@@ -217,7 +304,7 @@ public class TrecCollection extends DocumentCollection<TrecCollection.Document>
     @Override
     public String contents() {
       try {
-        return JsoupStringTransform.SINGLETON.apply(raw).trim();
+        return htmlTransform.apply(raw).trim();
       } catch (Exception e) {
         // If there's an exception, just eat it and return empty contents.
         return "";
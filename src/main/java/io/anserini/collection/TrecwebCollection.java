@@ -16,7 +16,6 @@
 
 package io.anserini.collection;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.text.ParseException;
@@ -32,7 +31,7 @@ public class TrecwebCollection extends DocumentCollection<TrecwebCollection.Docu
 
   @Override
   public FileSegment<Document> createFileSegment(Path p) throws IOException {
-    return new Segment<>(p);
+    return new Segment<>(p).setHtmlTransform(htmlTransform);
   }
 
   /**
@@ -48,54 +47,54 @@ public class TrecwebCollection extends DocumentCollection<TrecwebCollection.Docu
 
     @Override
     public void readNext() throws IOException, ParseException {
-      readNextRecord(bufferedReader);
+      readNextRecord();
     }
 
-    private void readNextRecord(BufferedReader reader) throws IOException, ParseException {
-      StringBuilder builder = new StringBuilder();
+    private void readNextRecord() throws IOException, ParseException {
+      record.setLength(0);
       boolean found = false;
 
-      String line;
-      while ((line=reader.readLine()) != null) {
-        line = line.trim();
+      while (lines.next()) {
+        lines.trim();
 
-        if (line.startsWith(Document.DOC)) {
+        if (lines.startsWith(Document.DOC)) {
           found = true;
           continue;
         }
 
-        if (line.startsWith(Document.TERMINATING_DOC) && builder.length() > 0) {
-          parseRecord(builder);
+        if (lines.startsWith(Document.TERMINATING_DOC) && record.length() > 0) {
+          parseRecord();
           return;
         }
 
         if (found)
-          builder.append(line).append("\n");
+          record.append(lines.buffer(), lines.start(), lines.length()).append('\n');
       }
     }
 
     @SuppressWarnings("unchecked")
-    private void parseRecord(StringBuilder builder) throws ParseException {
-      int i = builder.indexOf(Document.DOCNO);
+    private void parseRecord() throws ParseException {
+      int i = record.indexOf(Document.DOCNO);
       if (i == -1) throw new ParseException("cannot find start tag " + Document.DOCNO, 0);
 
       if (i != 0) throw new ParseException("should start with " + Document.DOCNO, 0);
 
-      int j = builder.indexOf(Document.TERMINATING_DOCNO);
+      int j = record.indexOf(Document.TERMINATING_DOCNO);
       if (j == -1) throw new ParseException("cannot find end tag " + Document.TERMINATING_DOCNO, 0);
 
       bufferedRecord = (T) new Document();
-      bufferedRecord.id = builder.substring(i + Document.DOCNO.length(), j).trim();
+      bufferedRecord.htmlTransform = htmlTransform;
+      bufferedRecord.id = trimmedSubstring(i + Document.DOCNO.length(), j);
 
-      i = builder.indexOf(Document.DOCHDR);
+      i = record.indexOf(Document.DOCHDR);
       if (i == -1) throw new ParseException("cannot find header tag " + Document.DOCHDR, 0);
 
-      j = builder.indexOf(Document.TERMINATING_DOCHDR);
+      j = record.indexOf(Document.TERMINATING_DOCHDR);
       if (j == -1) throw new ParseException("cannot find end tag " + Document.TERMINATING_DOCHDR, 0);
 
       if (j < i) throw new ParseException(Document.TERMINATING_DOCHDR + " comes before " + Document.DOCHDR, 0);
 
-      bufferedRecord.raw = builder.substring(j + Document.TERMINATING_DOCHDR.length()).trim();
+      bufferedRecord.raw = trimmedSubstring(j + Document.TERMINATING_DOCHDR.length(), record.length());
     }
   }
 
@@ -53,14 +53,11 @@
 package io.anserini.collection;
 
 import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.DataOutput;
-import java.io.EOFException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -75,13 +72,6 @@ import org.apache.logging.log4j.Logger;
  * representation that can be directly inserted into an index.
  */
 public abstract class WarcBaseDocument implements SourceDocument { 
-  private static final byte MASK_THREE_BYTE_CHAR = (byte) (0xE0);
-  private static final byte MASK_TWO_BYTE_CHAR = (byte) (0xC0);
-  private static final byte MASK_TOPMOST_BIT = (byte) (0x80);
-  private static final byte MASK_BOTTOM_SIX_BITS = (byte) (0x1F);
-  private static final byte MASK_BOTTOM_FIVE_BITS = (byte) (0x3F);
-  private static final byte MASK_BOTTOM_FOUR_BITS = (byte) (0x0F);
-  
   protected static final String NEWLINE = "\n";
 
   public static String WARC_VERSION = "WARC/0.18";
@@ -90,6 +80,7 @@ public abstract class WarcBaseDocument implements SourceDocument {
   protected WarcBaseDocument.WarcHeader warcHeader = new WarcBaseDocument.WarcHeader();
   private byte[] warcContent = null;
   private String warcFilePath = "";
+  protected StringTransform htmlTransform = JsoupStringTransform.SINGLETON;
 
   /**
    * Default Constructor.
@@ -106,6 +97,7 @@ public abstract class WarcBaseDocument implements SourceDocument {
     this.warcHeader = new WarcBaseDocument.WarcHeader(o.warcHeader);
     this.warcContent = o.warcContent;
     this.warcFilePath = o.getWarcFilePath();
+    this.htmlTransform = o.htmlTransform;
   }
 
   @Override
@@ -117,7 +109,7 @@ public abstract class WarcBaseDocument implements SourceDocument {
   @Override
   public String contents() {
     try {
-      return JsoupStringTransform.SINGLETON.apply(getContent());
+      return htmlTransform.apply(getContent());
     } catch (Exception e) {
       LOG.error("Error extracting contents from raw document: " + id());
       throw new InvalidContentsException();
@@ -134,177 +126,27 @@ public abstract class WarcBaseDocument implements SourceDocument {
     return "response".equals(getHeaderRecordType());
   }
 
-  /**
-   * Our read line implementation. We cannot allow buffering here (for gzip
-   * streams) so, we need to use DataInputStream. Also, we need to account
-   * for Java's UTF8 implementation.
-   *
-   * @param in the input data stream
-   * @return the read line (or null if eof)
-   * @throws IOException if error encountered reading from stream
-   */
-  protected static String readLineFromInputStream(DataInputStream in) throws IOException {
-    StringBuilder retString = new StringBuilder();
-
-    boolean keepReading = true;
-    try {
-      do {
-        char thisChar = 0;
-        byte readByte = in.readByte();
-
-        // check to see if it's a multibyte character
-        if ((readByte & MASK_THREE_BYTE_CHAR) == MASK_THREE_BYTE_CHAR) {
-          // need to read the next 2 bytes
-          if (in.available() < 2) {
-            // treat these all as individual characters
-            retString.append((char) readByte);
-            int numAvailable = in.available();
-            for (int i = 0; i < numAvailable; i++) {
-              retString.append((char) (in.readByte()));
-            }
-            continue;
-          }
-          byte secondByte = in.readByte();
-          byte thirdByte = in.readByte();
-          // ensure the topmost bit is set
-          if (((secondByte & MASK_TOPMOST_BIT) != MASK_TOPMOST_BIT)
-              || ((thirdByte & MASK_TOPMOST_BIT) != MASK_TOPMOST_BIT)) {
-            // treat these as individual characters
-            retString.append((char) readByte);
-            retString.append((char) secondByte);
-            retString.append((char) thirdByte);
-            continue;
-          }
-          int finalVal = (thirdByte & MASK_BOTTOM_FIVE_BITS) + 64
-              * (secondByte & MASK_BOTTOM_FIVE_BITS) + 4096
-              * (readByte & MASK_BOTTOM_FOUR_BITS);
-          thisChar = (char) finalVal;
-        } else if ((readByte & MASK_TWO_BYTE_CHAR) == MASK_TWO_BYTE_CHAR) {
-          // need to read next byte
-          if (in.available() < 1) {
-            // treat this as individual characters
-            retString.append((char) readByte);
-            continue;
-          }
-          byte secondByte = in.readByte();
-          if ((secondByte & MASK_TOPMOST_BIT) != MASK_TOPMOST_BIT) {
-            retString.append((char) readByte);
-            retString.append((char) secondByte);
-            continue;
-          }
-          int finalVal = (secondByte & MASK_BOTTOM_FIVE_BITS) + 64
-              * (readByte & MASK_BOTTOM_SIX_BITS);
-          thisChar = (char) finalVal;
-        } else {
-          // interpret it as a single byte
-          thisChar = (char) readByte;
-        }
-
-        if (thisChar == '\n') {
-          keepReading = false;
-        } else {
-          retString.append(thisChar);
-        }
-      } while (keepReading);
-    } catch (EOFException eofEx) {
-      return null;
-    }
-
-    if (retString.length() == 0) {
-      return "";
-    }
-
-    return retString.toString();
-  }
-
   /**
    * Performs the actual heavy lifting of reading in the next WARC record.
    *
-   * @param in the data input stream
+   * @param in the WARC record reader
    * @param headerBuffer a blank string buffer to contain the WARC header
+   * @param headerEndKey key of the last line of the header
    * @return the content bytes (with the headerBuffer populated)
    * @throws IOException if error encountered reading from stream
    */
-  protected static byte[] readNextRecord(DataInputStream in, StringBuilder headerBuffer, String headerEndKey) throws IOException {
+  protected static byte[] readNextRecord(WarcRecordReader in, StringBuilder headerBuffer, String headerEndKey) throws IOException {
     if (in == null || headerBuffer == null) {
       throw new NoSuchElementException();
     }
 
-    String line = null;
-    boolean foundMark = false;
-    boolean inHeader = true;
-    byte[] retContent = null;
-
-    // cannot be using a buffered reader here!!!!
-    // just read the header
-    // first - find our WARC header
-    while ((!foundMark) && ((line = readLineFromInputStream(in)) != null)) {
-      if (line.startsWith(WARC_VERSION)) {
-        foundMark = true;
-      }
-    }
-
-    // no WARC mark?
-    if (!foundMark) {
-      throw new NoSuchElementException();
-    }
-
-    // then read to the first newline
-    // make sure we get the content length here
-    int contentLength = -1;
-    boolean reachHeaderEnd = false;
-    while (!reachHeaderEnd && inHeader && ((line = readLineFromInputStream(in)) != null)) {
-      if ((line.trim().length() == 0 && reachHeaderEnd)) {
-        inHeader = false;
-      } else {
-        headerBuffer.append(line);
-        headerBuffer.append(WarcBaseDocument.NEWLINE);
-        String[] thisHeaderPieceParts = line.split(":", 2);
-        if (thisHeaderPieceParts.length == 2) {
-          if (thisHeaderPieceParts[0].toLowerCase(Locale.US).startsWith(headerEndKey.toLowerCase(Locale.US))){
-            reachHeaderEnd = true;
-          }
-          if (thisHeaderPieceParts[0].toLowerCase(Locale.US).startsWith("content-length")) {
-            try {
-              contentLength = Integer.parseInt(thisHeaderPieceParts[1].trim());
-            } catch (NumberFormatException nfEx) {
-              contentLength = -1;
-            }
-          }
-        }
-      }
-    }
-
+    headerBuffer.append(in.readHeader(WARC_VERSION, headerEndKey));
+    int contentLength = in.getContentLength();
     if (contentLength < 0) {
       throw new NoSuchElementException();
     }
 
-    // now read the bytes of the content
-    retContent = new byte[contentLength];
-    int totalWant = contentLength;
-    int totalRead = 0;
-    while (totalRead < contentLength) {
-      try {
-        int numRead = in.read(retContent, totalRead, totalWant);
-        if (numRead < 0) {
-          throw new NoSuchElementException();
-        } else {
-          totalRead += numRead;
-          totalWant = contentLength - totalRead;
-        } // end if (numRead < 0) / else
-      } catch (EOFException eofEx) {
-        // resize to what we have
-        if (totalRead > 0) {
-          byte[] newReturn = new byte[totalRead];
-          System.arraycopy(retContent, 0, newReturn, 0, totalRead);
-          return newReturn;
-        } else {
-          throw new NoSuchElementException();
-        }
-      } // end try/catch (EOFException)
-    } // end while (totalRead < contentLength)
-
-    return retContent;
+    return in.readContent(contentLength);
   }
 
   /**
@@ -0,0 +1,292 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.collection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>Reads WARC records off a stream, scanning the headers straight out of a large, reused byte buffer rather than a
+ * byte at a time. Record contents are read directly into the array handed out for each record, so nothing is copied
+ * more than once. Gzipped WARCs (one gzip member per record, or a single member for the whole file) are decompressed
+ * with the platform's zlib, which is fed in large chunks.</p>
+ *
+ * <p>A record is read in two steps: {@link #readHeader(String, String)} skips ahead to the version line of the next
+ * record and returns its header, and {@link #readContent(int)} then returns the content.</p>
+ */
+public class WarcRecordReader implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16; // 64K
+
+  private final InputStream in;
+  private byte[] buffer = new byte[BUFFER_SIZE];
+  // Bytes in [pos, limit) are buffered but not yet consumed.
+  private int pos;
+  private int limit;
+  // Start of the bytes to keep when refilling the buffer, if before pos (i.e., the header being read), or -1.
+  private int mark = -1;
+  private boolean eof;
+  // Content length of the last header read, or -1 if the header didn't have one.
+  private int contentLength = -1;
+
+  /**
+   * Creates a reader over an (uncompressed) stream of WARC records.
+   *
+   * @param in input stream
+   */
+  public WarcRecordReader(InputStream in) {
+    this.in = in;
+  }
+
+  /**
+   * Opens a gzipped WARC file. Both a single gzip member and a sequence of members (the usual one per record) are
+   * read in full.
+   *
+   * @param path WARC file
+   * @return reader over the records of the file
+   * @throws IOException if error encountered opening the file
+   */
+  public static WarcRecordReader open(Path path) throws IOException {
+    return new WarcRecordReader(new GZIPInputStream(Files.newInputStream(path, StandardOpenOption.READ), BUFFER_SIZE));
+  }
+
+  /**
+   * Skips ahead to the next line starting with the version marker, and reads the header following it, up to and
+   * including the first line whose key starts with {@code headerEndKey} (ignoring case).
+   *
+   * @param version version marker, e.g., {@code WARC/1.0}
+   * @param headerEndKey key of the last line of the header
+   * @return header lines, without the version line and with line feeds as separators
+   * @throws NoSuchElementException if there are no more records
+   * @throws IOException if error encountered reading from stream
+   */
+  public String readHeader(String version, String headerEndKey) throws IOException {
+    byte[] marker = version.getBytes(StandardCharsets.UTF_8);
+    byte[] endKey = headerEndKey.getBytes(StandardCharsets.UTF_8);
+
+    // First, find the version line.
+    int eol;
+    do {
+      eol = findLineEnd();
+      if (eol < 0) {
+        throw new NoSuchElementException();
+      }
+      boolean found = startsWith(pos, eol, marker);
+      pos = eol + 1;
+      if (found) {
+        break;
+      }
+    } while (true);
+
+    // Then, read the header lines, keeping them in the buffer so they can be decoded in one go.
+    mark = pos;
+    contentLength = -1;
+    boolean reachedEnd = false;
+    while (!reachedEnd) {
+      eol = findLineEnd();
+      if (eol < 0) {
+        // An unterminated last line doesn't count.
+        break;
+      }
+
+      int colon = indexOf(pos, eol, (byte) ':');
+      if (colon >= 0) {
+        if (startsWithIgnoreCase(pos, colon, endKey)) {
+          reachedEnd = true;
+        }
+        if (startsWithIgnoreCase(pos, colon, CONTENT_LENGTH)) {
+          contentLength = parseInt(colon + 1, eol);
+        }
+      }
+      pos = eol + 1;
+    }
+
+    String header = new String(buffer, mark, pos - mark, StandardCharsets.UTF_8);
+    mark = -1;
+    if (eol < 0) {
+      pos = limit;
+    }
+    return header;
+  }
+
+  /**
+   * Returns the content length of the last header read.
+   *
+   * @return content length, or -1 if the header didn't have a valid one
+   */
+  public int getContentLength() {
+    return contentLength;
+  }
+
+  /**
+   * Reads the content following a header.
+   *
+   * @param length number of bytes to read
+   * @return content
+   * @throws NoSuchElementException if the stream ends before the end of the content
+   * @throws IOException if error encountered reading from stream
+   */
+  public byte[] readContent(int length) throws IOException {
+    byte[] content = new byte[length];
+    int n = Math.min(length, limit - pos);
+    System.arraycopy(buffer, pos, content, 0, n);
+    pos += n;
+
+    // Whatever isn't buffered yet goes straight into the content.
+    while (n < length) {
+      int read = in.read(content, n, length - n);
+      if (read < 0) {
+        eof = true;
+        throw new NoSuchElementException();
+      }
+      n += read;
+    }
+
+    return content;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private static final byte[] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.UTF_8);
+
+  // Returns the position of the next line feed at or after pos, filling the buffer as needed, or -1 at the end of the
+  // stream. Filling may move the bytes to keep to the start of the buffer.
+  private int findLineEnd() throws IOException {
+    int from = pos;
+    while (true) {
+      int eol = indexOf(from, limit, (byte) '\n');
+      if (eol >= 0) {
+        return eol;
+      }
+      from = limit - pos;
+      if (!fill()) {
+        return -1;
+      }
+      from += pos;
+    }
+  }
+
+  // Reads more bytes into the buffer, compacting or growing it as needed; returns false at the end of the stream.
+  private boolean fill() throws IOException {
+    if (eof) {
+      return false;
+    }
+    int keep = mark >= 0 ? mark : pos;
+    if (keep > 0) {
+      System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+      limit -= keep;
+      pos -= keep;
+      if (mark >= 0) {
+        mark = 0;
+      }
+    }
+    if (limit == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+
+    int read = in.read(buffer, limit, buffer.length - limit);
+    while (read == 0) {
+      read = in.read(buffer, limit, buffer.length - limit);
+    }
+    if (read < 0) {
+      eof = true;
+      return false;
+    }
+    limit += read;
+    return true;
+  }
+
+  private int indexOf(int from, int to, byte b) {
+    for (int i = from; i < to; i++) {
+      if (buffer[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean startsWith(int from, int to, byte[] prefix) {
+    if (to - from < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer[from + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Keys are ASCII, so lower-casing bytes is enough.
+  private boolean startsWithIgnoreCase(int from, int to, byte[] prefix) {
+    if (to - from < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (toLowerCase(buffer[from + i]) != toLowerCase(prefix[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte toLowerCase(byte b) {
+    return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+  }
+
+  // Parses a (trimmed) non-negative decimal value, returning -1 if it isn't one.
+  private int parseInt(int from, int to) {
+    while (from < to && buffer[from] <= ' ') {
+      from++;
+    }
+    while (to > from && buffer[to - 1] <= ' ') {
+      to--;
+    }
+    if (from == to) {
+      return -1;
+    }
+
+    long value = 0;
+    int i = from;
+    if (buffer[i] == '+') {
+      i++;
+      if (i == to) {
+        return -1;
+      }
+    }
+    for (; i < to; i++) {
+      int digit = buffer[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+      if (value > Integer.MAX_VALUE) {
+        return -1;
+      }
+    }
+    return (int) value;
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends batches of documents to a remote index (i.e., Solr or Elasticsearch) in the background, so that an indexing
+ * thread can keep on generating documents while its previous batches are in flight. The number of batches in flight is
+ * bounded, so that the indexing thread blocks when the remote index falls behind. Batches that fail are retried with
+ * exponential backoff; documents are only counted as indexed once their batch has been acknowledged.
+ *
+ * @param <B> type of a batch
+ */
+public class BulkSender<B> {
+  private static final Logger LOG = LogManager.getLogger(BulkSender.class);
+
+  private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /**
+   * Sends a batch of documents to the remote index.
+   *
+   * @param <B> type of a batch
+   */
+  @FunctionalInterface
+  public interface Sender<B> {
+    /**
+     * Sends a batch, which may be sent again if this throws.
+     *
+     * @param batch batch of documents
+     * @return number of documents of the batch that were rejected individually, which aren't retried
+     * @throws Exception if the batch as a whole failed
+     */
+    int send(B batch) throws Exception;
+  }
+
+  private final Executor executor;
+  private final Sender<B> sender;
+  private final int maxInFlight;
+  private final Semaphore inFlight;
+  private final int maxRetries;
+  private final long backoffMillis;
+  private final AtomicLong indexed;
+  private final AtomicLong failed;
+
+  /**
+   * Creates a sender.
+   *
+   * @param executor executor sending the batches, which must not queue them, i.e., it must be able to run
+   *                 {@code maxInFlight} batches of every sender sharing it at the same time
+   * @param sender sends a single batch
+   * @param maxInFlight maximum number of batches in flight
+   * @param maxRetries maximum number of times a batch is retried
+   * @param backoffMillis delay before the first retry, which doubles with every retry
+   * @param indexed counter for documents that were indexed
+   * @param failed counter for documents that failed to be indexed
+   */
+  public BulkSender(Executor executor, Sender<B> sender, int maxInFlight, int maxRetries, long backoffMillis,
+                    AtomicLong indexed, AtomicLong failed) {
+    this.executor = executor;
+    this.sender = sender;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.inFlight = new Semaphore(this.maxInFlight);
+    this.maxRetries = Math.max(0, maxRetries);
+    this.backoffMillis = Math.max(1, backoffMillis);
+    this.indexed = indexed;
+    this.failed = failed;
+  }
+
+  /**
+   * Sends a batch in the background, waiting for a previous batch to complete if too many are in flight.
+   *
+   * @param batch batch of documents, which must not be modified afterwards
+   * @param size number of documents in the batch
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void submit(B batch, int size) throws InterruptedException {
+    inFlight.acquire();
+    try {
+      executor.execute(() -> {
+        try {
+          send(batch, size);
+        } finally {
+          inFlight.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Waits until all batches submitted so far have completed.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitCompletion() throws InterruptedException {
+    inFlight.acquire(maxInFlight);
+    inFlight.release(maxInFlight);
+  }
+
+  private void send(B batch, int size) {
+    long backoff = backoffMillis;
+    for (int attempt = 0; ; attempt++) {
+      try {
+        int rejected = sender.send(batch);
+        indexed.addAndGet(size - rejected);
+        failed.addAndGet(rejected);
+        return;
+      } catch (Exception e) {
+        if (attempt == maxRetries) {
+          LOG.error(String.format("Error sending %d documents after %d attempts, giving up", size, attempt + 1), e);
+          failed.addAndGet(size);
+          return;
+        }
+        LOG.warn(String.format("Error sending %d documents, retrying in %d ms: %s", size, backoff, e));
+      }
+
+      try {
+        Thread.sleep(backoff);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failed.addAndGet(size);
+        return;
+      }
+      backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+    }
+  }
+}
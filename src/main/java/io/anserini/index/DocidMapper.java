@@ -0,0 +1,173 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Maps between collection docids and Lucene internal docids, without searching or loading stored documents.
+ * Collection docids are looked up in the terms dictionary of the {@link IndexArgs#ID} field, and internal docids in
+ * its doc values, falling back to the stored field for segments without doc values. Batch lookups go through the ids
+ * in order, which is a lot cheaper than one lookup at a time.
+ */
+public class DocidMapper {
+  private final IndexReader reader;
+
+  /**
+   * Creates a mapper for an index. Mappers keep nothing but the reader, so they're cheap to create where needed.
+   *
+   * @param reader index reader
+   */
+  public DocidMapper(IndexReader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Converts a collection docid to a Lucene internal docid.
+   *
+   * @param docid collection docid
+   * @return corresponding Lucene internal docid, or -1 if docid not found
+   * @throws IOException if error encountered reading the index
+   */
+  public int getLuceneDocid(String docid) throws IOException {
+    return getLuceneDocids(new String[] {docid})[0];
+  }
+
+  /**
+   * Converts collection docids to Lucene internal docids. If several (live) documents have the same docid, the first
+   * one wins.
+   *
+   * @param docids collection docids
+   * @return corresponding Lucene internal docids, with -1 for docids not found
+   * @throws IOException if error encountered reading the index
+   */
+  public int[] getLuceneDocids(String[] docids) throws IOException {
+    int[] luceneDocids = new int[docids.length];
+    Arrays.fill(luceneDocids, -1);
+    // Seeking in order makes the most of what the terms enum has already loaded.
+    Integer[] order = new Integer[docids.length];
+    for (int i = 0; i < docids.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparing(i -> docids[i], Comparator.nullsFirst(Comparator.naturalOrder())));
+
+    PostingsEnum postings = null;
+    for (LeafReaderContext leaf : reader.leaves()) {
+      Terms terms = leaf.reader().terms(IndexArgs.ID);
+      if (terms == null) {
+        continue;
+      }
+      TermsEnum te = terms.iterator();
+      Bits liveDocs = leaf.reader().getLiveDocs();
+      for (int i : order) {
+        if (docids[i] == null || luceneDocids[i] >= 0 || !te.seekExact(new BytesRef(docids[i]))) {
+          continue;
+        }
+        postings = te.postings(postings, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+          if (liveDocs == null || liveDocs.get(doc)) {
+            luceneDocids[i] = leaf.docBase + doc;
+            break;
+          }
+        }
+      }
+    }
+
+    return luceneDocids;
+  }
+
+  /**
+   * Converts a Lucene internal docid to a collection docid.
+   *
+   * @param luceneDocid Lucene internal docid
+   * @return corresponding collection docid, or null if not found
+   * @throws IOException if error encountered reading the index
+   */
+  public String getDocid(int luceneDocid) throws IOException {
+    return getDocids(new int[] {luceneDocid})[0];
+  }
+
+  /**
+   * Converts Lucene internal docids to collection docids. Doc values iterators only move forward, so lookups are done
+   * in increasing Lucene docid order.
+   *
+   * @param luceneDocids Lucene internal docids
+   * @return corresponding collection docids, with nulls for docids not found
+   * @throws IOException if error encountered reading the index
+   */
+  public String[] getDocids(int[] luceneDocids) throws IOException {
+    String[] docids = new String[luceneDocids.length];
+    Integer[] order = new Integer[luceneDocids.length];
+    for (int i = 0; i < luceneDocids.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparingInt(i -> luceneDocids[i]));
+
+    List<LeafReaderContext> leaves = reader.leaves();
+    int leaf = -1;
+    SortedDocValues values = null;
+    int previous = -1;
+    for (int i : order) {
+      int id = luceneDocids[i];
+      if (id < 0 || id >= reader.maxDoc()) {
+        continue;
+      }
+      if (previous >= 0 && luceneDocids[previous] == id) {
+        docids[i] = docids[previous];
+        continue;
+      }
+      previous = i;
+
+      int subIndex = ReaderUtil.subIndex(id, leaves);
+      if (subIndex != leaf) {
+        leaf = subIndex;
+        FieldInfo info = leaves.get(leaf).reader().getFieldInfos().fieldInfo(IndexArgs.ID);
+        values = info != null && info.getDocValuesType() == DocValuesType.SORTED ?
+            DocValues.getSorted(leaves.get(leaf).reader(), IndexArgs.ID) : null;
+      }
+
+      if (values != null) {
+        if (values.advanceExact(id - leaves.get(leaf).docBase)) {
+          docids[i] = values.binaryValue().utf8ToString();
+        }
+      } else {
+        DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(IndexArgs.ID);
+        reader.document(id, visitor);
+        docids[i] = visitor.getDocument().get(IndexArgs.ID);
+      }
+    }
+
+    return docids;
+  }
+}
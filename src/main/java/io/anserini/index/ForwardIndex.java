@@ -0,0 +1,670 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.BaseTermsEnum;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.ImpactsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SlowImpactsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.PagedBytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Forward index of a field: for each document, the terms it contains, as ordinals into a sorted term dictionary
+ * shared by all documents, and their frequencies. This is the information in document vectors (minus positions), but
+ * built from the postings after indexing, so that the index doesn't need {@code -storeDocvectors}, and read as
+ * primitive arrays from a memory-mapped file, so that feedback doesn't need to decode term vectors.</p>
+ *
+ * <p>A forward index is stored in the {@value #DIRECTORY} directory of its index, and records the commit and number
+ * of documents of the index it was built from; it's ignored if the index changes afterwards.</p>
+ */
+public class ForwardIndex implements Closeable {
+  private static final Logger LOG = LogManager.getLogger(ForwardIndex.class);
+
+  public static final String DIRECTORY = "forward";
+  // Maximum number of (term, tf) pairs buffered while building, i.e., 128MB worth; larger collections take more passes
+  // over the postings.
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 24;
+
+  private static final String TERMS_EXTENSION = ".terms";
+  private static final String VECTORS_EXTENSION = ".vectors";
+  private static final String TERMS_CODEC = "AnseriniForwardIndexTerms";
+  private static final String VECTORS_CODEC = "AnseriniForwardIndexVectors";
+  // Version 1 counts the bytes of the term dictionary in a long.
+  private static final int VERSION = 1;
+  // Terms are at most 32766 bytes long, so that any of them fits in a single block of the term dictionary.
+  private static final int TERM_BLOCK_BITS = 15;
+
+  private static final Map<IndexReader.CacheKey, Map<String, Optional<ForwardIndex>>> INDEXES =
+      new ConcurrentHashMap<>();
+
+  private final String field;
+  private final String commit;
+  private final int maxDoc;
+  // The term dictionary: the bytes of all terms, concatenated in order, and where each one starts. The bytes are paged,
+  // since there may be more than fit in an array.
+  private final PagedBytes.Reader termBytes;
+  private final long[] termOffsets;
+  private final int[] dfs;
+  private final long[] cfs;
+  private final Directory directory;
+  private final IndexInput vectors;
+  private final RandomAccessInput pointers;
+
+  /**
+   * Term ordinals and frequencies of the terms in a document, in increasing order of ordinal, i.e., of term.
+   */
+  public static final class DocVector {
+    private int size = 0;
+    private int[] termOrds = new int[16];
+    private int[] tfs = new int[16];
+
+    public int size() {
+      return size;
+    }
+
+    public int getTermOrd(int i) {
+      return termOrds[i];
+    }
+
+    public int getTf(int i) {
+      return tfs[i];
+    }
+  }
+
+  private ForwardIndex(Directory directory, String field) throws IOException {
+    this.directory = directory;
+    this.field = field;
+
+    try (ChecksumIndexInput in = directory.openChecksumInput(field + TERMS_EXTENSION, IOContext.READONCE)) {
+      CodecUtil.checkHeader(in, TERMS_CODEC, VERSION, VERSION);
+      commit = in.readString();
+      maxDoc = in.readVInt();
+      int numTerms = in.readVInt();
+      long numTermBytes = in.readVLong();
+      PagedBytes bytes = new PagedBytes(TERM_BLOCK_BITS);
+      termOffsets = new long[numTerms + 1];
+      dfs = new int[numTerms];
+      cfs = new long[numTerms];
+      for (int i = 0; i < numTerms; i++) {
+        termOffsets[i] = bytes.getPointer();
+        bytes.copy(in, in.readVInt());
+        dfs[i] = in.readVInt();
+        cfs[i] = in.readVLong();
+      }
+      termOffsets[numTerms] = bytes.getPointer();
+      if (termOffsets[numTerms] != numTermBytes) {
+        throw new CorruptIndexException("Expected " + numTermBytes + " bytes of terms, but read " +
+            termOffsets[numTerms], in);
+      }
+      termBytes = bytes.freeze(true);
+      CodecUtil.checkFooter(in);
+    }
+
+    IndexInput in = directory.openInput(field + VECTORS_EXTENSION, IOContext.DEFAULT);
+    try {
+      CodecUtil.checkHeader(in, VECTORS_CODEC, VERSION, VERSION);
+      // Verifying the checksum means reading the whole file, so we just make sure that it's all there.
+      CodecUtil.retrieveChecksum(in);
+      in.seek(in.length() - CodecUtil.footerLength() - Long.BYTES);
+      long pointersStart = in.readLong();
+      pointers = in.randomAccessSlice(pointersStart, (long) Long.BYTES * (maxDoc + 1));
+      vectors = in;
+    } catch (Throwable t) {
+      IOUtils.closeWhileHandlingException(in);
+      throw t;
+    }
+  }
+
+  /**
+   * Opens the forward index of a field of an index.
+   *
+   * @param indexPath index path
+   * @param field field
+   * @return forward index
+   * @throws IOException if error encountered reading the forward index
+   */
+  public static ForwardIndex open(Path indexPath, String field) throws IOException {
+    Directory directory = FSDirectory.open(indexPath.resolve(DIRECTORY));
+    try {
+      return new ForwardIndex(directory, field);
+    } catch (Throwable t) {
+      IOUtils.closeWhileHandlingException(directory);
+      throw t;
+    }
+  }
+
+  /**
+   * Returns the forward index of a field of an index, shared by everyone using the same reader, or null if there's
+   * none, or it's stale. The forward index is closed along with the reader.
+   *
+   * @param reader index reader
+   * @param field field
+   * @return forward index or null
+   */
+  public static ForwardIndex get(IndexReader reader, String field) {
+    IndexReader.CacheHelper helper = reader.getReaderCacheHelper();
+    if (helper == null) {
+      // Without a cache key, there's no way of knowing when the reader goes away, so we can't share.
+      return null;
+    }
+
+    return INDEXES.computeIfAbsent(helper.getKey(), key -> {
+      helper.addClosedListener(k -> {
+        Map<String, Optional<ForwardIndex>> indexes = INDEXES.remove(k);
+        if (indexes != null) {
+          for (Optional<ForwardIndex> index : indexes.values()) {
+            if (index.isPresent()) {
+              index.get().close();
+            }
+          }
+        }
+      });
+      return new ConcurrentHashMap<>();
+    }).computeIfAbsent(field, f -> Optional.ofNullable(openIfCurrent(reader, f))).orElse(null);
+  }
+
+  /**
+   * Returns the document vector of a document, from the forward index if there is one, or from the term vectors
+   * stored in the index otherwise. Either way, terms are enumerated in order, with their frequencies in the document.
+   *
+   * @param reader index reader
+   * @param docid internal Lucene docid
+   * @param field field
+   * @return document vector, or null if the document has none
+   * @throws IOException if error encountered reading the document vector
+   */
+  public static Terms getTermVector(IndexReader reader, int docid, String field) throws IOException {
+    ForwardIndex index = get(reader, field);
+    return index != null ? index.getTermVector(docid) : reader.getTermVector(docid, field);
+  }
+
+  private static ForwardIndex openIfCurrent(IndexReader reader, String field) {
+    if (!(reader instanceof DirectoryReader)) {
+      return null;
+    }
+    Directory indexDirectory = FilterDirectory.unwrap(((DirectoryReader) reader).directory());
+    if (!(indexDirectory instanceof FSDirectory)) {
+      return null;
+    }
+    Path indexPath = ((FSDirectory) indexDirectory).getDirectory();
+    if (!Files.exists(indexPath.resolve(DIRECTORY).resolve(field + TERMS_EXTENSION))) {
+      return null;
+    }
+
+    try {
+      ForwardIndex index = open(indexPath, field);
+      String commit = ((DirectoryReader) reader).getIndexCommit().getSegmentsFileName();
+      if (!index.commit.equals(commit) || index.maxDoc != reader.maxDoc()) {
+        LOG.warn(String.format("Ignoring forward index of field %s in %s: built from %s, but the index is now at %s.",
+            field, indexPath, index.commit, commit));
+        index.close();
+        return null;
+      }
+      LOG.info(String.format("Using forward index of field %s in %s (%,d terms).", field, indexPath,
+          index.numTerms()));
+      return index;
+    } catch (IOException e) {
+      LOG.warn(String.format("Error opening forward index of field %s in %s: %s", field, indexPath, e));
+      return null;
+    }
+  }
+
+  /**
+   * Builds the forward index of a field of an index, with the default buffer size.
+   *
+   * @param indexPath index path
+   * @param field field
+   * @throws IOException if error encountered reading the index or writing the forward index
+   */
+  public static void build(Path indexPath, String field) throws IOException {
+    build(indexPath, field, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Builds the forward index of a field of an index. The postings are inverted a range of documents at a time, with up
+   * to a given number of (term, tf) pairs in memory, so large collections take several passes over the postings.
+   *
+   * @param indexPath index path
+   * @param field field
+   * @param bufferSize maximum number of (term, tf) pairs in memory
+   * @throws IOException if error encountered reading the index or writing the forward index
+   */
+  public static void build(Path indexPath, String field, int bufferSize) throws IOException {
+    try (Directory indexDirectory = FSDirectory.open(indexPath);
+         DirectoryReader reader = DirectoryReader.open(indexDirectory);
+         Directory directory = FSDirectory.open(indexPath.resolve(DIRECTORY))) {
+      Terms terms = MultiTerms.getTerms(reader, field);
+      if (terms == null) {
+        throw new IllegalArgumentException("Field " + field + " is not indexed.");
+      }
+      int maxDoc = reader.maxDoc();
+      String commit = reader.getIndexCommit().getSegmentsFileName();
+      // Replace whatever forward index was there before.
+      IOUtils.deleteFilesIgnoringExceptions(directory, field + TERMS_EXTENSION, field + VECTORS_EXTENSION);
+
+      // First pass: the term dictionary, and the number of distinct terms in each document.
+      int[] docLengths = new int[maxDoc];
+      int numTerms = 0;
+      long numTermBytes = 0;
+      TermsEnum te = terms.iterator();
+      PostingsEnum postings = null;
+      while (te.next() != null) {
+        postings = te.postings(postings, PostingsEnum.NONE);
+        while (postings.nextDoc() != PostingsEnum.NO_MORE_DOCS) {
+          docLengths[postings.docID()]++;
+        }
+        numTerms++;
+        numTermBytes += te.term().length;
+      }
+
+      try (IndexOutput out = directory.createOutput(field + TERMS_EXTENSION, IOContext.DEFAULT)) {
+        CodecUtil.writeHeader(out, TERMS_CODEC, VERSION);
+        out.writeString(commit);
+        out.writeVInt(maxDoc);
+        out.writeVInt(numTerms);
+        out.writeVLong(numTermBytes);
+        te = terms.iterator();
+        BytesRef term;
+        while ((term = te.next()) != null) {
+          out.writeVInt(term.length);
+          out.writeBytes(term.bytes, term.offset, term.length);
+          out.writeVInt(te.docFreq());
+          out.writeVLong(te.totalTermFreq());
+        }
+        CodecUtil.writeFooter(out);
+      }
+
+      // Then, as many passes as needed to invert the postings of all documents into their vectors.
+      long[] docPointers = new long[maxDoc + 1];
+      try (IndexOutput out = directory.createOutput(field + VECTORS_EXTENSION, IOContext.DEFAULT)) {
+        CodecUtil.writeHeader(out, VECTORS_CODEC, VERSION);
+        int passes = 0;
+        for (int lo = 0, hi; lo < maxDoc; lo = hi) {
+          // The range of documents whose vectors fit in the buffer, but at least one document.
+          long size = docLengths[lo];
+          hi = lo + 1;
+          while (hi < maxDoc && size + docLengths[hi] <= bufferSize) {
+            size += docLengths[hi++];
+          }
+
+          int[] starts = new int[hi - lo + 1];
+          for (int doc = lo; doc < hi; doc++) {
+            starts[doc - lo + 1] = starts[doc - lo] + docLengths[doc];
+          }
+          int[] ends = Arrays.copyOf(starts, hi - lo);
+          int[] termOrds = new int[starts[hi - lo]];
+          int[] tfs = new int[termOrds.length];
+
+          // Terms are visited in order, so each vector comes out sorted by term.
+          te = terms.iterator();
+          int ord = 0;
+          while (te.next() != null) {
+            postings = te.postings(postings, PostingsEnum.FREQS);
+            for (int doc = postings.advance(lo); doc < hi; doc = postings.nextDoc()) {
+              int i = ends[doc - lo]++;
+              termOrds[i] = ord;
+              tfs[i] = postings.freq();
+            }
+            ord++;
+          }
+
+          for (int doc = lo; doc < hi; doc++) {
+            docPointers[doc] = out.getFilePointer();
+            out.writeVInt(docLengths[doc]);
+            int previous = 0;
+            for (int i = starts[doc - lo]; i < ends[doc - lo]; i++) {
+              out.writeVInt(termOrds[i] - previous);
+              out.writeVInt(tfs[i]);
+              previous = termOrds[i];
+            }
+          }
+          passes++;
+        }
+        docPointers[maxDoc] = out.getFilePointer();
+
+        long pointersStart = out.getFilePointer();
+        for (long pointer : docPointers) {
+          out.writeLong(pointer);
+        }
+        out.writeLong(pointersStart);
+        CodecUtil.writeFooter(out);
+
+        LOG.info(String.format("Forward index of field %s built: %,d documents, %,d terms, %d pass(es)",
+            field, maxDoc, numTerms, passes));
+      }
+    }
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public int maxDoc() {
+    return maxDoc;
+  }
+
+  public int numTerms() {
+    return dfs.length;
+  }
+
+  /**
+   * Returns a term of the dictionary. The bytes are shared (unless the term straddles two pages of the dictionary) and
+   * must not be modified.
+   *
+   * @param ord term ordinal
+   * @param reuse BytesRef to point at the term
+   * @return the term
+   */
+  public BytesRef getTerm(int ord, BytesRef reuse) {
+    termBytes.fillSlice(reuse, termOffsets[ord], (int) (termOffsets[ord + 1] - termOffsets[ord]));
+    return reuse;
+  }
+
+  /**
+   * Looks up a term in the dictionary.
+   *
+   * @param term term
+   * @return term ordinal, or -1 if the term doesn't occur in the index
+   */
+  public int getTermOrd(BytesRef term) {
+    BytesRef candidate = new BytesRef();
+    int lo = 0, hi = dfs.length - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int cmp = getTerm(mid, candidate).compareTo(term);
+      if (cmp < 0) {
+        lo = mid + 1;
+      } else if (cmp > 0) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  public int getDf(int ord) {
+    return dfs[ord];
+  }
+
+  public long getCf(int ord) {
+    return cfs[ord];
+  }
+
+  /**
+   * Reads the vector of a document.
+   *
+   * @param docid internal Lucene docid
+   * @param reuse vector to read into, or null
+   * @return the vector
+   * @throws IOException if error encountered reading the vector
+   */
+  public DocVector getDocVector(int docid, DocVector reuse) throws IOException {
+    DocVector vector = reuse == null ? new DocVector() : reuse;
+    // Clones are cheap, and let threads read at the same time.
+    IndexInput in = vectors.clone();
+    in.seek(pointers.readLong((long) Long.BYTES * docid));
+    int size = in.readVInt();
+    vector.termOrds = ArrayUtil.grow(vector.termOrds, size);
+    vector.tfs = ArrayUtil.grow(vector.tfs, size);
+    int ord = 0;
+    for (int i = 0; i < size; i++) {
+      ord += in.readVInt();
+      vector.termOrds[i] = ord;
+      vector.tfs[i] = in.readVInt();
+    }
+    vector.size = size;
+    return vector;
+  }
+
+  /**
+   * Reads the vector of a document as {@link Terms}, like {@link IndexReader#getTermVector(int, String)}.
+   *
+   * @param docid internal Lucene docid
+   * @return the vector, or null if the document has no terms
+   * @throws IOException if error encountered reading the vector
+   */
+  public Terms getTermVector(int docid) throws IOException {
+    DocVector vector = getDocVector(docid, null);
+    return vector.size == 0 ? null : new DocVectorTerms(vector);
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOUtils.close(vectors, directory);
+  }
+
+  private final class DocVectorTerms extends Terms {
+    private final DocVector vector;
+    private final long sumTf;
+
+    DocVectorTerms(DocVector vector) {
+      this.vector = vector;
+      long sum = 0;
+      for (int i = 0; i < vector.size; i++) {
+        sum += vector.tfs[i];
+      }
+      this.sumTf = sum;
+    }
+
+    @Override
+    public TermsEnum iterator() {
+      return new DocVectorTermsEnum(vector);
+    }
+
+    @Override
+    public long size() {
+      return vector.size;
+    }
+
+    @Override
+    public long getSumTotalTermFreq() {
+      return sumTf;
+    }
+
+    @Override
+    public long getSumDocFreq() {
+      return vector.size;
+    }
+
+    @Override
+    public int getDocCount() {
+      return 1;
+    }
+
+    @Override
+    public boolean hasFreqs() {
+      return true;
+    }
+
+    @Override
+    public boolean hasOffsets() {
+      return false;
+    }
+
+    @Override
+    public boolean hasPositions() {
+      return false;
+    }
+
+    @Override
+    public boolean hasPayloads() {
+      return false;
+    }
+  }
+
+  // Like the terms enums of term vectors: a "postings" of each term is the document itself, as docid 0.
+  private final class DocVectorTermsEnum extends BaseTermsEnum {
+    private final DocVector vector;
+    private final BytesRef term = new BytesRef();
+    private int i = -1;
+
+    DocVectorTermsEnum(DocVector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public BytesRef next() {
+      if (i + 1 >= vector.size) {
+        i = vector.size;
+        return null;
+      }
+      return getTerm(vector.termOrds[++i], term);
+    }
+
+    @Override
+    public SeekStatus seekCeil(BytesRef text) {
+      int lo = 0, hi = vector.size - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        int cmp = getTerm(vector.termOrds[mid], term).compareTo(text);
+        if (cmp < 0) {
+          lo = mid + 1;
+        } else if (cmp > 0) {
+          hi = mid - 1;
+        } else {
+          i = mid;
+          return SeekStatus.FOUND;
+        }
+      }
+      i = lo;
+      if (i >= vector.size) {
+        return SeekStatus.END;
+      }
+      getTerm(vector.termOrds[i], term);
+      return SeekStatus.NOT_FOUND;
+    }
+
+    @Override
+    public void seekExact(long ord) {
+      i = (int) ord;
+      getTerm(vector.termOrds[i], term);
+    }
+
+    @Override
+    public BytesRef term() {
+      return term;
+    }
+
+    @Override
+    public long ord() {
+      return i;
+    }
+
+    @Override
+    public int docFreq() {
+      return 1;
+    }
+
+    @Override
+    public long totalTermFreq() {
+      return vector.tfs[i];
+    }
+
+    @Override
+    public PostingsEnum postings(PostingsEnum reuse, int flags) {
+      return new SingleDocPostingsEnum(vector.tfs[i]);
+    }
+
+    @Override
+    public ImpactsEnum impacts(int flags) {
+      return new SlowImpactsEnum(postings(null, flags));
+    }
+  }
+
+  private static final class SingleDocPostingsEnum extends PostingsEnum {
+    private final int freq;
+    private int doc = -1;
+
+    SingleDocPostingsEnum(int freq) {
+      this.freq = freq;
+    }
+
+    @Override
+    public int freq() {
+      return freq;
+    }
+
+    @Override
+    public int nextPosition() {
+      return -1;
+    }
+
+    @Override
+    public int startOffset() {
+      return -1;
+    }
+
+    @Override
+    public int endOffset() {
+      return -1;
+    }
+
+    @Override
+    public BytesRef getPayload() {
+      return null;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      return doc = doc < 0 ? 0 : NO_MORE_DOCS;
+    }
+
+    @Override
+    public int advance(int target) {
+      return doc = doc < 0 && target <= 0 ? 0 : NO_MORE_DOCS;
+    }
+
+    @Override
+    public long cost() {
+      return 1;
+    }
+  }
+}
@@ -49,6 +49,11 @@ public class IndexArgs {
       usage = "Document generator class in package 'io.anserini.index.generator'.")
   public String generatorClass = "DefaultLuceneDocumentGenerator";
 
+  @Option(name = "-htmlTransform", metaVar = "[class]",
+      usage = "StringTransform class in package 'io.anserini.collection' used to extract text from HTML documents, " +
+          "e.g., StreamingHtmlStringTransform.")
+  public String htmlTransformClass = "JsoupStringTransform";
+
   // optional general arguments
 
   @Option(name = "-verbose", forbids = {"-quiet"},
@@ -73,6 +78,11 @@ public class IndexArgs {
       usage = "Boolean switch to store document vectors; needed for (pseudo) relevance feedback.")
   public boolean storeDocvectors = false;
 
+  @Option(name = "-forwardIndex",
+      usage = "Boolean switch to build a forward index of the contents field after indexing; " +
+          "feedback rerankers use it in place of document vectors.")
+  public boolean forwardIndex = false;
+
   @Option(name = "-storeContents",
       usage = "Boolean switch to store document contents.")
   public boolean storeContents = false;
@@ -118,6 +128,22 @@ public class IndexArgs {
       usage = "Analyzer language (ISO 3166 two-letter code).")
   public String language= "en";
 
+  @Option(name = "-split.size", metaVar = "[mb]",
+      usage = "Splits files larger than this size (in MB) into several segments that are indexed in parallel, " +
+              "if the collection supports it (e.g., uncompressed .jsonl or TREC files); 0 means no splitting.")
+  public int splitSize = 0;
+
+  // Pipeline options
+
+  @Option(name = "-pipeline.workers", metaVar = "[num]", forbids = {"-solr", "-es"},
+      usage = "Number of threads generating and adding documents to the index, separately from the -threads " +
+              "threads reading file segments; 0 means each thread indexes the segment it reads.")
+  public int pipelineWorkers = 0;
+
+  @Option(name = "-pipeline.queueSize", metaVar = "[num]",
+      usage = "Maximum number of documents read but not yet indexed when using -pipeline.workers.")
+  public int pipelineQueueSize = 10000;
+
   // Tweet options
 
   @Option(name = "-tweet.keepRetweets",
@@ -170,6 +196,25 @@ public class IndexArgs {
       usage = "Solr client pool size.")
   public int solrPoolSize = 16;
 
+  // Options for bulk indexing into Solr or Elasticsearch
+
+  @Option(name = "-bulk.inFlight", metaVar = "[n]",
+      usage = "Maximum number of batches per indexing thread being sent to Solr or Elasticsearch at the same time.")
+  public int bulkInFlight = 2;
+
+  @Option(name = "-bulk.maxBytes", metaVar = "[bytes]",
+      usage = "Sends a batch to Solr or Elasticsearch once its (estimated) size reaches this many bytes, even if it " +
+              "has fewer documents than -solr.batch or -es.batch.")
+  public long bulkMaxBytes = 10L * 1024 * 1024;
+
+  @Option(name = "-bulk.retries", metaVar = "[n]",
+      usage = "Number of times a failed batch is retried before its documents are counted as failed.")
+  public int bulkRetries = 5;
+
+  @Option(name = "-bulk.backoff", metaVar = "[ms]",
+      usage = "Delay before the first retry of a failed batch (in ms), which doubles with every retry up to a minute.")
+  public int bulkBackoff = 500;
+
   // Elasticsearch options
 
   @Option(name = "-es", forbids = {"-index", "-solr"},
@@ -215,10 +260,17 @@ public class IndexArgs {
   // Sharding options
 
   @Option(name = "-shard.count", metaVar = "[n]",
-      usage = "Number of shards to partition the document collection into.")
+      usage = "Number of shards to partition the document collection into. Without -shard.current, all of the " +
+              "shards are written, into subdirectories shard0, shard1, ... of the index path.")
   public int shardCount = -1;
 
   @Option(name = "-shard.current", metaVar = "[n]",
-      usage = "The current shard number to generate (indexed from 0).")
+      usage = "The current shard number to generate (indexed from 0); if not specified, all shards are written " +
+              "in a single pass.")
   public int shardCurrent = -1;
+
+  @Option(name = "-shard.router", metaVar = "[class]",
+      usage = "ShardRouter class assigning documents to shards, in package 'io.anserini.index' unless fully qualified; " +
+              "use Sha1ShardRouter for the shards of older versions.")
+  public String shardRouter = "Murmur3ShardRouter";
 }
@@ -16,16 +16,16 @@
 
 package io.anserini.index;
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
-import com.google.common.hash.Hashing;
 import io.anserini.analysis.DefaultEnglishAnalyzer;
 import io.anserini.analysis.TweetAnalyzer;
 import io.anserini.collection.DocumentCollection;
 import io.anserini.collection.FileSegment;
 import io.anserini.collection.SourceDocument;
+import io.anserini.collection.StringTransform;
 import io.anserini.index.generator.EmptyDocumentException;
+import io.anserini.index.generator.GeneratorException;
 import io.anserini.index.generator.InvalidDocumentException;
 import io.anserini.index.generator.LuceneDocumentGenerator;
 import io.anserini.index.generator.SkippedDocumentException;
@@ -70,7 +70,9 @@ import org.apache.lucene.store.FSDirectory;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.common.SolrInputDocument;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
@@ -88,10 +90,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -135,18 +142,54 @@ public final class IndexCollection {
      * Counter for unexpected errors.
      */
     public AtomicLong errors = new AtomicLong();
+
+    /**
+     * Counter for documents that could not be indexed into Solr or Elasticsearch, even after retrying. These are
+     * not counted as indexed.
+     */
+    public AtomicLong failed = new AtomicLong();
+
+    /**
+     * Counters for the number of documents routed to each shard, when indexing a shard of a collection. Documents
+     * routed to other shards than the current one are also counted as skipped.
+     */
+    public AtomicLongArray shards = new AtomicLongArray(Math.max(args.shardCount, 0));
   }
 
+  // A source document in the queue feeding the LocalIndexerWorkers, along with the writer it goes to.
+  private static final class RoutedDocument {
+    final SourceDocument document;
+    final int writer;
+
+    RoutedDocument(SourceDocument document, int writer) {
+      this.document = document;
+      this.writer = writer;
+    }
+  }
+
+  // Marks the end of the input in the queue feeding the LocalIndexerWorkers.
+  private static final RoutedDocument END_OF_INPUT = new RoutedDocument(null, -1);
+
   private final class LocalIndexerThread extends Thread {
     final private Path inputFile;
-    final private IndexWriter writer;
+    final private IndexWriter[] writers;
     final private DocumentCollection collection;
+    // Byte range of the file to read, if the file is split; end is negative for the whole file.
+    final private long start;
+    final private long end;
+    // If not null, source documents are handed off to LocalIndexerWorkers through this queue instead of being
+    // indexed by this thread.
+    final private BlockingQueue<RoutedDocument> queue;
     private FileSegment fileSegment;
 
-    private LocalIndexerThread(IndexWriter writer, DocumentCollection collection, Path inputFile) {
-      this.writer = writer;
+    private LocalIndexerThread(IndexWriter[] writers, DocumentCollection collection, Path inputFile, long start,
+                               long end, BlockingQueue<RoutedDocument> queue) {
+      this.writers = writers;
       this.collection = collection;
       this.inputFile = inputFile;
+      this.start = start;
+      this.end = end;
+      this.queue = queue;
       setName(inputFile.getFileName().toString());
     }
 
@@ -154,8 +197,7 @@ public final class IndexCollection {
     @SuppressWarnings("unchecked")
     public void run() {
       try {
-        LuceneDocumentGenerator generator = (LuceneDocumentGenerator)
-            generatorClass.getDeclaredConstructor(IndexArgs.class).newInstance(args);
+        LuceneDocumentGenerator generator = queue == null ? createGenerator() : null;
 
         // We keep track of two separate counts: the total count of documents in this file segment (cnt),
         // and the number of documents in this current "batch" (batch). We update the global counter every
@@ -164,7 +206,8 @@ public final class IndexCollection {
         int cnt = 0;
         int batch = 0;
 
-        FileSegment<SourceDocument> segment = collection.createFileSegment(inputFile);
+        FileSegment<SourceDocument> segment = end < 0 ? collection.createFileSegment(inputFile) :
+            collection.createFileSegment(inputFile, start, end);
         // in order to call close() and clean up resources in case of exception
         this.fileSegment = segment;
 
@@ -175,37 +218,21 @@ public final class IndexCollection {
           }
 
           // Used for indexing distinct shardCount of a collection
-          if (args.shardCount > 1) {
-            int hash = Hashing.sha1().hashString(d.id(), Charsets.UTF_8).asInt() % args.shardCount;
-            if (hash != args.shardCurrent) {
-              counters.skipped.incrementAndGet();
-              continue;
-            }
-          }
-
-          Document doc;
-          try {
-            doc = generator.createDocument(d);
-          } catch (EmptyDocumentException e1) {
-            counters.empty.incrementAndGet();
-            continue;
-          } catch (SkippedDocumentException e2) {
+          int writer = route(d);
+          if (writer < 0) {
             counters.skipped.incrementAndGet();
             continue;
-          } catch (InvalidDocumentException e3) {
-            counters.errors.incrementAndGet();
-            continue;
           }
 
-          if (whitelistDocids != null && !whitelistDocids.contains(d.id())) {
-            counters.skipped.incrementAndGet();
+          if (queue != null) {
+            // Blocks when the workers fall behind, so that we don't read ahead of them without bound.
+            queue.put(new RoutedDocument(d, writer));
+            cnt++;
             continue;
           }
 
-          if (args.uniqueDocid) {
-            writer.updateDocument(new Term("id", d.id()), doc);
-          } else {
-            writer.addDocument(doc);
+          if (!addDocument(writers[writer], generator, d)) {
+            continue;
           }
           cnt++;
           batch++;
@@ -236,7 +263,7 @@ public final class IndexCollection {
 
         // Log at the debug level because this can be quite noisy if there are lots of file segments.
         LOG.debug(inputFile.getParent().getFileName().toString() + File.separator +
-            inputFile.getFileName().toString() + ": " + cnt + " docs added.");
+            inputFile.getFileName().toString() + ": " + cnt + (queue == null ? " docs added." : " docs queued."));
       } catch (Exception e) {
         LOG.error(Thread.currentThread().getName() + ": Unexpected Exception:", e);
       } finally {
@@ -247,15 +274,83 @@ public final class IndexCollection {
     }
   }
 
+  /**
+   * Drains the queue filled by {@link LocalIndexerThread}s, generating Lucene documents and adding them to the index,
+   * until it sees {@link #END_OF_INPUT}. Decoupling reading from document generation and analysis means that indexing
+   * throughput isn't limited by the number of file segments, e.g., for collections that come in one big file.
+   */
+  private final class LocalIndexerWorker implements Runnable {
+    final private IndexWriter[] writers;
+    final private BlockingQueue<RoutedDocument> queue;
+
+    private LocalIndexerWorker(IndexWriter[] writers, BlockingQueue<RoutedDocument> queue) {
+      this.writers = writers;
+      this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+      LuceneDocumentGenerator generator;
+      try {
+        generator = createGenerator();
+      } catch (ReflectiveOperationException e) {
+        LOG.error(Thread.currentThread().getName() + ": Unable to create generator:", e);
+        // Keep draining the queue so that the readers don't block forever.
+        generator = null;
+      }
+
+      // Same as in LocalIndexerThread, we update the global counter every 10k documents.
+      int batch = 0;
+      while (true) {
+        RoutedDocument routed;
+        try {
+          routed = queue.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        if (routed == END_OF_INPUT) {
+          break;
+        }
+        SourceDocument d = routed.document;
+
+        if (generator == null) {
+          counters.errors.incrementAndGet();
+          continue;
+        }
+
+        try {
+          if (addDocument(writers[routed.writer], generator, d)) {
+            batch++;
+            if (batch % 10000 == 0) {
+              counters.indexed.addAndGet(batch);
+              batch = 0;
+            }
+          }
+        } catch (Exception e) {
+          LOG.error(Thread.currentThread().getName() + ": Unexpected Exception indexing " + d.id() + ":", e);
+          counters.errors.incrementAndGet();
+        }
+      }
+
+      counters.indexed.addAndGet(batch);
+    }
+  }
+
   private final class SolrIndexerThread implements Runnable {
     private final Path input;
     private final DocumentCollection collection;
-    private final List<SolrInputDocument> buffer = new ArrayList<>(args.solrBatch);
+    private final BulkSender<List<SolrInputDocument>> sender;
+    private List<SolrInputDocument> buffer = new ArrayList<>(args.solrBatch);
+    // Rough size of the buffered documents, i.e., the number of chars of their field values.
+    private long bufferBytes = 0;
     private FileSegment fileSegment;
 
-    private SolrIndexerThread(DocumentCollection collection, Path input) {
+    private SolrIndexerThread(DocumentCollection collection, Path input, Executor bulkExecutor) {
       this.input = input;
       this.collection = collection;
+      this.sender = new BulkSender<>(bulkExecutor, this::send, args.bulkInFlight, args.bulkRetries, args.bulkBackoff,
+          counters.indexed, counters.failed);
     }
 
     @Override
@@ -265,12 +360,9 @@ public final class IndexCollection {
         LuceneDocumentGenerator generator = (LuceneDocumentGenerator)
             generatorClass.getDeclaredConstructor(IndexArgs.class).newInstance(args);
 
-        // We keep track of two separate counts: the total count of documents in this file segment (cnt),
-        // and the number of documents in this current "batch" (batch). We update the global counter every
-        // 10k documents: this is so that we get intermediate updates, which is informative if a collection
-        // has only one file segment; see https://github.com/castorini/anserini/issues/683
+        // We keep track of the total count of documents in this file segment (cnt); the global counter is updated
+        // as batches are acknowledged by the remote index.
         int cnt = 0;
-        int batch = 0;
 
         @SuppressWarnings("unchecked")
         FileSegment<SourceDocument> segment = (FileSegment) collection.createFileSegment(input);
@@ -284,12 +376,9 @@ public final class IndexCollection {
           }
 
           // Used for indexing distinct shardCount of a collection
-          if (args.shardCount > 1) {
-            int hash = Hashing.sha1().hashString(sourceDocument.id(), Charsets.UTF_8).asInt() % args.shardCount;
-            if (hash != args.shardCurrent) {
-              counters.skipped.incrementAndGet();
-              continue;
-            }
+          if (route(sourceDocument) < 0) {
+            counters.skipped.incrementAndGet();
+            continue;
           }
 
           Document document;
@@ -326,24 +415,19 @@ public final class IndexCollection {
             }
             if (field.numericValue() != null) {
               solrDocument.addField(field.name(), field.numericValue());
+              bufferBytes += Long.BYTES;
             } else if (field.stringValue() != null) { // For some reason, id is multi-valued with null as one of the values
               solrDocument.addField(field.name(), field.stringValue());
+              bufferBytes += field.stringValue().length();
             }
           }
 
           buffer.add(solrDocument);
-          if (buffer.size() == args.solrBatch) {
+          if (buffer.size() == args.solrBatch || bufferBytes >= args.bulkMaxBytes) {
             flush();
           }
 
           cnt++;
-          batch++;
-
-          // And the counts from this batch, reset batch counter.
-          if (batch % 10000 == 0) {
-            counters.indexed.addAndGet(batch);
-            batch = 0;
-          }
         }
 
         // If we have docs in the buffer, flush them.
@@ -351,9 +435,6 @@ public final class IndexCollection {
           flush();
         }
 
-        // Add the remaining documents.
-        counters.indexed.addAndGet(batch);
-
         int skipped = segment.getSkippedCount();
         if (skipped > 0) {
           // When indexing tweets, this is normal, because there are delete messages that are skipped over.
@@ -380,23 +461,25 @@ public final class IndexCollection {
       }
     }
 
-    private void flush() {
+    // Hands off the buffered documents to the sender; the indexed counter is updated once Solr has them.
+    private void flush() throws InterruptedException {
       if (!buffer.isEmpty()) {
-        SolrClient solrClient = null;
+        sender.submit(buffer, buffer.size());
+        buffer = new ArrayList<>(args.solrBatch);
+        bufferBytes = 0;
+      }
+    }
+
+    private int send(List<SolrInputDocument> batch) throws Exception {
+      SolrClient solrClient = solrPool.borrowObject();
+      try {
+        solrClient.add(args.solrIndex, batch, args.solrCommitWithin * 1000);
+        return 0;
+      } finally {
         try {
-          solrClient = solrPool.borrowObject();
-          solrClient.add(args.solrIndex, buffer, args.solrCommitWithin * 1000);
-          buffer.clear();
+          solrPool.returnObject(solrClient);
         } catch (Exception e) {
-          LOG.error("Error flushing documents to Solr", e);
-        } finally {
-          if (solrClient != null) {
-            try {
-              solrPool.returnObject(solrClient);
-            } catch (Exception e) {
-              LOG.error("Error returning SolrClient to pool", e);
-            }
-          }
+          LOG.error("Error returning SolrClient to pool", e);
         }
       }
     }
@@ -425,12 +508,15 @@ public final class IndexCollection {
   private final class ESIndexerThread implements Runnable {
     private final Path input;
     private final DocumentCollection collection;
+    private final BulkSender<BulkRequest> sender;
     private BulkRequest bulkRequest;
     private FileSegment fileSegment;
 
-    private ESIndexerThread(DocumentCollection collection, Path input) {
+    private ESIndexerThread(DocumentCollection collection, Path input, Executor bulkExecutor) {
       this.input = input;
       this.collection = collection;
+      this.sender = new BulkSender<>(bulkExecutor, this::send, args.bulkInFlight, args.bulkRetries, args.bulkBackoff,
+          counters.indexed, counters.failed);
       this.bulkRequest = new BulkRequest();
     }
 
@@ -441,12 +527,9 @@ public final class IndexCollection {
         LuceneDocumentGenerator generator = (LuceneDocumentGenerator)
             generatorClass.getDeclaredConstructor(IndexArgs.class).newInstance(args);
 
-        // We keep track of two separate counts: the total count of documents in this file segment (cnt),
-        // and the number of documents in this current "batch" (batch). We update the global counter every
-        // 10k documents: this is so that we get intermediate updates, which is informative if a collection
-        // has only one file segment; see https://github.com/castorini/anserini/issues/683
+        // We keep track of the total count of documents in this file segment (cnt); the global counter is updated
+        // as batches are acknowledged by the remote index.
         int cnt = 0;
-        int batch = 0;
 
         FileSegment<SourceDocument> segment = collection.createFileSegment(input);
         // in order to call close() and clean up resources in case of exception
@@ -459,12 +542,9 @@ public final class IndexCollection {
           }
 
           // Used for indexing distinct shardCount of a collection
-          if (args.shardCount > 1) {
-            int hash = Hashing.sha1().hashString(sourceDocument.id(), Charsets.UTF_8).asInt() % args.shardCount;
-            if (hash != args.shardCurrent) {
-              counters.skipped.incrementAndGet();
-              continue;
-            }
+          if (route(sourceDocument) < 0) {
+            counters.skipped.incrementAndGet();
+            continue;
           }
 
           Document document;
@@ -514,27 +594,17 @@ public final class IndexCollection {
 
           String indexName = (args.esIndex != null) ? args.esIndex : input.getFileName().toString();
           bulkRequest.add(new IndexRequest(indexName).id(sourceDocument.id()).source(builder));
-          if (bulkRequest.numberOfActions() == args.esBatch) {
+          if (bulkRequest.numberOfActions() == args.esBatch || bulkRequest.estimatedSizeInBytes() >= args.bulkMaxBytes) {
             sendBulkRequest();
           }
 
           cnt++;
-          batch++;
-
-          // And the counts from this batch, reset batch counter.
-          if (batch % 10000 == 0) {
-            counters.indexed.addAndGet(batch);
-            batch = 0;
-          }
         }
 
         if (bulkRequest.numberOfActions() != 0) {
           sendBulkRequest();
         }
 
-        // Add the remaining documents.
-        counters.indexed.addAndGet(batch);
-
         int skipped = segment.getSkippedCount();
         if (skipped > 0) {
           // When indexing tweets, this is normal, because there are delete messages that are skipped over.
@@ -561,26 +631,41 @@ public final class IndexCollection {
       }
     }
 
-    private void sendBulkRequest() {
+    // Hands off the bulk request to the sender; the indexed counter is updated once Elasticsearch has the documents.
+    private void sendBulkRequest() throws InterruptedException {
       if (bulkRequest.numberOfActions() == 0) {
         return;
       }
 
-      RestHighLevelClient esClient = null;
+      sender.submit(bulkRequest, bulkRequest.numberOfActions());
+      bulkRequest = new BulkRequest();
+    }
+
+    private int send(BulkRequest request) throws Exception {
+      RestHighLevelClient esClient = esPool.borrowObject();
       try {
-        esClient = esPool.borrowObject();
-        esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
-        bulkRequest = new BulkRequest();
-      } catch (Exception e) {
-        LOG.error("Error sending bulk requests to Elasticsearch", e);
-      } finally {
-        if (esClient != null) {
-          try {
-            esPool.returnObject(esClient);
-          } catch (Exception e) {
-            LOG.error("Error returning ES client to pool", e);
+        BulkResponse response = esClient.bulk(request, RequestOptions.DEFAULT);
+        if (!response.hasFailures()) {
+          return 0;
+        }
+
+        // Documents rejected individually (e.g., because of mapping errors) would fail again, so we don't retry them.
+        int rejected = 0;
+        for (BulkItemResponse item : response.getItems()) {
+          if (item.isFailed()) {
+            if (rejected == 0) {
+              LOG.error("Error indexing " + item.getId() + " into Elasticsearch: " + item.getFailureMessage());
+            }
+            rejected++;
           }
         }
+        return rejected;
+      } finally {
+        try {
+          esPool.returnObject(esClient);
+        } catch (Exception e) {
+          LOG.error("Error returning ES client to pool", e);
+        }
       }
     }
   }
@@ -615,10 +700,68 @@ public final class IndexCollection {
   private final Class generatorClass;
   private final DocumentCollection collection;
   private final Counters counters;
+  private final ShardRouter shardRouter;
   private Path indexPath;
   private ObjectPool<SolrClient> solrPool;
   private ObjectPool<RestHighLevelClient> esPool;
 
+  // Returns the writer a document goes to, i.e., its shard if all shards are written at once and the only writer
+  // otherwise, or -1 if it belongs to another shard than the current one. Keeps track of the documents per shard. The
+  // document is hashed once, here, and routed by the result from then on.
+  private int route(SourceDocument d) {
+    if (args.shardCount <= 1) {
+      return 0;
+    }
+
+    int shard = shardRouter.shard(d.id(), args.shardCount);
+    counters.shards.incrementAndGet(shard);
+    if (writesAllShards()) {
+      return shard;
+    }
+    return shard == args.shardCurrent ? 0 : -1;
+  }
+
+  // Whether all shards are written in a single pass, as opposed to just the current one.
+  private boolean writesAllShards() {
+    return args.shardCount > 1 && args.shardCurrent < 0;
+  }
+
+  private LuceneDocumentGenerator createGenerator() throws ReflectiveOperationException {
+    return (LuceneDocumentGenerator) generatorClass.getDeclaredConstructor(IndexArgs.class).newInstance(args);
+  }
+
+  // Generates the Lucene document and adds it to the index (of its shard, as routed by the caller), updating the
+  // counters if the document doesn't make it in. Returns whether the document was added.
+  @SuppressWarnings("unchecked")
+  private boolean addDocument(IndexWriter writer, LuceneDocumentGenerator generator, SourceDocument d)
+      throws IOException, GeneratorException {
+    Document doc;
+    try {
+      doc = generator.createDocument(d);
+    } catch (EmptyDocumentException e1) {
+      counters.empty.incrementAndGet();
+      return false;
+    } catch (SkippedDocumentException e2) {
+      counters.skipped.incrementAndGet();
+      return false;
+    } catch (InvalidDocumentException e3) {
+      counters.errors.incrementAndGet();
+      return false;
+    }
+
+    if (whitelistDocids != null && !whitelistDocids.contains(d.id())) {
+      counters.skipped.incrementAndGet();
+      return false;
+    }
+
+    if (args.uniqueDocid) {
+      writer.updateDocument(new Term("id", d.id()), doc);
+    } else {
+      writer.addDocument(doc);
+    }
+    return true;
+  }
+
   @SuppressWarnings("unchecked")
   public IndexCollection(IndexArgs args) throws Exception {
     this.args = args;
@@ -641,16 +784,23 @@ public final class IndexCollection {
     LOG.info("DocumentCollection path: " + args.input);
     LOG.info("CollectionClass: " + args.collectionClass);
     LOG.info("Generator: " + args.generatorClass);
+    LOG.info("HTML transform: " + args.htmlTransformClass);
     LOG.info("Threads: " + args.threads);
+    LOG.info("Pipeline workers: " + args.pipelineWorkers);
     LOG.info("Stemmer: " + args.stemmer);
     LOG.info("Keep stopwords? " + args.keepStopwords);
     LOG.info("Stopwords:  " + args.stopwords);
     LOG.info("Store positions? " + args.storePositions);
     LOG.info("Store docvectors? " + args.storeDocvectors);
+    LOG.info("Build forward index? " + args.forwardIndex);
     LOG.info("Store document \"contents\" field? " + args.storeContents);
     LOG.info("Store document \"raw\" field? " + args.storeRaw);
     LOG.info("Optimize (merge segments)? " + args.optimize);
     LOG.info("Whitelist: " + args.whitelist);
+    if (args.shardCount > 1) {
+      LOG.info("Shard: " + (args.shardCurrent < 0 ? "all" : args.shardCurrent) + " of " + args.shardCount +
+          " (" + args.shardRouter + ")");
+    }
 
     if (args.solr) {
       LOG.info("Indexing into Solr...");
@@ -659,6 +809,7 @@ public final class IndexCollection {
       LOG.info("Solr index: " + args.solrIndex);
       LOG.info("Solr ZooKeeper URL: " + args.zkUrl);
       LOG.info("SolrClient pool size: " + args.solrPoolSize);
+      LOG.info("Batches in flight per thread: " + args.bulkInFlight);
     } else if (args.es) {
       LOG.info("Indexing into Elasticsearch...");
       LOG.info("Elasticsearch batch size: " + args.esBatch);
@@ -669,6 +820,7 @@ public final class IndexCollection {
       LOG.info("Elasticsearch client socket timeout (in ms): " + args.esSocketTimeout);
       LOG.info("Elasticsearch pool size: " + args.esPoolSize);
       LOG.info("Elasticsearch user: " + args.esUser);
+      LOG.info("Batches in flight per thread: " + args.bulkInFlight);
     } else {
       LOG.info("Directly building Lucene indexes...");
       LOG.info("Index path: " + args.index);
@@ -695,6 +847,8 @@ public final class IndexCollection {
 
     // Initialize the collection.
     collection = (DocumentCollection) this.collectionClass.getConstructor(Path.class).newInstance(collectionPath);
+    collection.setHtmlTransform((StringTransform)
+        Class.forName("io.anserini.collection." + args.htmlTransformClass).getConstructor().newInstance());
 
     if (args.whitelist != null) {
       List<String> lines = FileUtils.readLines(new File(args.whitelist), "utf-8");
@@ -715,111 +869,213 @@ public final class IndexCollection {
       this.esPool = new GenericObjectPool<>(new ESClientFactory(), config);
     }
 
+    if (args.forwardIndex && indexPath == null) {
+      throw new IllegalArgumentException("-forwardIndex requires -index");
+    }
+
+    if (args.shardCount > 1) {
+      if (args.shardCurrent >= args.shardCount) {
+        throw new IllegalArgumentException("-shard.current must be between 0 and " + (args.shardCount - 1));
+      }
+      if (args.shardCurrent < 0 && indexPath == null) {
+        throw new IllegalArgumentException("Writing all shards at once requires -index");
+      }
+      String routerClass = args.shardRouter.contains(".") ? args.shardRouter : "io.anserini.index." + args.shardRouter;
+      this.shardRouter = (ShardRouter) Class.forName(routerClass).getDeclaredConstructor().newInstance();
+    } else {
+      this.shardRouter = null;
+    }
+
     this.counters = new Counters();
   }
 
+  // Where the i-th of n writers writes: the index itself, unless we're writing all shards at once.
+  private Path writerPath(int i, int n) {
+    return n == 1 ? indexPath : indexPath.resolve("shard" + i);
+  }
+
+  private IndexWriterConfig createIndexWriterConfig(double ramBufferSizeMB) throws IOException {
+    final CJKAnalyzer chineseAnalyzer = new CJKAnalyzer();
+    final ArabicAnalyzer arabicAnalyzer = new ArabicAnalyzer();
+    final FrenchAnalyzer frenchAnalyzer = new FrenchAnalyzer();
+    final HindiAnalyzer hindiAnalyzer = new HindiAnalyzer();
+    final BengaliAnalyzer bengaliAnalyzer = new BengaliAnalyzer();
+    final GermanAnalyzer germanAnalyzer = new GermanAnalyzer();
+    final SpanishAnalyzer spanishAnalyzer = new SpanishAnalyzer();
+    final DefaultEnglishAnalyzer analyzer;
+    if (args.keepStopwords) {
+      analyzer = DefaultEnglishAnalyzer.newStemmingInstance(args.stemmer, CharArraySet.EMPTY_SET);
+    } else if (args.stopwords != null) {
+      final List<String> stopWords = FileUtils.readLines(new File(args.stopwords), "utf-8");
+      final CharArraySet stopWordsSet = new CharArraySet(stopWords, false);
+      analyzer = DefaultEnglishAnalyzer.newStemmingInstance(args.stemmer, CharArraySet.unmodifiableSet(stopWordsSet));
+    } else {
+      analyzer = DefaultEnglishAnalyzer.newStemmingInstance(args.stemmer);
+    }
+    final TweetAnalyzer tweetAnalyzer = new TweetAnalyzer(args.tweetStemming);
+
+    final IndexWriterConfig config;
+    if (args.collectionClass.equals("TweetCollection")) {
+      config = new IndexWriterConfig(tweetAnalyzer);
+    } else if (args.language.equals("zh")) {
+      config = new IndexWriterConfig(chineseAnalyzer);
+    } else if (args.language.equals("ar")) {
+      config = new IndexWriterConfig(arabicAnalyzer);
+    } else if (args.language.equals("fr")) {
+      config = new IndexWriterConfig(frenchAnalyzer);
+    } else if (args.language.equals("hi")) {
+      config = new IndexWriterConfig(hindiAnalyzer);
+    } else if (args.language.equals("bn")) {
+      config = new IndexWriterConfig(bengaliAnalyzer);
+    } else if (args.language.equals("de")) {
+      config = new IndexWriterConfig(germanAnalyzer);
+    } else if (args.language.equals("es")) {
+      config = new IndexWriterConfig(spanishAnalyzer);
+    } else {
+      config = new IndexWriterConfig(analyzer);
+    }
+    if (args.bm25Accurate) {
+      config.setSimilarity(new AccurateBM25Similarity()); // necessary during indexing as the norm used in BM25 is already determined at index time.
+    } else {
+      config.setSimilarity(new BM25Similarity());
+    }
+    config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+    config.setRAMBufferSizeMB(ramBufferSizeMB);
+    config.setUseCompoundFile(false);
+    config.setMergeScheduler(new ConcurrentMergeScheduler());
+
+    return config;
+  }
+
   public Counters run() throws IOException {
     final long start = System.nanoTime();
     LOG.info("============ Indexing Collection ============");
 
     int numThreads = args.threads;
-    IndexWriter writer = null;
+    IndexWriter[] writers = null;
 
-    // Used for LocalIndexThread
+    // Used for LocalIndexThread. There's a writer per shard if we're writing all shards at once, each with its share of
+    // the memory buffer; otherwise, there's just one.
     if (indexPath != null) {
-      final Directory dir = FSDirectory.open(indexPath);
-      final CJKAnalyzer chineseAnalyzer = new CJKAnalyzer();
-      final ArabicAnalyzer arabicAnalyzer = new ArabicAnalyzer();
-      final FrenchAnalyzer frenchAnalyzer = new FrenchAnalyzer();
-      final HindiAnalyzer hindiAnalyzer = new HindiAnalyzer();
-      final BengaliAnalyzer bengaliAnalyzer = new BengaliAnalyzer();
-      final GermanAnalyzer germanAnalyzer = new GermanAnalyzer();
-      final SpanishAnalyzer spanishAnalyzer = new SpanishAnalyzer();
-      final DefaultEnglishAnalyzer analyzer;
-      if (args.keepStopwords) {
-        analyzer = DefaultEnglishAnalyzer.newStemmingInstance(args.stemmer, CharArraySet.EMPTY_SET);
-      } else if (args.stopwords != null) {
-        final List<String> stopWords = FileUtils.readLines(new File(args.stopwords), "utf-8");
-        final CharArraySet stopWordsSet = new CharArraySet(stopWords, false);
-        analyzer = DefaultEnglishAnalyzer.newStemmingInstance(args.stemmer, CharArraySet.unmodifiableSet(stopWordsSet));
-      } else {
-        analyzer = DefaultEnglishAnalyzer.newStemmingInstance(args.stemmer);
-      }
-      final TweetAnalyzer tweetAnalyzer = new TweetAnalyzer(args.tweetStemming);
-
-      final IndexWriterConfig config;
-      if (args.collectionClass.equals("TweetCollection")) {
-        config = new IndexWriterConfig(tweetAnalyzer);
-      } else if (args.language.equals("zh")) {
-        config = new IndexWriterConfig(chineseAnalyzer);
-      } else if (args.language.equals("ar")) {
-        config = new IndexWriterConfig(arabicAnalyzer);
-      } else if (args.language.equals("fr")) {
-        config = new IndexWriterConfig(frenchAnalyzer);
-      } else if (args.language.equals("hi")) {
-        config = new IndexWriterConfig(hindiAnalyzer);
-      } else if (args.language.equals("bn")) {
-        config = new IndexWriterConfig(bengaliAnalyzer);
-      } else if (args.language.equals("de")) {
-        config = new IndexWriterConfig(germanAnalyzer);
-      } else if (args.language.equals("es")) {
-        config = new IndexWriterConfig(spanishAnalyzer);
-      } else {
-        config = new IndexWriterConfig(analyzer);
+      writers = new IndexWriter[writesAllShards() ? args.shardCount : 1];
+      for (int i = 0; i < writers.length; i++) {
+        Directory dir = FSDirectory.open(writerPath(i, writers.length));
+        writers[i] = new IndexWriter(dir, createIndexWriterConfig((double) args.memorybufferSize / writers.length));
       }
-      if (args.bm25Accurate) {
-        config.setSimilarity(new AccurateBM25Similarity()); // necessary during indexing as the norm used in BM25 is already determined at index time.
-      } else {
-        config.setSimilarity(new BM25Similarity());
-      }
-      config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
-      config.setRAMBufferSizeMB(args.memorybufferSize);
-      config.setUseCompoundFile(false);
-      config.setMergeScheduler(new ConcurrentMergeScheduler());
-
-      writer = new IndexWriter(dir, config);
     }
 
     final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(numThreads);
     LOG.info("Thread pool with " + numThreads + " threads initialized.");
 
+    // Batches for Solr and Elasticsearch are sent in the background, with a bounded number in flight per thread.
+    ExecutorService bulkExecutor = null;
+    if (args.solr || args.es) {
+      bulkExecutor = Executors.newFixedThreadPool(numThreads * Math.max(1, args.bulkInFlight));
+    }
+
+    // With a pipeline, the threads above only read file segments, and a separate pool generates and adds documents.
+    BlockingQueue<RoutedDocument> queue = null;
+    ThreadPoolExecutor workers = null;
+    if (writers != null && args.pipelineWorkers > 0) {
+      queue = new ArrayBlockingQueue<>(args.pipelineQueueSize);
+      workers = (ThreadPoolExecutor) Executors.newFixedThreadPool(args.pipelineWorkers);
+      for (int i = 0; i < args.pipelineWorkers; i++) {
+        workers.execute(new LocalIndexerWorker(writers, queue));
+      }
+      workers.shutdown();
+      LOG.info("Pipeline with " + args.pipelineWorkers + " workers and queue size " + args.pipelineQueueSize +
+          " initialized.");
+    }
+
     LOG.info("Initializing collection in " + collectionPath.toString());
     final List segmentPaths = collection.getSegmentPaths();
     final int segmentCnt = segmentPaths.size();
     LOG.info(String.format("%,d %s found", segmentCnt, (segmentCnt == 1 ? "file" : "files" )));
     LOG.info("Starting to index...");
 
+    // Large files are split into several tasks if the collection supports it, so we may have more tasks than files.
+    final long splitSize = args.splitSize * 1024L * 1024L;
+    int taskCnt = 0;
     for (int i = 0; i < segmentCnt; i++) {
+      Path path = (Path) segmentPaths.get(i);
       if (args.solr) {
-        executor.execute(new SolrIndexerThread(collection, (Path) segmentPaths.get(i)));
+        executor.execute(new SolrIndexerThread(collection, path, bulkExecutor));
+        taskCnt++;
       } else if (args.es) {
-        executor.execute(new ESIndexerThread(collection, (Path) segmentPaths.get(i)));
+        executor.execute(new ESIndexerThread(collection, path, bulkExecutor));
+        taskCnt++;
+      } else if (splitSize > 0 && Files.size(path) > splitSize && collection.isSplittable(path)) {
+        long size = Files.size(path);
+        for (long offset = 0; offset < size; offset += splitSize) {
+          executor.execute(new LocalIndexerThread(writers, collection, path, offset,
+              Math.min(offset + splitSize, size), queue));
+          taskCnt++;
+        }
       } else {
-        executor.execute(new LocalIndexerThread(writer, collection, (Path) segmentPaths.get(i)));
+        executor.execute(new LocalIndexerThread(writers, collection, path, 0, -1, queue));
+        taskCnt++;
       }
     }
+    if (taskCnt != segmentCnt) {
+      LOG.info(String.format("Files split into %,d segments", taskCnt));
+    }
 
     executor.shutdown();
 
     try {
       // Wait for existing tasks to terminate
       while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
-        if (segmentCnt == 1) {
+        if (taskCnt == 1) {
           LOG.info(String.format("%,d documents indexed", counters.indexed.get()));
         } else {
           LOG.info(String.format("%.2f%% of files completed, %,d documents indexed",
-              (double) executor.getCompletedTaskCount() / segmentCnt * 100.0d, counters.indexed.get()));
+              (double) executor.getCompletedTaskCount() / taskCnt * 100.0d, counters.indexed.get()));
+        }
+        if (args.shardCount > 1) {
+          LOG.info("Documents per shard: " + counters.shards);
         }
       }
     } catch (InterruptedException ie) {
       // (Re-)Cancel if current thread also interrupted
       executor.shutdownNow();
+      if (workers != null) {
+        workers.shutdownNow();
+      }
       // Preserve interrupt status
       Thread.currentThread().interrupt();
     }
 
-    if (segmentCnt != executor.getCompletedTaskCount()) {
-      throw new RuntimeException("totalFiles = " + segmentCnt +
+    if (workers != null && !workers.isTerminated()) {
+      try {
+        // All segments have been read, so tell each worker to stop once it's done with what's left in the queue.
+        for (int i = 0; i < args.pipelineWorkers; i++) {
+          queue.put(END_OF_INPUT);
+        }
+        while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+          LOG.info(String.format("%,d documents left in queue, %,d documents indexed",
+              queue.size(), counters.indexed.get()));
+        }
+      } catch (InterruptedException ie) {
+        workers.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    if (bulkExecutor != null) {
+      // Wait for the batches still in flight, so that the counters are final before the commit.
+      bulkExecutor.shutdown();
+      try {
+        while (!bulkExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+          LOG.info(String.format("Waiting for batches in flight, %,d documents indexed", counters.indexed.get()));
+        }
+      } catch (InterruptedException ie) {
+        bulkExecutor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    if (taskCnt != executor.getCompletedTaskCount()) {
+      throw new RuntimeException("totalTasks = " + taskCnt +
           " is not equal to completedTaskCount =  " + executor.getCompletedTaskCount());
     }
 
@@ -828,7 +1084,10 @@ public final class IndexCollection {
     if (args.solr || args.es) {
       numIndexed = counters.indexed.get();
     } else {
-      numIndexed = writer.getDocStats().maxDoc;
+      numIndexed = 0;
+      for (IndexWriter writer : writers) {
+        numIndexed += writer.getDocStats().maxDoc;
+      }
     }
 
     // Do a final commit
@@ -848,22 +1107,29 @@ public final class IndexCollection {
       esPool.close();
     }
 
-    try {
-      if (writer != null) {
-        writer.commit();
-        if (args.optimize) {
-          writer.forceMerge(1);
+    if (writers != null) {
+      for (IndexWriter writer : writers) {
+        try {
+          writer.commit();
+          if (args.optimize) {
+            writer.forceMerge(1);
+          }
+        } finally {
+          try {
+            writer.close();
+          } catch (IOException e) {
+            // It is possible that this happens... but nothing much we can do at this point,
+            // so just log the error and move on.
+            LOG.error(e);
+          }
         }
       }
-    } finally {
-      try {
-        if (writer != null) {
-          writer.close();
-        }
-      } catch (IOException e) {
-        // It is possible that this happens... but nothing much we can do at this point,
-        // so just log the error and move on.
-        LOG.error(e);
+    }
+
+    if (writers != null && args.forwardIndex) {
+      LOG.info("============ Building Forward Index ============");
+      for (int i = 0; i < writers.length; i++) {
+        ForwardIndex.build(writerPath(i, writers.length), IndexArgs.CONTENTS);
       }
     }
 
@@ -878,6 +1144,12 @@ public final class IndexCollection {
     LOG.info(String.format("empty:       %,12d", counters.empty.get()));
     LOG.info(String.format("skipped:     %,12d", counters.skipped.get()));
     LOG.info(String.format("errors:      %,12d", counters.errors.get()));
+    if (args.solr || args.es) {
+      LOG.info(String.format("failed:      %,12d", counters.failed.get()));
+    }
+    for (int i = 0; i < counters.shards.length(); i++) {
+      LOG.info(String.format("shard %-5d  %,12d%s", i, counters.shards.get(i), i == args.shardCurrent ? " *" : ""));
+    }
 
     final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     LOG.info(String.format("Total %,d documents indexed in %s", numIndexed,
@@ -26,25 +26,28 @@ import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiTerms;
 import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.similarities.BM25Similarity;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -55,10 +58,17 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Class containing a bunch of static helper methods for accessing a Lucene inverted index.
@@ -167,6 +177,199 @@ public class IndexReaderUtils {
     }
   }
 
+  /**
+   * A cursor over the terms of a field. Unlike {@link #getTerms(IndexReader)}, nothing is allocated per term: the
+   * cursor reads the statistics of the current term straight off the terms dictionary, and the term is only decoded
+   * into a string if asked for.
+   */
+  public static class TermCursor {
+    private final TermsEnum termsEnum;
+    private BytesRef term;
+    private boolean exhausted = false;
+
+    private TermCursor(TermsEnum termsEnum) {
+      this.termsEnum = termsEnum;
+    }
+
+    /**
+     * Advances to the next term.
+     *
+     * @return {@code false} if there are no more terms
+     * @throws IOException if error encountered reading the terms dictionary
+     */
+    public boolean next() throws IOException {
+      // A TermsEnum mustn't be advanced past its end.
+      if (exhausted) {
+        return false;
+      }
+      term = termsEnum.next();
+      exhausted = term == null;
+      return !exhausted;
+    }
+
+    /**
+     * Returns the bytes of the current term. The bytes are only valid until the cursor is advanced.
+     *
+     * @return the bytes of the current term
+     */
+    public BytesRef getTermBytes() {
+      return term;
+    }
+
+    /**
+     * Returns the string representation of the current term.
+     *
+     * @return the string representation of the current term
+     */
+    public String getTerm() {
+      return term.utf8ToString();
+    }
+
+    /**
+     * Returns the number of documents containing the current term.
+     *
+     * @return the number of documents containing the current term
+     * @throws IOException if error encountered reading the terms dictionary
+     */
+    public int getDF() throws IOException {
+      return termsEnum.docFreq();
+    }
+
+    /**
+     * Returns the total number of occurrences of the current term across all documents.
+     *
+     * @return the total number of occurrences of the current term across all documents
+     * @throws IOException if error encountered reading the terms dictionary
+     */
+    public long getTotalTF() throws IOException {
+      return termsEnum.totalTermFreq();
+    }
+
+    /**
+     * Returns a cursor over the postings of the current term.
+     *
+     * @param positions whether or not to load positions
+     * @return cursor over the postings of the current term
+     * @throws IOException if error encountered reading the postings
+     */
+    public PostingsCursor postings(boolean positions) throws IOException {
+      return new PostingsCursor(termsEnum.postings(null, positions ? PostingsEnum.POSITIONS : PostingsEnum.FREQS),
+          positions);
+    }
+  }
+
+  /**
+   * A cursor over a postings list. Unlike {@link #getPostingsList(IndexReader, String)}, the postings are never
+   * materialized: positions are only read if asked for, into a buffer that is reused from one posting to the next, and
+   * the postings can be exported in chunks into primitive arrays supplied by the caller.
+   */
+  public static class PostingsCursor {
+    private final PostingsEnum postingsEnum;
+    private final boolean loadPositions;
+    private int[] positions = new int[16];
+
+    private PostingsCursor(PostingsEnum postingsEnum, boolean loadPositions) {
+      this.postingsEnum = postingsEnum;
+      this.loadPositions = loadPositions;
+    }
+
+    /**
+     * Advances to the next posting.
+     *
+     * @return {@code false} if there are no more postings
+     * @throws IOException if error encountered reading the postings
+     */
+    public boolean next() throws IOException {
+      if (postingsEnum.docID() == DocIdSetIterator.NO_MORE_DOCS ||
+          postingsEnum.nextDoc() == DocIdSetIterator.NO_MORE_DOCS) {
+        return false;
+      }
+
+      if (loadPositions) {
+        int tf = postingsEnum.freq();
+        if (positions.length < tf) {
+          positions = new int[ArrayUtil.oversize(tf, Integer.BYTES)];
+        }
+        for (int j = 0; j < tf; j++) {
+          positions[j] = postingsEnum.nextPosition();
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Returns the internal Lucene docid of the current posting.
+     *
+     * @return the internal Lucene docid of the current posting
+     */
+    public int getDocid() {
+      return postingsEnum.docID();
+    }
+
+    /**
+     * Returns the term frequency of the current posting.
+     *
+     * @return the term frequency of the current posting
+     * @throws IOException if error encountered reading the postings
+     */
+    public int getTF() throws IOException {
+      return postingsEnum.freq();
+    }
+
+    /**
+     * Returns the positions of the current posting, if the cursor loads positions. The array is reused from one
+     * posting to the next, and only its first {@link #getTF()} entries are meaningful.
+     *
+     * @return buffer holding the positions of the current posting
+     */
+    public int[] getPositions() {
+      if (!loadPositions) {
+        throw new IllegalStateException("Cursor doesn't load positions");
+      }
+      return positions;
+    }
+
+    /**
+     * Reads the next chunk of postings into the given arrays, e.g., to export a postings list that doesn't fit in
+     * memory a chunk at a time. Positions aren't read, even if the cursor loads positions.
+     *
+     * @param docids array to fill with internal Lucene docids
+     * @param tfs array to fill with term frequencies, or {@code null} to skip them
+     * @return number of postings read; zero if there are no more postings
+     * @throws IOException if error encountered reading the postings
+     */
+    public int nextChunk(int[] docids, int[] tfs) throws IOException {
+      int n = 0;
+      while (n < docids.length && postingsEnum.docID() != DocIdSetIterator.NO_MORE_DOCS) {
+        int docid = postingsEnum.nextDoc();
+        if (docid == DocIdSetIterator.NO_MORE_DOCS) {
+          break;
+        }
+        docids[n] = docid;
+        if (tfs != null) {
+          tfs[n] = postingsEnum.freq();
+        }
+        n++;
+      }
+      return n;
+    }
+  }
+
+  /**
+   * Callback for {@link #scanTerms(IndexReader, String, int, TermVisitor)}.
+   */
+  @FunctionalInterface
+  public interface TermVisitor {
+    /**
+     * Visits a term of a segment.
+     *
+     * @param context segment
+     * @param termsEnum terms of the segment, positioned on the term; must not be repositioned
+     * @throws IOException if error encountered reading the index
+     */
+    void visit(LeafReaderContext context, TermsEnum termsEnum) throws IOException;
+  }
+
   /**
    * Creates an {@link IndexReader} given a path.
    *
@@ -246,35 +449,33 @@ public class IndexReaderUtils {
    * @throws IOException if error encountered during access to index
    */
   public static Iterator<IndexTerm> getTerms(IndexReader reader) throws IOException {
+    TermCursor cursor = getTermCursor(reader);
     return new Iterator<>() {
-      private final TermsEnum curTerm = MultiTerms.getTerms(reader, "contents").iterator();
-      private BytesRef bytesRef = null;
+      // The cursor runs one term ahead, so that hasNext() doesn't have to seek back.
+      private boolean positioned = false;
+      private boolean hasNext;
 
       @Override
       public boolean hasNext() {
-        try {
-          // Make sure iterator is positioned.
-          if (this.bytesRef == null) {
-            return true;
-          }
-
-          BytesRef originalPos = BytesRef.deepCopyOf(this.bytesRef);
-          if (this.curTerm.next() == null) {
-            return false;
-          } else {
-            // Move curTerm back to original position.
-            return this.curTerm.seekExact(originalPos);
+        if (!positioned) {
+          try {
+            hasNext = cursor.next();
+          } catch (IOException e) {
+            hasNext = false;
           }
-        } catch (IOException e) {
-          return false;
+          positioned = true;
         }
+        return hasNext;
       }
 
       @Override
       public IndexTerm next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        positioned = false;
         try {
-          this.bytesRef = this.curTerm.next();
-          return new IndexTerm(this.curTerm);
+          return new IndexTerm(cursor.termsEnum);
         } catch (IOException e) {
           return null;
         }
@@ -282,6 +483,76 @@ public class IndexReaderUtils {
     };
   }
 
+  /**
+   * Returns a cursor over all terms in the collection.
+   *
+   * @param reader index reader
+   * @return cursor over the terms, positioned before the first term
+   * @throws IOException if error encountered during access to index
+   */
+  public static TermCursor getTermCursor(IndexReader reader) throws IOException {
+    return getTermCursor(reader, IndexArgs.CONTENTS);
+  }
+
+  /**
+   * Returns a cursor over all terms in a field.
+   *
+   * @param reader index reader
+   * @param field field
+   * @return cursor over the terms, positioned before the first term
+   * @throws IOException if error encountered during access to index
+   */
+  public static TermCursor getTermCursor(IndexReader reader, String field) throws IOException {
+    Terms terms = MultiTerms.getTerms(reader, field);
+    return new TermCursor(terms == null ? TermsEnum.EMPTY : terms.iterator());
+  }
+
+  /**
+   * Visits every term of every segment of a field, scanning segments in parallel. A term occurring in several segments
+   * is visited once per segment, with the statistics of that segment; segments are visited concurrently, but the terms
+   * of each segment are visited in order from a single thread.
+   *
+   * @param reader index reader
+   * @param field field
+   * @param threads number of threads
+   * @param visitor callback, which must be thread-safe
+   * @throws IOException if error encountered during access to index, or thrown by the visitor
+   */
+  public static void scanTerms(IndexReader reader, String field, int threads, TermVisitor visitor)
+      throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (LeafReaderContext context : reader.leaves()) {
+        futures.add(executor.submit(() -> {
+          Terms terms = context.reader().terms(field);
+          if (terms == null) {
+            return null;
+          }
+          TermsEnum termsEnum = terms.iterator();
+          while (termsEnum.next() != null) {
+            visitor.visit(context, termsEnum);
+          }
+          return null;
+        }));
+      }
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   /**
    * Returns the postings list for an unanalyzed term. That is, the method analyzes the term before looking up its
    * postings list.
@@ -324,7 +595,7 @@ public class IndexReaderUtils {
       Term t = new Term(IndexArgs.CONTENTS, analyzedTerm);
       PostingsEnum postingsEnum = MultiTerms.getTermPostingsEnum(reader, IndexArgs.CONTENTS, t.bytes());
 
-      List<Posting> postingsList = new ArrayList<>();
+      List<Posting> postingsList = new ArrayList<>(reader.docFreq(t));
       while (postingsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
         postingsList.add(new Posting(postingsEnum));
       }
@@ -349,6 +620,54 @@ public class IndexReaderUtils {
     return getPostingsList(reader, term, analyzer);
   }
 
+  /**
+   * Returns a cursor over the postings list of a term.
+   *
+   * @param reader index reader
+   * @param term term
+   * @param analyze whether or not the method should analyze the term first
+   * @param positions whether or not the cursor should load positions
+   * @return cursor over the postings, positioned before the first posting, or {@code null} if the term doesn't exist
+   * @throws IOException if error encountered during access to index
+   */
+  public static PostingsCursor getPostingsCursor(IndexReader reader, String term, boolean analyze, boolean positions)
+      throws IOException {
+    return _getPostingsCursor(reader, analyze ? AnalyzerUtils.analyze(term).get(0) : term, positions);
+  }
+
+  private static PostingsCursor _getPostingsCursor(IndexReader reader, String analyzedTerm, boolean positions)
+      throws IOException {
+    PostingsEnum postingsEnum = MultiTerms.getTermPostingsEnum(reader, IndexArgs.CONTENTS,
+        new BytesRef(analyzedTerm), positions ? PostingsEnum.POSITIONS : PostingsEnum.FREQS);
+    return postingsEnum == null ? null : new PostingsCursor(postingsEnum, positions);
+  }
+
+  /**
+   * Returns the postings list of a term as two parallel arrays, the internal Lucene docids and the term frequencies,
+   * without positions. This is much more compact than {@link #getPostingsList(IndexReader, String, boolean)}, and is
+   * meant for exporting postings in bulk.
+   *
+   * @param reader index reader
+   * @param term term
+   * @param analyze whether or not the method should analyze the term first
+   * @return docids and term frequencies, or {@code null} if the term doesn't exist
+   * @throws IOException if error encountered during access to index
+   */
+  public static int[][] getPostingsArrays(IndexReader reader, String term, boolean analyze) throws IOException {
+    String analyzedTerm = analyze ? AnalyzerUtils.analyze(term).get(0) : term;
+    PostingsCursor cursor = _getPostingsCursor(reader, analyzedTerm, false);
+    if (cursor == null) {
+      return null;
+    }
+
+    // The df counts deleted documents too, so it's an upper bound on the number of postings we'll get.
+    int df = reader.docFreq(new Term(IndexArgs.CONTENTS, analyzedTerm));
+    int[] docids = new int[df];
+    int[] tfs = new int[df];
+    int n = cursor.nextChunk(docids, tfs);
+    return new int[][] {ArrayUtil.copyOfSubArray(docids, 0, n), ArrayUtil.copyOfSubArray(tfs, 0, n)};
+  }
+
   /**
    * Returns the document vector for a particular document as a map of terms to term frequencies. Note that this
    * method explicitly returns {@code null} if the document does not exist (as opposed to an empty map), so that the
@@ -491,26 +810,24 @@ public class IndexReaderUtils {
    */
   public static float getBM25AnalyzedTermWeightWithParameters(IndexReader reader, String docid, String term, float k1, float b)
       throws IOException {
-    // We compute the BM25 score by issuing a single-term query with an additional filter clause that restricts
-    // consideration to only the docid in question, and then returning the retrieval score.
-    //
-    // This implementation is inefficient, but as the advantage of using the existing Lucene similarity, which means
-    // that we don't need to copy the scoring function and keep it in sync wrt code updates.
-
-    IndexSearcher searcher = new IndexSearcher(reader);
-    searcher.setSimilarity(new BM25Similarity(k1, b));
-
-    Query filterQuery = new ConstantScoreQuery(new TermQuery(new Term(IndexArgs.ID, docid)));
-    Query termQuery = new TermQuery(new Term(IndexArgs.CONTENTS, term));
-    BooleanQuery.Builder builder = new BooleanQuery.Builder();
-    builder.add(filterQuery, BooleanClause.Occur.MUST);
-    builder.add(termQuery, BooleanClause.Occur.MUST);
-    Query finalQuery = builder.build();
-    TopDocs rs = searcher.search(finalQuery, 1);
+    return getBM25AnalyzedTermWeightsWithParameters(reader, new String[] {docid}, term, k1, b)[0];
+  }
 
-    // The BM25 weight is the score of the first (and only) hit, but remember to remove 1 for the ConstantScoreQuery.
-    // If we get zero results, indicates that term isn't found in the document.
-    return rs.scoreDocs.length == 0 ? 0 : rs.scoreDocs[0].score - 1;
+  /**
+   * Computes the BM25 weights of an analyzed term in a number of documents.
+   *
+   * @param reader index reader
+   * @param docids collection docids
+   * @param term analyzed term
+   * @param k1 k1 setting for BM25
+   * @param b b setting for BM25
+   * @return BM25 weights of the term in the specified documents, with zeros for documents not found
+   * @throws IOException if error encountered during scoring
+   */
+  public static float[] getBM25AnalyzedTermWeightsWithParameters(IndexReader reader, String[] docids, String term,
+                                                                 float k1, float b) throws IOException {
+    return computeLuceneDocumentScores(reader, convertDocidsToLuceneDocids(reader, docids),
+        new TermQuery(new Term(IndexArgs.CONTENTS, term)), new BM25Similarity(k1, b));
   }
 
   /**
@@ -596,31 +913,100 @@ public class IndexReaderUtils {
   public static float computeQueryDocumentScoreWithSimilarityAndAnalyzer(
       IndexReader reader, String docid, String q, Similarity similarity, Analyzer analyzer)
       throws IOException {
-    // We compute the query-document score by issuing the query with an additional filter clause that restricts
-    // consideration to only the docid in question, and then returning the retrieval score.
-    //
-    // This implementation is inefficient, but as the advantage of using the existing Lucene similarity, which means
-    // that we don't need to copy the scoring function and keep it in sync wrt code updates.
+    return computeQueryDocumentScoresWithSimilarityAndAnalyzer(reader, new String[] {docid}, q, similarity,
+        analyzer)[0];
+  }
 
-    IndexSearcher searcher = new IndexSearcher(reader);
-    searcher.setSimilarity(similarity);
+  /**
+   * Computes the BM25 scores of a number of documents with respect to a query. Assumes default BM25 parameter settings
+   * and Anserini's default analyzer.
+   *
+   * @param reader index reader
+   * @param docids docids of the documents to score
+   * @param q query
+   * @return the scores of the documents with respect to the query, with zeros for documents not found
+   * @throws IOException if error encountered during scoring
+   */
+  public static float[] computeQueryDocumentScores(IndexReader reader, String[] docids, String q) throws IOException {
+    SearchArgs args = new SearchArgs();
+    return computeQueryDocumentScoresWithSimilarityAndAnalyzer(reader, docids, q,
+        new BM25Similarity(Float.parseFloat(args.bm25_k1[0]), Float.parseFloat(args.bm25_b[0])),
+        IndexCollection.DEFAULT_ANALYZER);
+  }
 
+  /**
+   * Computes the scores of a number of documents with respect to a query given a scoring function and an analyzer.
+   *
+   * @param reader index reader
+   * @param docids docids of the documents to score
+   * @param q query
+   * @param similarity scoring function
+   * @param analyzer analyzer to use
+   * @return the scores of the documents with respect to the query, with zeros for documents not found
+   * @throws IOException if error encountered during scoring
+   */
+  public static float[] computeQueryDocumentScoresWithSimilarityAndAnalyzer(
+      IndexReader reader, String[] docids, String q, Similarity similarity, Analyzer analyzer)
+      throws IOException {
     Query query = new BagOfWordsQueryGenerator().buildQuery(IndexArgs.CONTENTS, analyzer, q);
+    return computeLuceneDocumentScores(reader, convertDocidsToLuceneDocids(reader, docids), query, similarity);
+  }
 
-    Query filterQuery = new ConstantScoreQuery(new TermQuery(new Term(IndexArgs.ID, docid)));
-    BooleanQuery.Builder builder = new BooleanQuery.Builder();
-    builder.add(filterQuery, BooleanClause.Occur.MUST);
-    builder.add(query, BooleanClause.Occur.MUST);
-    Query finalQuery = builder.build();
+  /**
+   * Computes the scores of a number of documents with respect to a query given a scoring function, as they would be
+   * scored in a search, but without searching: the postings of the query terms are advanced straight to each
+   * document, in increasing docid order, and the similarity is set up once for all documents.
+   *
+   * @param reader index reader
+   * @param luceneDocids Lucene internal docids of the documents to score; negative ones are ignored
+   * @param query query
+   * @param similarity scoring function
+   * @return the scores of the documents with respect to the query, with zeros for documents that don't match
+   * @throws IOException if error encountered during scoring
+   */
+  public static float[] computeLuceneDocumentScores(IndexReader reader, int[] luceneDocids, Query query,
+                                                    Similarity similarity) throws IOException {
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setSimilarity(similarity);
+    Weight weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE, 1.0f);
 
-    TopDocs rs = searcher.search(finalQuery, 1);
+    Integer[] order = new Integer[luceneDocids.length];
+    for (int i = 0; i < luceneDocids.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparingInt(i -> luceneDocids[i]));
+
+    float[] scores = new float[luceneDocids.length];
+    List<LeafReaderContext> leaves = reader.leaves();
+    int leaf = -1;
+    Scorer scorer = null;
+    for (int i : order) {
+      int docid = luceneDocids[i];
+      if (docid < 0 || docid >= reader.maxDoc()) {
+        continue;
+      }
+      int subIndex = ReaderUtil.subIndex(docid, leaves);
+      if (subIndex != leaf) {
+        leaf = subIndex;
+        scorer = weight.scorer(leaves.get(leaf));
+      }
+      if (scorer == null) {
+        // No query term occurs in this segment.
+        continue;
+      }
 
-    // We want the score of the first (and only) hit, but remember to remove 1 for the ConstantScoreQuery.
-    // If we get zero results, indicates that term isn't found in the document.
-    return rs.scoreDocs.length == 0 ? 0 : rs.scoreDocs[0].score - 1;
-  }
+      int target = docid - leaves.get(leaf).docBase;
+      DocIdSetIterator iterator = scorer.iterator();
+      if (iterator.docID() < target) {
+        iterator.advance(target);
+      }
+      if (iterator.docID() == target) {
+        scores[i] = scorer.score();
+      }
+    }
 
-  // TODO: Write a variant of computeQueryDocumentScore that takes a set of documents.
+    return scores;
+  }
 
   /**
    * Converts a collection docid to a Lucene internal docid.
@@ -631,23 +1017,31 @@ public class IndexReaderUtils {
    */
   public static int convertDocidToLuceneDocid(IndexReader reader, String docid) {
     try {
-      IndexSearcher searcher = new IndexSearcher(reader);
-      Query q = new TermQuery(new Term(IndexArgs.ID, docid));
-      TopDocs rs = searcher.search(q, 1);
-      ScoreDoc[] hits = rs.scoreDocs;
-
-      if (hits == null || hits.length == 0) {
-        // Silently eat the error and return -1
-        return -1;
-      }
-
-      return hits[0].doc;
+      return new DocidMapper(reader).getLuceneDocid(docid);
     } catch (IOException e) {
       // Silently eat the error and return -1
       return -1;
     }
   }
 
+  /**
+   * Converts collection docids to Lucene internal docids, all at once.
+   *
+   * @param reader index reader
+   * @param docids collection docids
+   * @return corresponding Lucene internal docids, with -1 for docids not found
+   */
+  public static int[] convertDocidsToLuceneDocids(IndexReader reader, String[] docids) {
+    try {
+      return new DocidMapper(reader).getLuceneDocids(docids);
+    } catch (IOException e) {
+      // Silently eat the error and return all -1
+      int[] luceneDocids = new int[docids.length];
+      Arrays.fill(luceneDocids, -1);
+      return luceneDocids;
+    }
+  }
+
   /**
    * Converts a Lucene internal docid to a collection docid.
    *
@@ -656,17 +1050,30 @@ public class IndexReaderUtils {
    * @return corresponding collection docid, or <code>null</code> if not found.
    */
   public static String convertLuceneDocidToDocid(IndexReader reader, int docid) {
-    if (docid >= reader.maxDoc())
-      return null;
-
     try {
-      return reader.document(docid).get(IndexArgs.ID);
+      return new DocidMapper(reader).getDocid(docid);
     } catch (IOException e) {
       // Eat any exceptions and just return null.
       return null;
     }
   }
 
+  /**
+   * Converts Lucene internal docids to collection docids, all at once.
+   *
+   * @param reader index reader
+   * @param docids Lucene internal docids
+   * @return corresponding collection docids, with nulls for docids not found
+   */
+  public static String[] convertLuceneDocidsToDocids(IndexReader reader, int[] docids) {
+    try {
+      return new DocidMapper(reader).getDocids(docids);
+    } catch (IOException e) {
+      // Eat any exceptions and just return nulls.
+      return new String[docids.length];
+    }
+  }
+
   /**
    * Returns index statistics.
    *
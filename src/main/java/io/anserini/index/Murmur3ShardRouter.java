@@ -0,0 +1,32 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Default {@link ShardRouter}, which hashes the UTF-16 chars of the docid with 32-bit MurmurHash3. Unlike hashing the
+ * encoded string, this doesn't need to allocate a byte array for every document.
+ */
+public class Murmur3ShardRouter implements ShardRouter {
+  private static final HashFunction HASH = Hashing.murmur3_32();
+
+  @Override
+  public int shard(String docid, int shardCount) {
+    return Math.floorMod(HASH.hashUnencodedChars(docid).asInt(), shardCount);
+  }
+}
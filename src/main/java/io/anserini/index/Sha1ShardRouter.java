@@ -0,0 +1,31 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * {@link ShardRouter} based on the SHA-1 hash of the UTF-8 encoded docid, which is how documents used to be assigned to
+ * shards. Documents keep their shards, except for those with a negative hash, which didn't make it into any shard
+ * before.
+ */
+public class Sha1ShardRouter implements ShardRouter {
+  @Override
+  public int shard(String docid, int shardCount) {
+    return Math.floorMod(Hashing.sha1().hashString(docid, Charsets.UTF_8).asInt(), shardCount);
+  }
+}
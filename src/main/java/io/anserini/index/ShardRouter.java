@@ -0,0 +1,31 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+/**
+ * Assigns documents to shards when a collection is partitioned into several indexes (see {@code -shard.count}).
+ * Implementations are called for every document by all indexing threads, so they must be thread safe and cheap.
+ */
+public interface ShardRouter {
+  /**
+   * Returns the shard of a document.
+   *
+   * @param docid collection docid
+   * @param shardCount number of shards
+   * @return shard, between 0 (inclusive) and {@code shardCount} (exclusive)
+   */
+  int shard(String docid, int shardCount);
+}
@@ -0,0 +1,199 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStates;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded, thread-safe cache of collection statistics (df, cf) of terms in a field, shared by everyone using the same
+ * {@link IndexReader}. Feedback rerankers look up the same terms over and over again across queries, and this saves
+ * the terms dictionary lookups. Caches are dropped when their reader is closed.
+ */
+public class TermStatisticsCache {
+  private static final Logger LOG = LogManager.getLogger(TermStatisticsCache.class);
+
+  public static final int DEFAULT_MAXIMUM_SIZE = 1000000;
+
+  private static final Map<IndexReader.CacheKey, Map<String, TermStatisticsCache>> CACHES = new ConcurrentHashMap<>();
+
+  /**
+   * Collection statistics of a term.
+   */
+  public static final class TermStatistics {
+    private final int df;
+    private final long cf;
+    private final float dfRatio;
+
+    private TermStatistics(int df, long cf, int numDocs) {
+      this.df = df;
+      this.cf = cf;
+      this.dfRatio = (float) df / numDocs;
+    }
+
+    /**
+     * Returns the number of documents containing the term.
+     *
+     * @return document frequency
+     */
+    public int getDf() {
+      return df;
+    }
+
+    /**
+     * Returns the total number of occurrences of the term.
+     *
+     * @return collection frequency
+     */
+    public long getCf() {
+      return cf;
+    }
+
+    /**
+     * Returns the fraction of (live) documents containing the term. Feedback rerankers discard terms above some
+     * threshold as stopwords.
+     *
+     * @return df divided by the number of documents
+     */
+    public float getDfRatio() {
+      return dfRatio;
+    }
+  }
+
+  private final IndexReader reader;
+  private final String field;
+  private final int numDocs;
+  private final Cache<BytesRef, TermStatistics> cache;
+
+  private TermStatisticsCache(IndexReader reader, String field, int maximumSize) {
+    this.reader = reader;
+    this.field = field;
+    this.numDocs = reader.numDocs();
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+  }
+
+  /**
+   * Returns the cache for a field of an index, creating it with the default size if needed.
+   *
+   * @param reader index reader
+   * @param field field
+   * @return the shared cache
+   */
+  public static TermStatisticsCache get(IndexReader reader, String field) {
+    return get(reader, field, DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * Returns the cache for a field of an index, creating it if needed. The maximum size only applies to a newly
+   * created cache.
+   *
+   * @param reader index reader
+   * @param field field
+   * @param maximumSize maximum number of terms to keep
+   * @return the shared cache
+   */
+  public static TermStatisticsCache get(IndexReader reader, String field, int maximumSize) {
+    IndexReader.CacheHelper helper = reader.getReaderCacheHelper();
+    if (helper == null) {
+      // Without a cache key, there's no way of knowing when the reader goes away, so we can't share.
+      return new TermStatisticsCache(reader, field, maximumSize);
+    }
+
+    return CACHES.computeIfAbsent(helper.getKey(), key -> {
+      helper.addClosedListener(CACHES::remove);
+      return new ConcurrentHashMap<>();
+    }).computeIfAbsent(field, f -> new TermStatisticsCache(reader, f, maximumSize));
+  }
+
+  /**
+   * Returns the statistics of a term.
+   *
+   * @param term term; the bytes are copied if they need to be retained, so they may be reused by the caller
+   * @return statistics of the term
+   * @throws IOException if error encountered looking up the term
+   */
+  public TermStatistics get(BytesRef term) throws IOException {
+    TermStatistics stats = cache.getIfPresent(term);
+    if (stats == null) {
+      // Concurrent misses on the same term compute the same statistics, so there's no harm in racing here.
+      BytesRef key = BytesRef.deepCopyOf(term);
+      TermStates states = TermStates.build(reader.getContext(), new Term(field, key), true);
+      stats = new TermStatistics(states.docFreq(), states.totalTermFreq(), numDocs);
+      cache.put(key, stats);
+    }
+
+    return stats;
+  }
+
+  public TermStatistics get(String term) throws IOException {
+    return get(new BytesRef(term));
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * Preloads the cache with terms, e.g., the terms with the highest df, which are the ones feedback documents are
+   * most likely to contain.
+   *
+   * @param terms terms to preload
+   * @throws IOException if error encountered looking up a term
+   */
+  public void warmUp(Iterable<String> terms) throws IOException {
+    for (String term : terms) {
+      get(term);
+    }
+  }
+
+  /**
+   * Preloads the cache with the terms in a file with one term per line, optionally followed by tab-separated columns.
+   * This is the format written by {@link io.anserini.util.ExtractTopDfTerms}.
+   *
+   * @param path file with terms
+   * @throws IOException if error encountered reading the file or looking up a term
+   */
+  public void warmUp(Path path) throws IOException {
+    int cnt = 0;
+    try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        int tab = line.indexOf('\t');
+        String term = tab < 0 ? line.trim() : line.substring(0, tab);
+        if (!term.isEmpty()) {
+          get(term);
+          cnt++;
+        }
+      }
+    }
+    LOG.info(String.format("Preloaded statistics of %d terms in field %s", cnt, field));
+  }
+}
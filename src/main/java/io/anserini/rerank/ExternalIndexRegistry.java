@@ -0,0 +1,96 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.rerank;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Readers of indexes other than the one being searched (e.g., the external index of
+ * {@link io.anserini.rerank.lib.AxiomReranker}), so that each index is opened once and shared across queries and
+ * threads, rather than opened on every use. Readers are reference counted: every {@link #acquire(String)} must be
+ * paired with a {@link #release(IndexReader)}, and {@link #close()} drops the registry's own reference, so that each
+ * reader is closed as soon as whoever is still using it is done.
+ */
+public class ExternalIndexRegistry implements Closeable {
+  private final Map<Path, DirectoryReader> readers = new HashMap<>();
+  private boolean closed = false;
+
+  /**
+   * Returns the reader of an index, opening it if needed. The caller must {@link #release(IndexReader)} it when done.
+   *
+   * @param indexPath index path
+   * @return reader of the index
+   * @throws IOException if error encountered opening the index
+   */
+  public synchronized IndexReader acquire(String indexPath) throws IOException {
+    if (closed) {
+      throw new AlreadyClosedException("External index registry is closed.");
+    }
+
+    Path path = Paths.get(indexPath).toAbsolutePath().normalize();
+    DirectoryReader reader = readers.get(path);
+    if (reader == null) {
+      if (!Files.exists(path) || !Files.isDirectory(path) || !Files.isReadable(path)) {
+        throw new IllegalArgumentException(indexPath + " does not exist or is not a directory.");
+      }
+      Directory directory = FSDirectory.open(path);
+      reader = DirectoryReader.open(directory);
+      reader.getReaderCacheHelper().addClosedListener(key -> directory.close());
+      readers.put(path, reader);
+    }
+    reader.incRef();
+
+    return reader;
+  }
+
+  /**
+   * Releases a reader obtained from {@link #acquire(String)}.
+   *
+   * @param reader reader
+   * @throws IOException if error encountered closing the reader, if this was the last reference
+   */
+  public void release(IndexReader reader) throws IOException {
+    reader.decRef();
+  }
+
+  public synchronized int size() {
+    return readers.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (DirectoryReader reader : readers.values()) {
+      reader.decRef();
+    }
+    readers.clear();
+  }
+}
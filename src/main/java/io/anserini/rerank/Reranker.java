@@ -19,4 +19,14 @@ package io.anserini.rerank;
 public interface Reranker<T> {
   ScoredDocuments rerank(ScoredDocuments docs, RerankerContext<T> context);
   String tag();
+
+  /**
+   * Returns a description of everything the results of this reranker depend on apart from its input and the index,
+   * e.g., for caching the results of a run. Rerankers whose tag leaves out any such parameter must override this.
+   *
+   * @return signature of this reranker
+   */
+  default String signature() {
+    return tag();
+  }
 }
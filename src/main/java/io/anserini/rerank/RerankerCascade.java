@@ -38,6 +38,23 @@ public class RerankerCascade {
     return tag;
   }
 
+  /**
+   * Returns a description of this cascade that includes the signatures of its rerankers, which identify all their
+   * parameters, e.g., for caching the results of a run.
+   *
+   * @return description of this cascade
+   */
+  public String getSignature() {
+    StringBuilder sb = new StringBuilder(tag).append('[');
+    for (int i = 0; i < rerankers.size(); i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(rerankers.get(i).getClass().getSimpleName()).append(':').append(rerankers.get(i).signature());
+    }
+    return sb.append(']').toString();
+  }
+
   /**
    * Adds a reranker to this cascade.
    *
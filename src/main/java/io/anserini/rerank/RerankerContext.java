@@ -16,12 +16,17 @@
 
 package io.anserini.rerank;
 
+import io.anserini.analysis.AnalyzedTokens;
+import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.search.SearchArgs;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RerankerContext<K> {
   private final IndexSearcher searcher;
@@ -32,9 +37,19 @@ public class RerankerContext<K> {
   private final List<String> queryTokens;
   private final Query filter;
   private final SearchArgs searchArgs;
+  private final ExternalIndexRegistry externalIndexes;
+  private final Map<String, Object> sharedCache = new ConcurrentHashMap<>();
+  // Analyzers don't override equals, so this is keyed by identity.
+  private final Map<Analyzer, AnalyzedTokens> analyzedQueries = new ConcurrentHashMap<>();
 
   public RerankerContext(IndexSearcher searcher, K queryId, Query query, String queryDocId, String queryText,
       List<String> queryTokens, Query filter, SearchArgs searchArgs) throws IOException {
+    this(searcher, queryId, query, queryDocId, queryText, queryTokens, filter, searchArgs, null);
+  }
+
+  public RerankerContext(IndexSearcher searcher, K queryId, Query query, String queryDocId, String queryText,
+      List<String> queryTokens, Query filter, SearchArgs searchArgs, ExternalIndexRegistry externalIndexes)
+      throws IOException {
     this.searcher = searcher;
     this.query = query;
     this.queryId = queryId;
@@ -43,6 +58,7 @@ public class RerankerContext<K> {
     this.queryTokens = queryTokens;
     this.filter = filter;
     this.searchArgs = searchArgs;
+    this.externalIndexes = externalIndexes;
   }
 
   public IndexSearcher getIndexSearcher() {
@@ -73,7 +89,51 @@ public class RerankerContext<K> {
     return queryTokens;
   }
 
+  /**
+   * Returns the query text analyzed with an analyzer. The text is analyzed only the first time around for each
+   * analyzer, so rerankers (and the cascades of a parameter sweep) don't keep analyzing the same query.
+   *
+   * @param analyzer analyzer
+   * @return tokens of the query text, which must not be modified
+   */
+  public AnalyzedTokens getAnalyzedQuery(Analyzer analyzer) {
+    return analyzedQueries.computeIfAbsent(analyzer,
+        a -> AnalyzerUtils.analyze(a, queryText, new AnalyzedTokens()));
+  }
+
+  /**
+   * Records the query text analyzed with an analyzer, e.g., when the caller already analyzed it to build the query.
+   *
+   * @param analyzer analyzer
+   * @param tokens query text analyzed with the analyzer
+   */
+  public void setAnalyzedQuery(Analyzer analyzer, AnalyzedTokens tokens) {
+    analyzedQueries.put(analyzer, tokens);
+  }
+
   public SearchArgs getSearchArgs() {
     return searchArgs;
   }
+
+  /**
+   * Returns the readers of external indexes shared across queries, which are closed by whoever created the context
+   * (e.g., {@link io.anserini.search.SearchCollection}), or null if there's no such owner, in which case rerankers
+   * open the external indexes they need for the query at hand and close them when done.
+   *
+   * @return external index registry, or null
+   */
+  public ExternalIndexRegistry getExternalIndexes() {
+    return externalIndexes;
+  }
+
+  /**
+   * Returns a cache for rerankers to keep whatever they compute for this query that doesn't depend on their
+   * parameters. Several cascades may be run with the same context on the same first-stage results (e.g., in a parameter
+   * sweep), in which case they all share the cache. Rerankers should key their entries by class name.
+   *
+   * @return cache shared by all rerankers run with this context
+   */
+  public Map<String, Object> getSharedCache() {
+    return sharedCache;
+  }
 }
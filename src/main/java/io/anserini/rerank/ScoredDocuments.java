@@ -16,16 +16,15 @@
 
 package io.anserini.rerank;
 
+import io.anserini.index.DocidMapper;
 import io.anserini.index.IndexArgs;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.Term;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.common.SolrDocument;
@@ -37,9 +36,11 @@ import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Set;
 import java.io.IOException;
 
 /**
@@ -53,7 +54,27 @@ public class ScoredDocuments {
   public int[] ids;
   // Scores returned from the searcher's similarity
   public float[] scores;
-  
+  // Stored fields loaded into the document objects, or null if the documents were loaded in full
+  public Set<String> fields;
+
+  // Loads only the collection docid of each hit, which is all that's needed to write out a run.
+  public static final Set<String> ID_ONLY = Set.of(IndexArgs.ID);
+
+  /**
+   * Returns a copy of these results that can be reranked (e.g., by rerankers that adjust scores in place) without
+   * affecting the original. The documents themselves are shared.
+   *
+   * @return copy of these results
+   */
+  public ScoredDocuments copy() {
+    ScoredDocuments scoredDocs = new ScoredDocuments();
+    scoredDocs.documents = documents.clone();
+    scoredDocs.ids = ids.clone();
+    scoredDocs.scores = scores.clone();
+    scoredDocs.fields = fields;
+    return scoredDocs;
+  }
+
   public static ScoredDocuments fromTopDocs(TopDocs rs, IndexSearcher searcher) {
     ScoredDocuments scoredDocs = new ScoredDocuments();
     scoredDocs.documents = new Document[rs.scoreDocs.length];
@@ -74,6 +95,69 @@ public class ScoredDocuments {
     return scoredDocs;
   }
 
+  /**
+   * Converts TopDocs into ScoredDocuments, only materializing the requested stored fields of each hit. The collection
+   * docid is always available; it is read from doc values when the index has them, so that a request for
+   * {@link #ID_ONLY} never has to decompress stored fields.
+   *
+   * @param rs top docs
+   * @param searcher searcher
+   * @param fields stored fields to load, or null to load the documents in full
+   * @return scored documents whose document objects only contain the requested fields
+   */
+  public static ScoredDocuments fromTopDocs(TopDocs rs, IndexSearcher searcher, Set<String> fields) {
+    if (fields == null) {
+      return fromTopDocs(rs, searcher);
+    }
+
+    ScoredDocuments scoredDocs = new ScoredDocuments();
+    scoredDocs.documents = new Document[rs.scoreDocs.length];
+    scoredDocs.ids = new int[rs.scoreDocs.length];
+    scoredDocs.scores = new float[rs.scoreDocs.length];
+    scoredDocs.fields = fields;
+
+    for (int i=0; i<rs.scoreDocs.length; i++) {
+      scoredDocs.scores[i] = rs.scoreDocs[i].score;
+      scoredDocs.ids[i] = rs.scoreDocs[i].doc;
+    }
+
+    // Fields that still have to come from stored fields, with and without the docid.
+    Set<String> storedFields = new HashSet<>(fields);
+    storedFields.remove(IndexArgs.ID);
+    Set<String> storedFieldsWithId = new HashSet<>(fields);
+    storedFieldsWithId.add(IndexArgs.ID);
+
+    String[] docids;
+    try {
+      docids = new DocidMapper(searcher.getIndexReader()).getDocids(scoredDocs.ids);
+    } catch (IOException e) {
+      e.printStackTrace();
+      docids = new String[scoredDocs.ids.length];
+    }
+    for (int i=0; i<rs.scoreDocs.length; i++) {
+      try {
+        if (docids[i] == null) {
+          scoredDocs.documents[i] = searcher.doc(scoredDocs.ids[i], storedFieldsWithId);
+          continue;
+        }
+
+        Document document = new Document();
+        document.add(new StringField(IndexArgs.ID, docids[i], Field.Store.YES));
+        if (!storedFields.isEmpty()) {
+          for (IndexableField field : searcher.doc(scoredDocs.ids[i], storedFields)) {
+            document.add(field);
+          }
+        }
+        scoredDocs.documents[i] = document;
+      } catch (IOException e) {
+        e.printStackTrace();
+        scoredDocs.documents[i] = null;
+      }
+    }
+
+    return scoredDocs;
+  }
+
   public static ScoredDocuments fromSolrDocs(SolrDocumentList rs) {
 
     ScoredDocuments scoredDocs = new ScoredDocuments();
@@ -146,24 +230,25 @@ public class ScoredDocuments {
     List<Integer> idList = new ArrayList<>();
     List<Float> scoreList = new ArrayList<>();
 
-    IndexSearcher searcher;
+    // Look up all the docids at once.
+    String[] externalDocids = qrels.keySet().toArray(new String[0]);
+    int[] luceneDocids = new DocidMapper(reader).getLuceneDocids(externalDocids);
+
     int i = 0;
     for (Map.Entry<String, Integer> qrelsDocScorePair : qrels.entrySet()) {
-      String externalDocid = qrelsDocScorePair.getKey();
-      searcher = new IndexSearcher(reader);
-      Query q = new TermQuery(new Term(IndexArgs.ID, externalDocid));
-      TopDocs rs = searcher.search(q, 1);
+      String externalDocid = externalDocids[i];
+      int luceneDocid = luceneDocids[i++];
+      if (luceneDocid < 0) {
+        LOG.warn("Cannot find document " + externalDocid);
+        continue;
+      }
       try {
-        documentList.add(searcher.doc(rs.scoreDocs[0].doc));
-        idList.add(rs.scoreDocs[0].doc);
+        documentList.add(reader.document(luceneDocid));
+        idList.add(luceneDocid);
         scoreList.add(Float.valueOf(qrelsDocScorePair.getValue().floatValue()));
-        i++;
       } catch (IOException e) {
         e.printStackTrace();
         documentList.add(null);
-      } catch (ArrayIndexOutOfBoundsException e){
-        // e.printStackTrace();
-        LOG.warn("Cannot find document " + externalDocid);
       }
     }
 
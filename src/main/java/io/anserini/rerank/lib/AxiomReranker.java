@@ -16,8 +16,12 @@
 
 package io.anserini.rerank.lib;
 
+import io.anserini.index.DocidMapper;
+import io.anserini.index.ForwardIndex;
 import io.anserini.index.IndexArgs;
+import io.anserini.index.TermStatisticsCache;
 import io.anserini.index.generator.TweetGenerator;
+import io.anserini.rerank.ExternalIndexRegistry;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.rerank.ScoredDocuments;
@@ -26,7 +30,6 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.index.DirectoryReader;
@@ -43,6 +46,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
 import java.io.BufferedInputStream;
@@ -54,14 +58,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -91,6 +92,7 @@ public class AxiomReranker<T> implements Reranker<T> {
                                            // external sources for searching the expansion
                                            // terms. Typically, we build another index
                                            // separately and include its information here.
+  private final String docidsCachePath;
   public static ScoreDoc[] internalDocidsCache; // When enabling the deterministic reranking we could cache all the
                                                 // internal Docids for all queries
   public static List<String> externalDocidsCache; // When enabling the deterministic reranking we can opt to read sorted docids
@@ -117,6 +119,7 @@ public class AxiomReranker<T> implements Reranker<T> {
     this.beta = beta;
     this.originalIndexPath = originalIndexPath;
     this.externalIndexPath = externalIndexPath;
+    this.docidsCachePath = docidsCachePath;
     this.outputQuery = outputQuery;
     this.searchTweets = searchTweets;
 
@@ -142,16 +145,22 @@ public class AxiomReranker<T> implements Reranker<T> {
   @Override
   public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext<T> context) {
     assert(docs.documents.length == docs.scores.length);
+    Set<String> fields = docs.fields;
 
+    // The external index, if any, is shared by all queries; we hold on to it until we're done with this one. Without
+    // a registry to share it through, it's opened for this query alone.
+    ExternalIndexRegistry externalIndexes = context.getExternalIndexes() != null ? context.getExternalIndexes() :
+        this.externalIndexPath != null ? new ExternalIndexRegistry() : null;
+    IndexReader externalReader = null;
     try {
+      if (this.externalIndexPath != null) {
+        externalReader = externalIndexes.acquire(this.externalIndexPath);
+      }
+      IndexReader reader = externalReader != null ? externalReader : context.getIndexSearcher().getIndexReader();
+
       // First to search against external index if it is not null
-      docs = processExternalContext(docs, context);
-      // Select R*M docs from the original ranking list as the reranking pool
-      Set<Integer> usedDocs = selectDocs(docs, context);
-      // Extract an inverted list from the reranking pool
-      Map<String, Set<Integer>> termInvertedList = extractTerms(usedDocs, context, null);
-      // Calculate all the terms in the reranking pool and pick top K of them
-      Map<String, Double> expandedTermScores = computeTermScore(termInvertedList, context);
+      docs = processExternalContext(docs, context, externalReader);
+      Map<String, Double> expandedTermScores = selectExpansionTerms(docs, context, reader);
 
       BooleanQuery.Builder nqBuilder = new BooleanQuery.Builder();
 
@@ -174,17 +183,48 @@ public class AxiomReranker<T> implements Reranker<T> {
         LOG.info("Running new query: " + nq.toString(this.field));
       }
 
-      return searchTopDocs(nq, context);
+      return searchTopDocs(nq, context, fields);
     } catch (Exception e) {
       e.printStackTrace();
       return docs;
+    } finally {
+      try {
+        if (externalReader != null) {
+          externalIndexes.release(externalReader);
+        }
+        if (externalIndexes != null && externalIndexes != context.getExternalIndexes()) {
+          externalIndexes.close();
+        }
+      } catch (IOException e) {
+        LOG.warn("Error releasing external index " + this.externalIndexPath, e);
+      }
     }
   }
 
+  /**
+   * Picks the expansion terms and their weights.
+   *
+   * @param docs The initial ranking results, against the external index if there is one
+   * @param context An instance of RerankerContext
+   * @param reader Reader of the index to pick documents and terms from, i.e., the external index if there is one
+   * @return Map<String, Double> Top terms and their weight scores
+   * @throws Exception if error encountered reading the index
+   */
+  Map<String, Double> selectExpansionTerms(ScoredDocuments docs, RerankerContext<T> context, IndexReader reader)
+      throws Exception {
+    // Select R*M docs from the original ranking list as the reranking pool
+    Set<Integer> usedDocs = selectDocs(docs, context, reader);
+    // Extract an inverted list from the reranking pool
+    Map<String, long[]> termInvertedList = extractTerms(usedDocs, reader, null);
+    // Calculate all the terms in the reranking pool and pick top K of them
+    return computeTermScore(termInvertedList, context, reader);
+  }
+
   /**
    * Please note that the query in the context is always the keywordQuery w/o filter!
    */
-  private ScoredDocuments searchTopDocs(Query query, RerankerContext<T> context) throws IOException {
+  private ScoredDocuments searchTopDocs(Query query, RerankerContext<T> context, Set<String> fields)
+      throws IOException {
     IndexSearcher searcher = context.getIndexSearcher();
     Query finalQuery;
     if (query == null) { // we are dealing with the external index and we DONOT apply filter to it.
@@ -212,7 +252,7 @@ public class AxiomReranker<T> implements Reranker<T> {
       rs = searcher.search(finalQuery, context.getSearchArgs().hits, BREAK_SCORE_TIES_BY_DOCID, true);
     }
 
-    return ScoredDocuments.fromTopDocs(rs, searcher);
+    return ScoredDocuments.fromTopDocs(rs, searcher, fields);
   }
 
 
@@ -250,14 +290,15 @@ public class AxiomReranker<T> implements Reranker<T> {
     if (!Files.exists(index) || !Files.isDirectory(index) || !Files.isReadable(index)) {
       throw new IllegalArgumentException(indexPath + " does not exist or is not a directory.");
     }
-    IndexReader reader = DirectoryReader.open(FSDirectory.open(index));
-    IndexSearcher searcher = new IndexSearcher(reader);
-    if (searchTweets) {
-      return searcher.search(new DocValuesFieldExistsQuery(TweetGenerator.TweetField.ID_LONG.name), reader.maxDoc(),
-          BREAK_SCORE_TIES_BY_TWEETID).scoreDocs;
+    try (Directory directory = FSDirectory.open(index); IndexReader reader = DirectoryReader.open(directory)) {
+      IndexSearcher searcher = new IndexSearcher(reader);
+      if (searchTweets) {
+        return searcher.search(new DocValuesFieldExistsQuery(TweetGenerator.TweetField.ID_LONG.name), reader.maxDoc(),
+            BREAK_SCORE_TIES_BY_TWEETID).scoreDocs;
+      }
+      return searcher.search(new DocValuesFieldExistsQuery(IndexArgs.ID), reader.maxDoc(),
+          BREAK_SCORE_TIES_BY_DOCID).scoreDocs;
     }
-    return searcher.search(new DocValuesFieldExistsQuery(IndexArgs.ID), reader.maxDoc(),
-        BREAK_SCORE_TIES_BY_DOCID).scoreDocs;
   }
 
   /**
@@ -266,17 +307,16 @@ public class AxiomReranker<T> implements Reranker<T> {
    *
    * @param docs The initial ranking results against target index. We will return them if external
    *             index is null.
+   * @param context An instance of RerankerContext
+   * @param externalReader Reader of the external index, or null
    *
    * @return Top ranked ScoredDocuments from searching external index
    */
-  private ScoredDocuments processExternalContext(ScoredDocuments docs, RerankerContext<T> context) throws IOException {
-    if (this.externalIndexPath != null) {
-      Path indexPath = Paths.get(this.externalIndexPath);
-      if (!Files.exists(indexPath) || !Files.isDirectory(indexPath) || !Files.isReadable(indexPath)) {
-        throw new IllegalArgumentException(this.externalIndexPath + " does not exist or is not a directory.");
-      }
-      IndexReader reader = DirectoryReader.open(FSDirectory.open(indexPath));
-      IndexSearcher searcher = new IndexSearcher(reader);
+  private ScoredDocuments processExternalContext(ScoredDocuments docs, RerankerContext<T> context,
+                                                 IndexReader externalReader) throws IOException {
+    if (externalReader != null) {
+      // Searchers are cheap; a fresh one per query lets threads search the shared reader with their own similarity.
+      IndexSearcher searcher = new IndexSearcher(externalReader);
       searcher.setSimilarity(context.getIndexSearcher().getSimilarity());
 
       SearchArgs args = new SearchArgs();
@@ -285,9 +325,10 @@ public class AxiomReranker<T> implements Reranker<T> {
       args.searchtweets = context.getSearchArgs().searchtweets;
 
       RerankerContext<T> externalContext = new RerankerContext<>(searcher, context.getQueryId(), context.getQuery(),
-          context.getQueryDocId(), context.getQueryText(), context.getQueryTokens(), context.getFilter(), args);
+          context.getQueryDocId(), context.getQueryText(), context.getQueryTokens(), context.getFilter(), args,
+          context.getExternalIndexes());
 
-      return searchTopDocs(null, externalContext);
+      return searchTopDocs(null, externalContext, ScoredDocuments.ID_ONLY);
     } else {
       return docs;
     }
@@ -301,9 +342,10 @@ public class AxiomReranker<T> implements Reranker<T> {
    *
    * @param docs The initial ranking results
    * @param context An instance of RerankerContext
+   * @param reader Reader of the index to pick documents from, i.e., the external index if there is one
    * @return a Set of {@code R*N} document Ids
    */
-  private Set<Integer> selectDocs(ScoredDocuments docs, RerankerContext<T> context)
+  private Set<Integer> selectDocs(ScoredDocuments docs, RerankerContext<T> context, IndexReader reader)
     throws IOException {
     boolean useRf = (context.getSearchArgs().rf_qrels != null);
     Set<Integer> docidSet;
@@ -322,29 +364,19 @@ public class AxiomReranker<T> implements Reranker<T> {
       targetSize = this.R * this.N;
     }
     if (docidSet.size() < targetSize) {
-      IndexReader reader;
-      IndexSearcher searcher;
-      if (this.externalIndexPath != null) {
-        Path indexPath = Paths.get(this.externalIndexPath);
-        if (!Files.exists(indexPath) || !Files.isDirectory(indexPath) || !Files.isReadable(indexPath)) {
-          throw new IllegalArgumentException(this.externalIndexPath + " does not exist or is not a directory.");
-        }
-        reader = DirectoryReader.open(FSDirectory.open(indexPath));
-        searcher = new IndexSearcher(reader);
-      } else {
-        searcher = context.getIndexSearcher();
-        reader = searcher.getIndexReader();
-      }
       int availableDocsCnt = reader.getDocCount(this.field);
       if (this.deterministic) { // internal docid cannot be relied due to multi-threads indexing,
                                 // we have to rely on external docid here
         Random random = new Random(this.seed);
+        DocidMapper docidMapper = new DocidMapper(reader);
         while (docidSet.size() < targetSize) {
           if (AxiomReranker.externalDocidsCache != null) {
             String docid = AxiomReranker.externalDocidsCache.get(random.nextInt(AxiomReranker.externalDocidsCache.size()));
-            Query q = new TermQuery(new Term(IndexArgs.ID, docid));
-            TopDocs rs = searcher.search(q, 1);
-            docidSet.add(rs.scoreDocs[0].doc);
+            int luceneDocid = docidMapper.getLuceneDocid(docid);
+            if (luceneDocid < 0) {
+              throw new IllegalArgumentException("Cannot find document " + docid);
+            }
+            docidSet.add(luceneDocid);
           } else {
             docidSet.add(AxiomReranker.internalDocidsCache[random.nextInt(AxiomReranker.internalDocidsCache.length)].doc);
           }
@@ -364,28 +396,19 @@ public class AxiomReranker<T> implements Reranker<T> {
    * Extract ALL the terms from the documents pool.
    *
    * @param docIds The reranking pool, see {@link #selectDocs} for explanations
-   * @param context An instance of RerankerContext
+   * @param reader Reader of the index the documents are from
    * @param filterPattern A Regex pattern that terms are collected only they matches the pattern, could be null
-   * @return A Map of <term -> Set<docId>> kind of a small inverted list where the Set of docIds is where the term occurs
+   * @return A Map of <term -> bitset> kind of a small inverted list where bit i of the bitset is set if the term occurs
+   *         in the i-th document of the pool (in iteration order of docIds)
    */
-  private Map<String, Set<Integer>> extractTerms(Set<Integer> docIds, RerankerContext<T> context,
-                                                 Pattern filterPattern) throws Exception, IOException {
-    IndexReader reader;
-    IndexSearcher searcher;
-    if (this.externalIndexPath != null) {
-      Path indexPath = Paths.get(this.externalIndexPath);
-      if (!Files.exists(indexPath) || !Files.isDirectory(indexPath) || !Files.isReadable(indexPath)) {
-        throw new IllegalArgumentException(this.externalIndexPath + " does not exist or is not a directory.");
-      }
-      reader = DirectoryReader.open(FSDirectory.open(indexPath));
-      searcher = new IndexSearcher(reader);
-    } else {
-      searcher = context.getIndexSearcher();
-      reader = searcher.getIndexReader();
-    }
-    Map<String, Set<Integer>> termDocidSets = new HashMap<>();
+  private Map<String, long[]> extractTerms(Set<Integer> docIds, IndexReader reader,
+                                           Pattern filterPattern) throws Exception, IOException {
+    int words = (docIds.size() + 63) >>> 6;
+    Map<String, long[]> termDocidSets = new HashMap<>();
+    int ord = -1;
     for (int docid : docIds) {
-      Terms terms = reader.getTermVector(docid, IndexArgs.CONTENTS);
+      ord++;
+      Terms terms = ForwardIndex.getTermVector(reader, docid, IndexArgs.CONTENTS);
       if (terms == null) {
         LOG.warn("Document vector not stored for docid: " + docid);
         continue;
@@ -401,10 +424,7 @@ public class AxiomReranker<T> implements Reranker<T> {
         if (term.length() < 2) continue;
         if (!term.matches("[a-z]+")) continue;
         if (filterPattern == null || filterPattern.matcher(term).matches()) {
-          if (!termDocidSets.containsKey(term)) {
-            termDocidSets.put(term, new HashSet<>());
-          }
-          termDocidSets.get(term).add(docid);
+          termDocidSets.computeIfAbsent(term, t -> new long[words])[ord >>> 6] |= 1L << ord;
         }
       }
     }
@@ -422,39 +442,19 @@ public class AxiomReranker<T> implements Reranker<T> {
    * + P(t1 occurs t2 not occurs)*log{P(t1 occurs t2 not occurs)/P(t1 occurs)/P(t2 not occurs)}
    * + P(t1 not occurs t2 occurs)*log{P(t1 not occurs t2 occurs)/P(t1 not occurs)/P(t2 occurs)}
    * </pre>
-   * 2. For each query term the scores of every other term in the reranking pool are stored in a
-   * PriorityQueue, only the top {@code K} are kept.
+   * 2. For each query term the scores of every other term in the reranking pool are kept in a
+   * bounded heap, only the top {@code K} are kept.
    * 3. Add the scores of the same term together and pick the top {@code M} ones.
    *
-   * @param termInvertedList A Map of <term -> Set<docId>> where the Set of docIds is where the term occurs
+   * @param termInvertedList A Map of <term -> bitset> where the bitset marks the documents where the term occurs
    * @param context An instance of RerankerContext
+   * @param reader Reader of the index the terms are from
    * @return Map<String, Double> Top terms and their weight scores in a HashMap
    */
   private Map<String, Double> computeTermScore(
-    Map<String, Set<Integer>> termInvertedList, RerankerContext<T> context) throws IOException {
-    class ScoreComparator implements Comparator<Pair<String, Double>> {
-      public int compare(Pair<String, Double> a, Pair<String, Double> b) {
-        int cmp = Double.compare(b.getRight(), a.getRight());
-        if (cmp == 0) {
-          return a.getLeft().compareToIgnoreCase(b.getLeft());
-        } else {
-          return cmp;
-        }
-      }
-    }
-
+    Map<String, long[]> termInvertedList, RerankerContext<T> context, IndexReader reader) throws IOException {
     // get collection statistics so that we can get idf later on.
-    IndexReader reader;
-    if (this.externalIndexPath != null) {
-      Path indexPath = Paths.get(this.externalIndexPath);
-      if (!Files.exists(indexPath) || !Files.isDirectory(indexPath) || !Files.isReadable(indexPath)) {
-        throw new IllegalArgumentException(this.externalIndexPath + " does not exist or is not a directory.");
-      }
-      reader = DirectoryReader.open(FSDirectory.open(indexPath));
-    } else {
-      IndexSearcher searcher = context.getIndexSearcher();
-      reader = searcher.getIndexReader();
-    }
+    TermStatisticsCache termStats = TermStatisticsCache.get(reader, IndexArgs.CONTENTS);
     final long docCount = reader.numDocs() == -1 ? reader.maxDoc() : reader.numDocs();
 
     //calculate the Mutual Information between term with each query term
@@ -464,68 +464,105 @@ public class AxiomReranker<T> implements Reranker<T> {
       queryTermsCounts.put(qt, queryTermsCounts.getOrDefault(qt, 0) + 1);
     }
 
-    Set<Integer> allDocIds = new HashSet<>();
-    for (Set<Integer> s : termInvertedList.values()) {
-      allDocIds.addAll(s);
+    // Number the terms, so that everything below works on arrays.
+    int numTerms = termInvertedList.size();
+    String[] terms = new String[numTerms];
+    long[][] termDocs = new long[numTerms][];
+    int[] termDocCounts = new int[numTerms];
+    Map<String, Integer> termIds = new HashMap<>();
+    long[] allDocs = null;
+    int t = 0;
+    for (Map.Entry<String, long[]> termEntry : termInvertedList.entrySet()) {
+      terms[t] = termEntry.getKey();
+      termDocs[t] = termEntry.getValue();
+      termDocCounts[t] = cardinality(termEntry.getValue());
+      termIds.put(terms[t], t);
+      if (allDocs == null) {
+        allDocs = new long[termEntry.getValue().length];
+      }
+      for (int i = 0; i < allDocs.length; i++) {
+        allDocs[i] |= termEntry.getValue()[i];
+      }
+      t++;
     }
-    int docIdsCount = allDocIds.size();
-
-    // Each priority queue corresponds to a query term: The p-queue itself stores all terms
-    // in the reranking pool and their reranking scores to the query term.
-    List<PriorityQueue<Pair<String, Double>>> allTermScoresPQ = new ArrayList<>();
+    int docIdsCount = allDocs == null ? 0 : cardinality(allDocs);
+
+    // For each query term, score all terms in the reranking pool against it, and add up the top ones. Note that the
+    // number of top terms kept is that of the original implementation, which polled a priority queue while comparing
+    // against its shrinking size, and thus took only the top half of the terms if there were fewer than 2K of them.
+    double[] aggTermScores = new double[numTerms];
+    boolean[] aggregated = new boolean[numTerms];
+    int aggregatedCnt = 0;
+    TopTerms termScores = new TopTerms(terms, topCount(numTerms, Math.max(this.M, this.K)));
     for (Map.Entry<String, Integer> q : queryTermsCounts.entrySet()) {
       String queryTerm = q.getKey();
-      long df = reader.docFreq(new Term(IndexArgs.CONTENTS, queryTerm));
+      long df = termStats.get(queryTerm).getDf();
       if (df == 0L) {
         continue;
       }
       float idf = (float) Math.log((1 + docCount)/df);
       int qtf = q.getValue();
-      if (termInvertedList.containsKey(queryTerm)) {
-        PriorityQueue<Pair<String, Double>> termScorePQ = new PriorityQueue<>(new ScoreComparator());
-        double selfMI = computeMutualInformation(termInvertedList.get(queryTerm), termInvertedList.get(queryTerm), docIdsCount);
-        for (Map.Entry<String, Set<Integer>> termEntry : termInvertedList.entrySet()) {
+      Integer queryTermId = termIds.get(queryTerm);
+      if (queryTermId != null) {
+        long[] queryTermDocs = termDocs[queryTermId];
+        int queryTermDocCount = termDocCounts[queryTermId];
+        double selfMI = computeMutualInformation(queryTermDocs, queryTermDocCount, queryTermDocs, queryTermDocCount,
+            docIdsCount);
+        for (int i = 0; i < numTerms; i++) {
           double score;
-          if (termEntry.getKey().equals(queryTerm)) { // The mutual information to itself will always be 1
+          if (i == queryTermId) { // The mutual information to itself will always be 1
             score = idf * qtf;
           } else {
-            double crossMI = computeMutualInformation(termInvertedList.get(queryTerm), termEntry.getValue(), docIdsCount);
+            double crossMI = computeMutualInformation(queryTermDocs, queryTermDocCount, termDocs[i], termDocCounts[i],
+                docIdsCount);
             score = idf * beta * qtf * crossMI / selfMI;
           }
-          termScorePQ.add(Pair.of(termEntry.getKey(), score));
+          termScores.add(i, score);
+        }
+        for (int i = 0, cnt = termScores.sort(); i < cnt; i++) {
+          int term = termScores.id(i);
+          double score = termScores.score(i);
+          if (score - 0.0 > 1e-8) {
+            aggTermScores[term] += score;
+            if (!aggregated[term]) {
+              aggregated[term] = true;
+              aggregatedCnt++;
+            }
+          }
         }
-        allTermScoresPQ.add(termScorePQ);
+        termScores.clear();
       }
     }
 
-    Map<String, Double> aggTermScores = new HashMap<>();
-    for (PriorityQueue<Pair<String, Double>> termScores : allTermScoresPQ) {
-      for (int i = 0; i < Math.min(termScores.size(), Math.max(this.M, this.K)); i++) {
-        Pair<String, Double> termScore = termScores.poll();
-        String term = termScore.getLeft();
-        Double score = termScore.getRight();
-        if (score - 0.0 > 1e-8) {
-          aggTermScores.put(term, aggTermScores.getOrDefault(term, 0.0) + score);
-        }
+    TopTerms topTerms = new TopTerms(terms, topCount(aggregatedCnt, this.M));
+    for (int i = 0; i < numTerms; i++) {
+      if (aggregated[i]) {
+        topTerms.add(i, aggTermScores[i] / queryTerms.size());
       }
     }
-    PriorityQueue<Pair<String, Double>> termScoresPQ = new PriorityQueue<>(new ScoreComparator());
-    for (Map.Entry<String, Double> termScore : aggTermScores.entrySet()) {
-      termScoresPQ.add(Pair.of(termScore.getKey(), termScore.getValue() / queryTerms.size()));
-    }
     Map<String, Double> resultTermScores = new HashMap<>();
-    for (int i = 0; i < Math.min(termScoresPQ.size(), this.M); i++) {
-      Pair<String, Double> termScore = termScoresPQ.poll();
-      String term = termScore.getKey();
-      double score = termScore.getValue();
-      resultTermScores.put(term, score);
+    for (int i = 0, cnt = topTerms.sort(); i < cnt; i++) {
+      resultTermScores.put(terms[topTerms.id(i)], topTerms.score(i));
     }
 
     return resultTermScores;
   }
 
-  private double computeMutualInformation(Set<Integer> docidsX, Set<Integer> docidsY, int totalDocCount) {
-    int x1 = docidsX.size(), y1 = docidsY.size(); //document that x occurres
+  // How many of n terms the original implementation kept when asking for the top k, see above.
+  private static int topCount(int n, int k) {
+    return Math.min((n + 1) / 2, k);
+  }
+
+  private static int cardinality(long[] bits) {
+    int cnt = 0;
+    for (long word : bits) {
+      cnt += Long.bitCount(word);
+    }
+    return cnt;
+  }
+
+  private double computeMutualInformation(long[] docidsX, int x1, long[] docidsY, int y1, int totalDocCount) {
+    // x1, y1: document num that x (y) occurres
     int x0 = totalDocCount - x1, y0 = totalDocCount - y1; //document num that x doesn't occurres
 
     if (x1 == 0 || x0 == 0 || y1 == 0 || y0 == 0) {
@@ -538,10 +575,11 @@ public class AxiomReranker<T> implements Reranker<T> {
     float pY1 = 1.0f * y1 / totalDocCount;
 
     //get the intersection of docIds
-    Set<Integer> docidsXClone = new HashSet<>(docidsX); // directly operate on docidsX will change it permanently
-    docidsXClone.retainAll(docidsY);
-    int numXY11 = docidsXClone.size();
-    int numXY10 = numXY10 = x1 - numXY11;    //doc num that x occurs but y doesn't
+    int numXY11 = 0;
+    for (int i = 0; i < docidsX.length; i++) {
+      numXY11 += Long.bitCount(docidsX[i] & docidsY[i]);
+    }
+    int numXY10 = x1 - numXY11;    //doc num that x occurs but y doesn't
     int numXY01 = y1 - numXY11;    // doc num that y occurs but x doesn't
     int numXY00 = totalDocCount - numXY11 - numXY10 - numXY01; //doc num that neither x nor y occurs
 
@@ -557,9 +595,112 @@ public class AxiomReranker<T> implements Reranker<T> {
     if (pXY11 != 0) m11 = pXY11 * Math.log(pXY11 / (pX1 * pY1));
     return m00 + m10 + m01 + m11;
   }
+
+  /**
+   * Bounded min-heap of the top terms by score (higher first, ties broken by term), over term ids and primitive
+   * scores so that scoring every term in the pool doesn't box anything.
+   */
+  private static final class TopTerms {
+    private final String[] terms;
+    private final int[] ids;
+    private final double[] scores;
+    private int size = 0;
+
+    TopTerms(String[] terms, int capacity) {
+      this.terms = terms;
+      this.ids = new int[Math.min(capacity, terms.length)];
+      this.scores = new double[this.ids.length];
+    }
+
+    // Whether term a with score sa ranks above term b with score sb.
+    private boolean above(double sa, int a, double sb, int b) {
+      int cmp = Double.compare(sa, sb);
+      return cmp == 0 ? terms[a].compareToIgnoreCase(terms[b]) < 0 : cmp > 0;
+    }
+
+    void add(int id, double score) {
+      if (size < ids.length) {
+        ids[size] = id;
+        scores[size] = score;
+        int i = size++;
+        while (i > 0) {
+          int parent = (i - 1) >>> 1;
+          if (!above(scores[parent], ids[parent], scores[i], ids[i])) {
+            break;
+          }
+          swap(i, parent);
+          i = parent;
+        }
+      } else if (size > 0 && above(score, id, scores[0], ids[0])) {
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0, size);
+      }
+    }
+
+    /**
+     * Sorts the terms in place, best first; the heap is unusable afterwards until cleared.
+     *
+     * @return number of terms
+     */
+    int sort() {
+      // Heap sort: moving the worst term to the end over and over again leaves the best one first.
+      for (int end = size - 1; end > 0; end--) {
+        swap(0, end);
+        siftDown(0, end);
+      }
+      return size;
+    }
+
+    int id(int i) {
+      return ids[i];
+    }
+
+    double score(int i) {
+      return scores[i];
+    }
+
+    void clear() {
+      size = 0;
+    }
+
+    private void siftDown(int i, int end) {
+      while (true) {
+        int worst = i;
+        int left = 2 * i + 1, right = left + 1;
+        if (left < end && above(scores[worst], ids[worst], scores[left], ids[left])) {
+          worst = left;
+        }
+        if (right < end && above(scores[worst], ids[worst], scores[right], ids[right])) {
+          worst = right;
+        }
+        if (worst == i) {
+          return;
+        }
+        swap(i, worst);
+        i = worst;
+      }
+    }
+
+    private void swap(int i, int j) {
+      int id = ids[i];
+      ids[i] = ids[j];
+      ids[j] = id;
+      double score = scores[i];
+      scores[i] = scores[j];
+      scores[j] = score;
+    }
+  }
   
   @Override
   public String tag() {
     return "AxiomaticRerank(R="+R+",N="+N+",K:"+K+",M:"+M+")";
   }
+
+  @Override
+  public String signature() {
+    return "AxiomaticRerank(R=" + R + ",N=" + N + ",K=" + K + ",M=" + M + ",beta=" + beta + ",field=" + field +
+        ",deterministic=" + deterministic + ",seed=" + seed + ",index=" + externalIndexPath +
+        ",docids=" + docidsCachePath + ",searchTweets=" + searchTweets + ")";
+  }
 }
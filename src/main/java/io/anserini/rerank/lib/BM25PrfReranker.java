@@ -16,11 +16,14 @@
 
 package io.anserini.rerank.lib;
 
+import io.anserini.index.ForwardIndex;
 import io.anserini.index.IndexArgs;
+import io.anserini.index.TermStatisticsCache;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.rerank.ScoredDocuments;
-import io.anserini.analysis.AnalyzerUtils;
+import io.anserini.util.HashIterationOrder;
+import io.anserini.util.TermIdFeatureVector;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
@@ -36,17 +39,18 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.InPlaceMergeSorter;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_DOCID;
 import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_TWEETID;
@@ -90,12 +94,12 @@ public class BM25PrfReranker implements Reranker {
   @Override
   public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
 
-    // set similarity to BM25PRF
-    IndexSearcher searcher = context.getIndexSearcher();
-    BM25Similarity originalSimilarity = (BM25Similarity) searcher.getSimilarity();
+    // Set similarity to BM25PRF on a searcher of our own: the one in the context may be shared with other threads,
+    // which would otherwise score with our similarity (or we with theirs). Searchers are cheap to create.
+    IndexReader reader = context.getIndexSearcher().getIndexReader();
+    IndexSearcher searcher = new IndexSearcher(reader);
     searcher.setSimilarity(new BM25PrfSimilarity(k1, b));
-    IndexReader reader = searcher.getIndexReader();
-    List<String> originalQueryTerms = AnalyzerUtils.analyze(analyzer, context.getQueryText());
+    List<String> originalQueryTerms = context.getAnalyzedQuery(analyzer).toList();
 
     boolean useRf = (context.getSearchArgs().rf_qrels != null);
     PrfFeatures fv = expandQuery(originalQueryTerms, docs, reader, useRf);
@@ -123,17 +127,20 @@ public class BM25PrfReranker implements Reranker {
       e.printStackTrace();
       return docs;
     }
-    // set similarity back
-    searcher.setSimilarity(originalSimilarity);
-    return ScoredDocuments.fromTopDocs(rs, searcher);
+    return ScoredDocuments.fromTopDocs(rs, searcher, docs.fields);
   }
 
   private PrfFeatures expandQuery(List<String> originalTerms, ScoredDocuments docs, IndexReader reader, boolean useRf) {
     PrfFeatures newFeatures = new PrfFeatures();
 
-    Set<String> vocab = new HashSet<>();
+    // Original query terms are added to the dictionary first, so that their ids come before any expansion term.
+    BytesRefHash dictionary = new BytesRefHash();
+    for (String term : originalTerms) {
+      TermIdFeatureVector.termId(dictionary, new BytesRef(term));
+    }
+    int numOriginalTermIds = dictionary.size();
 
-    Map<Integer, Set<String>> docToTermsMap = new HashMap<>();
+    List<int[]> docTermIds = new ArrayList<>();
     int numFbDocs;
     if (useRf){
       numFbDocs = docs.documents.length;
@@ -141,66 +148,97 @@ public class BM25PrfReranker implements Reranker {
       numFbDocs = docs.documents.length < fbDocs ? docs.documents.length : fbDocs;
     }
     int numDocs = reader.numDocs();
+    TermStatisticsCache termStats = TermStatisticsCache.get(reader, IndexArgs.CONTENTS);
+    ForwardIndex index = ForwardIndex.get(reader, field);
+    ForwardIndex.DocVector vector = null;
 
     for (int i = 0; i < numFbDocs; i++) {
       try {
         if (useRf && docs.scores[i] <= 0){
           continue;
         }
-        Terms terms = reader.getTermVector(docs.ids[i], field);
-        Set<String> termsStr = getTermsStr(terms);
-        docToTermsMap.put(docs.ids[i], termsStr);
-        vocab.addAll(termsStr);
+        if (index != null) {
+          vector = index.getDocVector(docs.ids[i], vector);
+          docTermIds.add(getTermIds(index, vector, dictionary));
+        } else {
+          docTermIds.add(getTermIds(reader.getTermVector(docs.ids[i], field), dictionary));
+        }
       } catch (IOException e) {
         e.printStackTrace();
       }
     }
 
-    int numRelDocs = docToTermsMap.size();
+    int numRelDocs = docTermIds.size();
 
-    Set<String> originalTermsSet = new HashSet<>(originalTerms);
+    // Number of feedback documents each term occurs in.
+    int[] dfRels = new int[dictionary.size()];
+    for (int[] termIds : docTermIds) {
+      for (int id : termIds) {
+        dfRels[id]++;
+      }
+    }
+
+    // The vocabulary is the union of the terms of the documents, in the order of a HashSet of the terms of each
+    // document added to a HashSet, which is the order ties in offer weight used to be broken in.
+    int[] vocab = new int[0];
+    int vocabSize = 0;
+    for (int[] termIds : docTermIds) {
+      int[] order = HashIterationOrder.hashSetOrder(dictionary, termIds, termIds.length);
+      vocab = ArrayUtil.grow(vocab, vocabSize + order.length);
+      System.arraycopy(order, 0, vocab, vocabSize, order.length);
+      vocabSize += order.length;
+    }
 
     // Add New Terms
-    for (String term : vocab) {
-      if (originalTermsSet.contains(term)) continue;
-      if (term.length() < 2 || term.length() > 20) continue;
-      if (!term.matches("[a-z0-9]+")) continue;
-      if (term.matches("[0-9]+")) continue;
+    int[] candidates = new int[dictionary.size()];
+    int numCandidates = 0;
+    int[] dfs = new int[dictionary.size()];
+    double[] offerWeights = new double[dictionary.size()];
+    BytesRef term = new BytesRef();
+    for (int id : HashIterationOrder.hashSetOrder(dictionary, vocab, vocabSize)) {
+      if (id < numOriginalTermIds) continue;
+      if (dfRels[id] < 2) continue;
+      dictionary.get(id, term);
+      if (term.length < 2 || term.length > 20) continue;
+      if (!isLowerCaseAlphanumeric(term) || isNumeric(term)) continue;
 
       try {
-        int df = reader.docFreq(new Term(IndexArgs.CONTENTS, term));
-        int dfRel = 0;
-
-        for (Map.Entry<Integer, Set<String>> entry : docToTermsMap.entrySet()) {
-          Set<String> terms = entry.getValue();
-          if (terms.contains(term)) {
-            dfRel++;
-          }
-        }
-
-        if (dfRel < 2) {
-          continue;
-        }
-        newFeatures.addFeature(term, df, dfRel, numDocs, numRelDocs, newTermWeight);
+        dfs[id] = termStats.get(term).getDf();
+        offerWeights[id] = new PrfFeature(dfs[id], dfRels[id], numDocs, numRelDocs, newTermWeight).getOfferWeight();
+        candidates[numCandidates++] = id;
       } catch (IOException e) {
         e.printStackTrace();
       }
     }
 
-    newFeatures.pruneToSize(fbTerms);
+    // Keep the candidates with the highest offer weights. This is a stable sort over the order of a HashMap of the
+    // candidates, so that ties are broken as they always have been.
+    int[] ranked = HashIterationOrder.hashSetOrder(dictionary, candidates, numCandidates);
+    new InPlaceMergeSorter() {
+      @Override
+      protected int compare(int i, int j) {
+        return Double.compare(offerWeights[ranked[j]], offerWeights[ranked[i]]);
+      }
 
-    for (String term : originalTerms) {
+      @Override
+      protected void swap(int i, int j) {
+        int id = ranked[i];
+        ranked[i] = ranked[j];
+        ranked[j] = id;
+      }
+    }.sort(0, ranked.length);
+
+    for (int i = 0; i < Math.min(fbTerms, ranked.length); i++) {
+      int id = ranked[i];
+      newFeatures.addFeature(dictionary.get(id, term).utf8ToString(), dfs[id], dfRels[id], numDocs, numRelDocs,
+          newTermWeight);
+    }
+
+    for (String originalTerm : originalTerms) {
       try {
-        int df = reader.docFreq(new Term(IndexArgs.CONTENTS, term));
-        int dfRel = 0;
-
-        for (Map.Entry<Integer, Set<String>> entry : docToTermsMap.entrySet()) {
-          Set<String> terms = entry.getValue();
-          if (terms.contains(term)) {
-            dfRel++;
-          }
-        }
-        newFeatures.addFeature(term, df, dfRel, numDocs, numRelDocs);
+        int df = termStats.get(originalTerm).getDf();
+        int dfRel = dfRels[TermIdFeatureVector.termId(dictionary, new BytesRef(originalTerm))];
+        newFeatures.addFeature(originalTerm, df, dfRel, numDocs, numRelDocs);
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -213,25 +251,60 @@ public class BM25PrfReranker implements Reranker {
     return "BM25PRF(fbDocs=" + fbDocs + ",fbTerms=" + fbTerms + ",k1=" + k1 + ",b=" + b + ",newTermWeight=" + newTermWeight;
   }
 
-  private Set<String> getTermsStr(Terms terms) {
-    Set<String> termsStr = new HashSet<>();
+  // The tag goes into the names of run files, so it's kept as it is, unbalanced parenthesis and all.
+  @Override
+  public String signature() {
+    return tag() + ")@" + field;
+  }
+
+  private int[] getTermIds(Terms terms, BytesRefHash dictionary) {
+    int[] termIds = new int[16];
+    int size = 0;
 
     try {
       TermsEnum termsEnum = terms.iterator();
 
       BytesRef text;
       while ((text = termsEnum.next()) != null) {
-        String term = text.utf8ToString();
-        termsStr.add(term);
-
+        termIds = ArrayUtil.grow(termIds, size + 1);
+        termIds[size++] = TermIdFeatureVector.termId(dictionary, text);
       }
     } catch (Exception e) {
       e.printStackTrace();
-      // Return empty feature vector
-      return termsStr;
+      // Return the terms collected so far
+      return ArrayUtil.copyOfSubArray(termIds, 0, size);
     }
 
-    return termsStr;
+    return ArrayUtil.copyOfSubArray(termIds, 0, size);
+  }
+
+  // Terms come straight from the dictionary of the forward index, in the same order as from the term vector.
+  private int[] getTermIds(ForwardIndex index, ForwardIndex.DocVector vector, BytesRefHash dictionary) {
+    int[] termIds = new int[vector.size()];
+    BytesRef term = new BytesRef();
+    for (int i = 0; i < vector.size(); i++) {
+      termIds[i] = TermIdFeatureVector.termId(dictionary, index.getTerm(vector.getTermOrd(i), term));
+    }
+    return termIds;
+  }
+
+  private static boolean isLowerCaseAlphanumeric(BytesRef text) {
+    for (int i = text.offset; i < text.offset + text.length; i++) {
+      byte b = text.bytes[i];
+      if (!((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isNumeric(BytesRef text) {
+    for (int i = text.offset; i < text.offset + text.length; i++) {
+      if (text.bytes[i] < '0' || text.bytes[i] > '9') {
+        return false;
+      }
+    }
+    return text.length > 0;
   }
 
   class PrfFeature {
@@ -319,21 +392,6 @@ public class BM25PrfReranker implements Reranker {
     }
 
 
-    PrfFeatures pruneToSize(int k) {
-      List<KeyValuePair> pairs = getOrderedFeatures();
-      HashMap<String, PrfFeature> pruned = new HashMap<>();
-
-      for (KeyValuePair pair : pairs) {
-        if (pruned.size() >= k) {
-          break;
-        }
-        pruned.put(pair.getKey(), pair.getFeature());
-      }
-
-      this.features = pruned;
-      return this;
-    }
-
     @Override
     public String toString() {
       List<String> strBuilder = new ArrayList<String>();
@@ -0,0 +1,402 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.rerank.lib;
+
+import io.anserini.index.ForwardIndex;
+import io.anserini.index.IndexArgs;
+import io.anserini.index.IndexReaderUtils;
+import io.anserini.rerank.Reranker;
+import io.anserini.rerank.RerankerContext;
+import io.anserini.rerank.ScoredDocuments;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.InPlaceMergeSorter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Reranker that removes near-duplicates from the results: walking down the ranked list, every document removes the
+ * documents below it whose cosine similarity (over term frequency vectors) with it is at least some threshold, unless
+ * it has already been removed itself. If the query is a document (see {@link RerankerContext#getQueryDocId()}), its
+ * near-duplicates are removed as well.
+ *
+ * Rather than comparing all pairs of documents, only candidate pairs are compared. By default, candidates come from
+ * prefix filtering, which is exact: two vectors can only reach the threshold if one of them contains one of the
+ * rarest terms of the other, those that carry more than 1 - threshold^2 of its squared norm. Alternatively, candidates
+ * come from MinHash locality-sensitive hashing over the sets of terms, which is faster on large result lists but may
+ * miss duplicates, particularly those with skewed term frequencies.
+ */
+public class NearDuplicateReranker implements Reranker {
+  public static final double DEFAULT_THRESHOLD = 0.9;
+
+  private final String field;
+  private final double threshold;
+  private final int bands;
+  private final int rows;
+
+  public NearDuplicateReranker() {
+    this(IndexArgs.CONTENTS, DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Creates a reranker using exact candidate generation.
+   *
+   * @param field field whose term vectors are compared
+   * @param threshold minimum cosine similarity of near-duplicates
+   */
+  public NearDuplicateReranker(String field, double threshold) {
+    this(field, threshold, 0, 0);
+  }
+
+  /**
+   * Creates a reranker using MinHash candidate generation. Two documents whose sets of terms have Jaccard similarity s
+   * are compared with probability 1 - (1 - s^rows)^bands.
+   *
+   * @param field field whose term vectors are compared
+   * @param threshold minimum cosine similarity of near-duplicates
+   * @param bands number of MinHash bands, or zero for exact candidate generation
+   * @param rows number of MinHash values per band
+   */
+  public NearDuplicateReranker(String field, double threshold, int bands, int rows) {
+    if (bands < 0 || (bands > 0 && rows <= 0)) {
+      throw new IllegalArgumentException("Invalid MinHash parameters: bands=" + bands + ", rows=" + rows);
+    }
+    this.field = field;
+    this.threshold = threshold;
+    this.bands = bands;
+    this.rows = rows;
+  }
+
+  @Override
+  public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
+    IndexReader reader = context.getIndexSearcher().getIndexReader();
+    int queryDocid = context.getQueryDocId() == null ? -1 :
+        IndexReaderUtils.convertDocidToLuceneDocid(reader, context.getQueryDocId());
+
+    try {
+      return remove(docs, findDuplicates(reader, docs.ids, queryDocid));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Finds the near-duplicates in a ranked list of documents.
+   *
+   * @param reader index reader
+   * @param luceneDocids Lucene docids of the documents, in rank order
+   * @param queryDocid Lucene docid of the query document, whose near-duplicates are removed too, or -1 if none
+   * @return which of the documents are near-duplicates to be removed
+   * @throws IOException if error encountered reading term vectors
+   */
+  public boolean[] findDuplicates(IndexReader reader, int[] luceneDocids, int queryDocid) throws IOException {
+    int n = luceneDocids.length;
+
+    // All vectors share a single term dictionary, so that they can be compared by term id. The query document, if
+    // any, goes last.
+    BytesRefHash dictionary = new BytesRefHash();
+    Vector[] vectors = new Vector[n + 1];
+    for (int i = 0; i < n; i++) {
+      vectors[i] = Vector.of(reader, luceneDocids[i], field, dictionary);
+    }
+    vectors[n] = queryDocid < 0 ? Vector.EMPTY : Vector.of(reader, queryDocid, field, dictionary);
+
+    Candidates candidates = bands == 0 ? prefixCandidates(vectors, dictionary.size()) : minHashCandidates(vectors);
+    boolean[] removed = new boolean[n];
+
+    candidates.forEach(n, j -> {
+      if (j < n && cosine(vectors[n], vectors[j]) >= threshold) {
+        removed[j] = true;
+      }
+    });
+    for (int i = 0; i < n; i++) {
+      if (removed[i]) {
+        continue;
+      }
+      final int d = i;
+      candidates.forEach(i, j -> {
+        if (j > d && j < n && !removed[j] && cosine(vectors[d], vectors[j]) >= threshold) {
+          removed[j] = true;
+        }
+      });
+    }
+
+    return removed;
+  }
+
+  /**
+   * Returns the documents that aren't marked for removal, in the same order.
+   *
+   * @param docs documents
+   * @param removed which documents to remove
+   * @return documents that are left
+   */
+  static ScoredDocuments remove(ScoredDocuments docs, boolean[] removed) {
+    int size = 0;
+    for (boolean r : removed) {
+      if (!r) {
+        size++;
+      }
+    }
+
+    ScoredDocuments scoredDocs = new ScoredDocuments();
+    scoredDocs.documents = new Document[size];
+    scoredDocs.ids = new int[size];
+    scoredDocs.scores = new float[size];
+    scoredDocs.fields = docs.fields;
+    int idx = 0;
+    for (int i = 0; i < docs.documents.length; i++) {
+      if (!removed[i]) {
+        scoredDocs.documents[idx] = docs.documents[i];
+        scoredDocs.scores[idx] = docs.scores[i];
+        scoredDocs.ids[idx] = docs.ids[i];
+        idx++;
+      }
+    }
+
+    return scoredDocs;
+  }
+
+  // Term frequencies are integers, so the dot products and squared norms are exact and the similarity doesn't depend on
+  // the order in which terms are visited.
+  static double cosine(Vector a, Vector b) {
+    long dot = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.ids.length && j < b.ids.length) {
+      if (a.ids[i] < b.ids[j]) {
+        i++;
+      } else if (a.ids[i] > b.ids[j]) {
+        j++;
+      } else {
+        dot += (long) a.tfs[i++] * b.tfs[j++];
+      }
+    }
+    return dot / (a.norm * b.norm);
+  }
+
+  // Each vector gets as candidates the documents containing the rarest of its terms, up until what's left of the
+  // vector is too small to reach the threshold with anything.
+  private Candidates prefixCandidates(Vector[] vectors, int numTerms) {
+    int[] df = new int[numTerms + 1];
+    for (Vector v : vectors) {
+      for (int id : v.ids) {
+        df[id + 1]++;
+      }
+    }
+    // Turn the dfs into offsets of the postings of each term.
+    for (int t = 0; t < numTerms; t++) {
+      df[t + 1] += df[t];
+    }
+    int[] postings = new int[df[numTerms]];
+    int[] next = Arrays.copyOf(df, numTerms);
+    for (int d = 0; d < vectors.length; d++) {
+      for (int id : vectors[d].ids) {
+        postings[next[id]++] = d;
+      }
+    }
+
+    // Allow for a little rounding error, as a longer prefix never hurts.
+    double t2 = threshold * threshold * (1 - 1e-9);
+    int[][] ranges = new int[vectors.length][];
+    for (int d = 0; d < vectors.length; d++) {
+      Vector v = vectors[d];
+      long[] order = new long[v.ids.length];
+      for (int k = 0; k < order.length; k++) {
+        int id = v.ids[k];
+        order[k] = ((long) (df[id + 1] - df[id]) << 32) | k;
+      }
+      Arrays.sort(order);
+
+      int[] r = new int[2 * order.length];
+      int size = 0;
+      long remaining = v.sumOfSquares;
+      for (int k = 0; k < order.length && remaining >= t2 * v.sumOfSquares; k++) {
+        int entry = (int) order[k];
+        int id = v.ids[entry];
+        r[size++] = df[id];
+        r[size++] = df[id + 1];
+        remaining -= (long) v.tfs[entry] * v.tfs[entry];
+      }
+      ranges[d] = Arrays.copyOf(r, size);
+    }
+
+    return new Candidates(postings, ranges);
+  }
+
+  // Each vector gets as candidates the documents that agree with it on all the MinHash values of some band.
+  private Candidates minHashCandidates(Vector[] vectors) {
+    int n = vectors.length;
+    long[] keys = new long[n];
+    int[] members = new int[bands * n];
+    int[][] ranges = new int[n][2 * bands];
+
+    for (int b = 0; b < bands; b++) {
+      for (int d = 0; d < n; d++) {
+        keys[d] = vectors[d].ids.length == 0 ? d : bandKey(vectors[d], b);
+      }
+
+      int base = b * n;
+      for (int d = 0; d < n; d++) {
+        members[base + d] = d;
+      }
+      new InPlaceMergeSorter() {
+        @Override
+        protected int compare(int i, int j) {
+          return Long.compare(keys[members[base + i]], keys[members[base + j]]);
+        }
+
+        @Override
+        protected void swap(int i, int j) {
+          int tmp = members[base + i];
+          members[base + i] = members[base + j];
+          members[base + j] = tmp;
+        }
+      }.sort(0, n);
+
+      int start = 0;
+      for (int k = 1; k <= n; k++) {
+        if (k == n || keys[members[base + k]] != keys[members[base + start]]) {
+          for (int m = start; m < k; m++) {
+            ranges[members[base + m]][2 * b] = base + start;
+            ranges[members[base + m]][2 * b + 1] = base + k;
+          }
+          start = k;
+        }
+      }
+    }
+
+    return new Candidates(members, ranges);
+  }
+
+  private long bandKey(Vector v, int band) {
+    long key = band;
+    for (int r = 0; r < rows; r++) {
+      long seed = mix(band * rows + r + 1);
+      long min = Long.MAX_VALUE;
+      for (int id : v.ids) {
+        min = Math.min(min, mix(id ^ seed));
+      }
+      key = mix(key ^ min);
+    }
+    return key;
+  }
+
+  // The finalizer of SplitMix64, which makes for good enough independent hash functions when seeded differently.
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  // Sparse term frequency vector, sorted by term id, with its norm computed once.
+  static final class Vector {
+    static final Vector EMPTY = new Vector(new int[0], new int[0]);
+
+    final int[] ids;
+    final int[] tfs;
+    final long sumOfSquares;
+    final double norm;
+
+    Vector(int[] ids, int[] tfs) {
+      this.ids = ids;
+      this.tfs = tfs;
+      long sum = 0;
+      for (int tf : tfs) {
+        sum += (long) tf * tf;
+      }
+      this.sumOfSquares = sum;
+      this.norm = Math.sqrt(sum);
+    }
+
+    // Reads the term vector of a document, assigning term ids from the dictionary.
+    static Vector of(IndexReader reader, int docid, String field, BytesRefHash dictionary) throws IOException {
+      Terms terms = ForwardIndex.getTermVector(reader, docid, field);
+      if (terms == null) {
+        return EMPTY;
+      }
+
+      // Entries are packed as (term id, tf), so that sorting them sorts by term id.
+      long[] entries = new long[(int) Math.max(terms.size(), 8)];
+      int size = 0;
+      TermsEnum it = terms.iterator();
+      BytesRef term;
+      while ((term = it.next()) != null) {
+        int id = dictionary.add(term);
+        id = id < 0 ? -id - 1 : id;
+        if (size == entries.length) {
+          entries = ArrayUtil.grow(entries, size + 1);
+        }
+        entries[size++] = ((long) id << 32) | it.totalTermFreq();
+      }
+      Arrays.sort(entries, 0, size);
+
+      int[] ids = new int[size];
+      int[] tfs = new int[size];
+      for (int k = 0; k < size; k++) {
+        ids[k] = (int) (entries[k] >>> 32);
+        tfs[k] = (int) entries[k];
+      }
+      return new Vector(ids, tfs);
+    }
+  }
+
+  // For each vector, a number of ranges of an array of vectors to compare it with. A vector may occur in more than one
+  // range, but is only visited once.
+  private static final class Candidates {
+    private final int[] members;
+    private final int[][] ranges;
+    private final int[] visited;
+
+    Candidates(int[] members, int[][] ranges) {
+      this.members = members;
+      this.ranges = ranges;
+      this.visited = new int[ranges.length];
+      Arrays.fill(visited, -1);
+    }
+
+    void forEach(int d, IntConsumer consumer) {
+      int[] r = ranges[d];
+      for (int k = 0; k < r.length; k += 2) {
+        for (int m = r[k]; m < r[k + 1]; m++) {
+          int c = members[m];
+          if (c != d && visited[c] != d) {
+            visited[c] = d;
+            consumer.accept(c);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public String tag() {
+    return "NearDuplicate(threshold=" + threshold + (bands == 0 ? "" : ",bands=" + bands + ",rows=" + rows) + ")";
+  }
+
+  @Override
+  public String signature() {
+    return tag() + "@" + field;
+  }
+}
@@ -20,145 +20,55 @@ import io.anserini.index.IndexReaderUtils;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.rerank.ScoredDocuments;
-import io.anserini.search.topicreader.BackgroundLinkingTopicReader;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.io.IOException;
 
-import static io.anserini.index.IndexArgs.CONTENTS;
-import static io.anserini.index.IndexArgs.ID;
 import static io.anserini.index.generator.WashingtonPostGenerator.WashingtonPostField.PUBLISHED_DATE;
 
 /*
 * TREC News Track Background Linking task postprocessing.
 * Near-duplicate documents (similar/same with the query docid) will be removed by comparing
-* their cosine similarity with the query docid.
+* their cosine similarity with the query docid, see {@link NearDuplicateReranker}.
 */
 public class NewsBackgroundLinkingReranker implements Reranker {
+  private final NearDuplicateReranker dedup = new NearDuplicateReranker();
+
   @Override
   public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
     IndexReader reader = context.getIndexSearcher().getIndexReader();
     String queryDocId = context.getQueryDocId();
-    final Map<String, Long> queryTermsMap = convertDocVectorToMap(reader, queryDocId);
-    
-    List<Map<String, Long>> docsVectorsMap = new ArrayList<>();
-    for (int i = 0; i < docs.documents.length; i++) {
-      String docid = docs.documents[i].getField(ID).stringValue();
-      docsVectorsMap.add(convertDocVectorToMap(reader, docid));
-    }
-    
+    int queryLuceneId = IndexReaderUtils.convertDocidToLuceneDocid(reader, queryDocId);
+
     // remove the duplicates: 1. the same doc with the query doc 2. duplicated docs in the results
-    Set<Integer> toRemove = new HashSet<>();
-    for (int i = 0; i < docs.documents.length; i++) {
-      if (toRemove.contains(i)) continue;
-      if (computeCosineSimilarity(queryTermsMap, docsVectorsMap.get(i)) >= 0.9) {
-        toRemove.add(i);
-        continue;
-      }
-      for (int j = i+1; j < docs.documents.length; j++) {
-        if (computeCosineSimilarity(docsVectorsMap.get(i), docsVectorsMap.get(j)) >= 0.9) {
-          toRemove.add(j);
-        }
-      }
+    // The hits already come with their Lucene docids, so there's no need to look them up again.
+    boolean[] toRemove;
+    try {
+      toRemove = dedup.findDuplicates(reader, docs.ids, queryLuceneId);
+    } catch (IOException e) {
+      e.printStackTrace();
+      toRemove = new boolean[docs.documents.length];
     }
 
     if (context.getSearchArgs().backgroundlinking_datefilter) {
       try {
-        int luceneId = IndexReaderUtils.convertDocidToLuceneDocid(reader, queryDocId);
-        Document queryDoc = reader.document(luceneId);
+        Document queryDoc = reader.document(queryLuceneId);
         long queryDocDate = Long.parseLong(queryDoc.getField(PUBLISHED_DATE.name).stringValue());
         for (int i = 0; i < docs.documents.length; i++) {
           long date = Long.parseLong(docs.documents[i].getField(PUBLISHED_DATE.name).stringValue());
           if (date > queryDocDate) {
-            toRemove.add(i);
+            toRemove[i] = true;
           }
         }
       } catch (Exception e) {
         e.printStackTrace();
       }
     }
-  
-    ScoredDocuments scoredDocs = new ScoredDocuments();
-    int resSize = docs.documents.length - toRemove.size();
-    scoredDocs.documents = new Document[resSize];
-    scoredDocs.ids = new int[resSize];
-    scoredDocs.scores = new float[resSize];
-    int idx = 0;
-    for (int i = 0; i < docs.documents.length; i++) {
-      if (!toRemove.contains(i)) {
-        scoredDocs.documents[idx] = docs.documents[i];
-        scoredDocs.scores[idx] = docs.scores[i];
-        scoredDocs.ids[idx] = docs.ids[i];
-        idx++;
-      }
-    }
-  
-    return scoredDocs;
-  }
-  
-  private Map<String, Long> convertDocVectorToMap(IndexReader reader, String docid) {
-    Map<String, Long> m = new HashMap<>();
-    try {
-      Terms terms = reader.getTermVector(
-          IndexReaderUtils.convertDocidToLuceneDocid(reader, docid), CONTENTS);
-      TermsEnum it = terms.iterator();
-      while (it.next() != null) {
-        String term = it.term().utf8ToString();
-        long tf = it.totalTermFreq();
-        m.put(term, tf);
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-    return m;
-  }
-  
-  private double dotProduct(Map<String, Long> profile1, Map<String, Long> profile2) {
-    // Loop over the smallest map
-    Map<String, Long> small_profile = profile2;
-    Map<String, Long> large_profile = profile1;
-    if (profile1.size() < profile2.size()) {
-      small_profile = profile1;
-      large_profile = profile2;
-    }
-    
-    double agg = 0;
-    for (Map.Entry<String, Long> entry : small_profile.entrySet()) {
-      long i = large_profile.getOrDefault(entry.getKey(), 0L);
-      agg += 1.0 * entry.getValue() * i;
-    }
-    
-    return agg;
-  }
-  
-  private double computeCosineSimilarity(Map<String, Long> profile1, Map<String, Long> profile2) {
-    return dotProduct(profile1, profile2) / (computeL2Norm(profile1) * computeL2Norm(profile2));
-  }
-  
-  /**
-   * Compute the norm L2 : sqrt(Sum_i( v_i²)).
-   *
-   * @param profile
-   * @return L2 norm
-   */
-  private double computeL2Norm(final Map<String, Long> profile) {
-    double agg = 0;
-    
-    for (Map.Entry<String, Long> entry : profile.entrySet()) {
-      agg += 1.0 * entry.getValue() * entry.getValue();
-    }
-    
-    return Math.sqrt(agg);
+
+    return NearDuplicateReranker.remove(docs, toRemove);
   }
-  
+
   @Override
   public String tag() { return ""; }
 }
@@ -16,12 +16,14 @@
 
 package io.anserini.rerank.lib;
 
+import io.anserini.index.ForwardIndex;
 import io.anserini.index.IndexArgs;
+import io.anserini.index.TermStatisticsCache;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.rerank.ScoredDocuments;
-import io.anserini.analysis.AnalyzerUtils;
-import io.anserini.util.FeatureVector;
+import io.anserini.util.HashIterationOrder;
+import io.anserini.util.TermIdFeatureVector;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
@@ -36,14 +38,18 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.Counter;
 
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_DOCID;
 import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_TWEETID;
@@ -75,19 +81,24 @@ public class Rm3Reranker implements Reranker {
     IndexSearcher searcher = context.getIndexSearcher();
     IndexReader reader = searcher.getIndexReader();
 
-    FeatureVector qfv = FeatureVector.fromTerms(AnalyzerUtils.analyze(analyzer, context.getQueryText())).scaleToUnitL1Norm();
+    // All vectors for this query share a single term dictionary, so that they can be combined by term id.
+    BytesRefHash dictionary = new BytesRefHash();
+    TermIdFeatureVector qfv = TermIdFeatureVector.fromTerms(dictionary,
+        context.getAnalyzedQuery(analyzer)).scaleToUnitL1Norm();
 
     boolean useRf = (context.getSearchArgs().rf_qrels != null);
-    FeatureVector rm = estimateRelevanceModel(docs, reader, context.getSearchArgs().searchtweets, useRf);
+    TermIdFeatureVector rm = estimateRelevanceModel(docs, reader, context.getSearchArgs().searchtweets, useRf, dictionary,
+        feedbackDocuments(context));
 
-    rm = FeatureVector.interpolate(qfv, rm, originalQueryWeight);
+    rm = TermIdFeatureVector.interpolate(qfv, rm, originalQueryWeight);
 
     BooleanQuery.Builder feedbackQueryBuilder = new BooleanQuery.Builder();
 
-    Iterator<String> terms = rm.iterator();
-    while (terms.hasNext()) {
-      String term = terms.next();
-      float prob = rm.getFeatureWeight(term);
+    // Clauses go in the same order as they did with string-keyed feature vectors, which keeps scores the same to the
+    // last bit: the order of clauses is the order their scores are summed up in.
+    for (int id : rm.getIterationOrder()) {
+      BytesRef term = BytesRef.deepCopyOf(dictionary.get(id, new BytesRef()));
+      float prob = rm.getFeatureWeight(id);
       feedbackQueryBuilder.add(new BoostQuery(new TermQuery(new Term(this.field, term)), prob), BooleanClause.Occur.SHOULD);
     }
 
@@ -124,13 +135,20 @@ public class Rm3Reranker implements Reranker {
       return docs;
     }
 
-    return ScoredDocuments.fromTopDocs(rs, searcher);
+    return ScoredDocuments.fromTopDocs(rs, searcher, docs.fields);
   }
 
-  private FeatureVector estimateRelevanceModel(ScoredDocuments docs, IndexReader reader, boolean tweetsearch, boolean useRf) {
-    FeatureVector f = new FeatureVector();
+  // The feedback terms of a document don't depend on the parameters, so they're shared by all RM3 rerankers working
+  // on the same query, e.g., across the cascades of a parameter sweep.
+  @SuppressWarnings("unchecked")
+  private Map<Integer, FeedbackDocument> feedbackDocuments(RerankerContext context) {
+    return (Map<Integer, FeedbackDocument>) context.getSharedCache().computeIfAbsent(
+        Rm3Reranker.class.getName() + ":" + field, k -> new ConcurrentHashMap<Integer, FeedbackDocument>());
+  }
 
-    Set<String> vocab = new HashSet<>();
+  private TermIdFeatureVector estimateRelevanceModel(ScoredDocuments docs, IndexReader reader, boolean tweetsearch,
+                                                     boolean useRf, BytesRefHash dictionary,
+                                                     Map<Integer, FeedbackDocument> feedbackDocuments) {
     int numdocs;
     if (useRf) {
       numdocs = docs.documents.length;
@@ -139,43 +157,57 @@ public class Rm3Reranker implements Reranker {
       numdocs = docs.documents.length < fbDocs ? docs.documents.length : fbDocs;
     }
 
-    List<FeatureVector> docvectors = new ArrayList<>();
+    List<TermIdFeatureVector> docvectors = new ArrayList<>();
     List<Float> docScores = new ArrayList<>();
     for (int i = 0; i < numdocs; i++) {
       if (useRf && docs.scores[i] <= .0) {
         continue;
       }
       try {
-        FeatureVector docVector = createdFeatureVector(
-            reader.getTermVector(docs.ids[i], field), reader, tweetsearch);
+        FeedbackDocument feedbackDocument = feedbackDocuments.get(docs.ids[i]);
+        if (feedbackDocument == null) {
+          feedbackDocument = createFeedbackDocument(docs.ids[i], reader, tweetsearch);
+          feedbackDocuments.put(docs.ids[i], feedbackDocument);
+        }
+        TermIdFeatureVector docVector = feedbackDocument.toFeatureVector(dictionary);
         docVector.pruneToSize(fbTerms);
-        vocab.addAll(docVector.getFeatures());
         docvectors.add(docVector);
         docScores.add(Float.valueOf(docs.scores[i]));
       } catch (IOException e) {
         e.printStackTrace();
         // Just return empty feature vector.
-        return f;
+        return new TermIdFeatureVector(dictionary);
       }
     }
 
-    // Precompute the norms once and cache results.
-    float[] norms = new float[docvectors.size()];
+    // Accumulate the feedback weights of each term densely over the term ids, going through the documents in order.
+    // The vocabulary is the union of the terms of the documents, in the order of a HashSet of them.
+    float[] fbWeights = new float[dictionary.size()];
+    int[] vocab = new int[0];
+    int vocabSize = 0;
     for (int i = 0; i < docvectors.size(); i++) {
-      norms[i] = (float) docvectors.get(i).computeL1Norm();
-    }
-
-    for (String term : vocab) {
-      float fbWeight = 0.0f;
-      for (int i = 0; i < docvectors.size(); i++) {
+      TermIdFeatureVector docVector = docvectors.get(i);
+      int[] order = docVector.getIterationOrder();
+      vocab = ArrayUtil.grow(vocab, vocabSize + order.length);
+      System.arraycopy(order, 0, vocab, vocabSize, order.length);
+      vocabSize += order.length;
+
+      float norm = (float) docVector.computeL1Norm();
+      float score = docScores.get(i);
+      for (int j = 0; j < docVector.size(); j++) {
+        int id = docVector.getTermId(j);
         // Avoids zero-length feedback documents, which causes division by zero when computing term weights.
-        // Zero-length feedback documents occur (e.g., with CAR17) when a document has only terms 
+        // Zero-length feedback documents occur (e.g., with CAR17) when a document has only terms
         // that accents (which are indexed, but not selected for feedback).
-        if (norms[i] > 0.001f) {
-          fbWeight += (docvectors.get(i).getFeatureWeight(term) / norms[i]) * docScores.get(i);
+        if (norm > 0.001f) {
+          fbWeights[id] += (docVector.getWeight(j) / norm) * score;
         }
       }
-      f.addFeatureWeight(term, fbWeight);
+    }
+
+    TermIdFeatureVector f = new TermIdFeatureVector(dictionary);
+    for (int id : HashIterationOrder.hashSetOrder(dictionary, vocab, vocabSize)) {
+      f.addFeatureWeight(id, fbWeights[id]);
     }
 
     f.pruneToSize(fbTerms);
@@ -184,66 +216,82 @@ public class Rm3Reranker implements Reranker {
     return f;
   }
 
-  private FeatureVector createdFeatureVector(Terms terms, IndexReader reader, boolean tweetsearch) {
-    FeatureVector f = new FeatureVector();
+  /**
+   * The terms of a feedback document that are candidate expansion terms, with their frequencies, in term order.
+   */
+  private static final class FeedbackDocument {
+    private final BytesRefArray terms = new BytesRefArray(Counter.newCounter());
+    private float[] freqs = new float[16];
+
+    private void add(BytesRef term, float freq) {
+      freqs = ArrayUtil.grow(freqs, terms.size() + 1);
+      freqs[terms.append(term)] = freq;
+    }
+
+    // Terms are added in the same order as they come out of the term vector, which is what determines the order ties
+    // are broken in when pruning.
+    private TermIdFeatureVector toFeatureVector(BytesRefHash dictionary) {
+      TermIdFeatureVector f = new TermIdFeatureVector(dictionary, terms.size());
+      BytesRefBuilder spare = new BytesRefBuilder();
+      for (int i = 0; i < terms.size(); i++) {
+        f.addFeatureWeight(terms.get(spare, i), freqs[i]);
+      }
+      return f;
+    }
+  }
+
+  private FeedbackDocument createFeedbackDocument(int docid, IndexReader reader, boolean tweetsearch)
+      throws IOException {
+    ForwardIndex index = ForwardIndex.get(reader, field);
+    return index != null ? createFeedbackDocument(index.getDocVector(docid, null), index, reader, tweetsearch) :
+        createFeedbackDocument(reader.getTermVector(docid, field), reader, tweetsearch);
+  }
+
+  // Terms come straight from the dictionary of the forward index, and so do their document frequencies, as long as
+  // it's the forward index of the field the statistics are taken from.
+  private FeedbackDocument createFeedbackDocument(ForwardIndex.DocVector vector, ForwardIndex index,
+                                                  IndexReader reader, boolean tweetsearch) {
+    FeedbackDocument f = new FeedbackDocument();
+
+    try {
+      int numDocs = reader.numDocs();
+      TermStatisticsCache termStats = index.getField().equals(IndexArgs.CONTENTS) ? null :
+          TermStatisticsCache.get(reader, IndexArgs.CONTENTS);
+
+      BytesRef text = new BytesRef();
+      for (int i = 0; i < vector.size(); i++) {
+        int ord = vector.getTermOrd(i);
+        index.getTerm(ord, text);
+        if (!isCandidateTerm(text)) continue;
+        float ratio = termStats == null ? (float) index.getDf(ord) / numDocs : termStats.get(text).getDfRatio();
+        if (isFrequentTerm(ratio, numDocs, tweetsearch)) continue;
+
+        f.add(text, (float) vector.getTf(i));
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+      // Return empty feature vector
+      return f;
+    }
+
+    return f;
+  }
+
+  private FeedbackDocument createFeedbackDocument(Terms terms, IndexReader reader, boolean tweetsearch) {
+    FeedbackDocument f = new FeedbackDocument();
 
     try {
       int numDocs = reader.numDocs();
+      TermStatisticsCache termStats = TermStatisticsCache.get(reader, IndexArgs.CONTENTS);
       TermsEnum termsEnum = terms.iterator();
 
       BytesRef text;
       while ((text = termsEnum.next()) != null) {
-        String term = text.utf8ToString();
-
-        if (term.length() < 2 || term.length() > 20) continue;
-        if (!term.matches("[a-z0-9]+")) continue;
-
-        // This seemingly arbitrary logic needs some explanation. See following PR for details:
-        //   https://github.com/castorini/Anserini/pull/289
-        //
-        // We have long known that stopwords have a big impact in RM3. If we include stopwords
-        // in feedback, effectiveness is affected negatively. In the previous implementation, we
-        // built custom stopwords lists by selecting top k terms from the collection. We only
-        // had two stopwords lists, for gov2 and for Twitter. The gov2 list is used on all
-        // collections other than Twitter.
-        //
-        // The logic below instead uses a df threshold: If a term appears in more than n percent
-        // of the documents, then it is discarded as a feedback term. This heuristic has the
-        // advantage of getting rid of collection-specific stopwords lists, but at the cost of
-        // introducing an additional tuning parameter.
-        //
-        // Cognizant of the dangers of (essentially) tuning on test data, here's what I
-        // (@lintool) did:
-        //
-        // + For newswire collections, I picked a number, 10%, that seemed right. This value
-        //   actually increased effectiveness in most conditions across all newswire collections.
-        //
-        // + This 10% value worked fine on web collections; effectiveness didn't change much.
-        //
-        // Since this was the first and only heuristic value I selected, we're not really tuning
-        // parameters.
-        //
-        // The 10% threshold, however, doesn't work well on tweets because tweets are much
-        // shorter. Based on a list terms in the collection by df: For the Tweets2011 collection,
-        // I found a threshold close to a nice round number that approximated the length of the
-        // current stopwords list, by eyeballing the df values. This turned out to be 1%. I did
-        // this again for the Tweets2013 collection, using the same approach, and obtained a value
-        // of 0.7%.
-        //
-        // With both values, we obtained effectiveness pretty close to the old values with the
-        // custom stopwords list.
-        int df = reader.docFreq(new Term(IndexArgs.CONTENTS, term));
-        float ratio = (float) df / numDocs;
-        if (tweetsearch) {
-          if (numDocs > 100000000) { // Probably Tweets2013
-            if (ratio > 0.007f) continue;
-          } else {
-            if (ratio > 0.01f) continue;
-          }
-        } else if (ratio > 0.1f) continue;
+        if (!isCandidateTerm(text)) continue;
+        if (isFrequentTerm(termStats.get(text).getDfRatio(), numDocs, tweetsearch)) continue;
 
         int freq = (int) termsEnum.totalTermFreq();
-        f.addFeatureWeight(term, (float) freq);
+        f.add(text, (float) freq);
       }
     } catch (Exception e) {
       e.printStackTrace();
@@ -253,9 +301,74 @@ public class Rm3Reranker implements Reranker {
 
     return f;
   }
-  
+
+  // Same as requiring the term to match [a-z0-9]{2,20}, but without decoding it into a string.
+  private static boolean isCandidateTerm(BytesRef text) {
+    return text.length >= 2 && text.length <= 20 && isLowerCaseAlphanumeric(text);
+  }
+
+  private static boolean isFrequentTerm(float ratio, int numDocs, boolean tweetsearch) {
+    // This seemingly arbitrary logic needs some explanation. See following PR for details:
+    //   https://github.com/castorini/Anserini/pull/289
+    //
+    // We have long known that stopwords have a big impact in RM3. If we include stopwords
+    // in feedback, effectiveness is affected negatively. In the previous implementation, we
+    // built custom stopwords lists by selecting top k terms from the collection. We only
+    // had two stopwords lists, for gov2 and for Twitter. The gov2 list is used on all
+    // collections other than Twitter.
+    //
+    // The logic below instead uses a df threshold: If a term appears in more than n percent
+    // of the documents, then it is discarded as a feedback term. This heuristic has the
+    // advantage of getting rid of collection-specific stopwords lists, but at the cost of
+    // introducing an additional tuning parameter.
+    //
+    // Cognizant of the dangers of (essentially) tuning on test data, here's what I
+    // (@lintool) did:
+    //
+    // + For newswire collections, I picked a number, 10%, that seemed right. This value
+    //   actually increased effectiveness in most conditions across all newswire collections.
+    //
+    // + This 10% value worked fine on web collections; effectiveness didn't change much.
+    //
+    // Since this was the first and only heuristic value I selected, we're not really tuning
+    // parameters.
+    //
+    // The 10% threshold, however, doesn't work well on tweets because tweets are much
+    // shorter. Based on a list terms in the collection by df: For the Tweets2011 collection,
+    // I found a threshold close to a nice round number that approximated the length of the
+    // current stopwords list, by eyeballing the df values. This turned out to be 1%. I did
+    // this again for the Tweets2013 collection, using the same approach, and obtained a value
+    // of 0.7%.
+    //
+    // With both values, we obtained effectiveness pretty close to the old values with the
+    // custom stopwords list.
+    if (tweetsearch) {
+      if (numDocs > 100000000) { // Probably Tweets2013
+        return ratio > 0.007f;
+      } else {
+        return ratio > 0.01f;
+      }
+    }
+    return ratio > 0.1f;
+  }
+
+  private static boolean isLowerCaseAlphanumeric(BytesRef text) {
+    for (int i = text.offset; i < text.offset + text.length; i++) {
+      byte b = text.bytes[i];
+      if (!((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public String tag() {
     return "Rm3(fbDocs="+fbDocs+",fbTerms="+fbTerms+",originalQueryWeight:"+originalQueryWeight+")";
   }
+
+  @Override
+  public String signature() {
+    return tag() + "@" + field;
+  }
 }
@@ -0,0 +1,231 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.StandardDirectoryReader;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bounded, thread-safe cache of query results, so that queries that come up again and again don't have to be
+ * analyzed, scored and reranked every time. Keys are built by the caller with {@link #key(Object...)} out of whatever
+ * determines the results, typically the analyzed query, the similarity, the reranker cascade and the number of hits.
+ *
+ * The cache belongs to a single index. Results are only valid for the index as it was when they were computed: as
+ * soon as the cache is used with a reader on a different commit, everything is dropped. The cache can be saved to disk
+ * and loaded back, e.g., between runs of a regression, given a {@link Codec} to write out results.
+ *
+ * @param <V> type of the results
+ */
+public class QueryResultCache<V> {
+  private static final Logger LOG = LogManager.getLogger(QueryResultCache.class);
+
+  private static final String MAGIC = "anserini.QueryResultCache";
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * Writes out and reads back results, for saving the cache to disk.
+   *
+   * @param <V> type of the results
+   */
+  public interface Codec<V> {
+    void write(DataOutput out, V value) throws IOException;
+
+    V read(DataInput in) throws IOException;
+  }
+
+  private final Cache<String, V> cache;
+  // The reader we last checked, and the generation of the index it was opened on.
+  private volatile IndexReader.CacheKey readerKey;
+  private volatile String generation;
+
+  /**
+   * Creates a cache holding at most a number of results, evicting the least recently used ones first.
+   *
+   * @param maximumSize maximum number of results
+   */
+  public QueryResultCache(int maximumSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+  }
+
+  /**
+   * Builds a key out of a number of parts.
+   *
+   * @param parts parts of the key, converted to strings
+   * @return key
+   */
+  public static String key(Object... parts) {
+    return Stream.of(parts).map(String::valueOf).collect(Collectors.joining("\u0000"));
+  }
+
+  /**
+   * Returns the cached results for a key, if any.
+   *
+   * @param reader reader the results are for
+   * @param key key
+   * @return cached results, or {@code null} if none
+   */
+  public V get(IndexReader reader, String key) {
+    checkGeneration(reader);
+    return cache.getIfPresent(key);
+  }
+
+  /**
+   * Caches results.
+   *
+   * @param reader reader the results are for
+   * @param key key
+   * @param value results
+   */
+  public void put(IndexReader reader, String key, V value) {
+    checkGeneration(reader);
+    cache.put(key, value);
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * Returns the hit, miss and eviction counts of this cache.
+   *
+   * @return cache statistics
+   */
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Saves the cache to a file, e.g., to be loaded back by the next run.
+   *
+   * @param path file to write
+   * @param codec codec to write out results
+   * @throws IOException if error encountered writing the file
+   */
+  public synchronized void save(Path path, Codec<V> codec) throws IOException {
+    if (generation == null) {
+      // Never used, so we don't know which index the results are for.
+      return;
+    }
+
+    Map<String, V> entries = Map.copyOf(cache.asMap());
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeUTF(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeUTF(generation);
+      out.writeInt(entries.size());
+      for (Map.Entry<String, V> entry : entries.entrySet()) {
+        byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(key.length);
+        out.write(key);
+        codec.write(out, entry.getValue());
+      }
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+    LOG.info(String.format("Saved %d cached query results to %s", entries.size(), path));
+  }
+
+  /**
+   * Loads a cache saved by {@link #save(Path, Codec)}. Results computed on a different commit of the index are
+   * ignored.
+   *
+   * @param path file to read
+   * @param reader reader the results are going to be used with
+   * @param codec codec to read back results
+   * @return number of results loaded
+   * @throws IOException if error encountered reading the file
+   */
+  public synchronized int load(Path path, IndexReader reader, Codec<V> codec) throws IOException {
+    checkGeneration(reader);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (!MAGIC.equals(in.readUTF()) || in.readInt() != FORMAT_VERSION) {
+        throw new IOException(path + " is not a query result cache.");
+      }
+      String savedGeneration = in.readUTF();
+      if (!savedGeneration.equals(generation)) {
+        LOG.info(String.format("Ignoring cached query results in %s, which are for a different index commit", path));
+        return 0;
+      }
+
+      int cnt = in.readInt();
+      for (int i = 0; i < cnt; i++) {
+        byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        cache.put(new String(key, StandardCharsets.UTF_8), codec.read(in));
+      }
+      LOG.info(String.format("Loaded %d cached query results from %s", cnt, path));
+      return cnt;
+    }
+  }
+
+  private void checkGeneration(IndexReader reader) {
+    IndexReader.CacheHelper helper = reader.getReaderCacheHelper();
+    IndexReader.CacheKey key = helper == null ? null : helper.getKey();
+    if (key != null && key == readerKey) {
+      return;
+    }
+
+    String current = generation(reader);
+    synchronized (this) {
+      if (!current.equals(generation)) {
+        if (generation != null) {
+          LOG.info("Index has changed, dropping cached query results");
+        }
+        cache.invalidateAll();
+        generation = current;
+      }
+      readerKey = key;
+    }
+  }
+
+  // Identifies the index commit a reader was opened on, by the unique id Lucene gives every commit. Readers that don't
+  // come from a directory can't be told apart by anything other than their identity.
+  private static String generation(IndexReader reader) {
+    if (reader instanceof StandardDirectoryReader) {
+      SegmentInfos infos = ((StandardDirectoryReader) reader).getSegmentInfos();
+      // Commits written by very old versions of Lucene don't have an id.
+      String id = infos.getId() == null ? infos.getSegmentsFileName() : StringHelper.idToString(infos.getId());
+      return id + "@" + infos.getVersion();
+    }
+    return "reader@" + System.identityHashCode(reader);
+  }
+}
@@ -40,6 +40,10 @@ public class SearchArgs {
   @Option(name = "-threads", metaVar = "[Number]", usage = "Number of Threads")
   public int threads = 1;
 
+  @Option(name = "-threads.batch", metaVar = "[Number]", usage = "Number of topics each search task processes. " +
+      "By default, topics are split evenly across threads (in batches of at most 100 topics).")
+  public int threads_batch = 0;
+
   @Option(name = "-language", usage = "Analyzer Language")
   public String language = "en";
 
@@ -94,6 +98,22 @@ public class SearchArgs {
       "the top documents from the initial round ranking.")
   public int rerankcutoff = 50;
 
+  @Option(name = "-feedback.cacheSize", metaVar = "[number]", usage = "Maximum number of terms whose collection " +
+      "statistics are cached for feedback reranking (RM3, BM25PRF)")
+  public int feedback_cacheSize = 1000000;
+
+  @Option(name = "-feedback.warmup", metaVar = "[file]", usage = "Preload the feedback term statistics cache with " +
+      "the terms in this file, e.g., top df terms as extracted by ExtractTopDfTerms")
+  public String feedback_warmup = null;
+
+  @Option(name = "-queryCache.size", metaVar = "[number]", usage = "Cache the results of up to this many queries, " +
+      "so that queries that come up again (e.g., in repeated runs) aren't searched again")
+  public int queryCache_size = 0;
+
+  @Option(name = "-queryCache.path", metaVar = "[file]", depends = {"-queryCache.size"}, usage = "Load the query " +
+      "result cache from this file, if it exists, and save it back at the end")
+  public String queryCache_path = null;
+
   @Option(name = "-rf.qrels", metaVar = "[file]", usage = "qrels file used for relevance feedback")
   public String rf_qrels = null;
 
@@ -16,13 +16,16 @@
 
 package io.anserini.search;
 
+import io.anserini.analysis.AnalyzedTokens;
 import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.analysis.DefaultEnglishAnalyzer;
 import io.anserini.analysis.TweetAnalyzer;
 import io.anserini.index.IndexArgs;
 import io.anserini.index.IndexReaderUtils;
+import io.anserini.index.TermStatisticsCache;
 import io.anserini.index.generator.TweetGenerator;
 import io.anserini.index.generator.WashingtonPostGenerator;
+import io.anserini.rerank.ExternalIndexRegistry;
 import io.anserini.rerank.RerankerCascade;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.rerank.ScoredDocuments;
@@ -37,6 +40,8 @@ import io.anserini.search.similarity.AccurateBM25Similarity;
 import io.anserini.search.similarity.TaggedSimilarity;
 import io.anserini.search.topicreader.BackgroundLinkingTopicReader;
 import io.anserini.search.topicreader.TopicReader;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.apache.commons.io.IOUtils;
@@ -51,7 +56,10 @@ import org.apache.lucene.analysis.de.GermanAnalyzer;
 import org.apache.lucene.analysis.es.SpanishAnalyzer;
 import org.apache.lucene.analysis.fr.FrenchAnalyzer;
 import org.apache.lucene.analysis.hi.HindiAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexableField;
@@ -88,9 +96,12 @@ import org.kohsuke.args4j.OptionHandlerFilter;
 import org.kohsuke.args4j.ParserProperties;
 
 import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.BufferedReader;
@@ -102,6 +113,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -118,8 +130,10 @@ import java.util.concurrent.TimeUnit;
  * Main entry point for search.
  */
 public final class SearchCollection implements Closeable {
+  // Ties are broken by the ordinals of the sorted doc values of the docid, which gives the same order as comparing the
+  // docids themselves (i.e., STRING_VAL), but compares ints per hit instead of copying and comparing BytesRefs.
   public static final Sort BREAK_SCORE_TIES_BY_DOCID =
-      new Sort(SortField.FIELD_SCORE, new SortField(IndexArgs.ID, SortField.Type.STRING_VAL));
+      new Sort(SortField.FIELD_SCORE, new SortField(IndexArgs.ID, SortField.Type.STRING));
   public static final Sort BREAK_SCORE_TIES_BY_TWEETID =
       new Sort(SortField.FIELD_SCORE,
           new SortField(TweetGenerator.TweetField.ID_LONG.name, SortField.Type.LONG, true));
@@ -128,46 +142,120 @@ public final class SearchCollection implements Closeable {
 
   private final SearchArgs args;
   private final IndexReader reader;
+  // Side indexes used by rerankers (e.g., -axiom.index), opened once and shared by all queries.
+  private final ExternalIndexRegistry externalIndexes = new ExternalIndexRegistry();
+  private final QueryResultCache<ScoredDocuments> queryCache;
   private final Analyzer analyzer;
   private List<TaggedSimilarity> similarities;
   private List<RerankerCascade> cascades;
   private final boolean isRerank;
   private Map<String, ScoredDocuments> qrels;
   private Set<String> queriesWithRel; 
+  // Hash of the contents of the -rf.qrels file, so that cached results are not reused once the judgments change.
+  private String qrelsHash;
+
+  /**
+   * Run file for a single (similarity, cascade) pair. Search threads hand in the results for their batch of topics,
+   * which are written out in batch order, so that the run is identical regardless of which batches finish first.
+   */
+  private final class RunWriter {
+    final private String outputPath;
+    final private String id;
+    final private int topicCount;
+    final private String[] pending;
+    final private long start;
+    private PrintWriter out;
+    private int next = 0;
+    private int cnt = 0;
+
+    private RunWriter(String outputPath, TaggedSimilarity taggedSimilarity, RerankerCascade cascade,
+                      int topicCount, int batchCount) throws IOException {
+      this.outputPath = outputPath;
+      this.id = String.format("ranker: %s, reranker: %s", taggedSimilarity.getTag(), cascade.getTag());
+      this.topicCount = topicCount;
+      this.pending = new String[batchCount];
+      this.start = System.nanoTime();
+      this.out = new PrintWriter(Files.newBufferedWriter(Paths.get(outputPath), StandardCharsets.US_ASCII));
+      LOG.info("[Start] " + id);
+
+      if (batchCount == 0) {
+        finish();
+      }
+    }
+
+    private synchronized void write(int batch, String results, int topics) {
+      pending[batch] = results;
+
+      // Flush every batch that is now contiguous with what has already been written.
+      while (next < pending.length && pending[next] != null) {
+        out.print(pending[next]);
+        pending[next] = null;
+        next++;
+      }
+
+      int prev = cnt;
+      cnt += topics;
+      if (cnt / 100 > prev / 100) {
+        LOG.info(String.format("%d queries processed", cnt / 100 * 100));
+      }
+
+      if (next == pending.length) {
+        finish();
+      }
+    }
+
+    private void finish() {
+      out.flush();
+      out.close();
+      out = null;
+      final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+      LOG.info("[End  ] " + id);
+      LOG.info(topicCount + " topics processed in "
+          + DurationFormatUtils.formatDuration(durationMillis, "HH:mm:ss"));
+    }
+  }
 
+  /**
+   * Searches a batch of topics with a single similarity, and reranks the results with each of a number of cascades,
+   * which share the first-stage results of each topic.
+   */
   private final class SearcherThread<K> extends Thread {
     final private IndexReader reader;
     final private IndexSearcher searcher;
-    final private SortedMap<K, Map<String, String>> topics;
+    final private List<Map.Entry<K, Map<String, String>>> topics;
     final private TaggedSimilarity taggedSimilarity;
-    final private RerankerCascade cascade;
-    final private String outputPath;
+    final private List<RerankerCascade> cascades;
+    final private List<RunWriter> writers;
+    final private int batch;
     final private String runTag;
 
-    private SearcherThread(IndexReader reader, SortedMap<K, Map<String, String>> topics, TaggedSimilarity taggedSimilarity,
-                           RerankerCascade cascade, Map<String, ScoredDocuments> qrels, String outputPath, 
-                           String runTag) {
+    private SearcherThread(IndexReader reader, List<Map.Entry<K, Map<String, String>>> topics,
+                           TaggedSimilarity taggedSimilarity, List<RerankerCascade> cascades, List<RunWriter> writers,
+                           int batch, String runTag) {
       this.reader = reader;
       this.topics = topics;
       this.taggedSimilarity = taggedSimilarity;
-      this.cascade = cascade;
+      this.cascades = cascades;
       this.runTag = runTag;
-      this.outputPath = outputPath;
+      this.writers = writers;
+      this.batch = batch;
       this.searcher = new IndexSearcher(this.reader);
       this.searcher.setSimilarity(this.taggedSimilarity.getSimilarity());
-      setName(outputPath);
+      setName(taggedSimilarity.getTag() + "#" + batch);
     }
 
     @Override
     public void run() {
-      try {
-        String id = String.format("ranker: %s, reranker: %s", taggedSimilarity.getTag(), cascade.getTag());
-        LOG.info("[Start] " + id);
+      StringWriter[] results = new StringWriter[cascades.size()];
+      PrintWriter[] outs = new PrintWriter[cascades.size()];
+      for (int c = 0; c < cascades.size(); c++) {
+        results[c] = new StringWriter();
+        outs[c] = new PrintWriter(results[c]);
+      }
 
-        int cnt = 0;
-        final long start = System.nanoTime();
-        PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(outputPath), StandardCharsets.US_ASCII));
-        for (Map.Entry<K, Map<String, String>> entry : topics.entrySet()) {
+      try {
+        for (Map.Entry<K, Map<String, String>> entry : topics) {
           K qid = entry.getKey();
 
           String queryString = "";
@@ -188,62 +276,95 @@ public final class SearchCollection implements Closeable {
               hasRelDocs = true;
             }
           }
-          ScoredDocuments docs;
-          if (args.searchtweets) {
-            docs = searchTweets(this.searcher, qid, queryString, Long.parseLong(entry.getValue().get("time")), cascade, queryQrels, hasRelDocs);
-          } else if (args.backgroundlinking) {
-            docs = searchBackgroundLinking(this.searcher, qid, queryString, cascade);
-          } else {
-            docs = search(this.searcher, qid, queryString, cascade, queryQrels, hasRelDocs);
-          }
-
-          // For removing duplicate docids.
-          Set<String> docids = new HashSet<>();
-
-          /*
-           * the first column is the topic number.
-           * the second column is currently unused and should always be "Q0".
-           * the third column is the official document identifier of the retrieved document.
-           * the fourth column is the rank the document is retrieved.
-           * the fifth column shows the score (integer or floating point) that generated the ranking.
-           * the sixth column is called the "run tag" and should be a unique identifier for your
-           */
-          int rank = 1;
-          for (int i = 0; i < docs.documents.length; i++) {
-            String docid = docs.documents[i].get(IndexArgs.ID);
 
-            if (args.strip_segment_id) {
-              docid = docid.split("\\.")[0];
+          // Cascades whose results are cached don't need searching; the others are all run off a single search.
+          ScoredDocuments[] docs = new ScoredDocuments[cascades.size()];
+          String[] cacheKeys = new String[cascades.size()];
+          List<RerankerCascade> pending = new ArrayList<>();
+          String analyzedQuery = null;
+          for (int c = 0; c < cascades.size(); c++) {
+            if (queryCache != null) {
+              if (analyzedQuery == null) {
+                analyzedQuery = args.backgroundlinking ? "" :
+                    String.join(" ", AnalyzerUtils.analyze(analyzer, queryString));
+              }
+              cacheKeys[c] = queryCacheKey(qid, queryString, analyzedQuery, entry.getValue(), taggedSimilarity,
+                  cascades.get(c));
+              docs[c] = queryCache.get(reader, cacheKeys[c]);
             }
+            if (docs[c] == null) {
+              pending.add(cascades.get(c));
+            }
+          }
 
-            if (docids.contains(docid))
-              continue;
-
-            out.println(String.format(Locale.US, "%s Q0 %s %d %f %s",
-                qid, docid, rank, docs.scores[i], runTag));
-
-            // Note that this option is set to false by default because duplicate documents usually indicate some
-            // underlying indexing issues, and we don't want to just eat errors silently.
-            if (args.removedups) {
-              docids.add(docid);
+          if (!pending.isEmpty()) {
+            List<ScoredDocuments> searched;
+            if (args.searchtweets) {
+              searched = searchTweets(this.searcher, qid, queryString, Long.parseLong(entry.getValue().get("time")), pending, queryQrels, hasRelDocs);
+            } else if (args.backgroundlinking) {
+              searched = searchBackgroundLinking(this.searcher, qid, queryString, pending);
+            } else {
+              searched = search(this.searcher, qid, queryString, pending, queryQrels, hasRelDocs);
             }
 
-            rank++;
+            for (int c = 0, k = 0; c < cascades.size(); c++) {
+              if (docs[c] == null) {
+                docs[c] = searched.get(k++);
+                if (cacheKeys[c] != null) {
+                  queryCache.put(reader, cacheKeys[c], docs[c]);
+                }
+              }
+            }
           }
-          cnt++;
-          if (cnt % 100 == 0) {
-            LOG.info(String.format("%d queries processed", cnt));
+
+          for (int c = 0; c < cascades.size(); c++) {
+            writeResults(outs[c], qid, docs[c]);
           }
         }
-        out.flush();
-        out.close();
-        final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
-
-        LOG.info("[End  ] " + id);
-        LOG.info(topics.size() + " topics processed in "
-            + DurationFormatUtils.formatDuration(durationMillis, "HH:mm:ss"));
       } catch (Exception e) {
         LOG.error(Thread.currentThread().getName() + ": Unexpected Exception:", e);
+      } finally {
+        // Always hand the batch over, even if incomplete, so that later batches of these runs still get written.
+        for (int c = 0; c < cascades.size(); c++) {
+          outs[c].flush();
+          writers.get(c).write(batch, results[c].toString(), topics.size());
+        }
+      }
+    }
+
+    private void writeResults(PrintWriter out, K qid, ScoredDocuments docs) {
+      // For removing duplicate docids.
+      Set<String> docids = new HashSet<>();
+
+      /*
+       * the first column is the topic number.
+       * the second column is currently unused and should always be "Q0".
+       * the third column is the official document identifier of the retrieved document.
+       * the fourth column is the rank the document is retrieved.
+       * the fifth column shows the score (integer or floating point) that generated the ranking.
+       * the sixth column is called the "run tag" and should be a unique identifier for your
+       */
+      int rank = 1;
+      for (int i = 0; i < docs.documents.length; i++) {
+        String docid = docs.documents[i].get(IndexArgs.ID);
+
+        if (args.strip_segment_id) {
+          docid = docid.split("\\.")[0];
+        }
+
+        if (docids.contains(docid))
+          continue;
+
+        out.println(String.format(Locale.US, "%s Q0 %s %d %f %s",
+            qid, docid, rank, docs.scores[i], runTag));
+
+        // Note that this option is set to false by default because duplicate documents usually indicate some
+        // underlying indexing issues, and we don't want to just eat errors silently.
+        if (args.removedups) {
+          docids.add(docid);
+        }
+
+        rank++;
       }
     }
   }
@@ -301,14 +422,77 @@ public final class SearchCollection implements Closeable {
 
     isRerank = args.rm3 || args.axiom || args.bm25prf;
 
+    if (this.isRerank) {
+      TermStatisticsCache termStats = TermStatisticsCache.get(reader, IndexArgs.CONTENTS, args.feedback_cacheSize);
+      if (args.feedback_warmup != null) {
+        termStats.warmUp(Paths.get(args.feedback_warmup));
+      }
+    }
+
     if (this.isRerank && args.rf_qrels != null){
       loadQrels(args.rf_qrels);      
     }
 
+    if (args.queryCache_size > 0) {
+      queryCache = new QueryResultCache<>(args.queryCache_size);
+      if (args.queryCache_path != null && Files.exists(Paths.get(args.queryCache_path))) {
+        queryCache.load(Paths.get(args.queryCache_path), reader, RESULTS_CODEC);
+      }
+    } else {
+      queryCache = null;
+    }
+  }
+
+  // Cached results are only ever used to write out runs, so only the docids and scores are kept.
+  private static final QueryResultCache.Codec<ScoredDocuments> RESULTS_CODEC =
+      new QueryResultCache.Codec<>() {
+        @Override
+        public void write(DataOutput out, ScoredDocuments docs) throws IOException {
+          out.writeInt(docs.documents.length);
+          for (int i = 0; i < docs.documents.length; i++) {
+            out.writeInt(docs.ids[i]);
+            out.writeFloat(docs.scores[i]);
+            out.writeUTF(docs.documents[i].get(IndexArgs.ID));
+          }
+        }
+
+        @Override
+        public ScoredDocuments read(DataInput in) throws IOException {
+          ScoredDocuments docs = new ScoredDocuments();
+          int n = in.readInt();
+          docs.documents = new Document[n];
+          docs.ids = new int[n];
+          docs.scores = new float[n];
+          docs.fields = ScoredDocuments.ID_ONLY;
+          for (int i = 0; i < n; i++) {
+            docs.ids[i] = in.readInt();
+            docs.scores[i] = in.readFloat();
+            docs.documents[i] = new Document();
+            docs.documents[i].add(new StringField(IndexArgs.ID, in.readUTF(), Field.Store.YES));
+          }
+          return docs;
+        }
+      };
+
+  // Everything the results of a topic depend on, apart from the index: the query (or the query document, for background
+  // linking), the analyzer, the scoring function, the rerankers, and the search options. Both the raw and the analyzed
+  // query go in, since query generators may build queries from either. The query is analyzed by the caller, once for
+  // all cascades.
+  private <K> String queryCacheKey(K qid, String query, String analyzedQuery, Map<String, String> topic,
+                                   TaggedSimilarity taggedSimilarity, RerankerCascade cascade) {
+    return QueryResultCache.key(query, analyzedQuery,
+        args.searchtweets, args.language, args.stemmer, args.keepstop,
+        args.searchtweets ? topic.get("time") : "",
+        // Feedback from qrels depends on the topic itself, and on the judgments for it.
+        qrelsHash == null ? "" : qid, qrelsHash == null ? "" : qrelsHash,
+        taggedSimilarity.getTag(), cascade.getSignature(),
+        args.queryGenerator, args.sdm, args.sdm_tw, args.sdm_ow, args.sdm_uw, args.hits, args.rerankcutoff,
+        args.arbitraryScoreTieBreak, args.backgroundlinking_k, args.backgroundlinking_datefilter);
   }
 
   @Override
   public void close() throws IOException {
+    externalIndexes.close();
     reader.close();
   }
 
@@ -454,6 +638,7 @@ public final class SearchCollection implements Closeable {
     if (!Files.exists(rfQrelsFilePath) || !Files.isRegularFile(rfQrelsFilePath) || !Files.isReadable(rfQrelsFilePath)) {
         throw new IllegalArgumentException("Qrels file : " + rfQrelsFilePath + " does not exist or is not a (readable) file.");
     }
+    this.qrelsHash = MoreFiles.asByteSource(rfQrelsFilePath).hash(Hashing.sha256()).toString();
     Map<String, Map<String, Integer>> qrelsDocs = new HashMap<>();
     this.queriesWithRel = new HashSet<>();
     InputStream fin = Files.newInputStream(Paths.get(rf_qrels), StandardOpenOption.READ);
@@ -510,9 +695,19 @@ public final class SearchCollection implements Closeable {
     this.similarities = constructSimilarities();
     this.cascades = constructRerankers();
 
+    // Split the topics into batches, so that a single (similarity, cascade) pair can still make use of all threads.
+    List<Map.Entry<K, Map<String, String>>> entries = new ArrayList<>(topics.entrySet());
+    final int batchSize = args.threads_batch > 0 ? args.threads_batch :
+        Math.max(1, Math.min(100, (entries.size() + args.threads - 1) / args.threads));
+    final int batchCount = (entries.size() + batchSize - 1) / batchSize;
+
     LOG.info("============ Launching Search Threads ============");
+    LOG.info(String.format("%d topics in batches of %d", entries.size(), batchSize));
 
+    // All the cascades of a similarity are run together, so that they share the first-stage results of each topic.
     for (TaggedSimilarity taggedSimilarity : similarities) {
+      List<RerankerCascade> runCascades = new ArrayList<>();
+      List<RunWriter> writers = new ArrayList<>();
       for (RerankerCascade cascade : cascades) {
         final String outputPath;
 
@@ -526,7 +721,19 @@ public final class SearchCollection implements Closeable {
           LOG.info("Run already exists, skipping: " + outputPath);
           continue;
         }
-        executor.execute(new SearcherThread<>(reader, topics, taggedSimilarity, cascade, this.qrels, outputPath, runTag));
+
+        runCascades.add(cascade);
+        writers.add(new RunWriter(outputPath, taggedSimilarity, cascade, entries.size(), batchCount));
+      }
+
+      if (runCascades.isEmpty()) {
+        continue;
+      }
+      for (int batch = 0; batch < batchCount; batch++) {
+        List<Map.Entry<K, Map<String, String>>> batchTopics =
+            entries.subList(batch * batchSize, Math.min(entries.size(), (batch + 1) * batchSize));
+        executor.execute(new SearcherThread<>(reader, batchTopics, taggedSimilarity, runCascades, writers, batch,
+            runTag));
       }
     }
     executor.shutdown();
@@ -541,19 +748,50 @@ public final class SearchCollection implements Closeable {
       // Preserve interrupt status
       Thread.currentThread().interrupt();
     }
+
+    if (queryCache != null) {
+      LOG.info("Query result cache: " + queryCache.getStats());
+      if (args.queryCache_path != null) {
+        queryCache.save(Paths.get(args.queryCache_path), RESULTS_CODEC);
+      }
+    }
   }
 
   public <K> ScoredDocuments search(IndexSearcher searcher, K qid, String queryString, RerankerCascade cascade, ScoredDocuments queryQrels,
                                     boolean hasRelDocs) throws IOException {
+    return search(searcher, qid, queryString, List.of(cascade), queryQrels, hasRelDocs).get(0);
+  }
+
+  /**
+   * Searches a topic once, and reranks the results with each of a number of cascades. The cascades share the
+   * first-stage results, as well as whatever the rerankers cache along the way (see
+   * {@link RerankerContext#getSharedCache()}), so that, e.g., a sweep over RM3 parameters only retrieves and extracts
+   * the feedback documents once.
+   *
+   * @param searcher searcher
+   * @param qid topic id
+   * @param queryString query
+   * @param cascades cascades to rerank the results with
+   * @param queryQrels qrels of the topic, for relevance feedback
+   * @param hasRelDocs whether the topic has relevant documents, for relevance feedback
+   * @param <K> type of the topic id
+   * @return the results of each cascade
+   * @throws IOException if error encountered during search
+   */
+  public <K> List<ScoredDocuments> search(IndexSearcher searcher, K qid, String queryString,
+                                          List<RerankerCascade> cascades, ScoredDocuments queryQrels,
+                                          boolean hasRelDocs) throws IOException {
     Query query = null;
+    AnalyzedTokens queryTokens = AnalyzerUtils.analyze(analyzer, queryString, new AnalyzedTokens());
 
     if (args.sdm) {
-      query = new SdmQueryGenerator(args.sdm_tw, args.sdm_ow, args.sdm_uw).buildQuery(IndexArgs.CONTENTS, analyzer, queryString);
+      query = new SdmQueryGenerator(args.sdm_tw, args.sdm_ow, args.sdm_uw)
+          .buildQuery(IndexArgs.CONTENTS, analyzer, queryString, queryTokens);
     } else {
       try {
         QueryGenerator generator = (QueryGenerator) Class.forName("io.anserini.search.query." + args.queryGenerator)
             .getConstructor().newInstance();
-        query = generator.buildQuery(IndexArgs.CONTENTS, analyzer, queryString);
+        query = generator.buildQuery(IndexArgs.CONTENTS, analyzer, queryString, queryTokens);
       } catch (Exception e) {
         e.printStackTrace();
         throw new IllegalArgumentException("Unable to load QueryGenerator: " + args.topicReader);
@@ -569,28 +807,48 @@ public final class SearchCollection implements Closeable {
       }
     }
 
-    List<String> queryTokens = AnalyzerUtils.analyze(analyzer, queryString);
-
-    RerankerContext context = new RerankerContext<>(searcher, qid, query, null, queryString, queryTokens, null, args);
+    RerankerContext context = new RerankerContext<>(searcher, qid, query, null, queryString, queryTokens.toList(), null,
+        args, externalIndexes);
+    context.setAnalyzedQuery(analyzer, queryTokens);
     ScoredDocuments scoredFbDocs; 
     if ( isRerank && args.rf_qrels != null) {
       if (hasRelDocs){
         scoredFbDocs = queryQrels;
       } else{//if no relevant documents, only perform score based tie breaking next
         LOG.info("No relevant documents for " + qid.toString());
-        scoredFbDocs = ScoredDocuments.fromTopDocs(rs, searcher);
-        cascade = new RerankerCascade();
-        cascade.add(new ScoreTiesAdjusterReranker());
+        scoredFbDocs = ScoredDocuments.fromTopDocs(rs, searcher, ScoredDocuments.ID_ONLY);
+        cascades = tieBreakingOnly(cascades.size());
       }
     } else {
-      scoredFbDocs = ScoredDocuments.fromTopDocs(rs, searcher);
+      scoredFbDocs = ScoredDocuments.fromTopDocs(rs, searcher, ScoredDocuments.ID_ONLY);
+    }
+
+    return rerank(cascades, scoredFbDocs, context);
+  }
+
+  // Each cascade reranks its own copy of the first-stage results, since rerankers may adjust scores in place.
+  private static List<ScoredDocuments> rerank(List<RerankerCascade> cascades, ScoredDocuments docs,
+                                              RerankerContext context) {
+    List<ScoredDocuments> results = new ArrayList<>(cascades.size());
+    for (RerankerCascade cascade : cascades) {
+      results.add(cascade.run(cascades.size() == 1 ? docs : docs.copy(), context));
     }
+    return results;
+  }
 
-    return cascade.run(scoredFbDocs, context);
+  private static List<RerankerCascade> tieBreakingOnly(int n) {
+    RerankerCascade cascade = new RerankerCascade();
+    cascade.add(new ScoreTiesAdjusterReranker());
+    return Collections.nCopies(n, cascade);
   }
 
   public <K> ScoredDocuments searchBackgroundLinking(IndexSearcher searcher, K qid, String docid,
                                                      RerankerCascade cascade) throws IOException {
+    return searchBackgroundLinking(searcher, qid, docid, List.of(cascade)).get(0);
+  }
+
+  public <K> List<ScoredDocuments> searchBackgroundLinking(IndexSearcher searcher, K qid, String docid,
+                                                           List<RerankerCascade> cascades) throws IOException {
     // Extract a list of analyzed terms from the document to compose a query.
     List<String> terms = BackgroundLinkingTopicReader.extractTerms(reader, docid, args.backgroundlinking_k, analyzer);
     // Since the terms are already analyzed, we just join them together and use the StandardQueryParser.
@@ -621,31 +879,41 @@ public final class SearchCollection implements Closeable {
     }
 
     RerankerContext context = new RerankerContext<>(searcher, qid, query, docid,
-        StringUtils.join(", ", terms), terms, null, args);
+        StringUtils.join(", ", terms), terms, null, args, externalIndexes);
 
-    // Run the existing cascade.
-    ScoredDocuments docs = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher), context);
+    // Run the existing cascades; the post-processing below needs the publication date of each hit.
+    List<ScoredDocuments> results = rerank(cascades, ScoredDocuments.fromTopDocs(rs, searcher,
+        Set.of(IndexArgs.ID, WashingtonPostGenerator.WashingtonPostField.PUBLISHED_DATE.name)), context);
 
     // Perform post-processing (e.g., date filter, dedupping, etc.) as a final step.
-    return new NewsBackgroundLinkingReranker().rerank(docs, context);
+    NewsBackgroundLinkingReranker postProcessing = new NewsBackgroundLinkingReranker();
+    results.replaceAll(docs -> postProcessing.rerank(docs, context));
+    return results;
   }
 
   public <K> ScoredDocuments searchTweets(IndexSearcher searcher, K qid, String queryString, long t, RerankerCascade cascade, 
                                           ScoredDocuments queryQrels, boolean hasRelDocs) throws IOException {
+    return searchTweets(searcher, qid, queryString, t, List.of(cascade), queryQrels, hasRelDocs).get(0);
+  }
+
+  public <K> List<ScoredDocuments> searchTweets(IndexSearcher searcher, K qid, String queryString, long t,
+                                                List<RerankerCascade> cascades, ScoredDocuments queryQrels,
+                                                boolean hasRelDocs) throws IOException {
     Query keywordQuery;
+    AnalyzedTokens queryTokens = AnalyzerUtils.analyze(analyzer, queryString, new AnalyzedTokens());
     if (args.sdm) {
-      keywordQuery = new SdmQueryGenerator(args.sdm_tw, args.sdm_ow, args.sdm_uw).buildQuery(IndexArgs.CONTENTS, analyzer, queryString);
+      keywordQuery = new SdmQueryGenerator(args.sdm_tw, args.sdm_ow, args.sdm_uw)
+          .buildQuery(IndexArgs.CONTENTS, analyzer, queryString, queryTokens);
     } else {
       try {
         QueryGenerator generator = (QueryGenerator) Class.forName("io.anserini.search.query." + args.queryGenerator)
             .getConstructor().newInstance();
-        keywordQuery = generator.buildQuery(IndexArgs.CONTENTS, analyzer, queryString);
+        keywordQuery = generator.buildQuery(IndexArgs.CONTENTS, analyzer, queryString, queryTokens);
       } catch (Exception e) {
         e.printStackTrace();
         throw new IllegalArgumentException("Unable to load QueryGenerator: " + args.topicReader);
       }
     }
-    List<String> queryTokens = AnalyzerUtils.analyze(analyzer, queryString);
 
     // Do not consider the tweets with tweet ids that are beyond the queryTweetTime
     // <querytweettime> tag contains the timestamp of the query in terms of the
@@ -667,21 +935,22 @@ public final class SearchCollection implements Closeable {
       }
     }
 
-    RerankerContext context = new RerankerContext<>(searcher, qid, keywordQuery, null, queryString, queryTokens, filter, args);
+    RerankerContext context = new RerankerContext<>(searcher, qid, keywordQuery, null, queryString, queryTokens.toList(),
+        filter, args, externalIndexes);
+    context.setAnalyzedQuery(analyzer, queryTokens);
     ScoredDocuments scoredFbDocs; 
     if ( isRerank && args.rf_qrels != null) {
       if (hasRelDocs) {
         scoredFbDocs = queryQrels;
       } else{//if no relevant documents, only perform score based tie breaking next
-        scoredFbDocs = ScoredDocuments.fromTopDocs(rs, searcher);
-        cascade = new RerankerCascade();
-        cascade.add(new ScoreTiesAdjusterReranker());
+        scoredFbDocs = ScoredDocuments.fromTopDocs(rs, searcher, ScoredDocuments.ID_ONLY);
+        cascades = tieBreakingOnly(cascades.size());
       }
     } else {
-      scoredFbDocs = ScoredDocuments.fromTopDocs(rs, searcher);
+      scoredFbDocs = ScoredDocuments.fromTopDocs(rs, searcher, ScoredDocuments.ID_ONLY);
     }
 
-    return cascade.run(scoredFbDocs,  context);
+    return rerank(cascades, scoredFbDocs, context);
   }
 
   public static void main(String[] args) throws Exception {
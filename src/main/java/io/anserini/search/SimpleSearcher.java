@@ -16,6 +16,7 @@
 
 package io.anserini.search;
 
+import io.anserini.analysis.AnalyzedTokens;
 import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.index.IndexArgs;
 import io.anserini.index.IndexCollection;
@@ -49,7 +50,6 @@ import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
-import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.similarities.BM25Similarity;
 import org.apache.lucene.search.similarities.LMDirichletSimilarity;
@@ -87,8 +87,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * via pyjnius.
  */
 public class SimpleSearcher implements Closeable {
-  public static final Sort BREAK_SCORE_TIES_BY_DOCID =
-      new Sort(SortField.FIELD_SCORE, new SortField(IndexArgs.ID, SortField.Type.STRING_VAL));
+  public static final Sort BREAK_SCORE_TIES_BY_DOCID = SearchCollection.BREAK_SCORE_TIES_BY_DOCID;
   private static final Logger LOG = LogManager.getLogger(SimpleSearcher.class);
 
   public static final class Args {
@@ -142,6 +141,7 @@ public class SimpleSearcher implements Closeable {
   protected boolean useRM3;
 
   protected IndexSearcher searcher = null;
+  protected QueryResultCache<Result[]> queryCache = null;
 
   /**
    * This class is meant to serve as the bridge between Anserini and Pyserini.
@@ -334,6 +334,32 @@ public class SimpleSearcher implements Closeable {
     return similarity;
   }
 
+  /**
+   * Caches the results of queries, so that repeated queries return without searching. Results are cached by analyzed
+   * query, scoring function, reranking (e.g., RM3) and number of hits, so changing any of these is safe.
+   *
+   * @param maximumSize maximum number of queries whose results are cached
+   */
+  public void setQueryCache(int maximumSize) {
+    this.queryCache = new QueryResultCache<>(maximumSize);
+  }
+
+  /**
+   * Disables the query result cache.
+   */
+  public void unsetQueryCache() {
+    this.queryCache = null;
+  }
+
+  /**
+   * Returns the query result cache, e.g., for its hit and miss counts.
+   *
+   * @return the query result cache, or {@code null} if results aren't cached
+   */
+  public QueryResultCache<Result[]> getQueryCache() {
+    return queryCache;
+  }
+
   /**
    * Returns the number of documents in the index.
    *
@@ -466,8 +492,8 @@ public class SimpleSearcher implements Closeable {
    * @throws IOException if error encountered during search
    */
   public Result[] search(String q, int k) throws IOException {
-    Query query = new BagOfWordsQueryGenerator().buildQuery(IndexArgs.CONTENTS, analyzer, q);
-    List<String> queryTokens = AnalyzerUtils.analyze(analyzer, q);
+    AnalyzedTokens queryTokens = AnalyzerUtils.analyze(analyzer, q, new AnalyzedTokens());
+    Query query = new BagOfWordsQueryGenerator().buildQuery(IndexArgs.CONTENTS, analyzer, q, queryTokens);
 
     return search(query, queryTokens, q, k);
   }
@@ -500,13 +526,25 @@ public class SimpleSearcher implements Closeable {
   }
 
   // internal implementation
-  protected Result[] search(Query query, List<String> queryTokens, String queryString, int k) throws IOException {
+  protected Result[] search(Query query, AnalyzedTokens queryTokens, String queryString, int k) throws IOException {
     // Create an IndexSearch only once. Note that the object is thread safe.
     if (searcher == null) {
       searcher = new IndexSearcher(reader);
       searcher.setSimilarity(similarity);
     }
 
+    // The query is already analyzed, so its string form is normalized. The tokens and the query string only matter
+    // to the rerankers, which analyze the query the same way.
+    QueryResultCache<Result[]> cache = queryCache;
+    String key = null;
+    if (cache != null) {
+      key = QueryResultCache.key(query, similarity, cascade.getSignature(), k);
+      Result[] cached = cache.get(reader, key);
+      if (cached != null) {
+        return cached.clone();
+      }
+    }
+
     SearchArgs searchArgs = new SearchArgs();
     searchArgs.arbitraryScoreTieBreak = false;
     searchArgs.hits = k;
@@ -515,13 +553,17 @@ public class SimpleSearcher implements Closeable {
     RerankerContext context;
     rs = searcher.search(query, useRM3 ? searchArgs.rerankcutoff : k, BREAK_SCORE_TIES_BY_DOCID, true);
     context = new RerankerContext<>(searcher, null, query, null,
-          queryString, queryTokens, null, searchArgs);
+          queryString, queryTokens == null ? null : queryTokens.toList(), null, searchArgs);
+    if (queryTokens != null) {
+      context.setAnalyzedQuery(analyzer, queryTokens);
+    }
 
-    ScoredDocuments hits = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher), context);
+    // Only the final hits are loaded in full, so there's no need to materialize the candidates along the way.
+    ScoredDocuments hits = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher, ScoredDocuments.ID_ONLY), context);
 
     Result[] results = new Result[hits.ids.length];
     for (int i = 0; i < hits.ids.length; i++) {
-      Document doc = hits.documents[i];
+      Document doc = searcher.doc(hits.ids[i]);
       String docid = doc.getField(IndexArgs.ID).stringValue();
 
       IndexableField field;
@@ -534,6 +576,10 @@ public class SimpleSearcher implements Closeable {
       results[i] = new Result(docid, hits.ids[i], hits.scores[i], contents, raw, doc);
     }
 
+    if (key != null) {
+      cache.put(reader, key, results.clone());
+    }
+
     return results;
   }
 
@@ -551,17 +597,17 @@ public class SimpleSearcher implements Closeable {
     IndexSearcher searcher = new IndexSearcher(reader);
     searcher.setSimilarity(similarity);
 
-    Query queryContents = new BagOfWordsQueryGenerator().buildQuery(IndexArgs.CONTENTS, analyzer, q);
+    AnalyzedTokens queryTokens = AnalyzerUtils.analyze(analyzer, q, new AnalyzedTokens());
+    Query queryContents = new BagOfWordsQueryGenerator().buildQuery(IndexArgs.CONTENTS, analyzer, q, queryTokens);
     BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder()
         .add(queryContents, BooleanClause.Occur.SHOULD);
 
     for (Map.Entry<String, Float> entry : fields.entrySet()) {
-      Query queryField = new BagOfWordsQueryGenerator().buildQuery(entry.getKey(), analyzer, q);
+      Query queryField = new BagOfWordsQueryGenerator().buildQuery(entry.getKey(), analyzer, q, queryTokens);
       queryBuilder.add(new BoostQuery(queryField, entry.getValue()), BooleanClause.Occur.SHOULD);
     }
 
     BooleanQuery query = queryBuilder.build();
-    List<String> queryTokens = AnalyzerUtils.analyze(analyzer, q);
 
     return search(query, queryTokens, q, k);
   }
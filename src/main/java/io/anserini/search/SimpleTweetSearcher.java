@@ -16,6 +16,7 @@
 
 package io.anserini.search;
 
+import io.anserini.analysis.AnalyzedTokens;
 import io.anserini.analysis.AnalyzerUtils;
 import io.anserini.analysis.TweetAnalyzer;
 import io.anserini.index.IndexArgs;
@@ -49,7 +50,6 @@ import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.SortedMap;
@@ -95,13 +95,13 @@ public class SimpleTweetSearcher extends SimpleSearcher implements Closeable {
   }
 
   public Result[] searchTweets(String q, int k, long t) throws IOException {
-    Query query = new BagOfWordsQueryGenerator().buildQuery(IndexArgs.CONTENTS, analyzer, q);
-    List<String> queryTokens = AnalyzerUtils.analyze(analyzer, q);
+    AnalyzedTokens queryTokens = AnalyzerUtils.analyze(analyzer, q, new AnalyzedTokens());
+    Query query = new BagOfWordsQueryGenerator().buildQuery(IndexArgs.CONTENTS, analyzer, q, queryTokens);
 
     return searchTweets(query, queryTokens, q, k, t);
   }
 
-  protected Result[] searchTweets(Query query, List<String> queryTokens, String queryString, int k, long t)
+  protected Result[] searchTweets(Query query, AnalyzedTokens queryTokens, String queryString, int k, long t)
       throws IOException {
     // Create an IndexSearch only once. Note that the object is thread safe.
     if (searcher == null) {
@@ -128,13 +128,15 @@ public class SimpleTweetSearcher extends SimpleSearcher implements Closeable {
     rs = searcher.search(compositeQuery, useRM3 ? searchArgs.rerankcutoff :
         k, BREAK_SCORE_TIES_BY_TWEETID, true);
     context = new RerankerContext<>(searcher, null, compositeQuery, null,
-        queryString, queryTokens, filter, searchArgs);
+        queryString, queryTokens.toList(), filter, searchArgs);
+    context.setAnalyzedQuery(analyzer, queryTokens);
 
-    ScoredDocuments hits = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher), context);
+    // Only the final hits are loaded in full, so there's no need to materialize the candidates along the way.
+    ScoredDocuments hits = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher, ScoredDocuments.ID_ONLY), context);
 
     Result[] results = new Result[hits.ids.length];
     for (int i = 0; i < hits.ids.length; i++) {
-      Document doc = hits.documents[i];
+      Document doc = searcher.doc(hits.ids[i]);
       String docid = doc.getField(IndexArgs.ID).stringValue();
 
       IndexableField field;
@@ -16,6 +16,7 @@
 
 package io.anserini.search.query;
 
+import io.anserini.analysis.AnalyzedTokens;
 import io.anserini.analysis.AnalyzerUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.Term;
@@ -23,8 +24,8 @@ import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
-
-import java.util.List;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 
 /*
  * Bag of Terms query builder
@@ -32,11 +33,16 @@ import java.util.List;
 public class BagOfWordsQueryGenerator extends QueryGenerator {
   @Override
   public Query buildQuery(String field, Analyzer analyzer, String queryText) {
-    List<String> tokens = AnalyzerUtils.analyze(analyzer, queryText);
-  
+    return buildQuery(field, analyzer, queryText, AnalyzerUtils.analyze(analyzer, queryText, new AnalyzedTokens()));
+  }
+
+  @Override
+  public Query buildQuery(String field, Analyzer analyzer, String queryText, AnalyzedTokens tokens) {
+    BytesRefBuilder spare = new BytesRefBuilder();
     BooleanQuery.Builder builder = new BooleanQuery.Builder();
-    for (String t : tokens) {
-      builder.add(new TermQuery(new Term(field, t)), BooleanClause.Occur.SHOULD);
+    for (int i = 0; i < tokens.size(); i++) {
+      builder.add(new TermQuery(new Term(field, BytesRef.deepCopyOf(tokens.getTerm(spare, i)))),
+          BooleanClause.Occur.SHOULD);
     }
   
     return builder.build();
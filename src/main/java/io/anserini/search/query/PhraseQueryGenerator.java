@@ -16,13 +16,14 @@
 
 package io.anserini.search.query;
 
+import io.anserini.analysis.AnalyzedTokens;
 import io.anserini.analysis.AnalyzerUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
-
-import java.util.List;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 
 /*
  * Phrase query generator
@@ -30,11 +31,15 @@ import java.util.List;
 public class PhraseQueryGenerator extends QueryGenerator {
   @Override
   public Query buildQuery(String field, Analyzer analyzer, String queryText) {
-    List<String> tokens = AnalyzerUtils.analyze(analyzer, queryText);
-  
+    return buildQuery(field, analyzer, queryText, AnalyzerUtils.analyze(analyzer, queryText, new AnalyzedTokens()));
+  }
+
+  @Override
+  public Query buildQuery(String field, Analyzer analyzer, String queryText, AnalyzedTokens tokens) {
+    BytesRefBuilder spare = new BytesRefBuilder();
     PhraseQuery.Builder builder = new PhraseQuery.Builder();
-    for (String t : tokens) {
-      builder.add(new Term(field, t));
+    for (int i = 0; i < tokens.size(); i++) {
+      builder.add(new Term(field, BytesRef.deepCopyOf(tokens.getTerm(spare, i))));
     }
   
     return builder.build();
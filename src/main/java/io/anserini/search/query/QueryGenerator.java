@@ -16,9 +16,25 @@
 
 package io.anserini.search.query;
 
+import io.anserini.analysis.AnalyzedTokens;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.search.Query;
 
 public abstract class QueryGenerator {
   public abstract Query buildQuery(String field, Analyzer analyzer, String queryText);
+
+  /**
+   * Builds a query from text that has already been analyzed with the analyzer, so that the caller can hand the same
+   * tokens to the rerankers instead of analyzing the text over and over again. Generators that only look at the tokens
+   * override this; by default, the text is analyzed again.
+   *
+   * @param field field to query
+   * @param analyzer analyzer
+   * @param queryText query text
+   * @param tokens query text analyzed with the analyzer
+   * @return query
+   */
+  public Query buildQuery(String field, Analyzer analyzer, String queryText, AnalyzedTokens tokens) {
+    return buildQuery(field, analyzer, queryText);
+  }
 }
@@ -16,6 +16,7 @@
 
 package io.anserini.search.query;
 
+import io.anserini.analysis.AnalyzedTokens;
 import io.anserini.analysis.AnalyzerUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.Term;
@@ -55,7 +56,12 @@ public class SdmQueryGenerator extends QueryGenerator {
   */
   @Override
   public Query buildQuery(String field, Analyzer analyzer, String queryText) {
-    List<String> tokens = AnalyzerUtils.analyze(analyzer, queryText);
+    return buildQuery(field, analyzer, queryText, AnalyzerUtils.analyze(analyzer, queryText, new AnalyzedTokens()));
+  }
+
+  @Override
+  public Query buildQuery(String field, Analyzer analyzer, String queryText, AnalyzedTokens analyzedTokens) {
+    List<String> tokens = analyzedTokens.toList();
     
     BooleanQuery.Builder termsBuilder = new BooleanQuery.Builder();
     if (tokens.size() == 1) {
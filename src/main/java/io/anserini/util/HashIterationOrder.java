@@ -0,0 +1,214 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.util;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.util.Arrays;
+
+/**
+ * <p>Reproduces the order in which the string-keyed hash tables that feedback rerankers used to keep terms in iterate
+ * over their keys. Rerankers now key terms by id, but they still break ties in weight (and lay out feedback queries)
+ * in hash table order, which a stable sort over the table used to give them. Keeping that order exactly is what keeps
+ * their results, and thus the published regression numbers, unchanged.</p>
+ *
+ * <p>The order of a table only depends on the hash codes of its keys and on the order they were added in, so it can
+ * be worked out on term ids, given the dictionary. Only tables that are created empty with the default constructor and
+ * never have keys removed are covered, which is how the rerankers used them.</p>
+ */
+public final class HashIterationOrder {
+  // Defaults of fastutil (6.5) open hash maps, e.g., Object2FloatOpenHashMap.
+  private static final int FASTUTIL_INITIAL_SIZE = 16;
+  private static final float FASTUTIL_LOAD_FACTOR = .75f;
+  // Defaults of java.util.HashMap (and HashSet).
+  private static final int JAVA_INITIAL_CAPACITY = 16;
+  private static final float JAVA_LOAD_FACTOR = .75f;
+
+  private HashIterationOrder() {}
+
+  /**
+   * Returns the order in which a fastutil open hash map (e.g., {@code Object2FloatOpenHashMap<String>}) iterates over
+   * the given terms.
+   *
+   * @param terms dictionary
+   * @param ids term ids, in the order they were put into the map; repeated ids are ignored, just like putting an
+   *     existing key again doesn't move it
+   * @param size number of ids
+   * @return distinct term ids, in iteration order
+   */
+  public static int[] openHashMapOrder(BytesRefHash terms, int[] ids, int size) {
+    int[] keys = distinct(terms, ids, size);
+    int[] hashes = hashCodes(terms, keys);
+
+    int n = fastutilArraySize(FASTUTIL_INITIAL_SIZE);
+    int maxFill = (int) Math.ceil(n * FASTUTIL_LOAD_FACTOR);
+    // Slots hold indexes into keys, or -1 if unused.
+    int[] slots = new int[n];
+    Arrays.fill(slots, -1);
+    for (int i = 0; i < keys.length; i++) {
+      put(slots, i, hashes);
+      if (i + 1 >= maxFill) {
+        // Rehashing goes through the old table from the first slot on.
+        int[] newSlots = new int[fastutilArraySize(i + 2)];
+        Arrays.fill(newSlots, -1);
+        for (int slot : slots) {
+          if (slot >= 0) {
+            put(newSlots, slot, hashes);
+          }
+        }
+        slots = newSlots;
+        maxFill = (int) Math.ceil(slots.length * FASTUTIL_LOAD_FACTOR);
+      }
+    }
+
+    // Iterators go through the table from the last slot down.
+    int[] order = new int[keys.length];
+    int c = 0;
+    for (int pos = slots.length - 1; pos >= 0; pos--) {
+      if (slots[pos] >= 0) {
+        order[c++] = keys[slots[pos]];
+      }
+    }
+    return order;
+  }
+
+  /**
+   * Returns the order in which a {@link java.util.HashMap} (or {@link java.util.HashSet}) iterates over the given
+   * terms. Keys iterate by bucket, and in the order they were added within a bucket, which resizing preserves. (Buckets
+   * that overflow into trees, which takes 8 colliding keys, aren't reproduced.)
+   *
+   * @param terms dictionary
+   * @param ids term ids, in the order they were added; repeated ids are ignored
+   * @param size number of ids
+   * @return distinct term ids, in iteration order
+   */
+  public static int[] hashSetOrder(BytesRefHash terms, int[] ids, int size) {
+    int[] keys = distinct(terms, ids, size);
+    int[] hashes = hashCodes(terms, keys);
+
+    int capacity = JAVA_INITIAL_CAPACITY;
+    while (keys.length > (int) (capacity * JAVA_LOAD_FACTOR)) {
+      capacity <<= 1;
+    }
+
+    // A stable counting sort by bucket.
+    int[] starts = new int[capacity + 1];
+    for (int h : hashes) {
+      starts[bucket(h, capacity) + 1]++;
+    }
+    for (int b = 0; b < capacity; b++) {
+      starts[b + 1] += starts[b];
+    }
+    int[] order = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      order[starts[bucket(hashes[i], capacity)]++] = keys[i];
+    }
+    return order;
+  }
+
+  /**
+   * Returns the hash code of the string of a term, i.e., {@code term.utf8ToString().hashCode()}, without creating the
+   * string.
+   *
+   * @param term term
+   * @return hash code
+   */
+  public static int hashCode(BytesRef term) {
+    int h = 0;
+    int i = term.offset;
+    int end = term.offset + term.length;
+    while (i < end) {
+      int b = term.bytes[i] & 0xff;
+      if (b < 0x80) {
+        h = 31 * h + b;
+        i++;
+        continue;
+      }
+
+      int cp;
+      if (b < 0xe0) {
+        cp = ((b & 0x1f) << 6) | (term.bytes[i + 1] & 0x3f);
+        i += 2;
+      } else if (b < 0xf0) {
+        cp = ((b & 0x0f) << 12) | ((term.bytes[i + 1] & 0x3f) << 6) | (term.bytes[i + 2] & 0x3f);
+        i += 3;
+      } else {
+        cp = ((b & 0x07) << 18) | ((term.bytes[i + 1] & 0x3f) << 12) | ((term.bytes[i + 2] & 0x3f) << 6) |
+            (term.bytes[i + 3] & 0x3f);
+        i += 4;
+      }
+      if (Character.isBmpCodePoint(cp)) {
+        h = 31 * h + cp;
+      } else {
+        h = 31 * h + Character.highSurrogate(cp);
+        h = 31 * h + Character.lowSurrogate(cp);
+      }
+    }
+    return h;
+  }
+
+  private static int[] distinct(BytesRefHash terms, int[] ids, int size) {
+    FixedBitSet seen = new FixedBitSet(terms.size());
+    int[] keys = new int[size];
+    int n = 0;
+    for (int i = 0; i < size; i++) {
+      if (!seen.getAndSet(ids[i])) {
+        keys[n++] = ids[i];
+      }
+    }
+    return n == size ? keys : Arrays.copyOf(keys, n);
+  }
+
+  private static int[] hashCodes(BytesRefHash terms, int[] keys) {
+    int[] hashes = new int[keys.length];
+    BytesRef spare = new BytesRef();
+    for (int i = 0; i < keys.length; i++) {
+      hashes[i] = hashCode(terms.get(keys[i], spare));
+    }
+    return hashes;
+  }
+
+  // Linear probing from the home slot of the key, which fastutil scrambles with the finalization step of MurmurHash3.
+  private static void put(int[] slots, int key, int[] hashes) {
+    int mask = slots.length - 1;
+    int pos = murmurHash3(hashes[key]) & mask;
+    while (slots[pos] >= 0) {
+      pos = (pos + 1) & mask;
+    }
+    slots[pos] = key;
+  }
+
+  private static int fastutilArraySize(int expected) {
+    // The least power of two at least as large as expected / load factor.
+    long x = (long) Math.ceil(expected / FASTUTIL_LOAD_FACTOR);
+    return (int) (x <= 1 ? 1 : Long.highestOneBit(x - 1) << 1);
+  }
+
+  private static int murmurHash3(int x) {
+    x ^= x >>> 16;
+    x *= 0x85ebca6b;
+    x ^= x >>> 13;
+    x *= 0xc2b2ae35;
+    x ^= x >>> 16;
+    return x;
+  }
+
+  private static int bucket(int h, int capacity) {
+    return (h ^ (h >>> 16)) & (capacity - 1);
+  }
+}
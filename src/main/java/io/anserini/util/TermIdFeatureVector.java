@@ -0,0 +1,399 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.util;
+
+import io.anserini.analysis.AnalyzedTokens;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.apache.lucene.util.IntroSelector;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sparse feature vector keyed by term id, backed by parallel arrays of term ids and weights. Term ids are assigned by
+ * a {@link BytesRefHash} that is shared by all vectors taking part in the same computation (e.g., the query and the
+ * feedback documents of a single query), so that vectors can be combined by merging arrays instead of looking up
+ * strings. Neither the vector nor the dictionary is thread safe.
+ *
+ * Entries are kept sorted by term id. Ties in weight (e.g., when pruning) are broken in the order the string-keyed
+ * {@link FeatureVector} iterates over its terms, which depends on the order terms were added in, so that feedback
+ * rerankers pick exactly the same terms as they did with it; see {@link HashIterationOrder}.
+ */
+public class TermIdFeatureVector {
+  private final BytesRefHash terms;
+  private int[] ids;
+  private float[] weights;
+  private int size;
+  // Whether entries may be out of order or contain duplicate ids, see compact().
+  private boolean dirty;
+  // Term ids in the order they were added (with repeats), which determines the iteration order.
+  private int[] added;
+  private int numAdded;
+
+  public TermIdFeatureVector(BytesRefHash terms) {
+    this(terms, 8);
+  }
+
+  public TermIdFeatureVector(BytesRefHash terms, int initialCapacity) {
+    this.terms = terms;
+    this.ids = new int[Math.max(1, initialCapacity)];
+    this.weights = new float[ids.length];
+    this.added = new int[ids.length];
+  }
+
+  public BytesRefHash getTerms() {
+    return terms;
+  }
+
+  /**
+   * Returns the id of a term, adding it to the dictionary if needed.
+   *
+   * @param terms dictionary
+   * @param term term
+   * @return term id
+   */
+  public static int termId(BytesRefHash terms, BytesRef term) {
+    int id = terms.add(term);
+    return id < 0 ? -id - 1 : id;
+  }
+
+  public void addFeatureWeight(BytesRef term, float weight) {
+    addFeatureWeight(termId(terms, term), weight);
+  }
+
+  public void addFeatureWeight(int id, float weight) {
+    if (size == ids.length) {
+      ids = ArrayUtil.grow(ids, size + 1);
+      weights = ArrayUtil.growExact(weights, ids.length);
+    }
+    if (size > 0 && ids[size - 1] >= id) {
+      dirty = true;
+    }
+    ids[size] = id;
+    weights[size] = weight;
+    size++;
+
+    if (numAdded == added.length) {
+      added = ArrayUtil.grow(added, numAdded + 1);
+    }
+    added[numAdded++] = id;
+  }
+
+  public int size() {
+    compact();
+    return size;
+  }
+
+  /**
+   * Returns the term id of the i-th entry, in increasing order of term id.
+   *
+   * @param i entry
+   * @return term id
+   */
+  public int getTermId(int i) {
+    compact();
+    return ids[i];
+  }
+
+  /**
+   * Returns the weight of the i-th entry, in increasing order of term id.
+   *
+   * @param i entry
+   * @return weight
+   */
+  public float getWeight(int i) {
+    compact();
+    return weights[i];
+  }
+
+  /**
+   * Returns the term of the i-th entry, in increasing order of term id. The returned bytes point into the dictionary,
+   * so they must be copied if they are to be retained.
+   *
+   * @param i entry
+   * @param spare bytes to fill in
+   * @return the term bytes
+   */
+  public BytesRef getTerm(int i, BytesRef spare) {
+    compact();
+    return terms.get(ids[i], spare);
+  }
+
+  /**
+   * Returns the term ids of the entries in the order a {@link FeatureVector} with the same history would iterate over
+   * its terms. This is the order to lay out queries in to get exactly the same scores as with it.
+   *
+   * @return term ids
+   */
+  public int[] getIterationOrder() {
+    return HashIterationOrder.openHashMapOrder(terms, added, numAdded);
+  }
+
+  public boolean contains(int id) {
+    compact();
+    return indexOf(id) >= 0;
+  }
+
+  public float getFeatureWeight(int id) {
+    compact();
+    int i = indexOf(id);
+    return i >= 0 ? weights[i] : 0.0f;
+  }
+
+  public double computeL1Norm() {
+    compact();
+    double norm = 0.0;
+    for (int i = 0; i < size; i++) {
+      norm += Math.abs(weights[i]);
+    }
+    return norm;
+  }
+
+  public double computeL2Norm() {
+    compact();
+    double norm = 0.0;
+    for (int i = 0; i < size; i++) {
+      norm += Math.pow(weights[i], 2.0);
+    }
+    return Math.sqrt(norm);
+  }
+
+  public TermIdFeatureVector scaleToUnitL1Norm() {
+    double norm = computeL1Norm();
+    for (int i = 0; i < size; i++) {
+      weights[i] = (float) (weights[i] / norm);
+    }
+
+    return this;
+  }
+
+  public TermIdFeatureVector scaleToUnitL2Norm() {
+    double norm = computeL2Norm();
+    for (int i = 0; i < size; i++) {
+      weights[i] = (float) (weights[i] / norm);
+    }
+
+    return this;
+  }
+
+  /**
+   * Keeps the {@code k} entries with the highest weights, breaking ties in iteration order. This is a partial
+   * selection, so it runs in time linear in the size of the vector (on average) rather than sorting all entries.
+   * Just like {@link FeatureVector#pruneToSize(int)}, the kept entries are then added back in decreasing order of
+   * weight, which sets the iteration order from then on.
+   *
+   * @param k number of entries to keep
+   * @return this vector
+   */
+  public TermIdFeatureVector pruneToSize(int k) {
+    compact();
+    // FeatureVector keeps at least one entry, whatever k is.
+    int n = Math.min(size, Math.max(k, 1));
+
+    int[] order = getIterationOrder();
+    int[] ranks = new int[size];
+    for (int r = 0; r < order.length; r++) {
+      ranks[indexOf(order[r])] = r;
+    }
+
+    if (n < size) {
+      new IntroSelector() {
+        private float pivotWeight;
+        private int pivotRank;
+
+        @Override
+        protected void setPivot(int i) {
+          pivotWeight = weights[i];
+          pivotRank = ranks[i];
+        }
+
+        @Override
+        protected int comparePivot(int j) {
+          return compareByWeight(pivotWeight, pivotRank, weights[j], ranks[j]);
+        }
+
+        @Override
+        protected void swap(int i, int j) {
+          swapRanked(ranks, i, j);
+        }
+      }.select(0, size, n - 1);
+    }
+
+    new InPlaceMergeSorter() {
+      @Override
+      protected int compare(int i, int j) {
+        return compareByWeight(weights[i], ranks[i], weights[j], ranks[j]);
+      }
+
+      @Override
+      protected void swap(int i, int j) {
+        swapRanked(ranks, i, j);
+      }
+    }.sort(0, n);
+
+    size = n;
+    numAdded = 0;
+    for (int i = 0; i < n; i++) {
+      added[numAdded++] = ids[i];
+    }
+    dirty = true;
+    compact();
+
+    return this;
+  }
+
+  // Higher weights first, then earlier in iteration order. Weights are compared the way FeatureVector does.
+  private static int compareByWeight(float xWeight, int xRank, float yWeight, int yRank) {
+    if (xWeight > yWeight) {
+      return -1;
+    } else if (xWeight == yWeight) {
+      return Integer.compare(xRank, yRank);
+    }
+    return 1;
+  }
+
+  private void swapRanked(int[] ranks, int i, int j) {
+    swap(i, j);
+    int rank = ranks[i];
+    ranks[i] = ranks[j];
+    ranks[j] = rank;
+  }
+
+  public static TermIdFeatureVector fromTerms(BytesRefHash terms, List<String> tokens) {
+    TermIdFeatureVector f = new TermIdFeatureVector(terms, tokens.size());
+    for (String t : tokens) {
+      f.addFeatureWeight(new BytesRef(t), 1.0f);
+    }
+    return f;
+  }
+
+  public static TermIdFeatureVector fromTerms(BytesRefHash terms, AnalyzedTokens tokens) {
+    TermIdFeatureVector f = new TermIdFeatureVector(terms, tokens.size());
+    BytesRefBuilder spare = new BytesRefBuilder();
+    for (int i = 0; i < tokens.size(); i++) {
+      f.addFeatureWeight(tokens.getTerm(spare, i), 1.0f);
+    }
+    return f;
+  }
+
+  /**
+   * Linearly interpolates two vectors over the same dictionary, by merging their entries.
+   *
+   * @param x first vector
+   * @param y second vector
+   * @param xWeight weight of the first vector
+   * @return interpolated vector
+   */
+  public static TermIdFeatureVector interpolate(TermIdFeatureVector x, TermIdFeatureVector y, float xWeight) {
+    if (x.terms != y.terms) {
+      throw new IllegalArgumentException("Cannot interpolate vectors over different term dictionaries!");
+    }
+    x.compact();
+    y.compact();
+
+    TermIdFeatureVector z = new TermIdFeatureVector(x.terms, x.size + y.size);
+    int i = 0, j = 0;
+    while (i < x.size || j < y.size) {
+      int id;
+      float xw = 0.0f, yw = 0.0f;
+      if (j == y.size || (i < x.size && x.ids[i] < y.ids[j])) {
+        id = x.ids[i];
+        xw = x.weights[i++];
+      } else if (i == x.size || y.ids[j] < x.ids[i]) {
+        id = y.ids[j];
+        yw = y.weights[j++];
+      } else {
+        id = x.ids[i];
+        xw = x.weights[i++];
+        yw = y.weights[j++];
+      }
+      z.ids[z.size] = id;
+      z.weights[z.size] = (float) (xWeight * xw + (1.0 - xWeight) * yw);
+      z.size++;
+    }
+
+    // FeatureVector adds the terms of both vectors to the result in the order of a HashSet of them.
+    int[] xOrder = x.getIterationOrder();
+    int[] yOrder = y.getIterationOrder();
+    int[] vocab = Arrays.copyOf(xOrder, xOrder.length + yOrder.length);
+    System.arraycopy(yOrder, 0, vocab, xOrder.length, yOrder.length);
+    z.added = HashIterationOrder.hashSetOrder(x.terms, vocab, vocab.length);
+    z.numAdded = z.added.length;
+
+    return z;
+  }
+
+  private int indexOf(int id) {
+    int lo = 0, hi = size - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (ids[mid] < id) {
+        lo = mid + 1;
+      } else if (ids[mid] > id) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private void swap(int i, int j) {
+    int id = ids[i];
+    ids[i] = ids[j];
+    ids[j] = id;
+    float weight = weights[i];
+    weights[i] = weights[j];
+    weights[j] = weight;
+  }
+
+  // Sorts entries by term id and sums up the weights of duplicate ids, in the order they were added.
+  private void compact() {
+    if (!dirty) {
+      return;
+    }
+
+    new InPlaceMergeSorter() {
+      @Override
+      protected int compare(int i, int j) {
+        return Integer.compare(ids[i], ids[j]);
+      }
+
+      @Override
+      protected void swap(int i, int j) {
+        TermIdFeatureVector.this.swap(i, j);
+      }
+    }.sort(0, size);
+
+    int n = 0;
+    for (int i = 0; i < size; i++) {
+      if (n > 0 && ids[n - 1] == ids[i]) {
+        weights[n - 1] += weights[i];
+      } else {
+        ids[n] = ids[i];
+        weights[n] = weights[i];
+        n++;
+      }
+    }
+    size = n;
+    dirty = false;
+  }
+}
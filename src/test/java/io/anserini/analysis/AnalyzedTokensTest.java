@@ -0,0 +1,59 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.analysis;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnalyzedTokensTest {
+
+  @Test
+  public void testSameTokensAsStrings() {
+    Analyzer analyzer = DefaultEnglishAnalyzer.newDefaultInstance();
+    AnalyzedTokens tokens = new AnalyzedTokens();
+    String[] inputs = {"City buses are running on schedule.", "", "the of and", "café naïve résumé",
+        "a b c d e f g h i j k l m n o p q r s t u v w x y z"};
+    for (String input : inputs) {
+      // The same buffer is reused for all inputs.
+      assertEquals(AnalyzerUtils.analyze(analyzer, input), AnalyzerUtils.analyze(analyzer, input, tokens).toList());
+    }
+  }
+
+  @Test
+  public void testTermsAndPositions() {
+    Analyzer analyzer = DefaultEnglishAnalyzer.newDefaultInstance();
+    AnalyzedTokens tokens = AnalyzerUtils.analyze(analyzer, "City buses are running on schedule.", new AnalyzedTokens());
+
+    assertEquals(4, tokens.size());
+    assertEquals(List.of("citi", "buse", "run", "schedul"), tokens.toList());
+    BytesRefBuilder spare = new BytesRefBuilder();
+    assertEquals("buse", tokens.getTerm(spare, 1).utf8ToString());
+    // Stopwords take up their positions.
+    assertEquals(0, tokens.getPosition(0));
+    assertEquals(1, tokens.getPosition(1));
+    assertEquals(3, tokens.getPosition(2));
+    assertEquals(5, tokens.getPosition(3));
+
+    tokens.clear();
+    assertEquals(0, tokens.size());
+    assertEquals(List.of(), tokens.toList());
+  }
+}
@@ -22,10 +22,13 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -140,6 +143,64 @@ public abstract class DocumentCollectionTest<T extends SourceDocument> extends L
     assertEquals(totalDocs, docCnt.get());
   }
 
+  @Test
+  // Split splittable segments into byte ranges of various sizes, which together must yield the same documents.
+  public void testSplitSegments() throws IOException {
+    if (collection == null)
+      return;
+
+    for (Path path : segmentPaths) {
+      if (!collection.isSplittable(path))
+        continue;
+
+      List<String> docids = new ArrayList<>();
+      FileSegment<T> segment = collection.createFileSegment(path);
+      segment.iterator().forEachRemaining(doc -> docids.add(doc.id()));
+      segment.close();
+
+      long size = Files.size(path);
+      for (long splitSize : new long[]{1, 2, 3, 7, 16, 64, size / 2 + 1, size}) {
+        List<String> splitDocids = new ArrayList<>();
+        for (long start = 0; start < size; start += splitSize) {
+          segment = collection.createFileSegment(path, start, Math.min(start + splitSize, size));
+          for (T doc : segment) {
+            assertTrue(expected.containsKey(doc.id()));
+            checkDocument(doc, expected.get(doc.id()));
+            splitDocids.add(doc.id());
+          }
+          assertFalse(segment.getErrorStatus());
+          segment.close();
+        }
+        assertEquals(docids, splitDocids);
+      }
+    }
+  }
+
+  @Test
+  // Collections that don't split files themselves read the whole file in the first range and nothing in the others.
+  public void testDefaultSplitSegments() throws Exception {
+    if (collection == null || collection.getClass().getMethod("createFileSegment", Path.class, long.class, long.class)
+        .getDeclaringClass() != DocumentCollection.class)
+      return;
+
+    for (Path path : segmentPaths) {
+      List<String> docids = new ArrayList<>();
+      FileSegment<T> segment = collection.createFileSegment(path);
+      segment.iterator().forEachRemaining(doc -> docids.add(doc.id()));
+      segment.close();
+
+      long size = Files.size(path);
+      List<String> splitDocids = new ArrayList<>();
+      for (long start = 0; start < size; start += size / 2 + 1) {
+        segment = collection.createFileSegment(path, start, Math.min(start + size / 2 + 1, size));
+        segment.iterator().forEachRemaining(doc -> splitDocids.add(doc.id()));
+        assertFalse(segment.getErrorStatus());
+        segment.close();
+      }
+      assertEquals(docids, splitDocids);
+    }
+  }
+
   abstract void checkDocument(SourceDocument doc, Map<String, String> expected);
 
   @After
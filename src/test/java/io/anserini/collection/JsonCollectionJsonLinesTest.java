@@ -0,0 +1,51 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.collection;
+
+import org.junit.Before;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+// Same as JsonCollectionLineObjectTest, but with a .jsonl file holding exactly one JSON object per line (plus a blank
+// line), which means that the file can be split.
+public class JsonCollectionJsonLinesTest extends JsonCollectionTest {
+
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+
+    collectionPath = Paths.get("src/test/resources/sample_docs/json/collection4");
+    collection = new JsonCollection(collectionPath);
+
+    Path segment1 = Paths.get("src/test/resources/sample_docs/json/collection4/segment1.jsonl");
+
+    segmentPaths.add(segment1);
+    segmentDocCounts.put(segment1, 3);
+
+    totalSegments = 1;
+    totalDocs = 3;
+
+    expected.put("doc1", Map.of("id", "doc1",
+        "content", "this is the contents 1."));
+    expected.put("doc2", Map.of("id", "doc2",
+        "content", "this is the contents 2, which are a bit longer than the others."));
+    expected.put("doc3", Map.of("id", "doc3",
+        "content", "this is the contents 3."));
+  }
+}
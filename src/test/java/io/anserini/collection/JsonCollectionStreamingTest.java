@@ -0,0 +1,110 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.collection;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+
+// Documents are parsed straight off the file, and should come out the same as when parsed into a tree first.
+public class JsonCollectionStreamingTest extends LuceneTestCase {
+
+  @Test
+  public void testSameAsTree() throws Exception {
+    String json = "{\"id\": 42, \"contents\": \"some \\\"quoted\\\" text\", \"int\": -7, \"big\": 123456789012345678901234567890," +
+        " \"float\": 1.5e2, \"true\": true, \"false\": false, \"null\": null, \"unicode\": \"caf\\u00e9\"," +
+        " \"object\": {\"a\": [1, {\"b\": 2}]}, \"array\": [\"x\", \"y\"], \"dup\": \"first\", \"dup\": \"second\"}";
+
+    Path path = createTempDir().resolve("doc.json");
+    Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+    JsonCollection.Document expected = new JsonCollection.Document(new ObjectMapper().readTree(json));
+
+    JsonCollection.Segment segment = new JsonCollection.Segment(path);
+    Iterator<JsonCollection.Document> iter = segment.iterator();
+    JsonCollection.Document doc = iter.next();
+    assertFalse(iter.hasNext());
+    segment.close();
+
+    assertEquals("42", doc.id());
+    assertEquals(expected.id(), doc.id());
+    assertEquals(expected.contents(), doc.contents());
+    assertEquals(expected.fields(), doc.fields());
+    assertEquals("150.0", doc.fields().get("float"));
+    assertEquals("", doc.fields().get("object"));
+    assertEquals("second", doc.fields().get("dup"));
+  }
+
+  @Test
+  public void testArray() throws Exception {
+    // The elements of an array are read one at a time, including past nested arrays.
+    int n = 10000;
+    Path path = createTempDir().resolve("docs.json");
+    try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      out.write("[\n");
+      for (int i = 0; i < n; i++) {
+        out.write(String.format(Locale.ROOT, "%s{\"id\": \"doc%d\", \"contents\": \"text %d\", \"tags\": [[%d]]}\n",
+            i == 0 ? "" : ",", i, i, i));
+      }
+      out.write("]\n");
+    }
+
+    JsonCollection.Segment segment = new JsonCollection.Segment(path);
+    int cnt = 0;
+    for (JsonCollection.Document doc : segment) {
+      assertEquals("doc" + cnt, doc.id());
+      assertEquals("text " + cnt, doc.contents());
+      cnt++;
+    }
+    assertEquals(n, cnt);
+    assertFalse(segment.getErrorStatus());
+    segment.close();
+  }
+
+  @Test
+  public void testMalformed() throws Exception {
+    Path path = createTempDir().resolve("docs.jsonl");
+    Files.write(path, "{\"id\": \"doc1\", \"contents\": \"a\"}\n{\"id\": \"doc2\", \"contents\n".getBytes(StandardCharsets.UTF_8));
+
+    JsonCollection.Segment segment = new JsonCollection.Segment(path);
+    Iterator<JsonCollection.Document> iter = segment.iterator();
+    assertEquals("doc1", iter.next().id());
+    assertFalse(iter.hasNext());
+    assertTrue(segment.getErrorStatus());
+    segment.close();
+  }
+
+  @Test
+  public void testIsSplittable() throws Exception {
+    // Only .jsonl files can be split; a .json file can't, even if it starts out with one object per line.
+    assertTrue(isSplittable("docs.jsonl", "{\"id\": \"doc1\"}\n{\"id\": \"doc2\"}\n"));
+    assertFalse(isSplittable("docs.json", "{\"id\": \"doc1\"}\n{\"id\": \"doc2\"}\n"));
+    assertFalse(isSplittable("docs.json", "{\"id\": \"doc1\"}\n{\n  \"id\": \"doc2\"\n}\n"));
+    assertFalse(isSplittable("docs.json", "[{\"id\": \"doc1\"}, {\"id\": \"doc2\"}]"));
+  }
+
+  private boolean isSplittable(String name, String json) throws Exception {
+    Path path = createTempDir().resolve(name);
+    Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+    return new JsonCollection(path.getParent()).isSplittable(path);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.collection;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LineScannerTest extends LuceneTestCase {
+
+  private static List<String> scan(Reader reader) throws Exception {
+    List<String> lines = new ArrayList<>();
+    LineScanner scanner = new LineScanner(reader);
+    while (scanner.next()) {
+      lines.add(scanner.toString());
+    }
+    return lines;
+  }
+
+  private static List<String> readLines(String s) throws Exception {
+    List<String> lines = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(new StringReader(s));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lines.add(line);
+    }
+    return lines;
+  }
+
+  // Hands out a few characters at a time, so that lines (and CR LF pairs) straddle buffer refills.
+  private static Reader trickle(String s) {
+    return new StringReader(s) {
+      @Override
+      public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+        return super.read(cbuf, off, Math.min(len, 3));
+      }
+    };
+  }
+
+  @Test
+  public void testSameLinesAsReadLine() throws Exception {
+    String longLine = "y".repeat(200000);
+    String[] inputs = {"", "a", "a\n", "a\nb", "a\r\nb\r\n", "a\rb\r", "\n\n", "\r\r\n\n", " x \r\n\r\n y",
+        "one\n" + longLine + "\r\ntwo\r" + longLine};
+    for (String input : inputs) {
+      assertEquals(readLines(input), scan(new StringReader(input)));
+      assertEquals(readLines(input), scan(trickle(input)));
+    }
+  }
+
+  @Test
+  public void testLineOperations() throws Exception {
+    LineScanner scanner = new LineScanner(new StringReader("  <DOC id=\"x\">  \n</DOC>"));
+    assertTrue(scanner.next());
+    assertEquals(16, scanner.length());
+    assertFalse(scanner.startsWith("<DOC"));
+    scanner.trim();
+    assertEquals("<DOC id=\"x\">", scanner.toString());
+    assertEquals(12, scanner.end() - scanner.start());
+    assertTrue(scanner.startsWith("<DOC"));
+    assertTrue(scanner.endsWith("\">"));
+    assertFalse(scanner.endsWith("</DOC>"));
+    assertEquals(5, scanner.indexOf("id=\""));
+    assertEquals(-1, scanner.indexOf("docid"));
+
+    assertTrue(scanner.next());
+    assertTrue(scanner.startsWith("</DOC>"));
+    assertTrue(scanner.endsWith("</DOC>"));
+    assertFalse(scanner.next());
+    assertFalse(scanner.next());
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.collection;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class StreamingHtmlStringTransformTest extends LuceneTestCase {
+
+  private static void assertParity(String html) {
+    assertEquals(JsoupStringTransform.SINGLETON.apply(html), StreamingHtmlStringTransform.SINGLETON.apply(html));
+  }
+
+  // Checks that the documents of a collection have the same contents with either transform.
+  private static void assertParity(DocumentCollection<?> collection) {
+    assertSame(JsoupStringTransform.SINGLETON, collection.getHtmlTransform());
+    List<String> expected = contents(collection);
+    assertFalse(expected.isEmpty());
+
+    collection.setHtmlTransform(StreamingHtmlStringTransform.SINGLETON);
+    assertEquals(expected, contents(collection));
+  }
+
+  private static List<String> contents(DocumentCollection<?> collection) {
+    List<String> contents = new ArrayList<>();
+    for (FileSegment<? extends SourceDocument> segment : collection) {
+      for (SourceDocument doc : segment) {
+        if (doc.indexable()) {
+          contents.add(doc.contents());
+        }
+      }
+      segment.close();
+    }
+    return contents;
+  }
+
+  @Test
+  public void testText() {
+    assertEquals("a b", StreamingHtmlStringTransform.SINGLETON.apply("<html><body><p>a</p>\n  <p>b</p></body></html>"));
+    assertParity("<p>a</p>b");
+    assertParity("a<br>b</br>c<hr/>d");
+    assertParity("<span>a</span><span>b</span> <b>c</b>  <i> d </i>");
+    assertParity("<div>a<p>b<div>c</div>d</p>e</div>");
+    assertParity("<DOC>\n<DOCNO> FT911-1 </DOCNO>\n<TEXT>\nsome   text\n</TEXT>\n</DOC>");
+    assertParity("<html><head><title> The  title </title><meta charset=utf-8></head><body>body</body></html>");
+    assertParity("<pre>  keep\n  this</pre> but <pre><b>  not <i>  this  </i></b></pre>");
+    assertParity("<textarea> a &amp;  b</textarea><xmp>a &amp; <b>b</b></xmp><iframe><p>x</p></iframe>");
+  }
+
+  @Test
+  public void testMarkup() {
+    assertParity("a<!-- comment -->b<!--->c<!-->d<!DOCTYPE html>e<?php echo 1; ?>f<!bogus>g");
+    assertParity("<script>if (a < b) { document.write('</p>'); }</script>x<style>p { color: red }</style>y");
+    assertParity("<a href='x>y' title=\"a > b\" data-x=z>link</a> <img src=a.png alt=\">\">");
+    assertParity("a < b, x</>y, x</ y>z, <![CDATA[ a &amp; b ]]> c");
+    assertParity("text<plaintext><b>everything else</b>");
+    assertParity("unterminated <b");
+  }
+
+  @Test
+  public void testCharacterReferences() {
+    assertParity("AT&T &amp &ampx &copy2010 &notit; &notin; &lt;p&gt; &nbsp;&nbsp;a &unknown;");
+    assertParity("&#65 &#x41; &#X41; &#xZ &# &#99999999999; &#xD800; &#x1F600; &#32;&#32;x");
+    assertParity("trailing &");
+  }
+
+  @Test
+  public void testCollections() throws Exception {
+    assertParity(new TrecCollection(Paths.get("src/test/resources/sample_docs/trec/collection2")));
+    assertParity(new HtmlCollection(Paths.get("src/main/resources/cacm/")));
+  }
+
+  @Test
+  public void testPerCollection() throws Exception {
+    // The transform belongs to the collection, so collections in the same JVM don't affect each other.
+    Path path = createTempDir();
+    Files.write(path.resolve("docs.txt"),
+        "<DOC>\n<DOCNO> doc1 </DOCNO>\n<TEXT>\n<p>some</p>  text\n</TEXT>\n</DOC>\n".getBytes(StandardCharsets.UTF_8));
+
+    TrecCollection upper = new TrecCollection(path);
+    upper.setHtmlTransform(new StringTransform() {
+      @Override
+      public String apply(String s) {
+        return JsoupStringTransform.SINGLETON.apply(s).toUpperCase(Locale.ROOT);
+      }
+    });
+    TrecCollection jsoup = new TrecCollection(path);
+
+    assertEquals(List.of("SOME TEXT"), contents(upper));
+    assertEquals(List.of("some text"), contents(jsoup));
+  }
+}
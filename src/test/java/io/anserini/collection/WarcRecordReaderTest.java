@@ -0,0 +1,104 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.collection;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPOutputStream;
+
+public class WarcRecordReaderTest extends LuceneTestCase {
+
+  private static String record(String type, String id, String content) {
+    return "WARC/1.0\r\n" +
+        "WARC-Type: " + type + "\r\n" +
+        "WARC-Record-ID: " + id + "\r\n" +
+        "Content-Length: " + content.getBytes(StandardCharsets.UTF_8).length + "\r\n" +
+        content + "\r\n\r\n";
+  }
+
+  @Test
+  public void testRecords() throws Exception {
+    String big = "x".repeat(200000);
+    String input = "junk before the first record\n" +
+        record("warcinfo", "<urn:1>", "software: none") +
+        record("response", "<urn:2>", "\r\n<html>café</html>") +
+        record("response", "<urn:3>", big);
+
+    // Small reads make sure that lines and contents straddle buffer refills.
+    InputStream in = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 7));
+      }
+    };
+
+    try (WarcRecordReader reader = new WarcRecordReader(in)) {
+      assertEquals("WARC-Type: warcinfo\r\nWARC-Record-ID: <urn:1>\r\nContent-Length: 14\r\n",
+          reader.readHeader("WARC/1.0", "Content-Length"));
+      assertEquals(14, reader.getContentLength());
+      assertEquals("software: none", new String(reader.readContent(14), StandardCharsets.UTF_8));
+
+      // The header ends at the given key, here before the content length.
+      assertEquals("WARC-Type: response\r\nWARC-Record-ID: <urn:2>\r\n",
+          reader.readHeader("WARC/1.0", "warc-record-id"));
+      assertEquals(-1, reader.getContentLength());
+
+      assertTrue(reader.readHeader("WARC/1.0", "Content-Length").contains("<urn:3>"));
+      assertEquals(big, new String(reader.readContent(reader.getContentLength()), StandardCharsets.UTF_8));
+
+      expectThrows(NoSuchElementException.class, () -> reader.readHeader("WARC/1.0", "Content-Length"));
+    }
+  }
+
+  @Test
+  public void testTruncatedContent() throws Exception {
+    String input = "WARC/1.0\nContent-Length: 100\n\nshort";
+    try (WarcRecordReader reader = new WarcRecordReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)))) {
+      reader.readHeader("WARC/1.0", "Content-Length");
+      assertEquals(100, reader.getContentLength());
+      expectThrows(NoSuchElementException.class, () -> reader.readContent(100));
+    }
+  }
+
+  @Test
+  public void testMultiMemberGzip() throws Exception {
+    // WARCs are usually gzipped one record at a time.
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (int i = 0; i < 3; i++) {
+      GZIPOutputStream out = new GZIPOutputStream(bytes);
+      out.write(record("response", "<urn:" + i + ">", "content " + i).getBytes(StandardCharsets.UTF_8));
+      out.finish();
+    }
+    Path path = createTempFile("test", ".warc.gz");
+    Files.write(path, bytes.toByteArray());
+
+    try (WarcRecordReader reader = WarcRecordReader.open(path)) {
+      for (int i = 0; i < 3; i++) {
+        assertTrue(reader.readHeader("WARC/1.0", "Content-Length").contains("<urn:" + i + ">"));
+        assertEquals("content " + i, new String(reader.readContent(reader.getContentLength()), StandardCharsets.UTF_8));
+      }
+      expectThrows(NoSuchElementException.class, () -> reader.readHeader("WARC/1.0", "Content-Length"));
+    }
+  }
+}
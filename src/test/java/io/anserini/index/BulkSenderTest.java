@@ -0,0 +1,97 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BulkSenderTest extends LuceneTestCase {
+
+  @Test
+  public void testInFlightLimit() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    AtomicLong indexed = new AtomicLong();
+    AtomicLong failed = new AtomicLong();
+    AtomicInteger current = new AtomicInteger();
+    AtomicInteger max = new AtomicInteger();
+
+    BulkSender<List<String>> sender = new BulkSender<>(executor, batch -> {
+      max.accumulateAndGet(current.incrementAndGet(), Math::max);
+      Thread.sleep(5);
+      current.decrementAndGet();
+      return 0;
+    }, 3, 0, 1, indexed, failed);
+
+    for (int i = 0; i < 20; i++) {
+      sender.submit(List.of("a", "b"), 2);
+    }
+    sender.awaitCompletion();
+
+    assertEquals(40, indexed.get());
+    assertEquals(0, failed.get());
+    assertTrue(max.get() > 1);
+    assertTrue(max.get() <= 3);
+
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+  }
+
+  @Test
+  public void testRetries() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(1);
+    AtomicLong indexed = new AtomicLong();
+    AtomicLong failed = new AtomicLong();
+    AtomicInteger attempts = new AtomicInteger();
+
+    // Fails twice, then goes through with one document rejected.
+    BulkSender<String> sender = new BulkSender<>(executor, batch -> {
+      if (attempts.incrementAndGet() <= 2) {
+        throw new IOException("unavailable");
+      }
+      return 1;
+    }, 1, 2, 1, indexed, failed);
+    sender.submit("batch", 10);
+    sender.awaitCompletion();
+
+    assertEquals(3, attempts.get());
+    assertEquals(9, indexed.get());
+    assertEquals(1, failed.get());
+
+    // Always fails, so we give up after the retries.
+    attempts.set(0);
+    sender = new BulkSender<>(executor, batch -> {
+      attempts.incrementAndGet();
+      throw new IOException("unavailable");
+    }, 1, 2, 1, indexed, failed);
+    sender.submit("batch", 5);
+    sender.awaitCompletion();
+
+    assertEquals(3, attempts.get());
+    assertEquals(9, indexed.get());
+    assertEquals(6, failed.get());
+
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+  }
+}
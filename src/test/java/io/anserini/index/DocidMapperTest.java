@@ -0,0 +1,110 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+import io.anserini.IndexerTestBase;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+public class DocidMapperTest extends IndexerTestBase {
+
+  @Test
+  public void testMapping() throws Exception {
+    Directory dir = FSDirectory.open(tempDir1);
+    IndexReader reader = DirectoryReader.open(dir);
+    DocidMapper mapper = new DocidMapper(reader);
+
+    assertEquals(1, mapper.getLuceneDocid("doc2"));
+    assertEquals(-1, mapper.getLuceneDocid("doc42"));
+    assertArrayEquals(new int[] {2, -1, 0, 2, -1},
+        mapper.getLuceneDocids(new String[] {"doc3", "doc42", "doc1", "doc3", null}));
+
+    assertEquals("doc2", mapper.getDocid(1));
+    assertNull(mapper.getDocid(42));
+    assertNull(mapper.getDocid(-1));
+    assertArrayEquals(new String[] {"doc3", null, "doc1", "doc3", "doc2"},
+        mapper.getDocids(new int[] {2, 3, 0, 2, 1}));
+
+    reader.close();
+    dir.close();
+  }
+
+  @Test
+  public void testSegmentsWithoutDocValuesAndDeletions() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir,
+        new IndexWriterConfig(new WhitespaceAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE));
+    for (int i = 0; i < 20; i++) {
+      Document doc = new Document();
+      String docid = "doc" + (i % 10);
+      doc.add(new StringField(IndexArgs.ID, docid, Field.Store.YES));
+      doc.add(new StringField("n", Integer.toString(i), Field.Store.NO));
+      // Only the first segment has doc values.
+      if (i < 10) {
+        doc.add(new SortedDocValuesField(IndexArgs.ID, new BytesRef(docid)));
+      }
+      writer.addDocument(doc);
+      if (i == 9) {
+        writer.commit();
+      }
+    }
+    // The first five docids now only survive in the second segment, and the last five in the first.
+    for (int i = 0; i < 5; i++) {
+      writer.deleteDocuments(new Term("n", Integer.toString(i)), new Term("n", Integer.toString(15 + i)));
+    }
+    writer.close();
+
+    IndexReader reader = DirectoryReader.open(dir);
+    assertEquals(2, reader.leaves().size());
+    assertEquals(10, reader.numDocs());
+    DocidMapper mapper = new DocidMapper(reader);
+
+    String[] docids = new String[10];
+    int[] luceneDocids = new int[20];
+    for (int i = 0; i < 10; i++) {
+      docids[i] = "doc" + i;
+    }
+    for (int i = 0; i < 20; i++) {
+      luceneDocids[i] = i;
+    }
+    int[] found = mapper.getLuceneDocids(docids);
+    String[] mapped = mapper.getDocids(luceneDocids);
+    for (int i = 0; i < 10; i++) {
+      // Deleted documents are skipped...
+      assertEquals(i < 5 ? 10 + i : i, found[i]);
+      assertEquals(reader.document(found[i]).get(IndexArgs.ID), docids[i]);
+      // ... but still have docids, from doc values or stored fields.
+      assertEquals(docids[i], mapped[i]);
+      assertEquals(docids[i], mapped[10 + i]);
+    }
+
+    reader.close();
+    dir.close();
+  }
+}
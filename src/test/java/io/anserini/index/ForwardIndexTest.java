@@ -0,0 +1,160 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+import io.anserini.IndexerTestBase;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import java.nio.file.Path;
+
+public class ForwardIndexTest extends IndexerTestBase {
+
+  private void assertSameVectors(IndexReader reader, ForwardIndex index) throws Exception {
+    for (int docid = 0; docid < reader.maxDoc(); docid++) {
+      TermsEnum expected = reader.getTermVector(docid, IndexArgs.CONTENTS).iterator();
+      Terms terms = index.getTermVector(docid);
+      TermsEnum actual = terms.iterator();
+      ForwardIndex.DocVector vector = index.getDocVector(docid, null);
+
+      int i = 0;
+      BytesRef term;
+      while ((term = expected.next()) != null) {
+        assertEquals(term, actual.next());
+        assertEquals(expected.totalTermFreq(), actual.totalTermFreq());
+        assertEquals(term, index.getTerm(vector.getTermOrd(i), new BytesRef()));
+        assertEquals(expected.totalTermFreq(), vector.getTf(i));
+        i++;
+      }
+      assertNull(actual.next());
+      assertEquals(i, vector.size());
+      assertEquals(i, terms.size());
+    }
+  }
+
+  @Test
+  public void testForwardIndex() throws Exception {
+    // A buffer of a single (term, tf) pair makes a pass per document.
+    for (int bufferSize : new int[] {1, ForwardIndex.DEFAULT_BUFFER_SIZE}) {
+      ForwardIndex.build(tempDir1, IndexArgs.CONTENTS, bufferSize);
+
+      Directory dir = FSDirectory.open(tempDir1);
+      IndexReader reader = DirectoryReader.open(dir);
+      ForwardIndex index = ForwardIndex.get(reader, IndexArgs.CONTENTS);
+      assertNotNull(index);
+      assertSame(index, ForwardIndex.get(reader, IndexArgs.CONTENTS));
+      assertNull(ForwardIndex.get(reader, IndexArgs.RAW));
+      assertEquals(3, index.maxDoc());
+
+      assertSameVectors(reader, index);
+
+      int ord = index.getTermOrd(new BytesRef("here"));
+      assertEquals(2, index.getDf(ord));
+      assertEquals(3, index.getCf(ord));
+      assertEquals(-1, index.getTermOrd(new BytesRef("nosuchterm")));
+
+      // doc1: "here is some text here is some more text. city.", stemmed and without stopwords.
+      TermsEnum te = ForwardIndex.getTermVector(reader, 0, IndexArgs.CONTENTS).iterator();
+      assertEquals(TermsEnum.SeekStatus.FOUND, te.seekCeil(new BytesRef("text")));
+      assertEquals(2, te.totalTermFreq());
+      PostingsEnum postings = te.postings(null, PostingsEnum.FREQS);
+      assertEquals(0, postings.nextDoc());
+      assertEquals(2, postings.freq());
+      assertEquals(PostingsEnum.NO_MORE_DOCS, postings.nextDoc());
+      assertEquals(TermsEnum.SeekStatus.NOT_FOUND, te.seekCeil(new BytesRef("mz")));
+      assertEquals(new BytesRef("some"), te.term());
+      assertEquals(TermsEnum.SeekStatus.END, te.seekCeil(new BytesRef("zzz")));
+
+      reader.close();
+      dir.close();
+    }
+  }
+
+  @Test
+  public void testStaleForwardIndex() throws Exception {
+    ForwardIndex.build(tempDir1, IndexArgs.CONTENTS);
+
+    Directory dir = FSDirectory.open(tempDir1);
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new EnglishAnalyzer()));
+    Document doc = new Document();
+    doc.add(new TextField(IndexArgs.CONTENTS, "another document", Field.Store.NO));
+    writer.addDocument(doc);
+    writer.close();
+
+    // The index has changed since, so the forward index is ignored, and we're back to term vectors.
+    IndexReader reader = DirectoryReader.open(dir);
+    assertNull(ForwardIndex.get(reader, IndexArgs.CONTENTS));
+    assertNotNull(ForwardIndex.getTermVector(reader, 0, IndexArgs.CONTENTS));
+
+    reader.close();
+    dir.close();
+  }
+
+  @Test
+  public void testLongTerms() throws Exception {
+    // Long terms, so that the term dictionary takes several pages and some terms straddle two of them.
+    Path path = createTempDir();
+    Directory dir = FSDirectory.open(path);
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new WhitespaceAnalyzer()));
+    FieldType type = new FieldType(TextField.TYPE_NOT_STORED);
+    type.setStoreTermVectors(true);
+    for (int i = 0; i < 20; i++) {
+      StringBuilder text = new StringBuilder();
+      for (int j = 0; j < 10; j++) {
+        text.append(Character.toString('a' + j).repeat(1 + random().nextInt(8000))).append(i).append(' ');
+      }
+      Document doc = new Document();
+      doc.add(new Field(IndexArgs.CONTENTS, text.toString(), type));
+      writer.addDocument(doc);
+    }
+    writer.close();
+
+    ForwardIndex.build(path, IndexArgs.CONTENTS);
+    IndexReader reader = DirectoryReader.open(dir);
+    ForwardIndex index = ForwardIndex.get(reader, IndexArgs.CONTENTS);
+    assertNotNull(index);
+    assertSameVectors(reader, index);
+
+    TermsEnum te = MultiTerms.getTerms(reader, IndexArgs.CONTENTS).iterator();
+    BytesRef term;
+    int ord = 0;
+    while ((term = te.next()) != null) {
+      assertEquals(term, index.getTerm(ord, new BytesRef()));
+      assertEquals(ord, index.getTermOrd(term));
+      ord++;
+    }
+    assertEquals(ord, index.numTerms());
+
+    reader.close();
+    dir.close();
+  }
+}
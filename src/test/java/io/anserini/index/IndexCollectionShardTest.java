@@ -0,0 +1,91 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+import io.anserini.collection.TrecCollection;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+public class IndexCollectionShardTest extends LuceneTestCase {
+  private static final int SHARDS = 3;
+
+  private IndexArgs createArgs(Path index, int shardCurrent) {
+    IndexArgs args = new IndexArgs();
+    args.input = "src/test/resources/sample_docs/trec/collection2";
+    args.collectionClass = TrecCollection.class.getSimpleName();
+    args.index = index.toString();
+    args.threads = 2;
+    args.quiet = true;
+    args.shardCount = SHARDS;
+    args.shardCurrent = shardCurrent;
+    return args;
+  }
+
+  private Set<String> docids(Path index) throws Exception {
+    Set<String> docids = new HashSet<>();
+    try (Directory dir = FSDirectory.open(index); IndexReader reader = DirectoryReader.open(dir)) {
+      for (int i = 0; i < reader.maxDoc(); i++) {
+        docids.add(reader.document(i).get(IndexArgs.ID));
+      }
+    }
+    return docids;
+  }
+
+  @Test
+  public void testSinglePassSameAsShardByShard() throws Exception {
+    Path all = createTempDir();
+    IndexCollection.Counters counters = new IndexCollection(createArgs(all, -1)).run();
+    assertEquals(3, counters.indexed.get());
+    assertEquals(0, counters.skipped.get());
+
+    Set<String> union = new HashSet<>();
+    for (int i = 0; i < SHARDS; i++) {
+      Path shard = createTempDir();
+      IndexCollection.Counters shardCounters = new IndexCollection(createArgs(shard, i)).run();
+      assertEquals(shardCounters.shards.get(i), shardCounters.indexed.get());
+      assertEquals(counters.shards.get(i), shardCounters.indexed.get());
+
+      Set<String> docids = docids(shard);
+      assertEquals(docids, docids(all.resolve("shard" + i)));
+      union.addAll(docids);
+    }
+    assertEquals(Set.of("TREC_DOC_1", "WSJ_1", "DOC222"), union);
+  }
+
+  @Test
+  public void testPipelineSameAsSinglePass() throws Exception {
+    Path all = createTempDir();
+    IndexCollection.Counters counters = new IndexCollection(createArgs(all, -1)).run();
+
+    Path pipelined = createTempDir();
+    IndexArgs args = createArgs(pipelined, -1);
+    args.pipelineWorkers = 2;
+    IndexCollection.Counters pipelinedCounters = new IndexCollection(args).run();
+    assertEquals(counters.indexed.get(), pipelinedCounters.indexed.get());
+    for (int i = 0; i < SHARDS; i++) {
+      assertEquals(counters.shards.get(i), pipelinedCounters.shards.get(i));
+      assertEquals(docids(all.resolve("shard" + i)), docids(pipelined.resolve("shard" + i)));
+    }
+  }
+}
@@ -39,12 +39,15 @@ import org.apache.lucene.util.BytesRef;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class IndexReaderUtilsTest extends IndexerTestBase {
 
@@ -277,6 +280,124 @@ public class IndexReaderUtilsTest extends IndexerTestBase {
     dir.close();
   }
 
+  @Test
+  public void testTermCursor() throws Exception {
+    Directory dir = FSDirectory.open(tempDir1);
+    IndexReader reader = DirectoryReader.open(dir);
+
+    // The cursor should agree with the iterator, term for term.
+    Iterator<IndexReaderUtils.IndexTerm> iter = IndexReaderUtils.getTerms(reader);
+    IndexReaderUtils.TermCursor cursor = IndexReaderUtils.getTermCursor(reader);
+    int cnt = 0;
+    while (cursor.next()) {
+      assertTrue(iter.hasNext());
+      IndexReaderUtils.IndexTerm term = iter.next();
+      assertEquals(term.getTerm(), cursor.getTerm());
+      assertEquals(term.getTerm(), cursor.getTermBytes().utf8ToString());
+      assertEquals(term.getDF(), cursor.getDF());
+      assertEquals(term.getTotalTF(), cursor.getTotalTF());
+
+      // Postings from the cursor match the postings list.
+      List<IndexReaderUtils.Posting> postingsList = IndexReaderUtils.getPostingsList(reader, cursor.getTerm(), false);
+      IndexReaderUtils.PostingsCursor postings = cursor.postings(true);
+      for (IndexReaderUtils.Posting posting : postingsList) {
+        assertTrue(postings.next());
+        assertEquals(posting.getDocid(), postings.getDocid());
+        assertEquals(posting.getTF(), postings.getTF());
+        assertArrayEquals(posting.getPositions(), Arrays.copyOf(postings.getPositions(), postings.getTF()));
+      }
+      assertFalse(postings.next());
+      cnt++;
+    }
+    assertEquals(6, cnt);
+    assertFalse(iter.hasNext());
+    assertFalse(cursor.next());
+
+    assertFalse(IndexReaderUtils.getTermCursor(reader, "nosuchfield").next());
+
+    reader.close();
+    dir.close();
+  }
+
+  @Test
+  public void testPostingsCursor() throws Exception {
+    Directory dir = FSDirectory.open(tempDir1);
+    IndexReader reader = DirectoryReader.open(dir);
+
+    assertNull(IndexReaderUtils.getPostingsCursor(reader, "asxe", true, false));
+
+    // here: (0, 2) [0, 4] (2, 1) [0]
+    IndexReaderUtils.PostingsCursor cursor = IndexReaderUtils.getPostingsCursor(reader, "here", true, true);
+    assertTrue(cursor.next());
+    assertEquals(0, cursor.getDocid());
+    assertEquals(2, cursor.getTF());
+    assertEquals(0, cursor.getPositions()[0]);
+    assertEquals(4, cursor.getPositions()[1]);
+    assertTrue(cursor.next());
+    assertEquals(2, cursor.getDocid());
+    assertEquals(1, cursor.getTF());
+    assertEquals(0, cursor.getPositions()[0]);
+    assertFalse(cursor.next());
+
+    // Positions weren't asked for.
+    cursor = IndexReaderUtils.getPostingsCursor(reader, "text", false, false);
+    assertTrue(cursor.next());
+    expectThrows(IllegalStateException.class, cursor::getPositions);
+
+    // text: (0, 2) [3, 8] (1, 1) [1], a chunk at a time.
+    cursor = IndexReaderUtils.getPostingsCursor(reader, "text", false, false);
+    int[] docids = new int[1];
+    int[] tfs = new int[1];
+    assertEquals(1, cursor.nextChunk(docids, tfs));
+    assertArrayEquals(new int[] {0}, docids);
+    assertArrayEquals(new int[] {2}, tfs);
+    assertEquals(1, cursor.nextChunk(docids, tfs));
+    assertArrayEquals(new int[] {1}, docids);
+    assertArrayEquals(new int[] {1}, tfs);
+    assertEquals(0, cursor.nextChunk(docids, tfs));
+    assertEquals(0, cursor.nextChunk(docids, tfs));
+    assertFalse(cursor.next());
+
+    int[][] postings = IndexReaderUtils.getPostingsArrays(reader, "texts", true);
+    assertArrayEquals(new int[] {0, 1}, postings[0]);
+    assertArrayEquals(new int[] {2, 1}, postings[1]);
+    assertNull(IndexReaderUtils.getPostingsArrays(reader, "texts", false));
+
+    reader.close();
+    dir.close();
+  }
+
+  @Test
+  public void testScanTerms() throws Exception {
+    Directory dir = FSDirectory.open(tempDir1);
+    IndexReader reader = DirectoryReader.open(dir);
+
+    // Summing up the per-segment statistics gives the collection statistics.
+    Map<String, Long> df = new ConcurrentHashMap<>();
+    Map<String, Long> cf = new ConcurrentHashMap<>();
+    IndexReaderUtils.scanTerms(reader, IndexArgs.CONTENTS, 2, (context, termsEnum) -> {
+      String term = termsEnum.term().utf8ToString();
+      df.merge(term, (long) termsEnum.docFreq(), Long::sum);
+      cf.merge(term, termsEnum.totalTermFreq(), Long::sum);
+    });
+
+    IndexReaderUtils.TermCursor cursor = IndexReaderUtils.getTermCursor(reader);
+    while (cursor.next()) {
+      assertEquals(cursor.getDF(), (long) df.remove(cursor.getTerm()));
+      assertEquals(cursor.getTotalTF(), (long) cf.remove(cursor.getTerm()));
+    }
+    assertTrue(df.isEmpty());
+
+    // Exceptions thrown by the visitor make it back to the caller.
+    expectThrows(IOException.class, () -> IndexReaderUtils.scanTerms(reader, IndexArgs.CONTENTS, 2,
+        (context, termsEnum) -> {
+          throw new IOException("boom");
+        }));
+
+    reader.close();
+    dir.close();
+  }
+
   @Test
   public void computeAllTermBM25Weights() throws Exception {
     SearchArgs args = new SearchArgs();
@@ -503,6 +624,38 @@ public class IndexReaderUtilsTest extends IndexerTestBase {
     dir.close();
   }
 
+  @Test
+  public void testComputeQueryDocumentScores() throws Exception {
+    SimpleSearcher searcher = new SimpleSearcher(tempDir1.toString());
+    Directory dir = FSDirectory.open(tempDir1);
+    IndexReader reader = DirectoryReader.open(dir);
+
+    // Out of order, with a duplicate and a docid that doesn't exist.
+    String[] docids = {"doc3", "doc1", "doc42", "doc2", "doc1"};
+    String[] queries = {"text city", "text", "city", "here more"};
+
+    for (String query: queries) {
+      float[] scores = IndexReaderUtils.computeQueryDocumentScores(reader, docids, query);
+      assertEquals(docids.length, scores.length);
+      for (int i = 0; i < docids.length; i++) {
+        assertEquals(IndexReaderUtils.computeQueryDocumentScore(reader, docids[i], query), scores[i], 10e-6);
+      }
+      assertEquals(0.0f, scores[2], 0.0f);
+
+      for (SimpleSearcher.Result result : searcher.search(query)) {
+        float score = IndexReaderUtils.computeQueryDocumentScores(reader, new String[] {result.docid}, query)[0];
+        assertEquals(result.score, score, 10e-5);
+      }
+    }
+
+    float[] weights = IndexReaderUtils.getBM25AnalyzedTermWeightsWithParameters(reader, docids, "citi", 0.9f, 0.4f);
+    assertArrayEquals(new float[] {0.0f, 0.43400f, 0.0f, 0.0f, 0.43400f}, weights, 10e-5f);
+
+    reader.close();
+    dir.close();
+    searcher.close();
+  }
+
   @Test
   public void testGetIndexStats() throws Exception {
     Directory dir = FSDirectory.open(tempDir1);
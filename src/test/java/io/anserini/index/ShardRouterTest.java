@@ -0,0 +1,61 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+public class ShardRouterTest extends LuceneTestCase {
+
+  @Test
+  public void testMurmur3() {
+    ShardRouter router = new Murmur3ShardRouter();
+    int[] counts = new int[7];
+    for (int i = 0; i < 70000; i++) {
+      String docid = "doc" + i;
+      int shard = router.shard(docid, counts.length);
+      assertTrue(shard >= 0 && shard < counts.length);
+      assertEquals(shard, router.shard(new String(docid.toCharArray()), counts.length));
+      counts[shard]++;
+    }
+
+    // Not a proper test of uniformity, but we shouldn't be too far off.
+    for (int count : counts) {
+      assertTrue(count > 9000 && count < 11000);
+    }
+  }
+
+  @Test
+  public void testSha1() {
+    ShardRouter router = new Sha1ShardRouter();
+    int negative = 0;
+    for (int i = 0; i < 1000; i++) {
+      String docid = "doc" + i;
+      int hash = Hashing.sha1().hashString(docid, Charsets.UTF_8).asInt();
+      int shard = router.shard(docid, 5);
+      assertTrue(shard >= 0 && shard < 5);
+      if (hash >= 0) {
+        // Same shard as before.
+        assertEquals(hash % 5, shard);
+      } else {
+        negative++;
+      }
+    }
+    assertTrue(negative > 0);
+  }
+}
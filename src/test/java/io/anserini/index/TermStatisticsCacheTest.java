@@ -0,0 +1,69 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.index;
+
+import io.anserini.IndexerTestBase;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import java.util.List;
+
+public class TermStatisticsCacheTest extends IndexerTestBase {
+
+  @Test
+  public void testStatistics() throws Exception {
+    Directory dir = FSDirectory.open(tempDir1);
+    IndexReader reader = DirectoryReader.open(dir);
+
+    TermStatisticsCache cache = TermStatisticsCache.get(reader, IndexArgs.CONTENTS);
+    assertSame(cache, TermStatisticsCache.get(reader, IndexArgs.CONTENTS));
+    assertNotSame(cache, TermStatisticsCache.get(reader, IndexArgs.RAW));
+
+    TermStatisticsCache.TermStatistics stats = cache.get("here");
+    assertEquals(2, stats.getDf());
+    assertEquals(3, stats.getCf());
+    assertEquals(2.0f / 3, stats.getDfRatio(), 1e-6f);
+
+    // Lookups with reused bytes must not corrupt the cached entries.
+    BytesRef spare = new BytesRef("text");
+    assertEquals(2, cache.get(spare).getDf());
+    spare.bytes[0] = 'n';
+    assertEquals(2, cache.get("text").getDf());
+    assertEquals(3, cache.get("text").getCf());
+
+    assertEquals(0, cache.get("nosuchterm").getDf());
+    assertEquals(0, cache.get("nosuchterm").getCf());
+    assertEquals(3, cache.size());
+
+    cache.warmUp(List.of("some", "test"));
+    assertEquals(5, cache.size());
+
+    reader.close();
+    dir.close();
+
+    // The cache goes away with its reader.
+    dir = FSDirectory.open(tempDir1);
+    reader = DirectoryReader.open(dir);
+    assertNotSame(cache, TermStatisticsCache.get(reader, IndexArgs.CONTENTS));
+    reader.close();
+    dir.close();
+  }
+}
@@ -130,6 +130,13 @@ public abstract class EndToEndTest extends LuceneTestCase {
       args.add(indexArgs.stopwords);
     }
 
+    if (indexArgs.pipelineWorkers > 0) {
+      args.add("-pipeline.workers");
+      args.add(indexArgs.pipelineWorkers + "");
+      args.add("-pipeline.queueSize");
+      args.add(indexArgs.pipelineQueueSize + "");
+    }
+
     if (indexArgs.optimize) {
       args.add("-optimize");
     }
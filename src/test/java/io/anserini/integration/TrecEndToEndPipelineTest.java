@@ -0,0 +1,33 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.integration;
+
+import io.anserini.index.IndexArgs;
+
+// Same collection and ground truth as TrecEndToEndTest, but with documents handed off from the segment readers to a
+// separate pool of workers through a (tiny) queue.
+public class TrecEndToEndPipelineTest extends TrecEndToEndTest {
+  @Override
+  protected IndexArgs getIndexArgs() {
+    IndexArgs indexArgs = super.getIndexArgs();
+
+    indexArgs.pipelineWorkers = 3;
+    indexArgs.pipelineQueueSize = 1;
+
+    return indexArgs;
+  }
+}
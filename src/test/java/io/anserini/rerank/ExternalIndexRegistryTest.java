@@ -0,0 +1,54 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.rerank;
+
+import io.anserini.IndexerTestBase;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.junit.Test;
+
+public class ExternalIndexRegistryTest extends IndexerTestBase {
+
+  @Test
+  public void testSharedReaders() throws Exception {
+    ExternalIndexRegistry registry = new ExternalIndexRegistry();
+
+    IndexReader reader = registry.acquire(tempDir1.toString());
+    assertEquals(3, reader.numDocs());
+    // Same index, same reader, even if the path is spelled differently.
+    IndexReader other = registry.acquire(tempDir1.resolve(".").toString());
+    assertSame(reader, other);
+    assertEquals(1, registry.size());
+
+    registry.release(other);
+    registry.close();
+    // Still in use, so still open...
+    assertEquals(3, reader.numDocs());
+    registry.release(reader);
+    // ... until the last user is done.
+    assertEquals(0, reader.getRefCount());
+    expectThrows(AlreadyClosedException.class, () -> reader.document(0));
+    expectThrows(AlreadyClosedException.class, () -> registry.acquire(tempDir1.toString()));
+  }
+
+  @Test
+  public void testMissingIndex() throws Exception {
+    try (ExternalIndexRegistry registry = new ExternalIndexRegistry()) {
+      expectThrows(IllegalArgumentException.class, () -> registry.acquire(tempDir1.resolve("nosuchindex").toString()));
+      assertEquals(0, registry.size());
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.rerank.lib;
+
+import io.anserini.analysis.AnalyzerUtils;
+import io.anserini.index.IndexArgs;
+import io.anserini.rerank.RerankerContext;
+import io.anserini.rerank.ScoredDocuments;
+import io.anserini.search.SearchArgs;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static io.anserini.search.SearchCollection.BREAK_SCORE_TIES_BY_DOCID;
+
+// Pins the expansion terms, their weights, and the reranked results of deterministic axiomatic reranking; the values
+// are those of the implementation before term selection was reworked, on the same index.
+public class AxiomRerankerTest extends LuceneTestCase {
+  private Path indexPath;
+  private Directory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+
+  // A made-up collection of 100 documents over 200 made-up words, with skewed frequencies, fixed by the seeds.
+  @Before
+  public void buildIndex() throws Exception {
+    Random random = new Random(99);
+    String[] words = new String[200];
+    for (int i = 0; i < words.length; i++) {
+      char[] chars = new char[5];
+      for (int j = 0; j < chars.length; j++) {
+        chars[j] = (char) ('a' + random.nextInt(26));
+      }
+      words[i] = new String(chars);
+    }
+
+    indexPath = createTempDir();
+    dir = FSDirectory.open(indexPath);
+    IndexWriterConfig config = new IndexWriterConfig(new EnglishAnalyzer());
+    config.setSimilarity(new BM25Similarity());
+    IndexWriter writer = new IndexWriter(dir, config);
+    FieldType type = new FieldType(TextField.TYPE_NOT_STORED);
+    type.setStoreTermVectors(true);
+    random = new Random(1234);
+    for (int i = 0; i < 100; i++) {
+      StringBuilder text = new StringBuilder();
+      int length = 20 + random.nextInt(40);
+      for (int j = 0; j < length; j++) {
+        text.append(words[(int) Math.min(words.length - 1, Math.abs(random.nextGaussian()) * 40)]).append(' ');
+      }
+      String docid = String.format(Locale.ROOT, "doc%03d", i);
+      Document doc = new Document();
+      doc.add(new StringField(IndexArgs.ID, docid, Field.Store.YES));
+      doc.add(new SortedDocValuesField(IndexArgs.ID, new BytesRef(docid)));
+      doc.add(new Field(IndexArgs.CONTENTS, text.toString(), type));
+      writer.addDocument(doc);
+    }
+    writer.close();
+
+    reader = DirectoryReader.open(dir);
+    searcher = new IndexSearcher(reader);
+    searcher.setSimilarity(new BM25Similarity(0.9f, 0.4f));
+    AxiomReranker.internalDocidsCache = null;
+    AxiomReranker.externalDocidsCache = null;
+  }
+
+  @After
+  public void closeIndex() throws Exception {
+    AxiomReranker.internalDocidsCache = null;
+    AxiomReranker.externalDocidsCache = null;
+    reader.close();
+    dir.close();
+  }
+
+  @Test
+  public void testDeterministic() throws Exception {
+    AxiomReranker<String> reranker = newReranker(null);
+    assertReranked(reranker, "pkkyd",
+        new String[] {"alyjn", "apdd", "dzwzg", "hrsjk", "hvvfo", "iyfca", "pkkyd", "tdyxg", "uuuel", "uvvmh"},
+        new double[] {0.08287323491046682, 0.14221875106633178, 0.08287323491046682, 0.1838557250983699,
+            0.14221875106633178, 0.1589165237703796, 1.3862943649291992, 0.2398500248276332, 0.1589165237703796,
+            0.1382053426191347},
+        new String[] {"doc033", "doc076", "doc092", "doc099", "doc000", "doc095", "doc058", "doc090", "doc063", "doc008"},
+        new float[] {1.9113322f, 1.9053533f, 1.832576f, 1.7611676f, 1.7551574f, 1.6815599f, 1.553042f, 1.4602968f,
+            1.4588665f, 1.4421948f});
+    assertReranked(reranker, "apdds hnjjn tjqdd",
+        new String[] {"apdd", "hnjjn", "hrsjk", "hvvfo", "iwebf", "razhk", "tgrwl", "tjqdd", "viyxc", "yaiho"},
+        new double[] {0.08971324722730843, 0.598926357931696, 0.2555019768259559, 0.0765236956386325,
+            0.10601074159217024, 0.11979723309372477, 0.07942818822858894, 0.8434199744287559, 0.11539467838500474,
+            0.10820508924823548},
+        new String[] {"doc043", "doc036", "doc021", "doc063", "doc047", "doc034", "doc003", "doc041", "doc059", "doc095"},
+        new float[] {1.8471249f, 1.7837197f, 1.7607832f, 1.6923882f, 1.5614278f, 1.2822906f, 1.2375894f, 1.1717161f,
+            1.1249163f, 1.0781736f});
+  }
+
+  @Test
+  public void testDeterministicWithDocids() throws Exception {
+    // The docids file lists the documents in a different order than the index, so other documents are sampled.
+    List<String> docids = new ArrayList<>();
+    for (int i = 0; i < reader.maxDoc(); i++) {
+      docids.add(reader.document(i).get(IndexArgs.ID));
+    }
+    Collections.reverse(docids);
+    Path docidsPath = createTempDir().resolve("docids.txt");
+    Files.write(docidsPath, docids, StandardCharsets.UTF_8);
+
+    AxiomReranker<String> reranker = newReranker(docidsPath.toString());
+    assertReranked(reranker, "pkkyd",
+        new String[] {"aitnc", "alyjn", "irymt", "jbuzv", "onypx", "pgtig", "pkkyd", "tdyxg", "uuuel", "zqjg"},
+        new double[] {0.10611481221944907, 0.18483924010003408, 0.1137597196123326, 0.10611481221944907,
+            0.1589165237703796, 0.2398500248276332, 1.3862943649291992, 0.1589165237703796, 0.18483924010003408,
+            0.18483924010003405},
+        new String[] {"doc076", "doc092", "doc000", "doc033", "doc095", "doc099", "doc006", "doc090", "doc082", "doc068"},
+        new float[] {1.9776577f, 1.9192172f, 1.8966038f, 1.8352847f, 1.7150816f, 1.6434991f, 1.5183151f, 1.4667476f,
+            1.4274093f, 1.4221241f});
+    assertReranked(reranker, "apdds hnjjn tjqdd",
+        new String[] {"aiwpv", "hnjjn", "hrsjk", "jtwek", "lrwvn", "mrpju", "nexwq", "risja", "tjqdd", "yaiho"},
+        new double[] {0.1300784443404579, 0.7691094676653544, 0.13337951955348265, 0.1954928117118877,
+            0.1300784443404579, 0.134775646461881, 0.1954928117118877, 0.1300784443404579, 0.9523676236470541,
+            0.173351044460197},
+        new String[] {"doc043", "doc021", "doc063", "doc047", "doc036", "doc095", "doc034", "doc059", "doc041", "doc003"},
+        new float[] {2.5853388f, 2.420553f, 2.1576746f, 1.9846653f, 1.8753705f, 1.6081886f, 1.4498414f, 1.3657789f,
+            1.3578361f, 1.3573112f});
+  }
+
+  // R = 5, N = 3, beta = 0.4 and the top 10 terms, with seed 42.
+  private AxiomReranker<String> newReranker(String docidsPath) throws Exception {
+    return new AxiomReranker<>(indexPath.toString(), null, IndexArgs.CONTENTS, true, 42L, 5, 3, 0.4f, 10, docidsPath,
+        false, false);
+  }
+
+  private void assertReranked(AxiomReranker<String> reranker, String queryText, String[] terms, double[] weights,
+                              String[] docids, float[] scores) throws Exception {
+    Analyzer analyzer = new EnglishAnalyzer();
+    List<String> queryTokens = AnalyzerUtils.analyze(analyzer, queryText);
+    BooleanQuery.Builder builder = new BooleanQuery.Builder();
+    for (String token : queryTokens) {
+      builder.add(new TermQuery(new Term(IndexArgs.CONTENTS, token)), BooleanClause.Occur.SHOULD);
+    }
+    Query query = builder.build();
+
+    SearchArgs args = new SearchArgs();
+    args.hits = 10;
+    RerankerContext<String> context = new RerankerContext<>(searcher, "q", query, null, queryText, queryTokens, null,
+        args);
+
+    ScoredDocuments docs = ScoredDocuments.fromTopDocs(searcher.search(query, 10, BREAK_SCORE_TIES_BY_DOCID, true),
+        searcher);
+    Map<String, Double> expansion = new TreeMap<>(reranker.selectExpansionTerms(docs, context, reader));
+    assertArrayEquals(terms, expansion.keySet().toArray(new String[0]));
+    int i = 0;
+    for (double weight : expansion.values()) {
+      assertEquals(terms[i], weights[i++], weight, 1e-12);
+    }
+
+    ScoredDocuments reranked = reranker.rerank(docs, context);
+    assertEquals(docids.length, reranked.documents.length);
+    for (i = 0; i < docids.length; i++) {
+      assertEquals(docids[i], reranked.documents[i].get(IndexArgs.ID));
+      assertEquals(docids[i], scores[i], reranked.scores[i], 1e-5f);
+    }
+  }
+}
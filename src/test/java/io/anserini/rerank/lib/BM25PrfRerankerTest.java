@@ -0,0 +1,69 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.rerank.lib;
+
+import io.anserini.IndexerTestBase;
+import io.anserini.index.IndexArgs;
+import io.anserini.rerank.RerankerContext;
+import io.anserini.rerank.ScoredDocuments;
+import io.anserini.search.SearchArgs;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Test;
+
+import java.util.List;
+
+public class BM25PrfRerankerTest extends IndexerTestBase {
+
+  @Test
+  public void testSharedSearcherUntouched() throws Exception {
+    Directory dir = FSDirectory.open(tempDir1);
+    IndexReader reader = DirectoryReader.open(dir);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    Similarity similarity = new BM25Similarity(0.9f, 0.4f);
+    searcher.setSimilarity(similarity);
+
+    SearchArgs args = new SearchArgs();
+    args.hits = 10;
+    Query query = new TermQuery(new Term(IndexArgs.CONTENTS, "text"));
+    ScoredDocuments docs = ScoredDocuments.fromTopDocs(searcher.search(query, 10), searcher);
+    float[] scores = docs.scores.clone();
+
+    RerankerContext<String> context = new RerankerContext<>(searcher, "q1", query, null, "text", List.of("text"),
+        null, args);
+    BM25PrfReranker reranker = new BM25PrfReranker(new EnglishAnalyzer(), IndexArgs.CONTENTS, 20, 10, 0.9f, 0.4f,
+        0.2f, false);
+    ScoredDocuments reranked = reranker.rerank(docs, context);
+    assertTrue(reranked.documents.length > 0);
+
+    // The reranker scores with its own similarity, without changing the one of the shared searcher.
+    assertSame(similarity, searcher.getSimilarity());
+    ScoredDocuments again = ScoredDocuments.fromTopDocs(searcher.search(query, 10), searcher);
+    assertArrayEquals(scores, again.scores, 0.0f);
+
+    reader.close();
+    dir.close();
+  }
+}
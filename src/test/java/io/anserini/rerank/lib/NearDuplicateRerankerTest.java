@@ -0,0 +1,194 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.rerank.lib;
+
+import io.anserini.index.IndexArgs;
+import io.anserini.rerank.RerankerContext;
+import io.anserini.rerank.ScoredDocuments;
+import io.anserini.search.SearchArgs;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class NearDuplicateRerankerTest extends LuceneTestCase {
+
+  private static String randomText(Random random, int vocabulary, int length) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      // Skewed towards the first few terms, so that term frequencies vary.
+      sb.append('t').append((int) (vocabulary * Math.pow(random.nextDouble(), 3))).append(' ');
+    }
+    return sb.toString();
+  }
+
+  private static String perturb(Random random, String text, int edits) {
+    String[] tokens = text.split(" ");
+    for (int i = 0; i < edits; i++) {
+      tokens[random.nextInt(tokens.length)] = "x" + random.nextInt(1000);
+    }
+    return String.join(" ", tokens);
+  }
+
+  private static Map<String, Long> vector(IndexReader reader, int docid) throws Exception {
+    Map<String, Long> m = new HashMap<>();
+    Terms terms = reader.getTermVector(docid, IndexArgs.CONTENTS);
+    if (terms != null) {
+      TermsEnum it = terms.iterator();
+      while (it.next() != null) {
+        m.put(it.term().utf8ToString(), it.totalTermFreq());
+      }
+    }
+    return m;
+  }
+
+  private static double cosine(Map<String, Long> a, Map<String, Long> b) {
+    double dot = 0;
+    for (Map.Entry<String, Long> e : a.entrySet()) {
+      dot += 1.0 * e.getValue() * b.getOrDefault(e.getKey(), 0L);
+    }
+    double na = 0;
+    for (long v : a.values()) {
+      na += 1.0 * v * v;
+    }
+    double nb = 0;
+    for (long v : b.values()) {
+      nb += 1.0 * v * v;
+    }
+    return dot / (Math.sqrt(na) * Math.sqrt(nb));
+  }
+
+  // Compares all pairs, which is what we're trying to avoid.
+  private static boolean[] bruteForce(IndexReader reader, int[] docids, int queryDocid, double threshold)
+      throws Exception {
+    Map<String, Long> query = queryDocid < 0 ? new HashMap<>() : vector(reader, queryDocid);
+    List<Map<String, Long>> vectors = new ArrayList<>();
+    for (int docid : docids) {
+      vectors.add(vector(reader, docid));
+    }
+
+    boolean[] removed = new boolean[docids.length];
+    for (int i = 0; i < docids.length; i++) {
+      if (removed[i]) continue;
+      if (cosine(query, vectors.get(i)) >= threshold) {
+        removed[i] = true;
+        continue;
+      }
+      for (int j = i + 1; j < docids.length; j++) {
+        if (cosine(vectors.get(i), vectors.get(j)) >= threshold) {
+          removed[j] = true;
+        }
+      }
+    }
+    return removed;
+  }
+
+  @Test
+  public void testSameAsBruteForce() throws Exception {
+    Random random = random();
+    FieldType type = new FieldType();
+    type.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+    type.setStoreTermVectors(true);
+
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new WhitespaceAnalyzer()));
+    List<String> texts = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      String text;
+      if (i > 0 && random.nextInt(3) == 0) {
+        // A near-duplicate of an earlier document, more or less near.
+        text = perturb(random, texts.get(random.nextInt(texts.size())), random.nextInt(6));
+      } else {
+        text = randomText(random, 200, 5 + random.nextInt(40));
+      }
+      texts.add(text);
+
+      Document doc = new Document();
+      doc.add(new StringField(IndexArgs.ID, "doc" + i, Field.Store.YES));
+      // A few documents without any terms.
+      doc.add(new Field(IndexArgs.CONTENTS, i % 50 == 7 ? "" : text, type));
+      writer.addDocument(doc);
+    }
+    writer.close();
+
+    IndexReader reader = DirectoryReader.open(dir);
+    NearDuplicateReranker exact = new NearDuplicateReranker();
+    NearDuplicateReranker minHash = new NearDuplicateReranker(IndexArgs.CONTENTS, 0.9, 16, 2);
+    for (int trial = 0; trial < 20; trial++) {
+      int[] docids = new int[1 + random.nextInt(reader.maxDoc())];
+      for (int i = 0; i < docids.length; i++) {
+        docids[i] = random.nextInt(reader.maxDoc());
+      }
+      int queryDocid = trial % 2 == 0 ? -1 : random.nextInt(reader.maxDoc());
+      double threshold = trial % 3 == 0 ? 0.5 : 0.9;
+
+      boolean[] expected = bruteForce(reader, docids, queryDocid, threshold);
+      assertArrayEquals(expected,
+          new NearDuplicateReranker(IndexArgs.CONTENTS, threshold).findDuplicates(reader, docids, queryDocid));
+
+      // MinHash may miss a few, but exact copies (with any terms at all) always end up in the same buckets.
+      boolean[] approximate = minHash.findDuplicates(reader, docids, queryDocid);
+      for (int i = 0; i < docids.length; i++) {
+        for (int j = 0; j < i; j++) {
+          if (docids[j] == docids[i] && !approximate[j] && !vector(reader, docids[i]).isEmpty()) {
+            assertTrue(approximate[i]);
+          }
+        }
+      }
+    }
+
+    // As a reranker, it keeps the first of each group of duplicates, in order.
+    IndexSearcher searcher = new IndexSearcher(reader);
+    ScoredDocuments docs = ScoredDocuments.fromTopDocs(searcher.search(new MatchAllDocsQuery(), 300), searcher);
+    RerankerContext<String> context = new RerankerContext<>(searcher, "q1", new MatchAllDocsQuery(), null, "",
+        List.of(), null, new SearchArgs());
+    ScoredDocuments reranked = exact.rerank(docs, context);
+    boolean[] expected = bruteForce(reader, docs.ids, -1, NearDuplicateReranker.DEFAULT_THRESHOLD);
+    int idx = 0;
+    for (int i = 0; i < docs.ids.length; i++) {
+      if (!expected[i]) {
+        assertEquals(docs.ids[i], reranked.ids[idx]);
+        assertEquals(docs.scores[i], reranked.scores[idx], 0.0f);
+        assertSame(docs.documents[i], reranked.documents[idx]);
+        idx++;
+      }
+    }
+    assertEquals(idx, reranked.ids.length);
+    assertTrue(reranked.ids.length < docs.ids.length);
+
+    reader.close();
+    dir.close();
+  }
+}
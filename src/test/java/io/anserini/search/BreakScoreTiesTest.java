@@ -0,0 +1,103 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.search;
+
+import io.anserini.index.IndexArgs;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+public class BreakScoreTiesTest extends LuceneTestCase {
+
+  @Test
+  public void testSameOrderAsDocids() throws Exception {
+    List<String> docids = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      docids.add(String.format(Locale.ROOT, "doc%03d", i));
+    }
+    Collections.shuffle(docids, random());
+
+    Directory dir = newDirectory();
+    IndexWriterConfig config = new IndexWriterConfig(new WhitespaceAnalyzer());
+    IndexWriter writer = new IndexWriter(dir, config);
+    for (int i = 0; i < docids.size(); i++) {
+      Document doc = new Document();
+      doc.add(new StringField(IndexArgs.ID, docids.get(i), Field.Store.YES));
+      doc.add(new SortedDocValuesField(IndexArgs.ID, new BytesRef(docids.get(i))));
+      // Two distinct scores, with lots of ties within each.
+      doc.add(new TextField(IndexArgs.CONTENTS, i % 2 == 0 ? "a b" : "a", Field.Store.NO));
+      writer.addDocument(doc);
+      // Spread documents across segments, so that ordinals have to be compared across segments.
+      if (i % 37 == 0) {
+        writer.commit();
+      }
+    }
+    writer.close();
+
+    IndexReader reader = DirectoryReader.open(dir);
+    assertTrue(reader.leaves().size() > 1);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    Sort byValue = new Sort(SortField.FIELD_SCORE, new SortField(IndexArgs.ID, SortField.Type.STRING_VAL));
+
+    for (int k : new int[]{1, 10, 99, 150, 1000}) {
+      TopDocs expected = searcher.search(new TermQuery(new Term(IndexArgs.CONTENTS, "a")), k, byValue, true);
+      TopDocs actual = searcher.search(new TermQuery(new Term(IndexArgs.CONTENTS, "a")), k,
+          SearchCollection.BREAK_SCORE_TIES_BY_DOCID, true);
+
+      assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+      String previous = null;
+      for (int i = 0; i < actual.scoreDocs.length; i++) {
+        ScoreDoc e = expected.scoreDocs[i];
+        ScoreDoc a = actual.scoreDocs[i];
+        assertEquals(e.doc, a.doc);
+        assertEquals(e.score, a.score, 0.0f);
+
+        String docid = reader.document(a.doc).get(IndexArgs.ID);
+        if (i > 0 && a.score == actual.scoreDocs[i - 1].score) {
+          assertTrue(previous.compareTo(docid) < 0);
+        }
+        previous = docid;
+      }
+    }
+
+    reader.close();
+    dir.close();
+  }
+}
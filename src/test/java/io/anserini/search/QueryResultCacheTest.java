@@ -0,0 +1,138 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.search;
+
+import io.anserini.IndexerTestBase;
+import io.anserini.rerank.RerankerCascade;
+import io.anserini.rerank.lib.AxiomReranker;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class QueryResultCacheTest extends IndexerTestBase {
+  private static final QueryResultCache.Codec<String> CODEC = new QueryResultCache.Codec<>() {
+    @Override
+    public void write(DataOutput out, String value) throws IOException {
+      out.writeUTF(value);
+    }
+
+    @Override
+    public String read(DataInput in) throws IOException {
+      return in.readUTF();
+    }
+  };
+
+  @Test
+  public void testSimpleSearcher() throws Exception {
+    SimpleSearcher searcher = new SimpleSearcher(tempDir1.toString());
+    searcher.setQueryCache(10);
+
+    SimpleSearcher.Result[] results = searcher.search("text", 10);
+    assertEquals(1, searcher.getQueryCache().getStats().missCount());
+
+    // Same analyzed query, so the same results, without searching.
+    SimpleSearcher.Result[] cached = searcher.search("texts", 10);
+    assertEquals(1, searcher.getQueryCache().getStats().hitCount());
+    assertEquals(results.length, cached.length);
+    for (int i = 0; i < results.length; i++) {
+      assertSame(results[i], cached[i]);
+    }
+
+    // Changing anything that matters means searching again.
+    searcher.search("text", 1);
+    searcher.setBM25(1.2f, 0.75f);
+    SimpleSearcher.Result[] bm25 = searcher.search("text", 10);
+    assertNotEquals(results[0].score, bm25[0].score, 10e-6);
+    searcher.setRM3();
+    searcher.search("text", 10);
+    assertEquals(1, searcher.getQueryCache().getStats().hitCount());
+    assertEquals(4, searcher.getQueryCache().getStats().missCount());
+
+    searcher.unsetQueryCache();
+    assertNull(searcher.getQueryCache());
+    searcher.close();
+  }
+
+  @Test
+  public void testInvalidation() throws Exception {
+    Path path = createTempDir();
+    Directory dir = FSDirectory.open(path);
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new WhitespaceAnalyzer()));
+    Document doc = new Document();
+    doc.add(new StringField("id", "doc1", Field.Store.YES));
+    writer.addDocument(doc);
+    writer.commit();
+
+    QueryResultCache<String> cache = new QueryResultCache<>(10);
+    DirectoryReader reader = DirectoryReader.open(dir);
+    cache.put(reader, QueryResultCache.key("q", 1), "results");
+    assertEquals("results", cache.get(reader, QueryResultCache.key("q", 1)));
+    assertNull(cache.get(reader, QueryResultCache.key("q", 2)));
+
+    // Another reader on the same commit sees the same results.
+    DirectoryReader sameCommit = DirectoryReader.open(dir);
+    assertEquals("results", cache.get(sameCommit, QueryResultCache.key("q", 1)));
+
+    Path file = createTempDir().resolve("cache");
+    cache.save(file, CODEC);
+    QueryResultCache<String> loaded = new QueryResultCache<>(10);
+    assertEquals(1, loaded.load(file, sameCommit, CODEC));
+    assertEquals("results", loaded.get(sameCommit, QueryResultCache.key("q", 1)));
+
+    // A new commit drops everything.
+    writer.addDocument(doc);
+    writer.commit();
+    DirectoryReader newCommit = DirectoryReader.openIfChanged(reader);
+    assertNotNull(newCommit);
+    assertNull(cache.get(newCommit, QueryResultCache.key("q", 1)));
+    assertEquals(0, cache.size());
+    assertEquals(0, new QueryResultCache<String>(10).load(file, newCommit, CODEC));
+
+    newCommit.close();
+    sameCommit.close();
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  @Test
+  public void testRerankerSignatures() throws Exception {
+    // Cached results must not be shared by rerankers that only differ in parameters their tags leave out.
+    String plain = signature(null, false, null);
+    assertEquals(plain, signature(null, false, null));
+    assertNotEquals(plain, signature("external", false, null));
+    assertNotEquals(plain, signature(null, true, null));
+    assertNotEquals(signature(null, true, null), signature(null, true, "docids"));
+  }
+
+  private static String signature(String externalIndex, boolean deterministic, String docids) throws IOException {
+    // With N = 1 no documents are sampled, so nothing is read from either index or the docids file.
+    return new RerankerCascade().add(new AxiomReranker<>("index", externalIndex, "contents", deterministic, 42L,
+        20, 1, 0.4f, 20, docids, false, false)).getSignature();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.anserini.util;
+
+import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class HashIterationOrderTest extends LuceneTestCase {
+
+  @Test
+  public void testHashCode() {
+    for (String s : new String[]{"", "a", "citi", "caf\u00e9", "\u4e2d\u6587", "\ud83d\ude00x"}) {
+      assertEquals(s.hashCode(), HashIterationOrder.hashCode(new BytesRef(s)));
+    }
+  }
+
+  @Test
+  public void testSameOrderAsHashTables() {
+    for (int iter = 0; iter < 100; iter++) {
+      // Small and large tables, with repeated keys, and enough keys for tables to grow several times.
+      int n = random().nextInt(iter % 10 == 0 ? 5000 : 100);
+      BytesRefHash terms = new BytesRefHash();
+      int[] ids = new int[n];
+      Object2FloatOpenHashMap<String> map = new Object2FloatOpenHashMap<>();
+      Set<String> set = new HashSet<>();
+      for (int i = 0; i < n; i++) {
+        String term = TestUtil.randomUnicodeString(random(), 10);
+        if (i > 0 && random().nextInt(5) == 0) {
+          term = terms.get(ids[random().nextInt(i)], new BytesRef()).utf8ToString();
+        }
+        ids[i] = TermIdFeatureVector.termId(terms, new BytesRef(term));
+        map.put(term, 1.0f);
+        set.add(term);
+      }
+
+      assertEquals(new ArrayList<>(map.keySet()), toTerms(terms, HashIterationOrder.openHashMapOrder(terms, ids, n)));
+      assertEquals(new ArrayList<>(set), toTerms(terms, HashIterationOrder.hashSetOrder(terms, ids, n)));
+    }
+  }
+
+  private static List<String> toTerms(BytesRefHash terms, int[] ids) {
+    List<String> list = new ArrayList<>();
+    for (int id : ids) {
+      list.add(terms.get(id, new BytesRef()).utf8ToString());
+    }
+    return list;
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Anserini: A Lucene toolkit for replicable information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.util;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class TermIdFeatureVectorTest extends LuceneTestCase {
+  private final TermIdFeatureVector createAndAddFeatureWeights(BytesRefHash terms) {
+    TermIdFeatureVector fv = new TermIdFeatureVector(terms);
+    fv.addFeatureWeight(new BytesRef("a"), 0.2f);
+    fv.addFeatureWeight(new BytesRef("a"), 0.3f);
+    fv.addFeatureWeight(new BytesRef("b"), 0.3f);
+    fv.addFeatureWeight(new BytesRef("b"), 0.5f);
+    fv.addFeatureWeight(new BytesRef("c"), 0.4f);
+    fv.addFeatureWeight(new BytesRef("d"), 0.1f);
+    return fv;
+  }
+
+  private Set<String> getTerms(TermIdFeatureVector fv) {
+    Set<String> terms = new HashSet<>();
+    for (int i = 0; i < fv.size(); i++) {
+      terms.add(fv.getTerm(i, new BytesRef()).utf8ToString());
+    }
+    return terms;
+  }
+
+  @Test
+  public void addFeatureWeightTest() {
+    TermIdFeatureVector fv = createAndAddFeatureWeights(new BytesRefHash());
+    assertEquals(4, fv.size());
+    assertEquals(0.5f, fv.getFeatureWeight(0), 1e-6f);
+    assertEquals(0.8f, fv.getFeatureWeight(1), 1e-6f);
+    assertEquals(0.4f, fv.getFeatureWeight(2), 1e-6f);
+    assertEquals(0.1f, fv.getFeatureWeight(3), 1e-6f);
+    assertEquals(0.0f, fv.getFeatureWeight(4), 1e-6f);
+    assertEquals(1.8, fv.computeL1Norm(), 1e-6);
+  }
+
+  @Test
+  public void pruneToSizeTest() {
+    TermIdFeatureVector fv1 = createAndAddFeatureWeights(new BytesRefHash());
+    assertEquals(fv1.pruneToSize(2).size(), 2);
+    TermIdFeatureVector fv2 = createAndAddFeatureWeights(new BytesRefHash());
+    assertEquals(fv2.pruneToSize(1).size(), 1);
+    TermIdFeatureVector fv3 = createAndAddFeatureWeights(new BytesRefHash());
+    assertEquals(getTerms(fv3.pruneToSize(2)), new HashSet<>(Arrays.asList(new String[]{"a", "b"})));
+    assertEquals(0.5f, fv3.getFeatureWeight(0), 1e-6f);
+    assertEquals(0.8f, fv3.getFeatureWeight(1), 1e-6f);
+  }
+
+  @Test
+  public void pruneToSizeTiesTest() {
+    // Ties are broken, and the kept entries iterate, exactly as with the string-keyed FeatureVector.
+    for (int iter = 0; iter < 200; iter++) {
+      BytesRefHash terms = new BytesRefHash();
+      TermIdFeatureVector fv = new TermIdFeatureVector(terms);
+      FeatureVector expected = new FeatureVector();
+      int n = random().nextInt(300);
+      for (int i = 0; i < n; i++) {
+        String t = "t" + random().nextInt(500);
+        float w = random().nextInt(4);
+        fv.addFeatureWeight(new BytesRef(t), w);
+        expected.addFeatureWeight(t, w);
+      }
+
+      int k = 1 + random().nextInt(20);
+      fv.pruneToSize(k);
+      expected.pruneToSize(k);
+      assertEquals(new ArrayList<>(expected.getFeatures()), getTermsInIterationOrder(fv));
+
+      // Once more, starting from the order pruning left behind.
+      fv.pruneToSize(k / 2);
+      expected.pruneToSize(k / 2);
+      assertEquals(new ArrayList<>(expected.getFeatures()), getTermsInIterationOrder(fv));
+    }
+  }
+
+  private List<String> getTermsInIterationOrder(TermIdFeatureVector fv) {
+    List<String> terms = new ArrayList<>();
+    for (int id : fv.getIterationOrder()) {
+      terms.add(fv.getTerms().get(id, new BytesRef()).utf8ToString());
+    }
+    return terms;
+  }
+
+  @Test
+  public void interpolateTest() {
+    BytesRefHash terms = new BytesRefHash();
+    TermIdFeatureVector x = TermIdFeatureVector.fromTerms(terms, Arrays.asList("b", "c", "b")).scaleToUnitL1Norm();
+    TermIdFeatureVector y = createAndAddFeatureWeights(terms).scaleToUnitL1Norm();
+
+    TermIdFeatureVector z = TermIdFeatureVector.interpolate(x, y, 0.5f);
+    assertEquals(4, z.size());
+    assertEquals(getTerms(z), new HashSet<>(Arrays.asList(new String[]{"a", "b", "c", "d"})));
+    int b = terms.find(new BytesRef("b"));
+    int c = terms.find(new BytesRef("c"));
+    int a = terms.find(new BytesRef("a"));
+    assertEquals(0.5f * 2 / 3 + 0.5f * 0.8f / 1.8f, z.getFeatureWeight(b), 1e-6f);
+    assertEquals(0.5f * 1 / 3 + 0.5f * 0.4f / 1.8f, z.getFeatureWeight(c), 1e-6f);
+    assertEquals(0.5f * 0.5f / 1.8f, z.getFeatureWeight(a), 1e-6f);
+    assertEquals(1.0, z.computeL1Norm(), 1e-6);
+
+    FeatureVector expected = FeatureVector.interpolate(
+        FeatureVector.fromTerms(Arrays.asList("b", "c", "b")).scaleToUnitL1Norm(),
+        new FeatureVector() {{
+          addFeatureWeight("a", 0.5f);
+          addFeatureWeight("b", 0.8f);
+          addFeatureWeight("c", 0.4f);
+          addFeatureWeight("d", 0.1f);
+        }}.scaleToUnitL1Norm(), 0.5f);
+    assertEquals(new ArrayList<>(expected.getFeatures()), getTermsInIterationOrder(z));
+  }
+}